@@ -0,0 +1,67 @@
+package de.ws1718.ismla.JapaneseHelper.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.ws1718.ismla.JapaneseHelper.server.Analyzer;
+import de.ws1718.ismla.JapaneseHelper.server.SharedTokenizer;
+
+/**
+ * Runs the whole analysis pipeline (Analyzer.analyze: Kuromoji, then
+ * convertTokens with the dictionary lookups and sortTokens) on every line of
+ * sample-file.txt, without the lookup cache. The Kuromoji tokenization alone
+ * is measured as well, so the difference is the time spent in convertTokens.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class AnalyzerBenchmark {
+
+	private List<String> lines;
+	private SharedTokenizer tokenizer;
+	private Analyzer analyzer;
+
+	@Setup
+	public void setUp() {
+		lines = BenchmarkData.readLines(BenchmarkData.SAMPLE_FILE);
+		tokenizer = new SharedTokenizer();
+		analyzer = new Analyzer(tokenizer, BenchmarkData.loadDictionary());
+	}
+
+	@Benchmark
+	public void kuromoji(Blackhole bh) {
+		for (String line : lines) {
+			bh.consume(tokenizer.tokenize(line));
+		}
+	}
+
+	@Benchmark
+	public void analyze(Blackhole bh) {
+		for (String line : lines) {
+			bh.consume(analyzer.analyze(line));
+		}
+	}
+
+	@Benchmark
+	public void tokenizeLine(Blackhole bh) {
+		for (String line : lines) {
+			bh.consume(analyzer.tokenizeLine(line));
+		}
+	}
+
+}
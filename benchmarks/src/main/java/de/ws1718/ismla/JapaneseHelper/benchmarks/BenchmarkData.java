@@ -0,0 +1,121 @@
+package de.ws1718.ismla.JapaneseHelper.benchmarks;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import de.ws1718.ismla.JapaneseHelper.server.DictionaryIndex;
+import de.ws1718.ismla.JapaneseHelper.server.DictionaryLoader;
+import de.ws1718.ismla.JapaneseHelper.server.Listener;
+import de.ws1718.ismla.JapaneseHelper.server.WiktionaryPreprocessor;
+
+/**
+ * Locates the input data of the benchmarks. By default, the benchmarks use the
+ * files of the web application and expect to be started from the project's
+ * root directory. Set the system property "webapp.dir" to point them
+ * somewhere else.
+ */
+public final class BenchmarkData {
+
+	public static final String WEBAPP_DIR = System.getProperty("webapp.dir", "src/main/webapp");
+	public static final String SAMPLE_FILE = WEBAPP_DIR + "/WEB-INF/tokenize/sample-file.txt";
+	public static final String INFLECTION_TEMPLATES_DIR = WEBAPP_DIR + Listener.INFLECTION_TEMPLATES_PATH;
+	public static final String DICTIONARY_DIR = WEBAPP_DIR + Listener.DICTIONARY_PATH;
+	public static final String DIFFICULTY_RATING_FILE = WEBAPP_DIR + Listener.DIFFICULTY_RATING_PATH;
+
+	private BenchmarkData() {
+	}
+
+	/**
+	 * Reads the non-empty lines of a file, trimmed like the
+	 * {@link de.ws1718.ismla.JapaneseHelper.server.BulkTokenizer} does it.
+	 *
+	 * @param filename
+	 *            the file
+	 * @return the lines
+	 */
+	public static List<String> readLines(String filename) {
+		try {
+			return Files.readAllLines(Paths.get(filename), StandardCharsets.UTF_8).stream().map(String::trim)
+					.filter(line -> !line.isEmpty()).collect(Collectors.toList());
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not read " + filename + " (is webapp.dir set correctly?)", e);
+		}
+	}
+
+	/**
+	 * Loads the dictionary of the web application like the
+	 * {@link DictionaryLoader} does, including the inflection automaton.
+	 *
+	 * @return the dictionary
+	 */
+	public static DictionaryIndex loadDictionary() {
+		try {
+			return DictionaryLoader.load(new File(WEBAPP_DIR), null);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Runs the {@link WiktionaryPreprocessor} on the dictionary files of the
+	 * web application, like the Listener does on start-up.
+	 *
+	 * @return the preprocessor (with the results)
+	 */
+	public static WiktionaryPreprocessor preprocess() {
+		return preprocess(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Runs the {@link WiktionaryPreprocessor} with the given number of threads.
+	 *
+	 * @param parallelism
+	 *            the number of threads that convert the dictionary files
+	 * @return the preprocessor (with the results)
+	 */
+	public static WiktionaryPreprocessor preprocess(int parallelism) {
+		try (InputStream difficultyRatingStream = new FileInputStream(DIFFICULTY_RATING_FILE)) {
+			HashMap<String, String> difficultyRatings = Listener.readDifficultyRatings(difficultyRatingStream);
+			List<String> inflectionFiles = listFiles(INFLECTION_TEMPLATES_DIR);
+			List<String> dictionaryFiles = listFiles(DICTIONARY_DIR);
+			return new WiktionaryPreprocessor(inflectionFiles, openAll(inflectionFiles), openAll(dictionaryFiles),
+					difficultyRatings, parallelism);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @param directory
+	 *            the directory
+	 * @return the (sorted) paths of the regular files in the directory
+	 */
+	public static List<String> listFiles(String directory) {
+		try (Stream<Path> dir = Files.walk(Paths.get(directory))) {
+			return dir.filter(Files::isRegularFile).map(Path::toString).sorted().collect(Collectors.toList());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static List<InputStream> openAll(List<String> filenames) throws IOException {
+		List<InputStream> streams = new ArrayList<>();
+		for (String filename : filenames) {
+			streams.add(new FileInputStream(filename));
+		}
+		return streams;
+	}
+
+}
@@ -0,0 +1,91 @@
+package de.ws1718.ismla.JapaneseHelper.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ListMultimap;
+
+import de.ws1718.ismla.JapaneseHelper.server.DictionaryIndex;
+import de.ws1718.ismla.JapaneseHelper.server.DictionarySnapshot;
+import de.ws1718.ismla.JapaneseHelper.shared.Token;
+
+/**
+ * Measures how much heap the preprocessed dictionary needs, with the inflected
+ * forms of most lemmas generated on demand, and how much the different ways of
+ * indexing all of its tokens need on top of the tokens themselves: the Guava
+ * multimap that the index used to be and the DictionaryIndex. Also compares
+ * reading the dictionary with mapping a {@link DictionarySnapshot} of it, which
+ * keeps nearly everything off the heap.
+ *
+ * This is not a JMH benchmark. Run it with a fixed heap size, e.g.
+ *
+ * <pre>
+ * java -Xms2g -Xmx2g -cp benchmarks/target/benchmarks.jar de.ws1718.ismla.JapaneseHelper.benchmarks.DictionaryFootprint
+ * </pre>
+ */
+public final class DictionaryFootprint {
+
+	private DictionaryFootprint() {
+	}
+
+	public static void main(String[] args) throws IOException {
+		long empty = usedHeap();
+		long start = System.nanoTime();
+		DictionaryIndex preprocessed = BenchmarkData.preprocess().getDictionary();
+		System.out.println("read the dictionary in " + (System.nanoTime() - start) / 1000000 + " ms");
+		System.out.println("preprocessed: " + mb(usedHeap() - empty) + " MB (" + preprocessed + ")");
+
+		List<Token> tokens = new ArrayList<>(preprocessed.asMultimap().values());
+		preprocessed = null;
+		long base = usedHeap();
+		System.out.println(tokens.size() + " tokens: " + mb(base - empty) + " MB");
+
+		ImmutableListMultimap<String, Token> multimap = ImmutableListMultimap.copyOf(toMultimap(tokens));
+		System.out.println("multimap: +" + mb(usedHeap() - base) + " MB for " + multimap.keySet().size() + " forms");
+		multimap = null;
+
+		DictionaryIndex dictionary = DictionaryIndex.copyOf(toMultimap(tokens));
+		System.out.println("DictionaryIndex: +" + mb(usedHeap() - base) + " MB for " + dictionary.size() + " of "
+				+ tokens.size() + " tokens");
+
+		Path snapshot = Files.createTempFile("dictionary", ".snapshot");
+		try {
+			DictionarySnapshot.write(dictionary, snapshot);
+			dictionary = null;
+			tokens = null;
+			start = System.nanoTime();
+			DictionaryIndex mapped = DictionarySnapshot.map(snapshot);
+			System.out.println("mapped the snapshot in " + (System.nanoTime() - start) / 1000000 + " ms");
+			System.out.println("snapshot: " + mb(usedHeap() - empty) + " MB on the heap, " + mb(Files.size(snapshot))
+					+ " MB mapped (" + mapped.size() + " entries)");
+		} finally {
+			Files.delete(snapshot);
+		}
+	}
+
+	private static ListMultimap<String, Token> toMultimap(List<Token> tokens) {
+		ListMultimap<String, Token> tokenMap = ArrayListMultimap.create();
+		for (Token tok : tokens) {
+			tokenMap.put(tok.getForm(), tok);
+		}
+		return tokenMap;
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static String mb(long bytes) {
+		return String.format("%.1f", bytes / (1024.0 * 1024.0));
+	}
+
+}
@@ -0,0 +1,134 @@
+package de.ws1718.ismla.JapaneseHelper.benchmarks;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.ws1718.ismla.JapaneseHelper.server.DictionaryIndex;
+import de.ws1718.ismla.JapaneseHelper.server.DifficultyRatings;
+import de.ws1718.ismla.JapaneseHelper.server.Listener;
+import de.ws1718.ismla.JapaneseHelper.shared.InflectableToken;
+import de.ws1718.ismla.JapaneseHelper.shared.InflectedToken;
+import de.ws1718.ismla.JapaneseHelper.shared.Token;
+
+/**
+ * Rates the forms of all lemmas and their inflected forms, like the
+ * preprocessing does. Compares the HashMap from (boxed) characters that was
+ * used before with the char-indexed DifficultyRatings table, with and without
+ * reusing the rating of the lemma for its inflected forms. The preprocessing as
+ * a whole is measured by the PreprocessorBenchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class DifficultyRatingBenchmark {
+
+	private HashMap<String, String> map;
+	private DifficultyRatings table;
+	// The lemma forms with the forms of their inflected forms.
+	private List<Entry<String, List<String>>> lemmas;
+
+	@Setup
+	public void setUp() {
+		try (InputStream difficultyRatingStream = new FileInputStream(BenchmarkData.DIFFICULTY_RATING_FILE)) {
+			map = Listener.readDifficultyRatings(difficultyRatingStream);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		table = new DifficultyRatings(map);
+
+		DictionaryIndex dictionary = BenchmarkData.preprocess().getDictionary();
+		// Lemmas whose forms are generated on demand are copied by each
+		// lookup, so they are grouped by their form.
+		Map<String, Set<String>> forms = new HashMap<>();
+		for (String form : dictionary.forms()) {
+			for (Token tok : dictionary.get(form)) {
+				InflectableToken lemma = tok instanceof InflectedToken ? ((InflectedToken) tok).getLemmaToken() : null;
+				if (lemma != null) {
+					forms.computeIfAbsent(lemma.getForm(), k -> new LinkedHashSet<>()).add(tok.getForm());
+				}
+			}
+		}
+		lemmas = new ArrayList<>();
+		for (Entry<String, Set<String>> entry : forms.entrySet()) {
+			lemmas.add(new SimpleEntry<>(entry.getKey(), new ArrayList<>(entry.getValue())));
+		}
+	}
+
+	@Benchmark
+	public void hashMap(Blackhole blackhole) {
+		for (Entry<String, List<String>> lemma : lemmas) {
+			blackhole.consume(mapRating(lemma.getKey()));
+			for (String form : lemma.getValue()) {
+				blackhole.consume(mapRating(form));
+			}
+		}
+	}
+
+	@Benchmark
+	public void table(Blackhole blackhole) {
+		for (Entry<String, List<String>> lemma : lemmas) {
+			blackhole.consume(table.rate(lemma.getKey()));
+			for (String form : lemma.getValue()) {
+				blackhole.consume(table.rate(form));
+			}
+		}
+	}
+
+	@Benchmark
+	public void tableWithStem(Blackhole blackhole) {
+		for (Entry<String, List<String>> lemma : lemmas) {
+			String stem = lemma.getKey();
+			String stemRating = table.rate(stem);
+			blackhole.consume(stemRating);
+			for (String form : lemma.getValue()) {
+				blackhole.consume(table.rate(form, stem, stemRating));
+			}
+		}
+	}
+
+	/**
+	 * The previous implementation (in Inflector.finish).
+	 */
+	private String mapRating(String form) {
+		StringBuilder difficultyRating = new StringBuilder();
+		for (int i = 0; i < form.length(); i++) {
+			char curChar = form.charAt(i);
+			String rating = map.get(Character.toString(curChar));
+
+			if (rating == null || rating.isEmpty()) {
+				rating = "*";
+			}
+			difficultyRating.append(rating);
+			difficultyRating.append("-");
+		}
+		difficultyRating.setLength(difficultyRating.length() - 1);
+		return difficultyRating.toString();
+	}
+
+}
@@ -0,0 +1,72 @@
+package de.ws1718.ismla.JapaneseHelper.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.common.collect.ImmutableListMultimap;
+
+import de.ws1718.ismla.JapaneseHelper.server.DictionaryIndex;
+import de.ws1718.ismla.JapaneseHelper.server.SharedTokenizer;
+import de.ws1718.ismla.JapaneseHelper.shared.Token;
+
+/**
+ * Looks up the surface of every Kuromoji token of sample-file.txt, which
+ * includes forms that are not in the dictionary. Compares the double-array
+ * trie of the DictionaryIndex with the Guava multimap that the index used to
+ * be.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExactLookupBenchmark {
+
+	private DictionaryIndex dictionary;
+	private ImmutableListMultimap<String, Token> multimap;
+	private List<String> surfaces;
+
+	@Setup
+	public void setUp() {
+		dictionary = BenchmarkData.preprocess().getDictionary();
+		multimap = dictionary.asMultimap();
+		SharedTokenizer tokenizer = new SharedTokenizer();
+		surfaces = new ArrayList<>();
+		for (String line : BenchmarkData.readLines(BenchmarkData.SAMPLE_FILE)) {
+			for (com.atilika.kuromoji.ipadic.Token tok : tokenizer.tokenize(line)) {
+				// Copies, so that the lookups can't take any shortcuts via
+				// identical strings or cached hash codes.
+				surfaces.add(new String(tok.getSurface().toCharArray()));
+			}
+		}
+	}
+
+	@Benchmark
+	public void doubleArrayTrie(Blackhole bh) {
+		for (String surface : surfaces) {
+			bh.consume(dictionary.get(surface));
+		}
+	}
+
+	@Benchmark
+	public void multimap(Blackhole bh) {
+		for (String surface : surfaces) {
+			bh.consume(multimap.get(surface));
+		}
+	}
+
+}
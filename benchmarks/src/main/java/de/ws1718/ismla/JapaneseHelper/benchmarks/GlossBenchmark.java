@@ -0,0 +1,120 @@
+package de.ws1718.ismla.JapaneseHelper.benchmarks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.ws1718.ismla.JapaneseHelper.shared.GlossNormalizer;
+import de.ws1718.ismla.JapaneseHelper.shared.Token;
+
+/**
+ * Cleans the translations of all entries of the Wiktionary dump. Compares the
+ * single-pass GlossNormalizer with the cascade of regular expressions that it
+ * replaced, and measures Token.processGlosses (cleaning and splitting) as a
+ * whole.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GlossBenchmark {
+
+	private List<String> translations;
+
+	@Setup
+	public void setUp() {
+		translations = new ArrayList<>();
+		for (String file : BenchmarkData.listFiles(BenchmarkData.DICTIONARY_DIR)) {
+			try {
+				for (String line : Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8)) {
+					String[] fields = line.split("\t");
+					if (fields.length > 3) {
+						translations.add(fields[3]);
+					}
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	@Benchmark
+	public void normalizer(Blackhole blackhole) {
+		for (String translation : translations) {
+			blackhole.consume(GlossNormalizer.normalize(translation));
+		}
+	}
+
+	@Benchmark
+	public void regexCascade(Blackhole blackhole) {
+		for (String translation : translations) {
+			blackhole.consume(cleanTranslation(translation));
+		}
+	}
+
+	@Benchmark
+	public void processGlosses(Blackhole blackhole) {
+		for (String translation : translations) {
+			blackhole.consume(Token.processGlosses(translation));
+		}
+	}
+
+	/**
+	 * The previous implementation of the normalizer (Token.cleanTranslation).
+	 */
+	private static String cleanTranslation(String translation) {
+		translation = translation.trim();
+
+		translation = translation.replaceAll("&amp;?", "&");
+		translation = translation.replaceAll("& ?lt;?", "<");
+		translation = translation.replaceAll("& ?gt;?", ">");
+		translation = translation.replaceAll("& ?quot;? ?", "\"");
+		translation = translation.replaceAll("& ?ndash;? ?", "–");
+		translation = translation.replaceAll("& ?mdash;? ?", "—");
+		translation = translation.replaceAll("& ?nbsp;? ?", "u\00A0");
+		translation = translation.replaceAll("& ?hellip;? ?", "u\2026");
+		translation = translation.replaceAll("& ?times;? ?", "×");
+		translation = translation.replaceAll("''", "\"");
+
+		int commentStartIndex = translation.indexOf("< !--");
+		int commentEndIndex = translation.indexOf("-->");
+		while (commentStartIndex > -1) {
+			if (commentEndIndex == -1) {
+				translation = translation.substring(0, commentStartIndex);
+			} else {
+				translation = translation.substring(0, commentStartIndex) + translation.substring(commentEndIndex + 3);
+			}
+			commentStartIndex = translation.indexOf("< !--");
+			commentEndIndex = translation.indexOf("-->");
+		}
+
+		translation = translation.replaceAll("#{2,} ", "•");
+		translation = translation.replaceAll("#+$", "");
+
+		translation = translation.replaceAll("(\\{\\{)|(\\}\\})", "");
+		translation = translation.replaceAll("\\(\\)", "");
+
+		translation = translation.replaceAll("\\s+", " ");
+		return translation;
+	}
+
+}
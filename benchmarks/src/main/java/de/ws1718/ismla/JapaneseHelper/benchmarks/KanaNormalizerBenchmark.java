@@ -0,0 +1,99 @@
+package de.ws1718.ismla.JapaneseHelper.benchmarks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.atilika.kuromoji.ipadic.Token;
+import com.mariten.kanatools.KanaConverter;
+
+import de.ws1718.ismla.JapaneseHelper.server.KanaNormalizer;
+import de.ws1718.ismla.JapaneseHelper.server.SharedTokenizer;
+
+/**
+ * Normalizes pronunciations like the lookup and the preprocessing do: the
+ * Kuromoji readings of sample-file.txt (in katakana) and the pronunciations of
+ * the Wiktionary dump (mostly in hiragana, some with periods). Compares the
+ * KanaNormalizer with the regular expression and KanaConverter that it
+ * replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KanaNormalizerBenchmark {
+
+	@Param({ "kuromoji", "wiktionary" })
+	public String source;
+
+	private List<String> pronunciations;
+
+	@Setup
+	public void setUp() {
+		pronunciations = new ArrayList<>();
+		if ("kuromoji".equals(source)) {
+			SharedTokenizer tokenizer = new SharedTokenizer();
+			for (String line : BenchmarkData.readLines(BenchmarkData.SAMPLE_FILE)) {
+				for (Token tok : tokenizer.tokenize(line)) {
+					pronunciations.add(tok.getReading());
+				}
+			}
+			return;
+		}
+		for (String file : BenchmarkData.listFiles(BenchmarkData.DICTIONARY_DIR)) {
+			try {
+				for (String line : Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8)) {
+					String[] fields = line.split("\t");
+					if (fields.length > 1) {
+						pronunciations.add(fields[1]);
+					}
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	@Benchmark
+	public void kanaNormalizer(Blackhole blackhole) {
+		for (String pron : pronunciations) {
+			blackhole.consume(KanaNormalizer.normalize(pron));
+		}
+	}
+
+	@Benchmark
+	public void kanaConverter(Blackhole blackhole) {
+		for (String pron : pronunciations) {
+			blackhole.consume(convertPronunciation(pron));
+		}
+	}
+
+	/**
+	 * The previous implementation (RankingKeys.convertPronunciation).
+	 */
+	private static String convertPronunciation(String pron) {
+		pron = pron.replaceAll("\\.", "");
+		return KanaConverter.convertKana(pron, KanaConverter.OP_ZEN_KATA_TO_ZEN_HIRA);
+	}
+
+}
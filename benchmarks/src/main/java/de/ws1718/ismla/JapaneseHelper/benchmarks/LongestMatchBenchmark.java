@@ -0,0 +1,111 @@
+package de.ws1718.ismla.JapaneseHelper.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.common.base.Joiner;
+
+import de.ws1718.ismla.JapaneseHelper.server.DictionaryIndex;
+import de.ws1718.ismla.JapaneseHelper.server.SharedTokenizer;
+import de.ws1718.ismla.JapaneseHelper.server.WiktionaryPreprocessor;
+import de.ws1718.ismla.JapaneseHelper.shared.Token;
+
+/**
+ * Joins inflected verbs that Kuromoji split up into the stem and a chain of
+ * auxiliaries. Compares the longest-match walk over the dictionary trie
+ * (DictionaryIndex.longestMatch) with joining the surfaces and probing the
+ * dictionary once per shrinking prefix (what convertTokens used to do). One
+ * operation handles every run of conjugated tokens in the verb-heavy
+ * sentences below.
+ *
+ * The "deinflected" index is the one the webapp uses: the walk only finds the
+ * stored forms, and the longer runs go to the deinflector if they end in a
+ * suffix of the templates. The "materialized" index stores every inflected
+ * form, so the walk finds them all, at the cost of a much larger dictionary.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LongestMatchBenchmark {
+
+	private static final String[] SENTENCES = { "食べさせられていなかったらしいです。", "行かなければならなかったでしょう。",
+			"読んでしまいたくなかったのですが、書かされてしまいました。", "見せてもらえませんでしたか。", "走り続けていたかったのに、止められてしまった。",
+			"思い出せなくなってしまっていたようだ。", "勉強させていただきたいと思っております。", "忘れられなかった。", "飲みすぎてしまったらしい。",
+			"話されていませんでした。" };
+
+	@Param({ "deinflected", "materialized" })
+	public String index;
+
+	private DictionaryIndex dictionary;
+	// The surfaces of each run of conjugated Kuromoji tokens.
+	private List<List<String>> runs;
+
+	@Setup
+	public void setUp() {
+		WiktionaryPreprocessor wp = BenchmarkData.preprocess();
+		dictionary = index.equals("materialized") ? DictionaryIndex.copyOf(wp.getTokens()) : wp.getDictionary();
+		SharedTokenizer tokenizer = new SharedTokenizer();
+		runs = new ArrayList<>();
+		for (String sentence : SENTENCES) {
+			List<com.atilika.kuromoji.ipadic.Token> ipaTokens = tokenizer.tokenize(sentence);
+			for (int index = 0; index < ipaTokens.size(); index++) {
+				if (ipaTokens.get(index).getConjugationForm().equals("*")) {
+					continue;
+				}
+				List<String> run = new ArrayList<>();
+				run.add(ipaTokens.get(index).getSurface());
+				int curIndex = index + 1;
+				while (curIndex < ipaTokens.size() && (!ipaTokens.get(curIndex).getConjugationForm().equals("*")
+						|| ipaTokens.get(curIndex).getSurface().equals("て"))) {
+					run.add(ipaTokens.get(curIndex).getSurface());
+					curIndex++;
+				}
+				runs.add(run);
+			}
+		}
+	}
+
+	@Benchmark
+	public void trie(Blackhole bh) {
+		for (List<String> run : runs) {
+			bh.consume(dictionary.longestMatch(run, 2));
+		}
+	}
+
+	@Benchmark
+	public void joinAndProbe(Blackhole bh) {
+		Joiner joiner = Joiner.on("");
+		for (List<String> run : runs) {
+			List<String> multiTokenForm = new ArrayList<>(run);
+			List<Token> match = null;
+			while (multiTokenForm.size() > 1) {
+				List<Token> multiTokenEntry = dictionary.get(joiner.join(multiTokenForm));
+				if (multiTokenEntry != null && multiTokenEntry.size() > 0) {
+					match = multiTokenEntry;
+					break;
+				}
+				multiTokenForm.remove(multiTokenForm.size() - 1);
+			}
+			bh.consume(match);
+			bh.consume(joiner.join(multiTokenForm));
+		}
+	}
+
+}
@@ -0,0 +1,39 @@
+package de.ws1718.ismla.JapaneseHelper.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.ws1718.ismla.JapaneseHelper.server.DictionaryIndex;
+
+/**
+ * Measures how long the start-up preprocessing of the dictionary files takes
+ * with different numbers of worker threads. Each iteration is a single run, like
+ * a server start-up.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PreprocessorBenchmark {
+
+	@Param({ "1", "2", "4", "8" })
+	public int threads;
+
+	@Benchmark
+	public DictionaryIndex preprocess() {
+		return BenchmarkData.preprocess(threads).getDictionary();
+	}
+
+}
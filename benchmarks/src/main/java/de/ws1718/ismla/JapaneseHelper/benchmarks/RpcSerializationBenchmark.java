@@ -0,0 +1,100 @@
+package de.ws1718.ismla.JapaneseHelper.benchmarks;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.gwt.user.client.rpc.SerializationException;
+import com.google.gwt.user.server.rpc.RPC;
+import com.google.gwt.user.server.rpc.SerializationPolicy;
+
+import de.ws1718.ismla.JapaneseHelper.client.LookupService;
+import de.ws1718.ismla.JapaneseHelper.server.Analyzer;
+import de.ws1718.ismla.JapaneseHelper.server.SharedTokenizer;
+import de.ws1718.ismla.JapaneseHelper.shared.BatchLookupResult;
+import de.ws1718.ismla.JapaneseHelper.shared.Token;
+
+/**
+ * Encodes typical lookup results into GWT RPC responses, as
+ * RemoteServiceServlet does before sending them: the results of every line of
+ * sample-file.txt as separate lookup responses, and all of them as one batch
+ * response. The results are computed once in the setup, so only the
+ * serialization is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class RpcSerializationBenchmark {
+
+	/**
+	 * Allows every type. The serialization policy file that the GWT compiler
+	 * writes is not available outside the web application, and checking the
+	 * types is not what we want to measure.
+	 */
+	private static final SerializationPolicy POLICY = new SerializationPolicy() {
+
+		@Override
+		public boolean shouldSerializeFields(Class<?> clazz) {
+			return clazz != null;
+		}
+
+		@Override
+		public boolean shouldDeserializeFields(Class<?> clazz) {
+			return clazz != null;
+		}
+
+		@Override
+		public void validateSerialize(Class<?> clazz) throws SerializationException {
+		}
+
+		@Override
+		public void validateDeserialize(Class<?> clazz) throws SerializationException {
+		}
+	};
+
+	private Method lookup;
+	private Method lookupBatch;
+	private List<List<ArrayList<Token>>> results;
+	private BatchLookupResult batch;
+
+	@Setup
+	public void setUp() throws NoSuchMethodException {
+		lookup = LookupService.class.getMethod("lookup", String.class);
+		lookupBatch = LookupService.class.getMethod("lookupBatch", List.class);
+		Analyzer analyzer = new Analyzer(new SharedTokenizer(), BenchmarkData.loadDictionary());
+		results = new ArrayList<>();
+		for (String line : BenchmarkData.readLines(BenchmarkData.SAMPLE_FILE)) {
+			results.add(analyzer.analyze(line));
+		}
+		batch = new BatchLookupResult(new ArrayList<>(results), 0);
+	}
+
+	@Benchmark
+	public void lookupResponses(Blackhole bh) throws SerializationException {
+		for (List<ArrayList<Token>> result : results) {
+			bh.consume(RPC.encodeResponseForSuccess(lookup, result, POLICY));
+		}
+	}
+
+	@Benchmark
+	public String batchResponse() throws SerializationException {
+		return RPC.encodeResponseForSuccess(lookupBatch, batch, POLICY);
+	}
+
+}
@@ -0,0 +1,97 @@
+package de.ws1718.ismla.JapaneseHelper.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mariten.kanatools.KanaConverter;
+
+import de.ws1718.ismla.JapaneseHelper.server.Analyzer;
+import de.ws1718.ismla.JapaneseHelper.server.DictionaryIndex;
+import de.ws1718.ismla.JapaneseHelper.shared.InflectedToken;
+import de.ws1718.ismla.JapaneseHelper.shared.Token;
+
+/**
+ * Ranks the dictionary candidates of highly ambiguous forms. Compares the
+ * partition by precomputed ranking keys (Analyzer.sortTokens) with the
+ * comparator sort that normalized the POS tags and pronunciations in every
+ * comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SortTokensBenchmark {
+
+	@Param({ "する", "為る", "して", "した" })
+	public String form;
+
+	private List<Token> candidates;
+
+	@Setup
+	public void setUp() {
+		DictionaryIndex dictionary = BenchmarkData.preprocess().getDictionary();
+		candidates = dictionary.get(form);
+		if (candidates.isEmpty()) {
+			throw new IllegalStateException("no dictionary entries for " + form);
+		}
+	}
+
+	@Benchmark
+	public List<Token> rankingKeys() {
+		return Analyzer.sortTokens(form, "動詞", "スル", candidates);
+	}
+
+	@Benchmark
+	public List<Token> comparator() {
+		return sortWithComparator("動詞", "スル", candidates);
+	}
+
+	/**
+	 * The previous implementation of sortTokens (for the non-empty case).
+	 */
+	private static List<Token> sortWithComparator(String posKuromoji, String pronKuromoji, List<Token> dictTokens) {
+		String posK = "動詞".equals(posKuromoji) ? "V" : "";
+		String pronK = convertPronunciation(pronKuromoji);
+		Comparator<Token> comp = Comparator.comparing(Token::getPos, (pos1, pos2) -> {
+			pos1 = convertWiktionaryPOSTag(pos1);
+			pos2 = convertWiktionaryPOSTag(pos2);
+			return pos1.equals(pos2) ? 0 : pos1.equals(posK) ? -1 : 1;
+		}).thenComparing(Token::getPronunciation, (pron1, pron2) -> {
+			pron1 = convertPronunciation(pron1);
+			pron2 = convertPronunciation(pron2);
+			return pron1.equals(pron2) ? 0 : pron1.equals(pronK) ? -1 : 1;
+		}).thenComparing(Token::getClass, (class1, class2) -> {
+			return class1.equals(class2) ? 0 : class1.equals(InflectedToken.class) ? -1 : 1;
+		});
+		List<Token> sortedTokens = new ArrayList<>(dictTokens);
+		Collections.sort(sortedTokens, comp);
+		return sortedTokens;
+	}
+
+	private static String convertWiktionaryPOSTag(String pos) {
+		return pos.startsWith("V") ? "V" : pos;
+	}
+
+	private static String convertPronunciation(String pron) {
+		pron = pron.replaceAll("\\.", "");
+		return KanaConverter.convertKana(pron, KanaConverter.OP_ZEN_KATA_TO_ZEN_HIRA);
+	}
+
+}
@@ -0,0 +1,68 @@
+package de.ws1718.ismla.JapaneseHelper.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.atilika.kuromoji.ipadic.Tokenizer;
+
+import de.ws1718.ismla.JapaneseHelper.server.SharedTokenizer;
+
+/**
+ * Compares building a new Kuromoji tokenizer for every request (what
+ * LookupServiceImpl.lookup used to do) with sharing one tokenizer between all
+ * requests. One operation tokenizes every line of sample-file.txt, one request
+ * per line.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenizerBenchmark {
+
+	private List<String> lines;
+	private SharedTokenizer sharedTokenizer;
+
+	@Setup
+	public void setUp() {
+		lines = BenchmarkData.readLines(BenchmarkData.SAMPLE_FILE);
+		sharedTokenizer = new SharedTokenizer();
+	}
+
+	@Benchmark
+	public void coldPerRequest(Blackhole bh) {
+		for (String line : lines) {
+			bh.consume(new Tokenizer().tokenize(line));
+		}
+	}
+
+	@Benchmark
+	public void shared(Blackhole bh) {
+		for (String line : lines) {
+			bh.consume(sharedTokenizer.tokenize(line));
+		}
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void sharedConcurrent(Blackhole bh) {
+		for (String line : lines) {
+			bh.consume(sharedTokenizer.tokenize(line));
+		}
+	}
+
+}
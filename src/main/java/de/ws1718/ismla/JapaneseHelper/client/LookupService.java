@@ -3,7 +3,12 @@ package de.ws1718.ismla.JapaneseHelper.client;
 import com.google.gwt.user.client.rpc.RemoteService;
 import com.google.gwt.user.client.rpc.RemoteServiceRelativePath;
 import com.google.gwt.core.client.GWT;
+import de.ws1718.ismla.JapaneseHelper.shared.BatchLookupResult;
+import de.ws1718.ismla.JapaneseHelper.shared.DictionaryLoadingException;
+import de.ws1718.ismla.JapaneseHelper.shared.InflectableToken;
+import de.ws1718.ismla.JapaneseHelper.shared.InflectedToken;
 import de.ws1718.ismla.JapaneseHelper.shared.Token;
+import de.ws1718.ismla.JapaneseHelper.shared.TokenizationProgress;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -15,8 +20,42 @@ public interface LookupService extends RemoteService {
      * Use LookupService.App.getInstance() to access static instance of LookupServiceAsync
      */
     List<ArrayList<Token>> lookup(String sentence);
+
+    /**
+     * Looks up several sentences in one round trip.
+     * The results are in the same order as the sentences.
+     */
+    BatchLookupResult lookupBatch(List<String> sentences);
+
+    /**
+     * Returns the inflected forms of a lemma, for its inflection table.
+     * The lemmas in the lookup results don't include them if they are generated on demand.
+     */
+    ArrayList<InflectedToken> getInflectedForms(InflectableToken lemma);
     
-    String tokenizeFiles();
+    String tokenizeFiles() throws DictionaryLoadingException;
+
+    /**
+     * Starts tokenizing the files in the background.
+     * Returns the ID of the job, for polling its progress.
+     * Throws a DictionaryLoadingException while the dictionary is still loading.
+     */
+    String submitTokenizationJob() throws DictionaryLoadingException;
+
+    /**
+     * Returns the progress of a tokenization job, or null if there is no such job.
+     */
+    TokenizationProgress getTokenizationProgress(String jobId);
+
+    /**
+     * Cancels a tokenization job. Returns false if it was over already.
+     */
+    boolean cancelTokenizationJob(String jobId);
+
+    /**
+     * Returns the result of a finished tokenization job, or null if it isn't finished.
+     */
+    String getTokenizationResult(String jobId);
 
     public static class App {
         private static final LookupServiceAsync ourInstance = (LookupServiceAsync) GWT.create(LookupService.class);
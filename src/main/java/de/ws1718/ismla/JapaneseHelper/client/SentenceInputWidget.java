@@ -12,12 +12,15 @@ import com.google.gwt.user.client.Window;
 import com.google.gwt.user.client.rpc.AsyncCallback;
 import com.google.gwt.user.client.ui.Button;
 import com.google.gwt.user.client.ui.Composite;
+import com.google.gwt.user.client.ui.Label;
 import com.google.gwt.user.client.ui.RootPanel;
 import com.google.gwt.user.client.ui.TextArea;
 import com.google.gwt.user.client.ui.Widget;
 import com.google.gwt.user.client.Timer;
 
+import de.ws1718.ismla.JapaneseHelper.shared.DictionaryLoadingException;
 import de.ws1718.ismla.JapaneseHelper.shared.Token;
+import de.ws1718.ismla.JapaneseHelper.shared.TokenizationProgress;
 
 public class SentenceInputWidget extends Composite {
 	private final LookupServiceAsync lookupService = LookupService.App.getInstance();
@@ -36,6 +39,18 @@ public class SentenceInputWidget extends Composite {
 	@UiField
 	Button tokenizeButton;
 
+	@UiField
+	Button cancelButton;
+
+	@UiField
+	Label tokenizationProgress;
+
+	// How often the progress of a tokenization job is polled, in milliseconds.
+	private static final int PROGRESS_INTERVAL = 1000;
+
+	// The running tokenization job, or null.
+	private String tokenizationJobId;
+
 	/**
 	 * A widget where users can enter text and submit it.
 	 */
@@ -43,6 +58,8 @@ public class SentenceInputWidget extends Composite {
 		initWidget(uiBinder.createAndBindUi(this));
 		submitButton.setText("Submit");
 		tokenizeButton.setText("Tokenize Files");
+		cancelButton.setText("Cancel Tokenization");
+		cancelButton.setVisible(false);
 	}
 
 	private Timer submitTimer = new Timer() {
@@ -87,11 +104,43 @@ public class SentenceInputWidget extends Composite {
 	
 	@UiHandler("tokenizeButton")
 	void onTokenizeClick(ClickEvent e) {
-		lookupService.tokenizeFiles(new AsyncCallback<String>() {
+		// The files are tokenized in the background, so the button stays
+		// hidden until the job is over.
+		tokenizeButton.setVisible(false);
+		tokenizationProgress.setText("Starting...");
+		lookupService.submitTokenizationJob(new AsyncCallback<String>() {
+
+			@Override
+			public void onSuccess(String jobId) {
+				tokenizationJobId = jobId;
+				cancelButton.setVisible(true);
+				progressTimer.scheduleRepeating(PROGRESS_INTERVAL);
+			}
+
+			@Override
+			public void onFailure(Throwable caught) {
+				if (caught instanceof DictionaryLoadingException) {
+					// Not an error, the button can be clicked again later.
+					finishTokenization(caught.getMessage());
+					return;
+				}
+				finishTokenization("");
+				Window.alert(caught.getMessage());
+			}
+		});
+	}
+
+	@UiHandler("cancelButton")
+	void onCancelClick(ClickEvent e) {
+		if (tokenizationJobId == null) {
+			return;
+		}
+		cancelButton.setVisible(false);
+		lookupService.cancelTokenizationJob(tokenizationJobId, new AsyncCallback<Boolean>() {
 
 			@Override
-			public void onSuccess(String results) {
-				Window.alert("Done!");
+			public void onSuccess(Boolean cancelled) {
+				// The next poll shows the new state.
 			}
 
 			@Override
@@ -101,4 +150,45 @@ public class SentenceInputWidget extends Composite {
 		});
 	}
 
+	private Timer progressTimer = new Timer() {
+		public void run() {
+			if (tokenizationJobId == null) {
+				cancel();
+				return;
+			}
+			lookupService.getTokenizationProgress(tokenizationJobId, new AsyncCallback<TokenizationProgress>() {
+
+				@Override
+				public void onSuccess(TokenizationProgress progress) {
+					if (progress == null) {
+						// The server was restarted.
+						finishTokenization("");
+						return;
+					}
+					tokenizationProgress.setText(progress.toString());
+					if (progress.getState().isFinished()) {
+						finishTokenization(progress.toString());
+						if (progress.getState() == TokenizationProgress.State.DONE) {
+							Window.alert("Done!");
+						}
+					}
+				}
+
+				@Override
+				public void onFailure(Throwable caught) {
+					// Keep polling, the next request may get through.
+					tokenizationProgress.setText(caught.getMessage());
+				}
+			});
+		}
+	};
+
+	private void finishTokenization(String message) {
+		progressTimer.cancel();
+		tokenizationJobId = null;
+		tokenizationProgress.setText(message);
+		cancelButton.setVisible(false);
+		tokenizeButton.setVisible(true);
+	}
+
 }
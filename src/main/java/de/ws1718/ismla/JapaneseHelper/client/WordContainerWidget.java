@@ -7,11 +7,14 @@ import com.google.gwt.event.dom.client.ClickHandler;
 import com.google.gwt.resources.client.CssResource;
 import com.google.gwt.uibinder.client.UiBinder;
 import com.google.gwt.uibinder.client.UiField;
+import com.google.gwt.user.client.Window;
+import com.google.gwt.user.client.rpc.AsyncCallback;
 import com.google.gwt.user.client.ui.*;
 import de.ws1718.ismla.JapaneseHelper.shared.InflectableToken;
 import de.ws1718.ismla.JapaneseHelper.shared.InflectedToken;
 import de.ws1718.ismla.JapaneseHelper.shared.Token;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class WordContainerWidget extends Composite {
@@ -41,6 +44,8 @@ public class WordContainerWidget extends Composite {
 		String translation();
 
 		String wordContainer();
+
+		String provisional();
 	}
 
 
@@ -85,7 +90,26 @@ public class WordContainerWidget extends Composite {
 			inflection.addClickHandler(new ClickHandler() {
 				@Override
 				public void onClick(ClickEvent event) {
-					new Popup(new InflectionTableWidget(lemmaToken)).center();
+					if (!lemmaToken.getInflectedForms().isEmpty()) {
+						new Popup(new InflectionTableWidget(lemmaToken)).center();
+						return;
+					}
+					// Most inflected forms are generated on demand, so the
+					// lemma's table is only fetched when it is shown.
+					LookupService.App.getInstance().getInflectedForms(lemmaToken,
+							new AsyncCallback<ArrayList<InflectedToken>>() {
+
+								@Override
+								public void onSuccess(ArrayList<InflectedToken> inflectedForms) {
+									lemmaToken.setInflectedForms(inflectedForms);
+									new Popup(new InflectionTableWidget(lemmaToken)).center();
+								}
+
+								@Override
+								public void onFailure(Throwable caught) {
+									Window.alert(caught.getMessage());
+								}
+							});
 				}
 			});
 
@@ -96,6 +120,12 @@ public class WordContainerWidget extends Composite {
 		}
 
 		difficulty.setInnerText(firstToken.getDifficultyRating());
+
+		// Only Kuromoji's analysis, the dictionary is still loading.
+		if (firstToken.isProvisional()) {
+			addStyleName(style.provisional());
+			setTitle("The dictionary is still loading, look the sentence up again in a moment.");
+		}
 	}
 
 	private static class Popup extends PopupPanel {
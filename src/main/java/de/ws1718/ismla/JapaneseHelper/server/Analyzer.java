@@ -0,0 +1,350 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.ws1718.ismla.JapaneseHelper.server.LookupMetrics.Stage;
+import de.ws1718.ismla.JapaneseHelper.shared.InflectedToken;
+import de.ws1718.ismla.JapaneseHelper.shared.Token;
+
+/**
+ * The analysis pipeline: tokenizes a sentence with Kuromoji, looks the tokens
+ * up in the dictionary (joining inflected forms that span several tokens) and
+ * sorts the candidates by how closely they match.
+ *
+ * It doesn't depend on the servlet container, so the web application (see
+ * {@link LookupServiceImpl}) and the command line (see {@link CorpusTokenizer})
+ * share it. An analyzer is immutable and can be used by several threads at
+ * once.
+ *
+ * Without a dictionary (while the web application is still loading it), the
+ * tokens are only analyzed by Kuromoji and marked as provisional.
+ */
+public final class Analyzer {
+
+	// Separator for tokenizing file contents. Can be changed!
+	private static final String SEPARATOR = " ";
+	// The number of different ranks that sortTokens assigns to candidates.
+	private static final int RANK_BUCKETS = 8;
+
+	private final SharedTokenizer tokenizer;
+	private final DictionaryIndex dictionary;
+	private final LookupMetrics metrics;
+
+	/**
+	 * @param tokenizer
+	 *            the Kuromoji tokenizer
+	 * @param dictionary
+	 *            the dictionary, or null if it is not loaded yet
+	 */
+	public Analyzer(SharedTokenizer tokenizer, DictionaryIndex dictionary) {
+		this(tokenizer, dictionary, null);
+	}
+
+	/**
+	 * @param tokenizer
+	 *            the Kuromoji tokenizer
+	 * @param dictionary
+	 *            the dictionary, or null if it is not loaded yet
+	 * @param metrics
+	 *            records how long the stages of each analysis take, or null
+	 */
+	public Analyzer(SharedTokenizer tokenizer, DictionaryIndex dictionary, LookupMetrics metrics) {
+		this.tokenizer = tokenizer;
+		this.dictionary = dictionary;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @return the dictionary, or null if it is not loaded yet
+	 */
+	public DictionaryIndex getDictionary() {
+		return dictionary;
+	}
+
+	/**
+	 * Analyzes a sentence.
+	 * 
+	 * @param sentence
+	 *            the sentence
+	 * @return the candidates for each token, the best one first
+	 */
+	public List<ArrayList<Token>> analyze(String sentence) {
+		long start = metrics == null ? 0 : System.nanoTime();
+		// This is the Token defined by the Kuromoji parser.
+		List<com.atilika.kuromoji.ipadic.Token> ipaTokens = tokenizer.tokenize(sentence.trim());
+		Laps laps = metrics == null ? null : new Laps();
+
+		// This is the Token defined by us.
+		List<ArrayList<Token>> results = dictionary == null ? provisionalTokens(ipaTokens)
+				: convertTokens(ipaTokens, dictionary, laps);
+
+		if (metrics != null) {
+			metrics.record(Stage.KUROMOJI, laps.start - start);
+			// The provisional tokens skip the other stages, so they would
+			// only add zeros to their histograms.
+			if (dictionary != null) {
+				metrics.record(Stage.DICTIONARY, laps.nanos[Laps.DICTIONARY]);
+				metrics.record(Stage.JOINING, laps.nanos[Laps.JOINING]);
+				metrics.record(Stage.SORTING, laps.nanos[Laps.SORTING]);
+			}
+			metrics.countSentence(results.size());
+		}
+		return results;
+	}
+
+	/**
+	 * @param line
+	 *            a line of a corpus
+	 * @return the forms of the best dictionary entries for the tokens of the
+	 *         line, separated by spaces
+	 */
+	public String tokenizeLine(String line) {
+		List<ArrayList<Token>> results = analyze(line);
+		StringBuilder sb = new StringBuilder();
+		String joiner = "";
+		for (ArrayList<Token> tokens : results) {
+			Token tok = tokens.get(0);
+			sb.append(joiner);
+			joiner = SEPARATOR;
+			sb.append(tok.getForm());
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @param laps
+	 *            sums up how long the stages take for all tokens, or null
+	 */
+	private static List<ArrayList<Token>> convertTokens(List<com.atilika.kuromoji.ipadic.Token> ipaTokens,
+			DictionaryIndex dictionary, Laps laps) {
+		List<ArrayList<Token>> tokens = new ArrayList<>();
+
+		for (int index = 0; index < ipaTokens.size(); index++) {
+			com.atilika.kuromoji.ipadic.Token tok = ipaTokens.get(index);
+			String form = tok.getSurface();
+			String pos = tok.getPartOfSpeechLevel1();
+			String pron = tok.getReading();
+			// logger.info(form + "\t" + tok.getAllFeatures());
+
+			List<Token> dictTokens = dictionary.get(tok.getSurface());
+			if (laps != null) {
+				laps.lap(Laps.DICTIONARY);
+			}
+
+			// If the token is inflected, try to lookup the full inflection form
+			// instead of displaying several segmented tokens.
+			if (!tok.getConjugationForm().equals("*")) {
+				// logger.info("Attempting to get inflection suffixes for " +
+				// tok.getSurface());
+				List<String> multiTokenForm = new ArrayList<>();
+				multiTokenForm.add(tok.getSurface());
+				// Should look at the token immediately following it.
+				int curIndex = index + 1;
+				// If it's not out of bounds and it's also marked as an
+				// inflection form.
+				// Add exception for "て" which is recognized as a particle.
+				while (curIndex < ipaTokens.size() && (!ipaTokens.get(curIndex).getConjugationForm().equals("*") ||
+						ipaTokens.get(curIndex).getSurface().equals("て"))) {
+					multiTokenForm.add(ipaTokens.get(curIndex).getSurface());
+					curIndex++;
+				}
+
+				// Find the longest dictionary form that spans several of these
+				// tokens in a single walk over the dictionary trie. (We might
+				// have overreached in the search, so it need not span all of
+				// them.)
+				DictionaryIndex.Match match = dictionary.longestMatch(multiTokenForm, 2);
+				if (match != null) {
+					dictTokens = match.getEntries();
+					form = match.getForm();
+					StringBuilder multiTokenPron = new StringBuilder();
+					for (int i = index; i < index + match.getParts(); i++) {
+						multiTokenPron.append(ipaTokens.get(i).getReading());
+					}
+					pron = multiTokenPron.toString();
+					// Skip all the consumed tokens from the Kuromoji
+					// outputs of course.
+					// -1 because the outer loop will still + 1
+					index = index + match.getParts() - 1;
+				}
+				// logger.info("Continuing with " + form);
+				if (laps != null) {
+					laps.lap(Laps.JOINING);
+				}
+			}
+
+			// Sort the results if there are several matches.
+			ArrayList<Token> sortedTokens = sortTokens(form, pos, pron, dictTokens);
+			tokens.add(sortedTokens);
+			if (laps != null) {
+				laps.lap(Laps.SORTING);
+			}
+		}
+
+		return tokens;
+	}
+
+	/**
+	 * @return a token for each Kuromoji token, with its form, reading and POS
+	 *         tag, marked as provisional
+	 */
+	private static List<ArrayList<Token>> provisionalTokens(List<com.atilika.kuromoji.ipadic.Token> ipaTokens) {
+		List<ArrayList<Token>> tokens = new ArrayList<>();
+		for (com.atilika.kuromoji.ipadic.Token ipaToken : ipaTokens) {
+			Token tok = unknownToken(ipaToken.getSurface(), convertIPADicPOSTag(ipaToken.getPartOfSpeechLevel1()),
+					RankingKeys.convertPronunciation(ipaToken.getReading()), "1) [the dictionary is still loading]");
+			tok.setProvisional(true);
+			tokens.add(new ArrayList<Token>(Arrays.asList(tok)));
+		}
+		return tokens;
+	}
+
+	/**
+	 * Sorts a list of Token instances by how closely they match the Kuromoji
+	 * token (descending order).
+	 * 
+	 * @param form
+	 *            the surface form of the token
+	 * @param posKuromoji
+	 *            the IPAdic POS tag belonging to the token
+	 * @param pronKuromoji
+	 *            the reading associated with the token
+	 * @param dictTokens
+	 *            the list of Wiktionary tokens (can be empty or null). This
+	 *            list is not modified.
+	 * @return the sorted list (a new list)
+	 */
+	public static ArrayList<Token> sortTokens(String form, String posKuromoji, String pronKuromoji,
+			List<Token> dictTokens) {
+		String posK = convertIPADicPOSTag(posKuromoji);
+		String pronK = RankingKeys.convertPronunciation(pronKuromoji);
+
+		// logger.info(posK + "\t" + pronK);
+		if (dictTokens == null || dictTokens.isEmpty()) {
+			Token tok = unknownToken(form, posK, pronK, "1) [out-of-vocabulary]");
+			// logger.info("no matches, created token: " + tok);
+			return new ArrayList<Token>(Arrays.asList(tok));
+		}
+
+		/*
+		 * Each candidate falls into one of eight ranks:
+		 * 
+		 * primary sort order: Try to match the POS tag with that of the
+		 * Kuromoji token.
+		 * 
+		 * secondary sort order: Try to match the pronunciation with that of the
+		 * Kuromoji token.
+		 * 
+		 * tertiary sort order: Prefer inflected tokens over uninflected ones.
+		 * 
+		 * Candidates with the same rank keep their dictionary order, so we only
+		 * need to partition the list (stably) by rank instead of sorting it.
+		 */
+		int size = dictTokens.size();
+		int[] ranks = new int[size];
+		int[] bucketStarts = new int[RANK_BUCKETS + 1];
+		for (int i = 0; i < size; i++) {
+			Token tok = dictTokens.get(i);
+			int rank = 0;
+			if (!posK.equals(RankingKeys.posClass(tok))) {
+				rank |= 4;
+			}
+			if (!pronK.equals(RankingKeys.reading(tok))) {
+				rank |= 2;
+			}
+			if (!(tok instanceof InflectedToken)) {
+				rank |= 1;
+			}
+			ranks[i] = rank;
+			bucketStarts[rank + 1]++;
+		}
+		for (int rank = 1; rank <= RANK_BUCKETS; rank++) {
+			bucketStarts[rank] += bucketStarts[rank - 1];
+		}
+
+		Token[] sorted = new Token[size];
+		for (int i = 0; i < size; i++) {
+			sorted[bucketStarts[ranks[i]]++] = dictTokens.get(i);
+		}
+		return new ArrayList<Token>(Arrays.asList(sorted));
+	}
+
+	/**
+	 * @param meaning
+	 *            the meaning to show unless the token is a punctuation mark
+	 * @return a token that is not in the dictionary
+	 */
+	private static Token unknownToken(String form, String posK, String pronK, String meaning) {
+		String difficultyRating = "N/A";
+		if (posK.equals("PNC")) {
+			meaning = "1) [punctuation mark]";
+			difficultyRating = "*";
+		}
+		Token tok = new Token(form, pronK, posK, meaning);
+		tok.setDifficultyRating(difficultyRating);
+		return tok;
+	}
+
+	private static String convertIPADicPOSTag(String ipadicTag) {
+		switch (ipadicTag) {
+		case "名詞":
+			// Several possibilities under this category.
+			return "N";
+		case "動詞":
+			// Apparently Wiktionary differentiates between transitive and
+			// intransitive verbs but it's not sure whether IPAdic offers such a
+			// distinction.
+			return "V";
+		case "形容詞":
+			return "A";
+		case "副詞":
+			return "ADV";
+		case "接続詞":
+			return "CNJ";
+		case "感動詞":
+			return "ITJ";
+		case "助詞":
+			return "PRT";
+		case "助動詞":
+			return "SFX";
+		case "連体詞":
+			return "DET";
+		case "接頭詞":
+			return "PFX";
+		case "記号":
+			return "PNC";
+		default:
+			// The remaining top-class tags would be
+			// "フィラー" ("filler") and "その他" ("etc."),
+			// which shouldn't be relevant.
+			return "";
+		}
+	}
+
+	/**
+	 * Sums up the time between consecutive laps by stage.
+	 */
+	private static final class Laps {
+
+		static final int DICTIONARY = 0;
+		static final int JOINING = 1;
+		static final int SORTING = 2;
+
+		final long start = System.nanoTime();
+		final long[] nanos = new long[3];
+		private long last = start;
+
+		/**
+		 * Adds the time since the last lap to the stage.
+		 */
+		void lap(int stage) {
+			long now = System.nanoTime();
+			nanos[stage] += now - last;
+			last = now;
+		}
+
+	}
+
+}
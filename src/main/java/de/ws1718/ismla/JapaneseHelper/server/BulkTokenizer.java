@@ -0,0 +1,342 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * Tokenizes large corpora line by line (see {@link TokenizationJobs} and
+ * {@link CorpusTokenizer}).
+ *
+ * The lines are read in blocks, which the workers tokenize in parallel. The
+ * blocks are written in the order in which they were read, so each output has
+ * the same lines as its input. The reader runs ahead of the writer by a
+ * limited number of blocks, so only a few blocks are in memory no matter how
+ * large the corpus is. It moves on to the next input before the blocks of the
+ * previous one have been written, so the workers stay busy even if the inputs
+ * are small. The inputs and outputs are opened when the reader gets to them
+ * and closed when they are done, so there is no limit on the number of files
+ * either.
+ *
+ * A bulk tokenizer can be used by one thread at a time, but its progress can
+ * be read by any thread. Interrupting the thread cancels the run.
+ */
+public final class BulkTokenizer {
+
+	private static final Logger logger = Logger.getLogger(BulkTokenizer.class.getSimpleName());
+
+	// Enough lines to make scheduling a block negligible.
+	static final int BLOCK_LINES = 256;
+	// The number of blocks per worker that the reader may run ahead.
+	private static final int BLOCKS_PER_WORKER = 2;
+
+	private final ExecutorService executor;
+	private final Function<String, String> lineTokenizer;
+	private final int blockLines;
+	private final int maxPendingBlocks;
+	// The progress of the current run.
+	private final AtomicInteger filesDone = new AtomicInteger();
+	private final AtomicLong linesDone = new AtomicLong();
+
+	/**
+	 * @param executor
+	 *            the workers
+	 * @param parallelism
+	 *            the number of workers
+	 * @param lineTokenizer
+	 *            tokenizes a (trimmed) line, returns the output line (without
+	 *            line terminator). It is called by several workers at once.
+	 */
+	public BulkTokenizer(ExecutorService executor, int parallelism, Function<String, String> lineTokenizer) {
+		this(executor, parallelism, lineTokenizer, BLOCK_LINES);
+	}
+
+	/**
+	 * @param executor
+	 *            the workers
+	 * @param parallelism
+	 *            the number of workers
+	 * @param lineTokenizer
+	 *            tokenizes a (trimmed) line, returns the output line (without
+	 *            line terminator). It is called by several workers at once.
+	 * @param blockLines
+	 *            the number of lines that a worker tokenizes at once
+	 */
+	public BulkTokenizer(ExecutorService executor, int parallelism, Function<String, String> lineTokenizer,
+			int blockLines) {
+		if (blockLines < 1) {
+			throw new IllegalArgumentException("blockLines: " + blockLines);
+		}
+		this.executor = executor;
+		this.lineTokenizer = lineTokenizer;
+		this.blockLines = blockLines;
+		maxPendingBlocks = Math.max(1, parallelism) * BLOCKS_PER_WORKER;
+	}
+
+	/**
+	 * Opens the input or the output of a file.
+	 *
+	 * @param <F>
+	 *            the type of the files
+	 * @param <S>
+	 *            the type of the streams
+	 */
+	public interface Opener<F, S extends Closeable> {
+		S open(F file) throws IOException;
+	}
+
+	/**
+	 * Tokenizes each input (UTF-8) into the output at the same position. The
+	 * streams are closed.
+	 *
+	 * @param inputs
+	 *            the inputs
+	 * @param outputs
+	 *            the outputs (UTF-8), one line for each line of the input
+	 * @return how many lines were tokenized, and how fast
+	 * @throws IOException
+	 *             if an input cannot be read or an output cannot be written
+	 */
+	public Report tokenize(List<? extends InputStream> inputs, List<? extends OutputStream> outputs)
+			throws IOException {
+		if (inputs.size() != outputs.size()) {
+			throw new IllegalArgumentException(inputs.size() + " inputs, but " + outputs.size() + " outputs");
+		}
+		List<Integer> files = new ArrayList<>();
+		for (int i = 0; i < inputs.size(); i++) {
+			files.add(i);
+		}
+		try {
+			return tokenize(files, inputs::get, outputs::get);
+		} finally {
+			// After a failure, the streams of the files that the reader
+			// didn't get to are still open.
+			List<Closeable> streams = new ArrayList<Closeable>(inputs);
+			streams.addAll(outputs);
+			closeAll(streams);
+		}
+	}
+
+	/**
+	 * Tokenizes each file (UTF-8) into its output. A file and its output are
+	 * only opened when the reader gets to the file, so only the files whose
+	 * blocks are still pending are open at the same time, no matter how many
+	 * files there are. The streams are closed.
+	 *
+	 * @param files
+	 *            the files
+	 * @param inputs
+	 *            opens the input of a file
+	 * @param outputs
+	 *            opens the output of a file (UTF-8), which gets one line for
+	 *            each line of the input. It is opened after the input.
+	 * @return how many lines were tokenized, and how fast
+	 * @throws IOException
+	 *             if an input cannot be opened or read or an output cannot be
+	 *             opened or written
+	 */
+	public <F> Report tokenize(List<F> files, Opener<? super F, ? extends InputStream> inputs,
+			Opener<? super F, ? extends OutputStream> outputs) throws IOException {
+		long start = System.nanoTime();
+		filesDone.set(0);
+		linesDone.set(0);
+		Deque<Block> pending = new ArrayDeque<>();
+		// The outputs whose last block has not been written yet.
+		Set<Writer> open = new LinkedHashSet<>();
+		long lines = 0;
+		try {
+			for (F file : files) {
+				try (BufferedReader reader = new BufferedReader(
+						new InputStreamReader(inputs.open(file), StandardCharsets.UTF_8))) {
+					Writer writer = new BufferedWriter(
+							new OutputStreamWriter(outputs.open(file), StandardCharsets.UTF_8));
+					open.add(writer);
+					List<String> block = new ArrayList<>(blockLines);
+					String line;
+					while ((line = reader.readLine()) != null) {
+						block.add(line);
+						if (block.size() == blockLines) {
+							lines += block.size();
+							submit(block, writer, false, pending, open);
+							block = new ArrayList<>(blockLines);
+						}
+					}
+					// The last block closes the output, even if it is empty.
+					lines += block.size();
+					submit(block, writer, true, pending, open);
+				}
+			}
+			while (!pending.isEmpty()) {
+				write(pending.poll(), open);
+			}
+		} finally {
+			for (Block block : pending) {
+				block.lines.cancel(true);
+			}
+			// The outputs are closed already unless something went wrong.
+			closeAll(open);
+		}
+		Report report = new Report(files.size(), lines, (System.nanoTime() - start) / 1000000);
+		logger.info(report.toString());
+		return report;
+	}
+
+	private static void closeAll(Collection<? extends Closeable> streams) {
+		for (Closeable stream : streams) {
+			try {
+				stream.close();
+			} catch (IOException e) {
+				logger.warning("Could not close a stream: " + e.getMessage());
+			}
+		}
+	}
+
+	private void submit(List<String> lines, Writer writer, boolean last, Deque<Block> pending, Set<Writer> open)
+			throws IOException {
+		if (Thread.currentThread().isInterrupted()) {
+			throw new InterruptedIOException("Interrupted while tokenizing");
+		}
+		// Wait for the oldest block if the reader is too far ahead.
+		while (pending.size() >= maxPendingBlocks) {
+			write(pending.poll(), open);
+		}
+		pending.add(new Block(executor.submit(() -> tokenize(lines)), lines.size(), writer, last));
+	}
+
+	private String tokenize(List<String> lines) {
+		StringBuilder sb = new StringBuilder();
+		for (String line : lines) {
+			sb.append(lineTokenizer.apply(line.trim()));
+			sb.append(System.lineSeparator());
+		}
+		return sb.toString();
+	}
+
+	private void write(Block block, Set<Writer> open) throws IOException {
+		try {
+			block.writer.write(block.lines.get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			block.lines.cancel(true);
+			throw new InterruptedIOException("Interrupted while tokenizing");
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Could not tokenize a block", e.getCause());
+		}
+		linesDone.addAndGet(block.lineCount);
+		if (block.last) {
+			open.remove(block.writer);
+			block.writer.close();
+			filesDone.incrementAndGet();
+		}
+	}
+
+	/**
+	 * @return the number of inputs of the current (or last) run that have
+	 *         been tokenized completely
+	 */
+	public int getFilesDone() {
+		return filesDone.get();
+	}
+
+	/**
+	 * @return the number of lines of the current (or last) run that have been
+	 *         tokenized and written
+	 */
+	public long getLinesDone() {
+		return linesDone.get();
+	}
+
+	/**
+	 * The tokenized lines of a block, and where they go.
+	 */
+	private static final class Block {
+
+		private final Future<String> lines;
+		private final int lineCount;
+		private final Writer writer;
+		// Whether it is the last block of its output.
+		private final boolean last;
+
+		Block(Future<String> lines, int lineCount, Writer writer, boolean last) {
+			this.lines = lines;
+			this.lineCount = lineCount;
+			this.writer = writer;
+			this.last = last;
+		}
+
+	}
+
+	/**
+	 * The statistics of a run.
+	 */
+	public static final class Report {
+
+		private final int files;
+		private final long lines;
+		private final long millis;
+
+		Report(int files, long lines, long millis) {
+			this.files = files;
+			this.lines = lines;
+			this.millis = millis;
+		}
+
+		/**
+		 * @return the number of files
+		 */
+		public int getFiles() {
+			return files;
+		}
+
+		/**
+		 * @return the number of lines
+		 */
+		public long getLines() {
+			return lines;
+		}
+
+		/**
+		 * @return the time it took in milliseconds
+		 */
+		public long getMillis() {
+			return millis;
+		}
+
+		/**
+		 * @return the number of lines tokenized per second
+		 */
+		public double getLinesPerSecond() {
+			return lines * 1000.0 / Math.max(1, millis);
+		}
+
+		@Override
+		public String toString() {
+			return "tokenized " + lines + " lines of " + files + " files in " + millis + " ms ("
+					+ Math.round(getLinesPerSecond()) + " lines/s)";
+		}
+
+	}
+
+}
@@ -0,0 +1,178 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Tokenizes corpus files on the command line, like the "Tokenize Files" button
+ * of the web application but without a servlet container. The dictionary is
+ * loaded with the {@link DictionaryLoader}, the lines are tokenized on all
+ * cores with the {@link BulkTokenizer}.
+ *
+ * Each input file is written to &lt;name&gt;-tokenized.txt in the output
+ * directory. The files in an input directory are tokenized recursively, and
+ * their outputs keep the sub-directories. Inputs that would share an output
+ * file (e.g. a.txt and a.csv) are rejected before anything is written.
+ *
+ * Usage: CorpusTokenizer [--threads N] [--chunk-size LINES] [--snapshot FILE]
+ * [--output DIRECTORY] &lt;webapp directory&gt; &lt;file or directory&gt;...
+ */
+public final class CorpusTokenizer {
+
+	private static final String USAGE = "Usage: CorpusTokenizer [--threads N] [--chunk-size LINES] [--snapshot FILE] "
+			+ "[--output DIRECTORY] <webapp directory> <file or directory>...";
+
+	private CorpusTokenizer() {
+	}
+
+	/**
+	 * Tokenizes the files.
+	 *
+	 * @param analyzer
+	 *            the analyzer
+	 * @param inputs
+	 *            the input files and directories
+	 * @param outputDir
+	 *            the output directory
+	 * @param threads
+	 *            the number of worker threads
+	 * @param chunkSize
+	 *            the number of lines that a worker tokenizes at once
+	 * @return how many lines were tokenized, and how fast
+	 * @throws IOException
+	 *             if an input cannot be read or an output cannot be written,
+	 *             or if two inputs would be written to the same output file
+	 *             (then nothing is written)
+	 */
+	public static BulkTokenizer.Report tokenize(Analyzer analyzer, List<File> inputs, File outputDir, int threads,
+			int chunkSize) throws IOException {
+		List<File> files = new ArrayList<>();
+		List<File> outputFiles = new ArrayList<>();
+		for (File input : inputs) {
+			if (input.isDirectory()) {
+				Path root = input.toPath();
+				try (Stream<Path> paths = Files.walk(root)) {
+					for (Path path : paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+						files.add(path.toFile());
+						Path relative = root.relativize(path);
+						File dir = relative.getParent() == null ? outputDir
+								: new File(outputDir, relative.getParent().toString());
+						outputFiles.add(new File(dir, TokenizationJobs.outputFile(path.toFile().getName()).getName()));
+					}
+				}
+			} else if (input.isFile()) {
+				files.add(input);
+				outputFiles.add(new File(outputDir, TokenizationJobs.outputFile(input.getName()).getName()));
+			} else {
+				throw new IOException("No such file or directory: " + input);
+			}
+		}
+		Map<Path, File> filesByOutput = new HashMap<>();
+		for (int i = 0; i < files.size(); i++) {
+			File other = filesByOutput.put(outputFiles.get(i).toPath().toAbsolutePath().normalize(), files.get(i));
+			if (other != null) {
+				throw new IOException(
+						other + " and " + files.get(i) + " would both be tokenized into " + outputFiles.get(i));
+			}
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads,
+				new ThreadFactoryBuilder().setNameFormat("tokenization-worker-%d").setDaemon(true).build());
+		List<Integer> indexes = new ArrayList<>();
+		for (int i = 0; i < files.size(); i++) {
+			indexes.add(i);
+		}
+		try {
+			// The bulk tokenizer opens the files when it gets to them, so
+			// there can be more files than file descriptors.
+			return new BulkTokenizer(executor, threads, analyzer::tokenizeLine, chunkSize).tokenize(indexes,
+					i -> new FileInputStream(files.get(i)), i -> {
+						Files.createDirectories(outputFiles.get(i).getParentFile().toPath());
+						return new FileOutputStream(outputFiles.get(i));
+					});
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	public static void main(String[] args) {
+		int threads = Runtime.getRuntime().availableProcessors();
+		int chunkSize = BulkTokenizer.BLOCK_LINES;
+		Path snapshotFile = null;
+		File outputDir = new File(".");
+		int i = 0;
+		try {
+			for (; i < args.length && args[i].startsWith("--"); i += 2) {
+				if (i + 1 >= args.length) {
+					usage();
+				}
+				switch (args[i]) {
+				case "--threads":
+					threads = Integer.parseInt(args[i + 1]);
+					break;
+				case "--chunk-size":
+					chunkSize = Integer.parseInt(args[i + 1]);
+					break;
+				case "--snapshot":
+					snapshotFile = Paths.get(args[i + 1]);
+					break;
+				case "--output":
+					outputDir = new File(args[i + 1]);
+					break;
+				default:
+					usage();
+				}
+			}
+		} catch (NumberFormatException e) {
+			usage();
+		}
+		if (args.length - i < 2 || threads < 1 || chunkSize < 1) {
+			usage();
+		}
+		File webappDir = new File(args[i]);
+		List<File> inputs = new ArrayList<>();
+		for (int j = i + 1; j < args.length; j++) {
+			inputs.add(new File(args[j]));
+		}
+
+		try {
+			long start = System.currentTimeMillis();
+			DictionaryIndex dictionary = DictionaryLoader.load(webappDir, snapshotFile);
+			System.out.println("Loaded the dictionary in " + (System.currentTimeMillis() - start) + " ms: "
+					+ dictionary);
+			SharedTokenizer tokenizer = new SharedTokenizer();
+			System.out.println("Loaded the Kuromoji tokenizer in " + tokenizer.getLoadMillis() + " ms");
+
+			BulkTokenizer.Report report = tokenize(new Analyzer(tokenizer, dictionary), inputs, outputDir, threads,
+					chunkSize);
+			System.out.println("Tokenized " + report.getLines() + " lines of " + report.getFiles() + " files into "
+					+ outputDir + " in " + report.getMillis() + " ms with " + threads + " threads ("
+					+ Math.round(report.getLinesPerSecond()) + " lines/s)");
+			System.out.println(tokenizer);
+		} catch (IOException e) {
+			System.err.println("Could not tokenize the files: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	private static void usage() {
+		System.err.println(USAGE);
+		System.exit(2);
+	}
+
+}
@@ -0,0 +1,420 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.google.common.collect.ImmutableListMultimap;
+
+import de.ws1718.ismla.JapaneseHelper.shared.InflectableToken;
+import de.ws1718.ismla.JapaneseHelper.shared.InflectedToken;
+import de.ws1718.ismla.JapaneseHelper.shared.Inflection;
+import de.ws1718.ismla.JapaneseHelper.shared.Token;
+
+/**
+ * Finds the inflected forms of the lemmas that are inflected on demand (see
+ * {@link Inflector#inflectsOnDemand(InflectableToken)}), so that the
+ * {@link DictionaryIndex} doesn't need to store them.
+ *
+ * To look up a form, the deinflector strips each suffix of the inflection
+ * templates that the form ends in and restores the final characters of the
+ * lemma (e.g. 食べた -&gt; 食べ + る). The candidates are looked up in an index
+ * of the lemmas, and only their inflected forms for the suffixes that the form
+ * ends in are generated. Looking up a form therefore returns the same tokens as
+ * if all inflected forms had been generated while the dictionary was
+ * preprocessed, and they are ranked in the same order.
+ *
+ * The lemmas in the index are never modified, so their inflection tables are
+ * empty. The UI asks for a table when it shows one (see
+ * {@link #inflectedForms(InflectableToken)}).
+ */
+final class Deinflector {
+
+	private final Inflector inflector;
+	// The lemmas, ordered by form and, for each form, by the order in which
+	// they were added. Their forms map to ids via the trie.
+	private final DoubleArrayTrie lemmaTrie;
+	private final int[] lemmaStarts;
+	private final InflectableToken[] lemmas;
+	// The positions of the lemmas in the dictionary, which decide the order of
+	// inflected forms with the same form but different lemmas.
+	private final int[] lemmaSeqs;
+	// The positions of the lemmas whose inflected forms are stored.
+	private final Map<InflectableToken, Integer> storedLemmaSeqs;
+	// The paradigms that have a suffix and the final characters that their
+	// lemmas replace with it.
+	private final Map<String, String[]> paradigmsBySuffix;
+	private final Map<String, String[]> tails;
+	// The (cleaned) suffixes of each paradigm, in the order of the template.
+	private final Map<String, List<Entry<Inflection, String>>> suffixes;
+	private final int maxSuffixLength;
+
+	private Deinflector(Builder builder) {
+		inflector = builder.inflector;
+		storedLemmaSeqs = builder.storedLemmaSeqs;
+
+		// Sort the lemmas by form (stably, so lemmas with the same form keep
+		// their order).
+		List<InflectableToken> added = builder.lemmas;
+		Integer[] order = new Integer[added.size()];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (lemma1, lemma2) -> added.get(lemma1).getForm().compareTo(added.get(lemma2).getForm()));
+		List<String> forms = new ArrayList<>();
+		List<Integer> starts = new ArrayList<>();
+		lemmas = new InflectableToken[order.length];
+		lemmaSeqs = new int[order.length];
+		for (int i = 0; i < order.length; i++) {
+			lemmas[i] = added.get(order[i]);
+			lemmaSeqs[i] = builder.lemmaSeqs.get(order[i]);
+			if (forms.isEmpty() || !forms.get(forms.size() - 1).equals(lemmas[i].getForm())) {
+				forms.add(lemmas[i].getForm());
+				starts.add(i);
+			}
+		}
+		starts.add(order.length);
+		lemmaStarts = new int[starts.size()];
+		for (int i = 0; i < lemmaStarts.length; i++) {
+			lemmaStarts[i] = starts.get(i);
+		}
+		lemmaTrie = DoubleArrayTrie.build(forms.toArray(new String[0]));
+
+		tails = new HashMap<>();
+		suffixes = new HashMap<>();
+		Map<String, Set<String>> paradigms = new HashMap<>();
+		for (Map.Entry<String, Set<String>> entry : builder.tails.entrySet()) {
+			String paradigm = entry.getKey();
+			tails.put(paradigm, entry.getValue().toArray(new String[0]));
+			suffixes.put(paradigm, inflector.suffixes(paradigm));
+			for (Map.Entry<Inflection, String> suffix : suffixes.get(paradigm)) {
+				paradigms.computeIfAbsent(suffix.getValue(), s -> new LinkedHashSet<>()).add(paradigm);
+			}
+		}
+		paradigmsBySuffix = new HashMap<>();
+		int maxLength = 0;
+		for (Map.Entry<String, Set<String>> entry : paradigms.entrySet()) {
+			paradigmsBySuffix.put(entry.getKey(), entry.getValue().toArray(new String[0]));
+			maxLength = Math.max(maxLength, entry.getKey().length());
+		}
+		maxSuffixLength = maxLength;
+	}
+
+	/**
+	 * Adds the inflected forms of the lemmas that match the form to the stored
+	 * entries.
+	 *
+	 * @param form
+	 *            the form
+	 * @param stored
+	 *            the entries that the dictionary stores for the form
+	 * @return the (unmodifiable) list of all entries with the form
+	 */
+	List<Token> entries(String form, List<Token> stored) {
+		List<Integer> candidates = new ArrayList<>(candidates(form));
+		for (Token tok : stored) {
+			int lemma = indexOf(tok);
+			if (lemma >= 0 && !candidates.contains(lemma)) {
+				candidates.add(lemma);
+			}
+		}
+		if (candidates.isEmpty()) {
+			return stored;
+		}
+		candidates.sort((lemma1, lemma2) -> Integer.compare(lemmaSeqs[lemma1], lemmaSeqs[lemma2]));
+
+		List<InflectedToken> generated = new ArrayList<>();
+		List<Integer> generatedSeqs = new ArrayList<>();
+		for (int lemma : candidates) {
+			InflectableToken lemmaToken = lemmas[lemma];
+			String lemmaForm = lemmaToken.getForm();
+			String paradigm = Inflector.paradigmName(lemmaToken);
+			int removed = inflector.removedCharacters(paradigm);
+			int stemLength = lemmaForm.length() - removed;
+			if (!form.regionMatches(0, lemmaForm, 0, stemLength)) {
+				continue;
+			}
+			for (Entry<Inflection, String> suffix : suffixes.get(paradigm)) {
+				if (form.length() == stemLength + suffix.getValue().length() && form.endsWith(suffix.getValue())) {
+					generated.add(inflector.inflectOnDemand(lemmaToken, removed, suffix.getKey(), suffix.getValue()));
+					generatedSeqs.add(lemmaSeqs[lemma]);
+				}
+			}
+		}
+		return Collections.unmodifiableList(
+				merge(stored, generated, generatedSeqs, Collections.<InflectableToken, InflectableToken> emptyMap()));
+	}
+
+	/**
+	 * A cheap test before {@link #entries(String, List)}: a form can only be
+	 * an inflected form that the deinflector finds if it ends in one of the
+	 * suffixes of the templates, and if the stem before the suffix is the
+	 * beginning of a lemma.
+	 *
+	 * @param chars
+	 *            the characters that the form starts with, so that the
+	 *            prefixes of a sequence of surfaces don't need to be joined
+	 *            into strings first
+	 * @param length
+	 *            the length of the form
+	 * @return false if the deinflector doesn't find any entries for the form
+	 */
+	boolean mayBeInflected(CharSequence chars, int length) {
+		// The length of the longest beginning of the form that is the
+		// beginning of a lemma.
+		int prefix = 0;
+		int state = DoubleArrayTrie.ROOT;
+		for (; prefix < length; prefix++) {
+			state = lemmaTrie.next(state, chars.charAt(prefix));
+			if (state == DoubleArrayTrie.NONE) {
+				break;
+			}
+		}
+		for (int suffix = length - prefix; suffix <= Math.min(maxSuffixLength, length); suffix++) {
+			if (paradigmsBySuffix.containsKey(chars.subSequence(length - suffix, length).toString())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Generates the inflection table of a lemma for the UI.
+	 *
+	 * @param lemma
+	 *            a stored lemma
+	 * @return the inflected forms of the lemma, or null if they are not
+	 *         generated on demand
+	 */
+	List<InflectedToken> inflectedForms(InflectableToken lemma) {
+		if (indexOf(lemma) < 0) {
+			return null;
+		}
+		return inflector.inflectCopy(lemma).getInflectedForms();
+	}
+
+	/**
+	 * Generates the inflected forms of all lemmas, e.g. to write them to a
+	 * {@link DictionarySnapshot}.
+	 *
+	 * @param index
+	 *            the index of the stored entries
+	 * @return the map from forms to all entries with the form, sorted by form
+	 */
+	ImmutableListMultimap<String, Token> asMultimap(DictionaryIndex index) {
+		Integer[] bySeq = new Integer[lemmas.length];
+		for (int i = 0; i < bySeq.length; i++) {
+			bySeq[i] = i;
+		}
+		Arrays.sort(bySeq, (lemma1, lemma2) -> Integer.compare(lemmaSeqs[lemma1], lemmaSeqs[lemma2]));
+
+		Map<InflectableToken, InflectableToken> copies = new IdentityHashMap<>();
+		Map<String, List<InflectedToken>> generated = new HashMap<>();
+		Map<String, List<Integer>> generatedSeqs = new HashMap<>();
+		for (int lemma : bySeq) {
+			InflectableToken copy = inflector.inflectCopy(lemmas[lemma]);
+			copies.put(lemmas[lemma], copy);
+			for (InflectedToken inflTok : copy.getInflectedForms()) {
+				generated.computeIfAbsent(inflTok.getForm(), f -> new ArrayList<>()).add(inflTok);
+				generatedSeqs.computeIfAbsent(inflTok.getForm(), f -> new ArrayList<>()).add(lemmaSeqs[lemma]);
+			}
+		}
+
+		Set<String> forms = new TreeSet<>(generated.keySet());
+		forms.addAll(index.storedForms());
+		ImmutableListMultimap.Builder<String, Token> builder = ImmutableListMultimap.builder();
+		for (String form : forms) {
+			List<InflectedToken> inflected = generated.get(form);
+			if (inflected == null) {
+				inflected = Collections.emptyList();
+			}
+			List<Integer> seqs = generatedSeqs.get(form);
+			builder.putAll(form, merge(index.storedEntries(form), inflected,
+					seqs == null ? Collections.<Integer> emptyList() : seqs, copies));
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Merges the stored entries and the generated inflected forms. The
+	 * inflected forms are kept in the order in which they would have been added
+	 * to the dictionary, and so are the other entries. The inflected forms come
+	 * first, which doesn't change the ranking of the candidates: an inflected
+	 * form never has the same rank as an uninflected entry (see
+	 * {@link Analyzer#sortTokens(String, String, String, List)}).
+	 */
+	private List<Token> merge(List<Token> stored, List<InflectedToken> generated, List<Integer> generatedSeqs,
+			Map<InflectableToken, InflectableToken> copies) {
+		List<Token> merged = new ArrayList<>(stored.size() + generated.size());
+		List<Token> others = new ArrayList<>();
+		int next = 0;
+		for (Token tok : stored) {
+			if (tok instanceof InflectedToken) {
+				Integer seq = storedLemmaSeqs.get(((InflectedToken) tok).getLemmaToken());
+				while (seq != null && next < generated.size() && generatedSeqs.get(next) < seq) {
+					merged.add(generated.get(next++));
+				}
+				merged.add(tok);
+			} else {
+				InflectableToken copy = copies.get(tok);
+				others.add(copy != null ? copy : tok);
+			}
+		}
+		merged.addAll(generated.subList(next, generated.size()));
+		merged.addAll(others);
+		return merged;
+	}
+
+	/**
+	 * @param form
+	 *            the form
+	 * @return the indexes of the lemmas that have an inflected form that
+	 *         might be the given form
+	 */
+	private Set<Integer> candidates(String form) {
+		Set<Integer> candidates = new LinkedHashSet<>();
+		int maxLength = Math.min(maxSuffixLength, form.length());
+		// The states of the lemma trie after the stems, indexed by the length
+		// of the suffix, so that each candidate only needs to walk its tail.
+		int[] stemStates = new int[maxLength + 1];
+		int state = DoubleArrayTrie.ROOT;
+		for (int i = 0; i < form.length() - maxLength && state != DoubleArrayTrie.NONE; i++) {
+			state = lemmaTrie.next(state, form.charAt(i));
+		}
+		for (int length = maxLength; length >= 0; length--) {
+			stemStates[length] = state;
+			if (length > 0 && state != DoubleArrayTrie.NONE) {
+				state = lemmaTrie.next(state, form.charAt(form.length() - length));
+			}
+		}
+		for (int length = 0; length <= maxLength; length++) {
+			if (stemStates[length] == DoubleArrayTrie.NONE) {
+				continue;
+			}
+			String[] paradigms = paradigmsBySuffix.get(form.substring(form.length() - length));
+			if (paradigms == null) {
+				continue;
+			}
+			for (String paradigm : paradigms) {
+				for (String tail : tails.get(paradigm)) {
+					int id = lemmaId(stemStates[length], tail);
+					if (id < 0) {
+						continue;
+					}
+					for (int lemma = lemmaStarts[id]; lemma < lemmaStarts[id + 1]; lemma++) {
+						if (paradigm.equals(Inflector.paradigmName(lemmas[lemma]))) {
+							candidates.add(lemma);
+						}
+					}
+				}
+			}
+		}
+		return candidates;
+	}
+
+	/**
+	 * @param stemState
+	 *            the state of the lemma trie after a stem
+	 * @param tail
+	 *            the final characters of a lemma
+	 * @return the id of the lemma form or -1 if it is not in the trie
+	 */
+	private int lemmaId(int stemState, String tail) {
+		int state = stemState;
+		for (int i = 0; i < tail.length() && state != DoubleArrayTrie.NONE; i++) {
+			state = lemmaTrie.next(state, tail.charAt(i));
+		}
+		return state == DoubleArrayTrie.NONE ? -1 : lemmaTrie.value(state);
+	}
+
+	/**
+	 * @param tok
+	 *            a stored entry
+	 * @return the index of the lemma or -1 if the token is not inflected on
+	 *         demand
+	 */
+	private int indexOf(Token tok) {
+		if (!(tok instanceof InflectableToken)) {
+			return -1;
+		}
+		int id = lemmaTrie.get(tok.getForm());
+		if (id >= 0) {
+			for (int lemma = lemmaStarts[id]; lemma < lemmaStarts[id + 1]; lemma++) {
+				if (lemmas[lemma] == tok) {
+					return lemma;
+				}
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public String toString() {
+		return lemmas.length + " lemmas inflected on demand (" + paradigmsBySuffix.size() + " suffixes of "
+				+ tails.size() + " paradigms)";
+	}
+
+	/**
+	 * Collects the lemmas while the tokens are added to the dictionary.
+	 */
+	static final class Builder {
+
+		private final Inflector inflector;
+		private final List<InflectableToken> lemmas = new ArrayList<>();
+		private final List<Integer> lemmaSeqs = new ArrayList<>();
+		private final Map<String, Set<String>> tails = new HashMap<>();
+		private final Map<InflectableToken, Integer> storedLemmaSeqs = new IdentityHashMap<>();
+		private int nextSeq;
+
+		Builder(Inflector inflector) {
+			this.inflector = inflector;
+		}
+
+		/**
+		 * Registers a (finished) token in the order in which the tokens are
+		 * added to the dictionary.
+		 *
+		 * @param tok
+		 *            the token
+		 */
+		void add(Token tok) {
+			if (tok instanceof InflectedToken) {
+				// The inflected forms were generated while preprocessing, and
+				// they come before their lemma.
+				InflectableToken lemma = ((InflectedToken) tok).getLemmaToken();
+				if (!storedLemmaSeqs.containsKey(lemma)) {
+					storedLemmaSeqs.put(lemma, nextSeq++);
+				}
+				return;
+			}
+			if (!(tok instanceof InflectableToken) || storedLemmaSeqs.containsKey(tok)) {
+				return;
+			}
+			InflectableToken lemma = (InflectableToken) tok;
+			String paradigm = Inflector.paradigmName(lemma);
+			int removed = inflector.removedCharacters(paradigm);
+			if (removed < 0) {
+				// There is no template or the paradigm is irregular.
+				return;
+			}
+			String form = lemma.getForm();
+			lemmas.add(lemma);
+			lemmaSeqs.add(nextSeq++);
+			tails.computeIfAbsent(paradigm, p -> new LinkedHashSet<>()).add(form.substring(form.length() - removed));
+		}
+
+		Deinflector build() {
+			return new Deinflector(this);
+		}
+
+	}
+
+}
@@ -0,0 +1,70 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Compiles the dictionary at build time: runs the
+ * {@link WiktionaryPreprocessor} on the sources in the web application
+ * directory and writes the result as a {@link DictionarySnapshot}, together
+ * with the fingerprint of the sources. The build packages the snapshot into the
+ * WAR as {@link Listener#COMPILED_DICTIONARY_PATH}, so the {@link Listener}
+ * only needs to map it instead of parsing the Wiktionary dump.
+ *
+ * Usage: DictionaryCompiler &lt;webapp directory&gt; &lt;output file&gt;
+ */
+public final class DictionaryCompiler {
+
+	private DictionaryCompiler() {
+	}
+
+	/**
+	 * Compiles the dictionary unless the output file is already up to date.
+	 *
+	 * @param webappDir
+	 *            the web application directory (e.g. src/main/webapp)
+	 * @param output
+	 *            the snapshot file
+	 * @return true if the file was (re)written
+	 * @throws IOException
+	 *             if the sources cannot be read or the file cannot be written
+	 */
+	public static boolean compile(File webappDir, Path output) throws IOException {
+		DictionarySources sources = DictionarySources.fromDirectory(webappDir);
+		if (DictionarySnapshot.isUpToDate(output, sources)) {
+			return false;
+		}
+		DictionaryIndex dictionary = sources.preprocess().getDictionary();
+		if (output.getParent() != null) {
+			Files.createDirectories(output.getParent());
+		}
+		DictionarySnapshot.write(dictionary, sources.fingerprint(), output);
+		return true;
+	}
+
+	public static void main(String[] args) {
+		if (args.length != 2) {
+			System.err.println("Usage: DictionaryCompiler <webapp directory> <output file>");
+			System.exit(2);
+		}
+		File webappDir = new File(args[0]);
+		Path output = Paths.get(args[1]);
+		long start = System.currentTimeMillis();
+		try {
+			if (compile(webappDir, output)) {
+				System.out.println("Compiled the dictionary into " + output + " ("
+						+ Files.size(output) / (1024 * 1024) + " MB) in " + (System.currentTimeMillis() - start)
+						+ " ms");
+			} else {
+				System.out.println(output + " is up to date");
+			}
+		} catch (IOException e) {
+			System.err.println("Could not compile the dictionary: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+}
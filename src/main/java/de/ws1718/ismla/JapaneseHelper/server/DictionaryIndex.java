@@ -0,0 +1,380 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.ListMultimap;
+
+import de.ws1718.ismla.JapaneseHelper.shared.InflectableToken;
+import de.ws1718.ismla.JapaneseHelper.shared.InflectedToken;
+import de.ws1718.ismla.JapaneseHelper.shared.Token;
+
+/**
+ * A read-only view of the preprocessed dictionary: maps token forms to the
+ * dictionary entries with that form.
+ *
+ * The index is frozen when it is created and cannot be modified afterwards, so
+ * any number of threads can read from it without locking. The candidate lists
+ * it returns cannot be modified either; callers that want to re-order them
+ * need to copy them first.
+ *
+ * Besides looking up single forms, the index can find the longest dictionary
+ * form that a sequence of Kuromoji surfaces starts with (see
+ * {@link #longestMatch(List, int)}).
+ *
+ * The dictionary has hundreds of thousands of forms, so the index is stored
+ * compactly: a {@link DoubleArrayTrie} maps the forms to their ids (their
+ * positions in the sorted array of forms), and an {@link EntryStore} holds the
+ * entries of each form. The entries either live on the heap
+ * ({@link #copyOf(ListMultimap)}) or in a memory-mapped
+ * {@link DictionarySnapshot}.
+ *
+ * The index that the {@link WiktionaryPreprocessor} creates doesn't store the
+ * inflected forms of most lemmas at all: a {@link Deinflector} finds them when
+ * they are looked up. Such an index looks the same to its callers, except that
+ * the inflected forms of a form come before its other entries.
+ *
+ * Forms that stack several inflections (e.g. causative + passive + negative)
+ * are not in the dictionary. If the index has an {@link InflectionAutomaton}
+ * (see {@link #withInflectionAutomaton(InflectionAutomaton)}),
+ * {@link #longestMatch(List, int)} resolves them.
+ */
+public final class DictionaryIndex {
+
+	private final DoubleArrayTrie trie;
+	private final EntryStore store;
+	// Null if all inflected forms are stored.
+	private final Deinflector deinflector;
+	// Null if stacked inflections are not resolved.
+	private final InflectionAutomaton automaton;
+
+	DictionaryIndex(DoubleArrayTrie trie, EntryStore store) {
+		this(trie, store, null, null);
+	}
+
+	private DictionaryIndex(DoubleArrayTrie trie, EntryStore store, Deinflector deinflector,
+			InflectionAutomaton automaton) {
+		this.trie = trie;
+		this.store = store;
+		this.deinflector = deinflector;
+		this.automaton = automaton;
+	}
+
+	/**
+	 * Creates a frozen copy of the given map from token forms to tokens.
+	 *
+	 * @param tokens
+	 *            the map, e.g. the one created by the
+	 *            {@link WiktionaryPreprocessor}
+	 * @return the index
+	 */
+	public static DictionaryIndex copyOf(ListMultimap<String, Token> tokens) {
+		return copyOf(tokens, null);
+	}
+
+	/**
+	 * Creates a frozen copy of the given map, which doesn't contain the
+	 * inflected forms that the deinflector finds.
+	 *
+	 * @param tokens
+	 *            the map from token forms to tokens
+	 * @param deinflector
+	 *            the deinflector (or null if the map contains all tokens)
+	 * @return the index
+	 */
+	static DictionaryIndex copyOf(ListMultimap<String, Token> tokens, Deinflector deinflector) {
+		String[] forms = tokens.keySet().toArray(new String[0]);
+		Arrays.sort(forms);
+		int[] entryStarts = new int[forms.length + 1];
+		Token[] entries = new Token[tokens.size()];
+		int next = 0;
+		for (int i = 0; i < forms.length; i++) {
+			entryStarts[i] = next;
+			for (Token tok : tokens.get(forms[i])) {
+				entries[next++] = tok;
+			}
+		}
+		entryStarts[forms.length] = next;
+		return new DictionaryIndex(DoubleArrayTrie.build(forms), new HeapEntryStore(forms, entryStarts, entries),
+				deinflector, null);
+	}
+
+	/**
+	 * @param automaton
+	 *            the automaton that resolves stacked inflections
+	 * @return an index with the same entries that resolves stacked inflections
+	 *         in {@link #longestMatch(List, int)}
+	 */
+	DictionaryIndex withInflectionAutomaton(InflectionAutomaton automaton) {
+		return new DictionaryIndex(trie, store, deinflector, automaton);
+	}
+
+	/**
+	 * @param form
+	 *            the form of a token
+	 * @return the (unmodifiable) list of entries with this form, in the order
+	 *         in which they were added. Empty if there are none.
+	 */
+	public List<Token> get(String form) {
+		List<Token> stored = storedEntries(form);
+		return deinflector == null ? stored : deinflector.entries(form, stored);
+	}
+
+	/**
+	 * @param form
+	 *            the form of a token
+	 * @return true if there is at least one entry with this form
+	 */
+	public boolean contains(String form) {
+		return deinflector == null ? trie.get(form) >= 0 : !get(form).isEmpty();
+	}
+
+	/**
+	 * Finds the inflection table of a lemma for the UI. The lemmas that the
+	 * deinflector inflects don't store their inflected forms, so they are
+	 * generated for each call.
+	 *
+	 * @param lemma
+	 *            a lemma of the index or an equal copy of it (e.g. one that
+	 *            the client sent)
+	 * @return the inflected forms of the lemma, or an empty list if the index
+	 *         doesn't contain it
+	 */
+	public List<InflectedToken> inflectedForms(InflectableToken lemma) {
+		for (Token tok : storedEntries(lemma.getForm())) {
+			if (tok instanceof InflectableToken && tok.equals(lemma)) {
+				List<InflectedToken> generated = deinflector == null ? null
+						: deinflector.inflectedForms((InflectableToken) tok);
+				return generated == null ? ((InflectableToken) tok).getInflectedForms() : generated;
+			}
+		}
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Finds the longest dictionary form that consists of the first n surfaces
+	 * (for n >= minParts), e.g. an inflected verb that Kuromoji split up into
+	 * the stem and the auxiliaries. The surfaces are matched character by
+	 * character, so they don't need to be joined first.
+	 * 
+	 * If the index has an {@link InflectionAutomaton}, longer forms that stack
+	 * several inflections are resolved by the automaton.
+	 *
+	 * @param surfaces
+	 *            the surfaces of consecutive Kuromoji tokens
+	 * @param minParts
+	 *            the minimum number of surfaces that the form needs to span
+	 * @return the match or null if none of the forms match
+	 */
+	public Match longestMatch(List<String> surfaces, int minParts) {
+		Match match = storedMatch(surfaces, minParts);
+		if (deinflector == null && automaton == null) {
+			return match;
+		}
+		// The trie walk resolved the forms up to the stored match. The longer
+		// forms are passed to the deinflector and the automaton, but they are
+		// only joined into strings if they get that far.
+		int shortest = Math.max(Math.max(minParts, 1), match == null ? 1 : match.getParts() + 1);
+		StringBuilder joined = null;
+		int[] ends = null;
+		if (shortest <= surfaces.size()) {
+			joined = new StringBuilder();
+			ends = new int[surfaces.size() + 1];
+			for (int part = 0; part < surfaces.size(); part++) {
+				ends[part + 1] = joined.append(surfaces.get(part)).length();
+			}
+		}
+		if (deinflector != null) {
+			match = deinflectedMatch(match, surfaces.size(), shortest, joined, ends);
+		}
+		if (automaton != null) {
+			shortest = Math.max(shortest, match == null ? 1 : match.getParts() + 1);
+			for (int parts = surfaces.size(); parts >= shortest; parts--) {
+				String form = joined.substring(0, ends[parts]);
+				List<Token> entries = automaton.resolve(form, this);
+				if (!entries.isEmpty()) {
+					return new Match(parts, form, entries);
+				}
+			}
+		}
+		return match;
+	}
+
+	/**
+	 * @param stored
+	 *            the longest stored match, or null
+	 * @param longest
+	 *            the number of surfaces
+	 * @param shortest
+	 *            the minimum number of surfaces of a longer match
+	 * @param joined
+	 *            the joined surfaces, or null if there can't be a longer
+	 *            match
+	 * @param ends
+	 *            the end of the first n surfaces in the joined surfaces
+	 * @return the longest match of the deinflector, or else the stored match
+	 *         together with its inflected forms
+	 */
+	private Match deinflectedMatch(Match stored, int longest, int shortest, StringBuilder joined, int[] ends) {
+		// The inflected forms that the deinflector finds are not in the trie,
+		// so the joined surfaces that are longer than the stored match are
+		// passed to the deinflector, but only if they can be inflected forms
+		// of a lemma.
+		for (int parts = longest; parts >= shortest; parts--) {
+			if (deinflector.mayBeInflected(joined, ends[parts])) {
+				String form = joined.substring(0, ends[parts]);
+				List<Token> entries = deinflector.entries(form, Collections.<Token> emptyList());
+				if (!entries.isEmpty()) {
+					return new Match(parts, form, entries);
+				}
+			}
+		}
+		// The stored form can have inflected forms, too.
+		return stored == null ? null
+				: new Match(stored.getParts(), stored.getForm(),
+						deinflector.entries(stored.getForm(), stored.getEntries()));
+	}
+
+	private Match storedMatch(List<String> surfaces, int minParts) {
+		int state = DoubleArrayTrie.ROOT;
+		int matchId = -1;
+		int matchParts = 0;
+		walk: for (int part = 0; part < surfaces.size(); part++) {
+			String surface = surfaces.get(part);
+			for (int i = 0; i < surface.length(); i++) {
+				state = trie.next(state, surface.charAt(i));
+				if (state == DoubleArrayTrie.NONE) {
+					break walk;
+				}
+			}
+			int id = trie.value(state);
+			if (id >= 0 && part + 1 >= minParts) {
+				matchId = id;
+				matchParts = part + 1;
+			}
+		}
+		return matchId < 0 ? null : new Match(matchParts, store.form(matchId), store.entries(matchId));
+	}
+
+	/**
+	 * @return the (sorted) set of all forms in the index
+	 */
+	public Set<String> forms() {
+		if (deinflector != null) {
+			return ImmutableSortedSet.copyOf(asMultimap().keySet());
+		}
+		return storedForms();
+	}
+
+	/**
+	 * @return the (sorted) set of the forms that the index stores, i.e. all
+	 *         forms except for the ones that the deinflector finds
+	 */
+	Set<String> storedForms() {
+		ImmutableSortedSet.Builder<String> forms = ImmutableSortedSet.naturalOrder();
+		for (int i = 0; i < store.formCount(); i++) {
+			forms.add(store.form(i));
+		}
+		return forms.build();
+	}
+
+	/**
+	 * @return the number of entries (not forms) that the index stores. The
+	 *         inflected forms that the deinflector finds are not included.
+	 */
+	public int size() {
+		return store.size();
+	}
+
+	/**
+	 * @return an unmodifiable copy of the index as a map. This is expensive:
+	 *         the map needs a lot more memory than the index itself.
+	 */
+	public ImmutableListMultimap<String, Token> asMultimap() {
+		if (deinflector != null) {
+			return deinflector.asMultimap(this);
+		}
+		ImmutableListMultimap.Builder<String, Token> builder = ImmutableListMultimap.builder();
+		for (int i = 0; i < store.formCount(); i++) {
+			builder.putAll(store.form(i), store.entries(i));
+		}
+		return builder.build();
+	}
+
+	/**
+	 * @param form
+	 *            the form of a token
+	 * @return the (unmodifiable) list of entries that the index stores for this
+	 *         form
+	 */
+	List<Token> storedEntries(String form) {
+		int id = trie.get(form);
+		return id < 0 ? Collections.<Token> emptyList() : store.entries(id);
+	}
+
+	/**
+	 * @return this index if it stores all inflected forms, or else a copy that
+	 *         does. This is expensive for the index of the
+	 *         {@link WiktionaryPreprocessor}.
+	 */
+	DictionaryIndex materialized() {
+		return deinflector == null ? this : copyOf(asMultimap());
+	}
+
+	@Override
+	public String toString() {
+		return "dictionary: " + store.formCount() + " forms, " + size() + " entries (" + store + ")"
+				+ (deinflector == null ? "" : ", " + deinflector) + (automaton == null ? "" : ", " + automaton);
+	}
+
+	DoubleArrayTrie trie() {
+		return trie;
+	}
+
+	EntryStore store() {
+		return store;
+	}
+
+	/**
+	 * A dictionary form that spans one or several consecutive surfaces.
+	 */
+	public static final class Match {
+
+		private final int parts;
+		private final String form;
+		private final List<Token> entries;
+
+		Match(int parts, String form, List<Token> entries) {
+			this.parts = parts;
+			this.form = form;
+			this.entries = entries;
+		}
+
+		/**
+		 * @return the number of surfaces that the form spans
+		 */
+		public int getParts() {
+			return parts;
+		}
+
+		/**
+		 * @return the form (the concatenated surfaces)
+		 */
+		public String getForm() {
+			return form;
+		}
+
+		/**
+		 * @return the (unmodifiable, non-empty) list of entries with this form
+		 */
+		public List<Token> getEntries() {
+			return entries;
+		}
+
+	}
+
+}
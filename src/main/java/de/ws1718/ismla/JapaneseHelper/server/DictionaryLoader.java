@@ -0,0 +1,81 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.logging.Logger;
+
+/**
+ * Loads the dictionary from a web application directory on disk, without a
+ * servlet container (e.g. for the {@link CorpusTokenizer}). It is the
+ * counterpart of {@link Listener#contextInitialized}, which loads it from the
+ * resources of the running web application.
+ */
+public final class DictionaryLoader {
+
+	private static final Logger logger = Logger.getLogger(DictionaryLoader.class.getSimpleName());
+
+	private DictionaryLoader() {
+	}
+
+	/**
+	 * Loads the dictionary, trying these sources in order:
+	 * <ol>
+	 * <li>the snapshot file (if one is given). It is (re)compiled first if it
+	 * is out of date (see {@link DictionaryCompiler}).
+	 * <li>the snapshot that the build compiled into the web application
+	 * directory (see {@link Listener#COMPILED_DICTIONARY_PATH}), if it is up to
+	 * date
+	 * <li>the Wiktionary dump itself, which is parsed and inflected
+	 * </ol>
+	 *
+	 * @param webappDir
+	 *            the web application directory (e.g. src/main/webapp)
+	 * @param snapshotFile
+	 *            the snapshot file, or null
+	 * @return the dictionary, which resolves stacked inflections if the
+	 *         inflection table templates can be read
+	 * @throws IOException
+	 *             if the sources cannot be read or the snapshot cannot be
+	 *             written
+	 */
+	public static DictionaryIndex load(File webappDir, Path snapshotFile) throws IOException {
+		DictionarySources sources = DictionarySources.fromDirectory(webappDir);
+		DictionaryIndex dictionary;
+		Path compiled = new File(webappDir, Listener.COMPILED_DICTIONARY_PATH).toPath();
+		if (snapshotFile != null) {
+			if (DictionaryCompiler.compile(webappDir, snapshotFile)) {
+				logger.info("wrote the dictionary snapshot " + snapshotFile);
+			}
+			dictionary = DictionarySnapshot.map(snapshotFile);
+		} else if (DictionarySnapshot.isUpToDate(compiled, sources)) {
+			dictionary = DictionarySnapshot.map(compiled);
+		} else {
+			logger.info("parsing the Wiktionary dump: " + sources);
+			dictionary = sources.preprocess().getDictionary();
+		}
+		return withInflectionAutomaton(dictionary, sources);
+	}
+
+	/**
+	 * Lets the dictionary resolve forms that stack several inflections.
+	 *
+	 * @param dictionary
+	 *            the dictionary
+	 * @param sources
+	 *            the sources of the dictionary
+	 * @return the dictionary with an {@link InflectionAutomaton}, or the
+	 *         dictionary itself if the inflection table templates cannot be
+	 *         read
+	 */
+	static DictionaryIndex withInflectionAutomaton(DictionaryIndex dictionary, DictionarySources sources) {
+		try {
+			return dictionary.withInflectionAutomaton(new InflectionAutomaton(sources.inflector()));
+		} catch (IOException e) {
+			logger.warning("Could not read the inflection table templates (" + e.getMessage()
+					+ "), stacked inflections are not resolved");
+			return dictionary;
+		}
+	}
+
+}
@@ -0,0 +1,556 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import de.ws1718.ismla.JapaneseHelper.shared.InflectableToken;
+import de.ws1718.ismla.JapaneseHelper.shared.InflectedToken;
+import de.ws1718.ismla.JapaneseHelper.shared.Token;
+
+/**
+ * Writes a {@link DictionaryIndex} to a binary file and maps such files back
+ * into memory.
+ *
+ * A mapped snapshot keeps the forms, the tokens and the trie outside of the
+ * heap. The file is mapped read-only, so several JVMs on the same host that
+ * map the same file share its pages through the page cache. The tokens are
+ * only turned into {@link Token} objects when they are looked up (see
+ * {@link SnapshotEntryStore}).
+ *
+ * The file consists of a header followed by the sections, all in
+ * little-endian byte order. The header holds a magic number, the format
+ * version, a CRC-32 checksum of everything after the header, the
+ * {@link DictionarySources#fingerprint() fingerprint} of the sources that the
+ * dictionary was compiled from and the offset and length of each section. The
+ * sections are:
+ * <ul>
+ * <li>the strings (offsets into a block of UTF-8 bytes)
+ * <li>the int lists (translations and inflected forms of lemmas)
+ * <li>the tokens (fixed-size records of string, list and token ids)
+ * <li>the three arrays of the {@link DoubleArrayTrie}
+ * <li>the forms and the ids of their entries
+ * </ul>
+ */
+public final class DictionarySnapshot {
+
+	/** Increase this whenever the format changes. */
+	public static final int VERSION = 2;
+
+	// "JHDS"
+	private static final int MAGIC = 0x4A484453;
+
+	static final int STRING_OFFSETS = 0;
+	static final int STRING_BYTES = 1;
+	static final int LIST_STARTS = 2;
+	static final int LIST_ITEMS = 3;
+	static final int TOKENS = 4;
+	static final int TRIE_CODES = 5;
+	static final int TRIE_BASE = 6;
+	static final int TRIE_CHECK = 7;
+	static final int FORMS = 8;
+	static final int ENTRY_STARTS = 9;
+	static final int ENTRIES = 10;
+	private static final int SECTIONS = 11;
+	private static final int FINGERPRINT_BYTES = 32;
+	// magic number, version, checksum, (unused), fingerprint, sections
+	private static final int SECTIONS_OFFSET = 16 + FINGERPRINT_BYTES;
+	private static final int HEADER_BYTES = SECTIONS_OFFSET + 8 * SECTIONS;
+
+	// The fields of a token record.
+	static final int KIND = 0;
+	static final int FORM = 1;
+	static final int PRONUNCIATION = 2;
+	static final int POS = 3;
+	static final int PRETTY_POS = 4;
+	static final int INFLECTION_PARADIGM = 5;
+	static final int DIFFICULTY_RATING = 6;
+	static final int POS_CLASS = 7;
+	static final int READING = 8;
+	static final int TRANSLATIONS = 9;
+	static final int LEMMA = 10;
+	static final int INFLECTION = 11;
+	static final int INFLECTED_FORMS = 12;
+	static final int TOKEN_INTS = 13;
+
+	// The kinds of tokens.
+	static final int PLAIN_TOKEN = 0;
+	static final int INFLECTABLE_TOKEN = 1;
+	static final int INFLECTED_TOKEN = 2;
+
+	// Used for null strings, lists and tokens.
+	static final int NONE = -1;
+
+	private DictionarySnapshot() {
+	}
+
+	/**
+	 * Writes the index to a snapshot file without a source fingerprint.
+	 *
+	 * @param dictionary
+	 *            the index
+	 * @param file
+	 *            the snapshot file (replaced if it exists)
+	 * @throws IOException
+	 *             if the file cannot be written
+	 * @see #write(DictionaryIndex, byte[], Path)
+	 */
+	public static void write(DictionaryIndex dictionary, Path file) throws IOException {
+		write(dictionary, null, file);
+	}
+
+	/**
+	 * Writes the index to a snapshot file. The file is written under a
+	 * temporary name first and then renamed, so other processes never see an
+	 * incomplete snapshot. The snapshot contains all inflected forms, including
+	 * the ones that the index only generates when they are looked up.
+	 *
+	 * @param dictionary
+	 *            the index
+	 * @param sourceFingerprint
+	 *            the fingerprint of the sources that the index was created
+	 *            from (or null if unknown)
+	 * @param file
+	 *            the snapshot file (replaced if it exists)
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public static void write(DictionaryIndex dictionary, byte[] sourceFingerprint, Path file) throws IOException {
+		byte[] fingerprint = new byte[FINGERPRINT_BYTES];
+		if (sourceFingerprint != null) {
+			System.arraycopy(sourceFingerprint, 0, fingerprint, 0,
+					Math.min(sourceFingerprint.length, FINGERPRINT_BYTES));
+		}
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		new Writer(dictionary.materialized(), fingerprint).write(tmp);
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Reads the fingerprint of the sources from the header of a snapshot file
+	 * without mapping the whole file.
+	 *
+	 * @param file
+	 *            the snapshot file
+	 * @return the fingerprint (all zeros if it was unknown)
+	 * @throws IOException
+	 *             if the file cannot be read or is not a snapshot of this
+	 *             version
+	 */
+	public static byte[] sourceFingerprint(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(SECTIONS_OFFSET).order(ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining() && channel.read(header) != -1) {
+				// keep reading
+			}
+			checkHeader(file, header);
+			byte[] fingerprint = new byte[FINGERPRINT_BYTES];
+			header.position(16);
+			header.get(fingerprint);
+			return fingerprint;
+		}
+	}
+
+	/**
+	 * @param file
+	 *            the snapshot file
+	 * @param sources
+	 *            the sources of the dictionary
+	 * @return true if the file is a snapshot of this version that was
+	 *         compiled from these sources
+	 */
+	public static boolean isUpToDate(Path file, DictionarySources sources) {
+		try {
+			return Files.isRegularFile(file) && Arrays.equals(sourceFingerprint(file), sources.fingerprint());
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Maps a snapshot file into memory (read-only) after verifying its
+	 * checksum.
+	 *
+	 * @param file
+	 *            the snapshot file
+	 * @return the index, backed by the file
+	 * @throws IOException
+	 *             if the file cannot be read, is corrupt or is not a snapshot
+	 *             of this version
+	 */
+	public static DictionaryIndex map(Path file) throws IOException {
+		ByteBuffer buf;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException(file + " is too large to be mapped");
+			}
+			// The mapping stays valid after the channel is closed.
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buf = mapped.order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		checkHeader(file, buf);
+		if (buf.limit() < HEADER_BYTES) {
+			throw new IOException(file + " is truncated");
+		}
+		ByteBuffer content = buf.duplicate();
+		content.position(HEADER_BYTES);
+		CRC32 crc = new CRC32();
+		crc.update(content);
+		if ((int) crc.getValue() != buf.getInt(8)) {
+			throw new IOException(file + " is corrupt (checksum mismatch)");
+		}
+
+		ByteBuffer[] sections = new ByteBuffer[SECTIONS];
+		for (int i = 0; i < SECTIONS; i++) {
+			int offset = buf.getInt(SECTIONS_OFFSET + 8 * i);
+			int length = buf.getInt(SECTIONS_OFFSET + 8 * i + 4);
+			if (offset < HEADER_BYTES || length < 0 || offset + length > buf.limit()) {
+				throw new IOException(file + " is truncated or corrupt");
+			}
+			ByteBuffer section = buf.duplicate();
+			section.position(offset);
+			section.limit(offset + length);
+			sections[i] = section.slice().order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		DoubleArrayTrie trie = DoubleArrayTrie.wrap(sections[TRIE_CODES].asCharBuffer(),
+				sections[TRIE_BASE].asIntBuffer(), sections[TRIE_CHECK].asIntBuffer());
+		SnapshotEntryStore store = new SnapshotEntryStore(file, sections);
+		return new DictionaryIndex(trie, store);
+	}
+
+	private static void checkHeader(Path file, ByteBuffer header) throws IOException {
+		if (header.limit() < SECTIONS_OFFSET || header.getInt(0) != MAGIC) {
+			throw new IOException(file + " is not a dictionary snapshot");
+		}
+		if (header.getInt(4) != VERSION) {
+			throw new IOException(file + " has version " + header.getInt(4) + " instead of " + VERSION);
+		}
+	}
+
+	/**
+	 * Numbers the strings, lists and tokens of an index and writes them.
+	 */
+	private static final class Writer {
+
+		private final DictionaryIndex dictionary;
+		private final byte[] fingerprint;
+		private final Map<String, Integer> stringIds = new HashMap<>();
+		private final List<String> strings = new ArrayList<>();
+		private final Map<List<Integer>, Integer> listIds = new HashMap<>();
+		private final List<List<Integer>> lists = new ArrayList<>();
+		private final Map<Token, Integer> tokenIds = new IdentityHashMap<>();
+		private final List<Token> tokens = new ArrayList<>();
+
+		Writer(DictionaryIndex dictionary, byte[] fingerprint) {
+			this.dictionary = dictionary;
+			this.fingerprint = fingerprint;
+		}
+
+		void write(Path file) throws IOException {
+			EntryStore store = dictionary.store();
+			int[] forms = new int[store.formCount()];
+			int[] entryStarts = new int[store.formCount() + 1];
+			int[] entries = new int[store.size()];
+			int next = 0;
+			for (int i = 0; i < forms.length; i++) {
+				forms[i] = stringId(store.form(i));
+				entryStarts[i] = next;
+				for (Token tok : store.entries(i)) {
+					entries[next++] = tokenId(tok);
+				}
+			}
+			entryStarts[forms.length] = next;
+
+			// Lemmas and inflected forms are added while the records are
+			// created, so the list of tokens can grow in this loop.
+			List<int[]> records = new ArrayList<>();
+			for (int i = 0; i < tokens.size(); i++) {
+				records.add(record(tokens.get(i)));
+			}
+
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+				Output out = new Output(channel);
+				int[] offsets = new int[SECTIONS];
+				int[] lengths = new int[SECTIONS];
+				out.skip(HEADER_BYTES);
+
+				List<byte[]> encoded = new ArrayList<>();
+				int[] stringOffsets = new int[strings.size() + 1];
+				for (int i = 0; i < strings.size(); i++) {
+					byte[] bytes = strings.get(i).getBytes(StandardCharsets.UTF_8);
+					encoded.add(bytes);
+					stringOffsets[i + 1] = stringOffsets[i] + bytes.length;
+				}
+				offsets[STRING_OFFSETS] = out.position();
+				out.putInts(stringOffsets);
+				lengths[STRING_OFFSETS] = out.position() - offsets[STRING_OFFSETS];
+				out.align();
+				offsets[STRING_BYTES] = out.position();
+				for (byte[] bytes : encoded) {
+					out.putBytes(bytes);
+				}
+				lengths[STRING_BYTES] = out.position() - offsets[STRING_BYTES];
+				out.align();
+
+				int[] listStarts = new int[lists.size() + 1];
+				for (int i = 0; i < lists.size(); i++) {
+					listStarts[i + 1] = listStarts[i] + lists.get(i).size();
+				}
+				offsets[LIST_STARTS] = out.position();
+				out.putInts(listStarts);
+				lengths[LIST_STARTS] = out.position() - offsets[LIST_STARTS];
+				offsets[LIST_ITEMS] = out.position();
+				for (List<Integer> list : lists) {
+					for (int item : list) {
+						out.putInt(item);
+					}
+				}
+				lengths[LIST_ITEMS] = out.position() - offsets[LIST_ITEMS];
+
+				offsets[TOKENS] = out.position();
+				for (int[] record : records) {
+					out.putInts(record);
+				}
+				lengths[TOKENS] = out.position() - offsets[TOKENS];
+
+				DoubleArrayTrie trie = dictionary.trie();
+				offsets[TRIE_CODES] = out.position();
+				CharBuffer codes = trie.codes();
+				for (int i = 0; i < codes.limit(); i++) {
+					out.putChar(codes.get(i));
+				}
+				lengths[TRIE_CODES] = out.position() - offsets[TRIE_CODES];
+				out.align();
+				offsets[TRIE_BASE] = out.position();
+				out.putInts(trie.base());
+				lengths[TRIE_BASE] = out.position() - offsets[TRIE_BASE];
+				offsets[TRIE_CHECK] = out.position();
+				out.putInts(trie.check());
+				lengths[TRIE_CHECK] = out.position() - offsets[TRIE_CHECK];
+
+				offsets[FORMS] = out.position();
+				out.putInts(forms);
+				lengths[FORMS] = out.position() - offsets[FORMS];
+				offsets[ENTRY_STARTS] = out.position();
+				out.putInts(entryStarts);
+				lengths[ENTRY_STARTS] = out.position() - offsets[ENTRY_STARTS];
+				offsets[ENTRIES] = out.position();
+				out.putInts(entries);
+				lengths[ENTRIES] = out.position() - offsets[ENTRIES];
+				out.flush();
+
+				ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+				header.putInt(MAGIC).putInt(VERSION).putInt((int) out.checksum()).putInt(0).put(fingerprint);
+				for (int i = 0; i < SECTIONS; i++) {
+					header.putInt(offsets[i]).putInt(lengths[i]);
+				}
+				header.flip();
+				while (header.hasRemaining()) {
+					channel.write(header, header.position());
+				}
+				channel.force(true);
+			}
+		}
+
+		private int[] record(Token tok) {
+			int[] record = new int[TOKEN_INTS];
+			record[FORM] = stringId(tok.getForm());
+			record[PRONUNCIATION] = stringId(tok.getPronunciation());
+			record[POS] = stringId(tok.getPos());
+			record[PRETTY_POS] = stringId(tok.getPrettyPos());
+			record[INFLECTION_PARADIGM] = stringId(tok.getInflectionParadigm());
+			record[DIFFICULTY_RATING] = stringId(tok.getDifficultyRating());
+			record[POS_CLASS] = stringId(tok.getPosClass());
+			record[READING] = stringId(tok.getReading());
+			record[TRANSLATIONS] = NONE;
+			if (tok.getTranslations() != null) {
+				List<Integer> translations = new ArrayList<>();
+				for (String translation : tok.getTranslations()) {
+					translations.add(stringId(translation));
+				}
+				record[TRANSLATIONS] = listId(translations);
+			}
+			record[LEMMA] = NONE;
+			record[INFLECTION] = NONE;
+			record[INFLECTED_FORMS] = NONE;
+			if (tok instanceof InflectedToken) {
+				InflectedToken inflTok = (InflectedToken) tok;
+				record[KIND] = INFLECTED_TOKEN;
+				record[LEMMA] = tokenId(inflTok.getLemmaToken());
+				if (inflTok.getInflection() != null) {
+					record[INFLECTION] = stringId(inflTok.getInflection().name());
+				}
+			} else if (tok instanceof InflectableToken) {
+				InflectableToken lemma = (InflectableToken) tok;
+				record[KIND] = INFLECTABLE_TOKEN;
+				if (lemma.getInflectedForms() != null) {
+					List<Integer> inflectedForms = new ArrayList<>();
+					for (InflectedToken inflTok : lemma.getInflectedForms()) {
+						inflectedForms.add(tokenId(inflTok));
+					}
+					record[INFLECTED_FORMS] = listId(inflectedForms);
+				}
+			} else {
+				record[KIND] = PLAIN_TOKEN;
+			}
+			return record;
+		}
+
+		private int stringId(String s) {
+			if (s == null) {
+				return NONE;
+			}
+			Integer id = stringIds.get(s);
+			if (id == null) {
+				id = strings.size();
+				stringIds.put(s, id);
+				strings.add(s);
+			}
+			return id;
+		}
+
+		private int listId(List<Integer> list) {
+			Integer id = listIds.get(list);
+			if (id == null) {
+				id = lists.size();
+				listIds.put(list, id);
+				lists.add(list);
+			}
+			return id;
+		}
+
+		private int tokenId(Token tok) {
+			if (tok == null) {
+				return NONE;
+			}
+			Integer id = tokenIds.get(tok);
+			if (id == null) {
+				id = tokens.size();
+				tokenIds.put(tok, id);
+				tokens.add(tok);
+			}
+			return id;
+		}
+
+	}
+
+	/**
+	 * Buffered little-endian output to a file channel.
+	 */
+	private static final class Output {
+
+		private final FileChannel channel;
+		private final ByteBuffer buf = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+		// The checksum of everything after the header.
+		private final CRC32 crc = new CRC32();
+		private long position;
+
+		Output(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		int position() throws IOException {
+			if (position > Integer.MAX_VALUE) {
+				throw new IOException("The snapshot is too large");
+			}
+			return (int) position;
+		}
+
+		void skip(int bytes) throws IOException {
+			for (int i = 0; i < bytes; i++) {
+				putByte((byte) 0);
+			}
+		}
+
+		/**
+		 * Pads the output so that the next section starts at a multiple of 8.
+		 */
+		void align() throws IOException {
+			while (position % 8 != 0) {
+				putByte((byte) 0);
+			}
+		}
+
+		void putByte(byte b) throws IOException {
+			ensure(1);
+			buf.put(b);
+			position++;
+		}
+
+		void putBytes(byte[] bytes) throws IOException {
+			for (byte b : bytes) {
+				putByte(b);
+			}
+		}
+
+		void putChar(char c) throws IOException {
+			ensure(2);
+			buf.putChar(c);
+			position += 2;
+		}
+
+		void putInt(int i) throws IOException {
+			ensure(4);
+			buf.putInt(i);
+			position += 4;
+		}
+
+		void putInts(int[] ints) throws IOException {
+			for (int i : ints) {
+				putInt(i);
+			}
+		}
+
+		void putInts(IntBuffer ints) throws IOException {
+			for (int i = 0; i < ints.limit(); i++) {
+				putInt(ints.get(i));
+			}
+		}
+
+		long checksum() {
+			return crc.getValue();
+		}
+
+		void flush() throws IOException {
+			buf.flip();
+			// The header is written last, so it is skipped here.
+			long start = position - buf.limit();
+			if (start + buf.limit() > HEADER_BYTES) {
+				ByteBuffer content = buf.duplicate();
+				content.position((int) Math.max(0, HEADER_BYTES - start));
+				crc.update(content);
+			}
+			while (buf.hasRemaining()) {
+				channel.write(buf);
+			}
+			buf.clear();
+		}
+
+		private void ensure(int bytes) throws IOException {
+			if (buf.remaining() < bytes) {
+				flush();
+			}
+		}
+
+	}
+
+}
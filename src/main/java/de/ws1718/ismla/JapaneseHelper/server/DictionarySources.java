@@ -0,0 +1,182 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import javax.servlet.ServletContext;
+
+/**
+ * The input files of the {@link WiktionaryPreprocessor}: the inflection table
+ * templates, the Wiktionary dump(s) and the kanji difficulty ratings. They are
+ * either resources of the running web application or files in a web
+ * application directory on disk (when the dictionary is compiled at build
+ * time, see {@link DictionaryCompiler}).
+ */
+public final class DictionarySources {
+
+	private final List<String> inflectionFiles;
+	private final List<String> dictionaryFiles;
+	private final String difficultyRatingFile;
+	private final Opener opener;
+	private byte[] fingerprint;
+
+	private DictionarySources(List<String> inflectionFiles, List<String> dictionaryFiles, String difficultyRatingFile,
+			Opener opener) {
+		this.inflectionFiles = inflectionFiles;
+		this.dictionaryFiles = dictionaryFiles;
+		this.difficultyRatingFile = difficultyRatingFile;
+		this.opener = opener;
+		Collections.sort(inflectionFiles);
+		Collections.sort(dictionaryFiles);
+	}
+
+	/**
+	 * @param context
+	 *            the servlet context of the web application
+	 * @return the sources among the resources of the web application
+	 */
+	public static DictionarySources fromServletContext(ServletContext context) {
+		return new DictionarySources(resourcePaths(context, Listener.INFLECTION_TEMPLATES_PATH),
+				resourcePaths(context, Listener.DICTIONARY_PATH), Listener.DIFFICULTY_RATING_PATH, path -> {
+					InputStream is = context.getResourceAsStream(path);
+					if (is == null) {
+						throw new FileNotFoundException(path);
+					}
+					return is;
+				});
+	}
+
+	/**
+	 * @param webappDir
+	 *            the web application directory (e.g. src/main/webapp)
+	 * @return the sources in that directory
+	 */
+	public static DictionarySources fromDirectory(File webappDir) {
+		return new DictionarySources(files(new File(webappDir, Listener.INFLECTION_TEMPLATES_PATH)),
+				files(new File(webappDir, Listener.DICTIONARY_PATH)),
+				new File(webappDir, Listener.DIFFICULTY_RATING_PATH).getPath(), FileInputStream::new);
+	}
+
+	/**
+	 * Runs the preprocessor on the sources.
+	 *
+	 * @return the preprocessor (with the results)
+	 * @throws IOException
+	 *             if one of the files cannot be opened
+	 */
+	public WiktionaryPreprocessor preprocess() throws IOException {
+		HashMap<String, String> difficultyRatings = Listener
+				.readDifficultyRatings(opener.open(difficultyRatingFile));
+		return new WiktionaryPreprocessor(inflectionFiles, openAll(inflectionFiles), openAll(dictionaryFiles),
+				difficultyRatings);
+	}
+
+	/**
+	 * Reads the inflection table templates and the difficulty ratings, e.g. for
+	 * the {@link InflectionAutomaton} of a dictionary that was loaded from a
+	 * snapshot.
+	 *
+	 * @return an inflector for the templates
+	 * @throws IOException
+	 *             if one of the files cannot be opened
+	 */
+	Inflector inflector() throws IOException {
+		return new Inflector(WiktionaryPreprocessor.readInflectionTemplates(inflectionFiles, openAll(inflectionFiles)),
+				Listener.readDifficultyRatings(opener.open(difficultyRatingFile)));
+	}
+
+	/**
+	 * A SHA-256 hash of the names and contents of all source files. A compiled
+	 * dictionary is stale if it was compiled from sources with a different
+	 * fingerprint.
+	 *
+	 * @return the fingerprint
+	 * @throws IOException
+	 *             if one of the files cannot be read
+	 */
+	public synchronized byte[] fingerprint() throws IOException {
+		if (fingerprint == null) {
+			MessageDigest digest;
+			try {
+				digest = MessageDigest.getInstance("SHA-256");
+			} catch (NoSuchAlgorithmException e) {
+				// Every Java platform supports SHA-256.
+				throw new IllegalStateException(e);
+			}
+			List<String> files = new ArrayList<>(inflectionFiles);
+			files.addAll(dictionaryFiles);
+			files.add(difficultyRatingFile);
+			byte[] buffer = new byte[1 << 16];
+			for (String file : files) {
+				// Only the file name counts, not where the file is.
+				digest.update(new File(file).getName().getBytes(StandardCharsets.UTF_8));
+				digest.update((byte) 0);
+				try (InputStream is = opener.open(file)) {
+					int read;
+					while ((read = is.read(buffer)) != -1) {
+						digest.update(buffer, 0, read);
+					}
+				}
+				digest.update((byte) 0);
+			}
+			fingerprint = digest.digest();
+		}
+		return fingerprint.clone();
+	}
+
+	@Override
+	public String toString() {
+		return inflectionFiles.size() + " inflection templates, dictionary files " + dictionaryFiles;
+	}
+
+	private List<InputStream> openAll(List<String> files) throws IOException {
+		List<InputStream> streams = new ArrayList<>();
+		for (String file : files) {
+			streams.add(opener.open(file));
+		}
+		return streams;
+	}
+
+	private static List<String> resourcePaths(ServletContext context, String directory) {
+		List<String> paths = new ArrayList<>();
+		Collection<String> resources = context.getResourcePaths(directory);
+		if (resources != null) {
+			for (String path : resources) {
+				// Sub-directories end with a slash.
+				if (!path.endsWith("/")) {
+					paths.add(path);
+				}
+			}
+		}
+		return paths;
+	}
+
+	private static List<String> files(File directory) {
+		List<String> paths = new ArrayList<>();
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.isFile()) {
+					paths.add(file.getPath());
+				}
+			}
+		}
+		return paths;
+	}
+
+	private interface Opener {
+		InputStream open(String file) throws IOException;
+	}
+
+}
@@ -0,0 +1,141 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * The difficulty ratings of the kanji, indexed by character. A token's
+ * difficulty rating consists of the ratings of its characters, separated by
+ * hyphens (e.g. "2-*" for 書く), where characters without a rating are marked
+ * with an asterisk.
+ *
+ * The ratings are looked up for every character of every dictionary entry, so
+ * instead of a map from (boxed) characters, the table is an array with a byte
+ * for each char: the index of the character's rating among the distinct
+ * ratings, or 0 if it doesn't have one. All jouyou kanji are in the Basic
+ * Multilingual Plane.
+ *
+ * The table is immutable and can be shared between threads.
+ */
+public final class DifficultyRatings {
+
+	private static final String UNRATED = "*";
+
+	// The ratings by code. Code 0 stands for characters without a rating.
+	private final String[] ratings;
+	private final byte[] codes = new byte[Character.MAX_VALUE + 1];
+
+	/**
+	 * @param difficultyRatings
+	 *            a map from kanji characters to difficulty ratings (see
+	 *            {@link Listener#readDifficultyRatings(java.io.InputStream)});
+	 *            keys that are not a single char and empty ratings are
+	 *            ignored
+	 */
+	// public for the benchmarks
+	public DifficultyRatings(Map<String, String> difficultyRatings) {
+		List<String> distinct = new ArrayList<>();
+		distinct.add(UNRATED);
+		for (Entry<String, String> entry : difficultyRatings.entrySet()) {
+			String character = entry.getKey();
+			String rating = entry.getValue();
+			if (character.length() != 1 || rating == null || rating.isEmpty()) {
+				continue;
+			}
+			int code = distinct.indexOf(rating);
+			if (code == -1) {
+				code = distinct.size();
+				if (code > 0xFF) {
+					throw new IllegalArgumentException("More than 255 distinct difficulty ratings");
+				}
+				distinct.add(rating);
+			}
+			codes[character.charAt(0)] = (byte) code;
+		}
+		ratings = distinct.toArray(new String[distinct.size()]);
+	}
+
+	/**
+	 * @param c
+	 *            a character
+	 * @return the rating of the character, or "*" if it doesn't have one
+	 */
+	String get(char c) {
+		return ratings[codes[c] & 0xFF];
+	}
+
+	/**
+	 * @param form
+	 *            the (cleaned) form of a token
+	 * @return the difficulty rating of the form
+	 */
+	// public for the benchmarks
+	public String rate(String form) {
+		return rate(form, 0, new StringBuilder(form.length() * 2));
+	}
+
+	/**
+	 * Rates a form that shares a prefix with a form whose rating is known
+	 * already, e.g. an inflected form with its lemma (both cleaned). Only the
+	 * characters after the common prefix are looked up.
+	 *
+	 * @param form
+	 *            the form
+	 * @param stem
+	 *            the other form
+	 * @param stemRating
+	 *            the rating of the other form (see {@link #rate(String)})
+	 * @return the difficulty rating of the form
+	 */
+	// public for the benchmarks
+	public String rate(String form, String stem, String stemRating) {
+		int common = 0;
+		int max = Math.min(form.length(), stem.length());
+		while (common < max && form.charAt(common) == stem.charAt(common)) {
+			common++;
+		}
+		if (common == 0) {
+			return rate(form);
+		}
+		if (common == stem.length() && common == form.length()) {
+			return stemRating;
+		}
+		// The length of the ratings of the common characters (with their
+		// hyphens).
+		int end = -1;
+		for (int i = 0; i < common; i++) {
+			end += get(stem.charAt(i)).length() + 1;
+		}
+		StringBuilder rating = new StringBuilder(end + (form.length() - common) * 2);
+		rating.append(stemRating, 0, end);
+		return rate(form, common, rating);
+	}
+
+	private String rate(String form, int start, StringBuilder rating) {
+		if (form.isEmpty()) {
+			// Like an empty list of ratings.
+			return "";
+		}
+		for (int i = start; i < form.length(); i++) {
+			if (i > 0) {
+				rating.append('-');
+			}
+			rating.append(get(form.charAt(i)));
+		}
+		return rating.toString();
+	}
+
+	@Override
+	public String toString() {
+		int rated = 0;
+		for (byte code : codes) {
+			if (code != 0) {
+				rated++;
+			}
+		}
+		return "difficulty ratings: " + rated + " kanji, " + (ratings.length - 1) + " distinct ratings";
+	}
+
+}
@@ -0,0 +1,283 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * An immutable double-array trie that maps a set of strings to their indices
+ * in the sorted array of the strings.
+ *
+ * The trie is stored in two int arrays: the transition from state s with the
+ * (remapped) character code c leads to state t = base[s] + c if check[t] == s.
+ * The characters are remapped to dense codes (the most frequent characters
+ * first) so that the states of the trie can be packed closely together. The
+ * code 0 is the end of a key; the slot it leads to holds the index of the key
+ * (as -(index + 1)) instead of a base.
+ *
+ * Walk the trie with {@link #next(int, char)} starting at {@link #ROOT}, and
+ * use {@link #value(int)} to check whether a key ends in the current state.
+ *
+ * The arrays are accessed through buffers, so the trie can live on the heap
+ * or in a memory-mapped {@link DictionarySnapshot}.
+ */
+final class DoubleArrayTrie {
+
+	/** The start state. */
+	static final int ROOT = 0;
+	/** The state returned by {@link #next(int, char)} if there is none. */
+	static final int NONE = -1;
+
+	private static final int FREE = -1;
+	private static final int END_OF_KEY = 0;
+
+	/** The number of entries in the character code table. */
+	static final int CODES_LENGTH = Character.MAX_VALUE + 1;
+
+	// Maps each character to its code (0 if no key contains the character).
+	private final CharBuffer codes;
+	private final IntBuffer base;
+	private final IntBuffer check;
+	private final int capacity;
+
+	private DoubleArrayTrie(CharBuffer codes, IntBuffer base, IntBuffer check) {
+		if (codes.limit() != CODES_LENGTH || base.limit() != check.limit()) {
+			throw new IllegalArgumentException("Not a double-array trie");
+		}
+		this.codes = codes;
+		this.base = base;
+		this.check = check;
+		capacity = check.limit();
+	}
+
+	/**
+	 * Wraps the arrays of a trie that was built before.
+	 *
+	 * @param codes
+	 *            the character codes (see {@link #codes()})
+	 * @param base
+	 *            the base array (see {@link #base()})
+	 * @param check
+	 *            the check array (see {@link #check()})
+	 * @return the trie
+	 */
+	static DoubleArrayTrie wrap(CharBuffer codes, IntBuffer base, IntBuffer check) {
+		return new DoubleArrayTrie(codes, base, check);
+	}
+
+	/**
+	 * Builds the trie.
+	 *
+	 * @param keys
+	 *            the keys, sorted and without duplicates
+	 * @return the trie, which maps each key to its index in the array
+	 */
+	static DoubleArrayTrie build(String[] keys) {
+		return new Builder(keys).build();
+	}
+
+	/**
+	 * @param state
+	 *            a state
+	 * @param c
+	 *            the next character
+	 * @return the state that the character leads to or {@link #NONE}
+	 */
+	int next(int state, char c) {
+		int code = codes.get(c);
+		if (code == 0) {
+			return NONE;
+		}
+		int t = base.get(state) + code;
+		return t < capacity && check.get(t) == state ? t : NONE;
+	}
+
+	/**
+	 * @param state
+	 *            a state
+	 * @return the index of the key that ends in this state or -1 if there is
+	 *         none
+	 */
+	int value(int state) {
+		int t = base.get(state) + END_OF_KEY;
+		return t < capacity && check.get(t) == state ? -base.get(t) - 1 : -1;
+	}
+
+	/**
+	 * @param key
+	 *            the key
+	 * @return the index of the key or -1 if it is not in the trie
+	 */
+	int get(CharSequence key) {
+		int state = ROOT;
+		for (int i = 0; i < key.length(); i++) {
+			state = next(state, key.charAt(i));
+			if (state == NONE) {
+				return -1;
+			}
+		}
+		return value(state);
+	}
+
+	/**
+	 * @return the number of slots in the double array
+	 */
+	int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return a read-only view of the character codes
+	 */
+	CharBuffer codes() {
+		return codes.asReadOnlyBuffer();
+	}
+
+	/**
+	 * @return a read-only view of the base array
+	 */
+	IntBuffer base() {
+		return base.asReadOnlyBuffer();
+	}
+
+	/**
+	 * @return a read-only view of the check array
+	 */
+	IntBuffer check() {
+		return check.asReadOnlyBuffer();
+	}
+
+	private static final class Builder {
+
+		private final String[] keys;
+		private final char[] codes = new char[CODES_LENGTH];
+		private int[] base;
+		private int[] check;
+		// All slots before this one are in use.
+		private int firstFree = 1;
+		private int size = 1;
+
+		Builder(String[] keys) {
+			this.keys = keys;
+			int capacity = 1024;
+			for (String key : keys) {
+				capacity += key.length();
+			}
+			base = new int[capacity];
+			check = new int[capacity];
+			Arrays.fill(check, FREE);
+			// The root.
+			check[ROOT] = ROOT;
+		}
+
+		DoubleArrayTrie build() {
+			assignCodes();
+			if (keys.length > 0) {
+				insert(0, keys.length, 0, ROOT);
+			}
+			return new DoubleArrayTrie(CharBuffer.wrap(codes), IntBuffer.wrap(Arrays.copyOf(base, size)),
+					IntBuffer.wrap(Arrays.copyOf(check, size)));
+		}
+
+		/**
+		 * Numbers the characters by descending frequency, starting at 1.
+		 */
+		private void assignCodes() {
+			int[] counts = new int[codes.length];
+			for (String key : keys) {
+				for (int i = 0; i < key.length(); i++) {
+					counts[key.charAt(i)]++;
+				}
+			}
+			Integer[] chars = new Integer[codes.length];
+			for (int c = 0; c < chars.length; c++) {
+				chars[c] = c;
+			}
+			Arrays.sort(chars, (c1, c2) -> Integer.compare(counts[c2], counts[c1]));
+			for (int i = 0; i < chars.length && counts[chars[i]] > 0; i++) {
+				codes[chars[i]] = (char) (i + 1);
+			}
+		}
+
+		/**
+		 * Adds the children of the state, which is reached by the common prefix
+		 * (of the given length) of keys[from, to).
+		 */
+		private void insert(int from, int to, int depth, int state) {
+			// The codes of the outgoing transitions (in ascending order of the
+			// characters, not of the codes) and where their keys start.
+			int n = 0;
+			int[] childCodes = new int[to - from + 1];
+			int[] childStarts = new int[to - from + 2];
+			if (keys[from].length() == depth) {
+				// The shorter key comes first.
+				childCodes[n] = END_OF_KEY;
+				childStarts[n++] = from;
+			}
+			for (int i = n == 0 ? from : from + 1; i < to; i++) {
+				if (i == from || keys[i - 1].length() == depth || keys[i].charAt(depth) != keys[i - 1].charAt(depth)) {
+					childCodes[n] = codes[keys[i].charAt(depth)];
+					childStarts[n++] = i;
+				}
+			}
+			childStarts[n] = to;
+
+			int b = findBase(childCodes, n);
+			base[state] = b;
+			for (int i = 0; i < n; i++) {
+				check[b + childCodes[i]] = state;
+				size = Math.max(size, b + childCodes[i] + 1);
+			}
+			while (firstFree < check.length && check[firstFree] != FREE) {
+				firstFree++;
+			}
+
+			for (int i = 0; i < n; i++) {
+				int child = b + childCodes[i];
+				if (childCodes[i] == END_OF_KEY) {
+					base[child] = -childStarts[i] - 1;
+				} else {
+					insert(childStarts[i], childStarts[i + 1], depth + 1, child);
+				}
+			}
+		}
+
+		/**
+		 * Finds the first base for which all the slots of the child codes are
+		 * free.
+		 */
+		private int findBase(int[] childCodes, int n) {
+			int min = Integer.MAX_VALUE;
+			int max = 0;
+			for (int i = 0; i < n; i++) {
+				min = Math.min(min, childCodes[i]);
+				max = Math.max(max, childCodes[i]);
+			}
+			outer: for (int pos = Math.max(firstFree, min + 1);; pos++) {
+				ensureCapacity(pos + max - min + 1);
+				if (check[pos] != FREE) {
+					continue;
+				}
+				int b = pos - min;
+				for (int i = 0; i < n; i++) {
+					if (check[b + childCodes[i]] != FREE) {
+						continue outer;
+					}
+				}
+				return b;
+			}
+		}
+
+		private void ensureCapacity(int capacity) {
+			if (capacity > check.length) {
+				int newCapacity = Math.max(capacity, check.length + check.length / 2);
+				base = Arrays.copyOf(base, newCapacity);
+				int oldCapacity = check.length;
+				check = Arrays.copyOf(check, newCapacity);
+				Arrays.fill(check, oldCapacity, newCapacity, FREE);
+			}
+		}
+
+	}
+
+}
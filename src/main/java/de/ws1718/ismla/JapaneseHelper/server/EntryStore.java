@@ -0,0 +1,38 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import java.util.List;
+
+import de.ws1718.ismla.JapaneseHelper.shared.Token;
+
+/**
+ * Where a {@link DictionaryIndex} keeps its forms and their entries. The forms
+ * are numbered by their position in the sorted list of forms, which is also
+ * the value that the trie of the index maps them to.
+ */
+interface EntryStore {
+
+	/**
+	 * @return the number of forms
+	 */
+	int formCount();
+
+	/**
+	 * @param id
+	 *            the id of a form
+	 * @return the form
+	 */
+	String form(int id);
+
+	/**
+	 * @param id
+	 *            the id of a form
+	 * @return the (unmodifiable, non-empty) list of entries with this form
+	 */
+	List<Token> entries(int id);
+
+	/**
+	 * @return the number of entries (not forms)
+	 */
+	int size();
+
+}
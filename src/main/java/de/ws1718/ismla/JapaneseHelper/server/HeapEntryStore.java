@@ -0,0 +1,91 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+import de.ws1718.ismla.JapaneseHelper.shared.Token;
+
+/**
+ * Keeps the entries of all forms in one array on the heap, ordered by form id.
+ *
+ * The forms are only stored if they differ from the form of their first entry.
+ * Otherwise, the form is taken from the entry, so that the forms of inflected
+ * tokens (which are derived when they are accessed) are not kept on the heap
+ * twice.
+ */
+final class HeapEntryStore implements EntryStore {
+
+	// The forms, sorted (null if the form is the one of its first entry).
+	private final String[] forms;
+	// The entries of form i are entries[entryStarts[i]] to
+	// entries[entryStarts[i + 1] - 1].
+	private final int[] entryStarts;
+	private final Token[] entries;
+
+	HeapEntryStore(String[] forms, int[] entryStarts, Token[] entries) {
+		this.forms = new String[forms.length];
+		this.entryStarts = entryStarts;
+		this.entries = entries;
+		for (int i = 0; i < forms.length; i++) {
+			if (!forms[i].equals(entries[entryStarts[i]].getForm())) {
+				this.forms[i] = forms[i];
+			}
+		}
+	}
+
+	@Override
+	public int formCount() {
+		return forms.length;
+	}
+
+	@Override
+	public String form(int id) {
+		String form = forms[id];
+		return form != null ? form : entries[entryStarts[id]].getForm();
+	}
+
+	@Override
+	public List<Token> entries(int id) {
+		return new Entries(entryStarts[id], entryStarts[id + 1]);
+	}
+
+	@Override
+	public int size() {
+		return entries.length;
+	}
+
+	@Override
+	public String toString() {
+		return "on the heap";
+	}
+
+	/**
+	 * The entries of one form (an unmodifiable view of the entry array).
+	 */
+	private final class Entries extends AbstractList<Token> implements RandomAccess {
+
+		private final int from;
+		private final int to;
+
+		Entries(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public Token get(int index) {
+			if (index < 0 || index >= to - from) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", size: " + (to - from));
+			}
+			return entries[from + index];
+		}
+
+		@Override
+		public int size() {
+			return to - from;
+		}
+
+	}
+
+}
@@ -0,0 +1,182 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.Buffer;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.ws1718.ismla.JapaneseHelper.shared.Token;
+
+/**
+ * Estimates how much heap the tokens of the dictionary retain (see
+ * {@link StartupReport}).
+ *
+ * The sizes assume a 64-bit JVM with compressed references (the default for
+ * heaps below 32 GB) and strings backed by char arrays (Java 8), and they
+ * ignore the gaps that the JVM leaves between fields, so they are estimates.
+ * Objects that several tokens share (e.g. canonicalized strings and
+ * translations) are counted once, for the first token that references them.
+ * Other tokens (e.g. the lemma of an inflected token) are not counted for the
+ * token that references them.
+ */
+final class HeapEstimator {
+
+	private static final int HEADER = 12;
+	private static final int ARRAY_HEADER = 16;
+	private static final int REFERENCE = 4;
+	private static final int ALIGNMENT = 8;
+
+	private final Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+	private final Map<Class<?>, List<Field>> fields = new HashMap<>();
+	private final Map<Class<?>, Long> shallowSizes = new HashMap<>();
+
+	/**
+	 * @param root
+	 *            a token or some other object of the dictionary
+	 * @return the number of bytes that the object and everything it
+	 *         references take up, except for other tokens and what was
+	 *         counted already
+	 */
+	long add(Object root) {
+		long bytes = 0;
+		Deque<Object> pending = new ArrayDeque<>();
+		pending.push(root);
+		while (!pending.isEmpty()) {
+			Object o = pending.pop();
+			if (o instanceof Token && o != root || o instanceof Enum || o instanceof Class || !seen.add(o)) {
+				continue;
+			}
+			Class<?> c = o.getClass();
+			if (o instanceof String) {
+				bytes += align(HEADER + REFERENCE + 4 + 4) + align(ARRAY_HEADER + 2 * ((String) o).length());
+			} else if (o instanceof ArrayList) {
+				List<?> list = (List<?>) o;
+				bytes += align(HEADER + REFERENCE + 4 + 4) + align(ARRAY_HEADER + REFERENCE * list.size());
+				pending.addAll(list);
+			} else if (o instanceof Buffer) {
+				// The tries of the index are buffers that wrap arrays, or
+				// memory outside of the heap.
+				Buffer buffer = (Buffer) o;
+				bytes += shallowSize(c);
+				if (!buffer.isDirect()) {
+					bytes += align(ARRAY_HEADER + (long) buffer.capacity() * elementSize(buffer));
+				}
+			} else if (c.isArray()) {
+				int length = Array.getLength(o);
+				Class<?> component = c.getComponentType();
+				bytes += align(ARRAY_HEADER + (long) length * fieldSize(component));
+				if (!component.isPrimitive()) {
+					for (int i = 0; i < length; i++) {
+						Object element = Array.get(o, i);
+						if (element != null) {
+							pending.push(element);
+						}
+					}
+				}
+			} else if (c.getName().startsWith("de.ws1718.")) {
+				bytes += shallowSize(c);
+				addFields(o, pending);
+			} else {
+				// We can't look into the other classes of the JDK and the
+				// libraries, but the dictionary doesn't use any.
+				bytes += shallowSize(c);
+			}
+		}
+		return bytes;
+	}
+
+	private void addFields(Object o, Deque<Object> pending) {
+		for (Field field : fields(o.getClass())) {
+			try {
+				Object value = field.get(o);
+				if (value != null) {
+					pending.push(value);
+				}
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	private List<Field> fields(Class<?> c) {
+		List<Field> references = fields.get(c);
+		if (references == null) {
+			references = new ArrayList<>();
+			for (Class<?> k = c; k != null; k = k.getSuperclass()) {
+				for (Field field : k.getDeclaredFields()) {
+					if (!Modifier.isStatic(field.getModifiers()) && !field.getType().isPrimitive()) {
+						field.setAccessible(true);
+						references.add(field);
+					}
+				}
+			}
+			fields.put(c, references);
+		}
+		return references;
+	}
+
+	private long shallowSize(Class<?> c) {
+		Long size = shallowSizes.get(c);
+		if (size == null) {
+			long bytes = HEADER;
+			for (Class<?> k = c; k != null; k = k.getSuperclass()) {
+				if (k.getName().startsWith("java.")) {
+					// The fields are not accessible, assume there are none.
+					continue;
+				}
+				for (Field field : k.getDeclaredFields()) {
+					if (!Modifier.isStatic(field.getModifiers())) {
+						bytes += fieldSize(field.getType());
+					}
+				}
+			}
+			size = align(bytes);
+			shallowSizes.put(c, size);
+		}
+		return size;
+	}
+
+	private static int fieldSize(Class<?> type) {
+		if (type == long.class || type == double.class) {
+			return 8;
+		} else if (type == int.class || type == float.class) {
+			return 4;
+		} else if (type == short.class || type == char.class) {
+			return 2;
+		} else if (type == byte.class || type == boolean.class) {
+			return 1;
+		}
+		return REFERENCE;
+	}
+
+	private static int elementSize(Buffer buffer) {
+		if (buffer instanceof LongBuffer || buffer instanceof DoubleBuffer) {
+			return 8;
+		} else if (buffer instanceof IntBuffer || buffer instanceof FloatBuffer) {
+			return 4;
+		} else if (buffer instanceof CharBuffer || buffer instanceof ShortBuffer) {
+			return 2;
+		}
+		return 1;
+	}
+
+	private static long align(long bytes) {
+		return (bytes + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+	}
+
+}
@@ -0,0 +1,310 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import de.ws1718.ismla.JapaneseHelper.shared.InflectableToken;
+import de.ws1718.ismla.JapaneseHelper.shared.InflectedToken;
+import de.ws1718.ismla.JapaneseHelper.shared.Inflection;
+import de.ws1718.ismla.JapaneseHelper.shared.Token;
+
+/**
+ * Resolves forms with stacked auxiliaries, e.g. 食べさせられなかった (the
+ * causative, passive, negative and past of 食べる), which the templates don't
+ * contain.
+ *
+ * The regular inflection paradigms (see
+ * {@link Inflector#removedCharacters(String)}) are the states of the
+ * automaton. Some inflected forms can be inflected themselves: e.g. the
+ * causative 食べさせる of 食べる is inflected like an ichidan verb and the
+ * negative 食べない like an i-adjective, so these inflections are transitions
+ * to the "ichi" and "i" states. Every suffix of a state's template is an arc
+ * that ends a form.
+ *
+ * A form is resolved backwards: the automaton strips the final suffix, then as
+ * many transition suffixes as match, and looks up the lemmas that the
+ * remaining stem belongs to. Only the suffixes are looked up, so this takes
+ * time linear in the length of the suffixes, and none of the stacked forms are
+ * stored. The candidates are checked by inflecting the lemma step by step with
+ * the {@link Inflector}.
+ *
+ * The irregular paradigms ("aru", "suru-indep" and "kuru") are not states, so
+ * their lemmas are only inflected once.
+ */
+final class InflectionAutomaton {
+
+	// Real text rarely stacks more than a handful of auxiliaries.
+	static final int MAX_STEPS = 6;
+
+	private final Inflector inflector;
+	// The arcs that end a form, by suffix.
+	private final Map<String, Arc[]> finalArcs;
+	// The transitions into each state, by the part of their suffix that
+	// remains when the state's final characters are removed.
+	private final Map<String, Map<String, Arc[]>> transitions;
+	// The final characters of the lemmas of each state (from the terminal
+	// form of the template).
+	private final Map<String, String> tails;
+	private final int maxSuffixLength;
+
+	/**
+	 * @param inflector
+	 *            the inflector with the inflection table templates
+	 */
+	InflectionAutomaton(Inflector inflector) {
+		this.inflector = inflector;
+		Map<String, List<Arc>> finals = new HashMap<>();
+		Map<String, Map<String, List<Arc>>> incoming = new HashMap<>();
+		tails = new HashMap<>();
+		int maxLength = 0;
+		for (String state : inflector.paradigms()) {
+			int removed = inflector.removedCharacters(state);
+			if (removed < 0) {
+				continue;
+			}
+			for (Entry<Inflection, String> suffix : inflector.suffixes(state)) {
+				Inflection inflection = suffix.getKey();
+				String s = suffix.getValue();
+				if (inflection == Inflection.TERMINAL && !tails.containsKey(state) && s.length() >= removed) {
+					tails.put(state, s.substring(s.length() - removed));
+				}
+				if (s.isEmpty()) {
+					continue;
+				}
+				finals.computeIfAbsent(s, k -> new ArrayList<>()).add(new Arc(state, inflection, s, null));
+				maxLength = Math.max(maxLength, s.length());
+
+				String target = target(inflection, s);
+				if (target == null) {
+					continue;
+				}
+				int targetRemoved = inflector.removedCharacters(target);
+				if (targetRemoved < 0 || s.length() <= targetRemoved) {
+					continue;
+				}
+				incoming.computeIfAbsent(target, k -> new HashMap<>())
+						.computeIfAbsent(s.substring(0, s.length() - targetRemoved), k -> new ArrayList<>())
+						.add(new Arc(state, inflection, s, target));
+			}
+		}
+		finalArcs = toArrays(finals);
+		transitions = new HashMap<>();
+		for (Entry<String, Map<String, List<Arc>>> entry : incoming.entrySet()) {
+			transitions.put(entry.getKey(), toArrays(entry.getValue()));
+			for (String key : entry.getValue().keySet()) {
+				maxLength = Math.max(maxLength, key.length());
+			}
+		}
+		maxSuffixLength = maxLength;
+	}
+
+	private static Map<String, Arc[]> toArrays(Map<String, List<Arc>> arcs) {
+		Map<String, Arc[]> arrays = new HashMap<>();
+		for (Entry<String, List<Arc>> entry : arcs.entrySet()) {
+			arrays.put(entry.getKey(), entry.getValue().toArray(new Arc[0]));
+		}
+		return arrays;
+	}
+
+	/**
+	 * @param inflection
+	 *            an inflection
+	 * @param suffix
+	 *            its (cleaned) suffix
+	 * @return the paradigm that the inflected form is inflected like, or null
+	 *         if it cannot be inflected any further
+	 */
+	static String target(Inflection inflection, String suffix) {
+		switch (inflection) {
+		case PASSIVE:
+		case PASSIVE2:
+		case CAUSATIVE:
+		case POTENTIAL:
+		case POTENTIAL2:
+			// 食べられる, 食べさせる, 書ける
+			return suffix.endsWith("る") ? "ichi" : null;
+		case CAUSATIVE2:
+			// 食べさす
+			return suffix.endsWith("す") ? "go-su" : null;
+		case NEGATIVE:
+		case INFORMAL_NEGATIVE:
+			// 食べない, 高くない
+			return suffix.endsWith("い") ? "i" : null;
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Finds the lemmas of a form that stacks at least two inflections. Forms
+	 * with a single inflection are in the dictionary already.
+	 *
+	 * @param form
+	 *            the form
+	 * @param dictionary
+	 *            the dictionary with the lemmas
+	 * @return the inflected tokens (each with its chain of inflections), or an
+	 *         empty list if the form doesn't stack inflections. A form can
+	 *         have several analyses (e.g. 書かせる is both the causative of 書く
+	 *         and the potential of 書かす); the shorter chains come first.
+	 */
+	List<Token> resolve(String form, DictionaryIndex dictionary) {
+		Set<InflectedToken> resolved = new LinkedHashSet<>();
+		for (int length = 1; length <= Math.min(maxSuffixLength, form.length()); length++) {
+			Arc[] arcs = finalArcs.get(form.substring(form.length() - length));
+			if (arcs == null) {
+				continue;
+			}
+			for (Arc arc : arcs) {
+				List<Step> steps = new ArrayList<>();
+				steps.add(new Step(arc, form));
+				search(form.substring(0, form.length() - length), arc.state, steps, dictionary, resolved);
+			}
+		}
+		if (resolved.isEmpty()) {
+			return Collections.emptyList();
+		}
+		List<Token> sorted = new ArrayList<>(resolved);
+		sorted.sort(Comparator.comparingInt(tok -> ((InflectedToken) tok).getPreviousInflections().size()));
+		return sorted;
+	}
+
+	/**
+	 * @param stem
+	 *            the form of a token in the given state without its final
+	 *            characters
+	 * @param state
+	 *            the state
+	 * @param steps
+	 *            the steps from the token to the form, last step first
+	 * @param dictionary
+	 *            the dictionary with the lemmas
+	 * @param resolved
+	 *            the resolved tokens
+	 */
+	private void search(String stem, String state, List<Step> steps, DictionaryIndex dictionary,
+			Set<InflectedToken> resolved) {
+		String tail = tails.get(state);
+		if (steps.size() > 1 && tail != null && !stem.isEmpty()) {
+			for (Token tok : dictionary.storedEntries(stem + tail)) {
+				if (tok instanceof InflectableToken && state.equals(Inflector.paradigmName(tok))) {
+					InflectedToken inflTok = verify((InflectableToken) tok, steps);
+					if (inflTok != null) {
+						resolved.add(inflTok);
+					}
+				}
+			}
+		}
+		if (steps.size() >= MAX_STEPS) {
+			return;
+		}
+		Map<String, Arc[]> incoming = transitions.get(state);
+		if (incoming == null) {
+			return;
+		}
+		for (int length = 1; length <= Math.min(maxSuffixLength, stem.length()); length++) {
+			Arc[] arcs = incoming.get(stem.substring(stem.length() - length));
+			if (arcs == null) {
+				continue;
+			}
+			String previousStem = stem.substring(0, stem.length() - length);
+			for (Arc arc : arcs) {
+				steps.add(new Step(arc, previousStem + arc.suffix));
+				search(previousStem, arc.state, steps, dictionary, resolved);
+				steps.remove(steps.size() - 1);
+			}
+		}
+	}
+
+	/**
+	 * Inflects the lemma step by step to check that it really has the form.
+	 *
+	 * @param lemma
+	 *            the lemma
+	 * @param steps
+	 *            the steps from the lemma to the form, last step first
+	 * @return the inflected token or null if the lemma doesn't have the form
+	 */
+	private InflectedToken verify(InflectableToken lemma, List<Step> steps) {
+		InflectableToken cur = lemma;
+		ArrayList<Inflection> previousInflections = new ArrayList<>();
+		for (int i = steps.size() - 1; i >= 0; i--) {
+			Step step = steps.get(i);
+			InflectedToken next = null;
+			for (InflectedToken inflTok : inflector.inflect(cur, step.arc.inflection)) {
+				if (inflTok.getForm().equals(step.form)) {
+					next = inflTok;
+					break;
+				}
+			}
+			if (next == null) {
+				return null;
+			}
+			if (i == 0) {
+				InflectedToken inflTok = new InflectedToken(lemma, next.getForm(), next.getPronunciation(),
+						step.arc.inflection);
+				inflTok.setPreviousInflections(previousInflections);
+				inflector.finish(inflTok);
+				return inflTok;
+			}
+			previousInflections.add(step.arc.inflection);
+			cur = new InflectableToken(next);
+			cur.setInflectionParadigm(step.arc.target);
+		}
+		return null;
+	}
+
+	@Override
+	public String toString() {
+		int transitionCount = 0;
+		for (Map<String, Arc[]> incoming : transitions.values()) {
+			transitionCount += incoming.size();
+		}
+		return "inflection automaton: " + tails.size() + " states, " + finalArcs.size() + " final suffixes, "
+				+ transitionCount + " transition suffixes";
+	}
+
+	/**
+	 * An inflection of a state. If it is a transition, the inflected form is
+	 * inflected like the target state.
+	 */
+	private static final class Arc {
+
+		private final String state;
+		private final Inflection inflection;
+		private final String suffix;
+		// Null if the inflected form cannot be inflected any further.
+		private final String target;
+
+		Arc(String state, Inflection inflection, String suffix, String target) {
+			this.state = state;
+			this.inflection = inflection;
+			this.suffix = suffix;
+			this.target = target;
+		}
+
+	}
+
+	/**
+	 * An arc that the resolved form takes and the form it leads to.
+	 */
+	private static final class Step {
+
+		private final Arc arc;
+		private final String form;
+
+		Step(Arc arc, String form) {
+			this.arc = arc;
+			this.form = form;
+		}
+
+	}
+
+}
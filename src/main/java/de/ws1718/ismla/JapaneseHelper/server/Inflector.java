@@ -0,0 +1,395 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import de.ws1718.ismla.JapaneseHelper.shared.InflectableToken;
+import de.ws1718.ismla.JapaneseHelper.shared.InflectedToken;
+import de.ws1718.ismla.JapaneseHelper.shared.Inflection;
+import de.ws1718.ismla.JapaneseHelper.shared.Token;
+
+/**
+ * Generates the inflected forms of verbs and adjectives from the inflection
+ * table templates, and finishes tokens for the dictionary (cleaning, difficulty
+ * ratings and ranking keys).
+ *
+ * Most paradigms are regular: an inflected form is the lemma minus a fixed
+ * number of final characters plus a suffix from the template. The
+ * {@link Deinflector} only needs to know these suffixes to find the lemmas of
+ * an inflected form, so the inflected forms of such lemmas are only generated
+ * when they are looked up. The irregular paradigms ("aru", "suru-indep" and
+ * "kuru") are still inflected while the dictionary is preprocessed.
+ *
+ * The inflector only reads its templates and difficulty ratings, so it can be
+ * shared between threads.
+ */
+final class Inflector {
+
+	private static final Logger logger = Logger.getLogger(Inflector.class.getSimpleName());
+
+	private static final Pattern PUNCTUATION = Pattern.compile("[-\\.\\s+]");
+	private static final String INFERRED = "probably ";
+
+	private final Map<String, List<Entry<Inflection, String>>> inflections;
+	private final DifficultyRatings difficultyRatings;
+
+	/**
+	 * @param inflections
+	 *            a map from inflection paradigm names to lists of entries from
+	 *            {@link Inflection Inflections} to inflection suffixes
+	 * @param difficultyRatings
+	 *            a map from kanji characters to difficulty ratings
+	 */
+	Inflector(Map<String, List<Entry<Inflection, String>>> inflections, Map<String, String> difficultyRatings) {
+		this.inflections = inflections;
+		this.difficultyRatings = new DifficultyRatings(difficultyRatings);
+	}
+
+	/**
+	 * If the inflection group was inferred by the {@link WiktionaryPreprocessor},
+	 * we need to remove the "probably". We only want to use that information in
+	 * the UI.
+	 *
+	 * @param tok
+	 *            an inflectable token
+	 * @return the name of its inflection paradigm, as used by the templates
+	 */
+	static String paradigmName(Token tok) {
+		String paradigm = tok.getInflectionParadigm();
+		return paradigm.startsWith(INFERRED) ? paradigm.substring(INFERRED.length()) : paradigm;
+	}
+
+	/**
+	 * @return the names of the inflection paradigms that have a template
+	 */
+	Set<String> paradigms() {
+		return Collections.unmodifiableSet(inflections.keySet());
+	}
+
+	/**
+	 * @param inflectionParadigm
+	 *            the name of an inflection paradigm
+	 * @return the number of final characters that are removed from a lemma of
+	 *         this paradigm before the suffixes are added, or -1 if the
+	 *         paradigm is irregular or has no template
+	 */
+	int removedCharacters(String inflectionParadigm) {
+		if (!inflections.containsKey(inflectionParadigm)) {
+			return -1;
+		}
+		switch (inflectionParadigm) {
+		case "aru":
+		case "suru-indep":
+		case "kuru":
+			return -1;
+		case "suru-i-ku":
+		case "suru-tsu":
+		case "suru":
+		case "zuru":
+			return 2;
+		case "na":
+		case "nari":
+		case "tari":
+			return 0;
+		default:
+			return 1;
+		}
+	}
+
+	/**
+	 * Checks whether the inflected forms of the lemma can be generated when
+	 * they are looked up: its paradigm needs to be regular, and its form and
+	 * pronunciation must not change when the lemma is {@link #finish(Token)
+	 * finished}, since the forms are generated from the finished lemma then.
+	 *
+	 * @param lemma
+	 *            a lemma that has not been finished yet
+	 * @return true if the inflected forms can be generated on demand
+	 */
+	boolean inflectsOnDemand(InflectableToken lemma) {
+		int removed = removedCharacters(paradigmName(lemma));
+		String form = lemma.getForm();
+		String pron = lemma.getPronunciation();
+		return removed >= 0 && form.length() >= removed && pron.length() >= removed && form.equals(cleanString(form))
+				&& pron.equals(cleanString(pron));
+	}
+
+	/**
+	 * @param inflectionParadigm
+	 *            the name of a regular inflection paradigm
+	 * @return the inflections of the paradigm and their (cleaned) suffixes,
+	 *         including both versions of the suffixes with optional kana, in
+	 *         the order of the template
+	 */
+	List<Entry<Inflection, String>> suffixes(String inflectionParadigm) {
+		List<Entry<Inflection, String>> paradigm = inflections.get(inflectionParadigm);
+		if (paradigm == null) {
+			return Collections.emptyList();
+		}
+		List<Entry<Inflection, String>> suffixes = new ArrayList<>();
+		for (Entry<Inflection, String> entry : paradigm) {
+			for (String suffix : variants(entry.getValue())) {
+				suffixes.add(new SimpleEntry<>(entry.getKey(), cleanString(suffix)));
+			}
+		}
+		return suffixes;
+	}
+
+	/**
+	 * Generates the inflected forms of the given token, finishes them and adds
+	 * them to the token.
+	 *
+	 * @param tok
+	 *            the token
+	 */
+	void inflect(InflectableToken tok) {
+		String inflectionParadigm = paradigmName(tok);
+		List<Entry<Inflection, String>> paradigm = inflections.get(inflectionParadigm);
+
+		if (paradigm == null) {
+			logger.warning("Could not find an inflection table template for \"" + inflectionParadigm + "\".");
+			return;
+		}
+
+		// The inflected forms share (most of) the rating of the lemma.
+		String stem = cleanString(tok.getForm());
+		String stemRating = difficultyRatings.rate(stem);
+		for (Entry<Inflection, String> entry : paradigm) {
+			for (String suffix : variants(entry.getValue())) {
+				InflectedToken inflTok = inflect(tok, suffix, entry.getKey(), inflectionParadigm, stem, stemRating);
+				if (inflTok != null) {
+					tok.addInflectedForm(inflTok);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Generates the forms of the given token for one inflection (there can be
+	 * several if the suffix contains optional kana) and finishes them. Unlike
+	 * {@link #inflect(InflectableToken)}, this doesn't add them to the token.
+	 *
+	 * @param tok
+	 *            the token
+	 * @param inflection
+	 *            the inflection
+	 * @return the inflected forms (empty if the paradigm doesn't have the
+	 *         inflection)
+	 */
+	List<InflectedToken> inflect(InflectableToken tok, Inflection inflection) {
+		String inflectionParadigm = paradigmName(tok);
+		List<InflectedToken> inflected = new ArrayList<>();
+		String stem = null;
+		String stemRating = null;
+		for (Entry<Inflection, String> entry : inflections.getOrDefault(inflectionParadigm,
+				Collections.<Entry<Inflection, String>> emptyList())) {
+			if (entry.getKey() != inflection) {
+				continue;
+			}
+			if (stem == null) {
+				stem = cleanString(tok.getForm());
+				stemRating = difficultyRatings.rate(stem);
+			}
+			for (String suffix : variants(entry.getValue())) {
+				InflectedToken inflTok = inflect(tok, suffix, inflection, inflectionParadigm, stem, stemRating);
+				if (inflTok != null) {
+					inflected.add(inflTok);
+				}
+			}
+		}
+		return inflected;
+	}
+
+	/**
+	 * Generates the form of a lemma that is inflected on demand for one suffix
+	 * of its paradigm (see {@link #suffixes(String)}) and finishes it. The
+	 * form doesn't need to be cleaned: the lemma and the suffixes are clean
+	 * already.
+	 *
+	 * @param lemma
+	 *            a finished lemma whose forms are generated on demand
+	 * @param removed
+	 *            the number of final characters that its paradigm removes
+	 *            (see {@link #removedCharacters(String)})
+	 * @param inflection
+	 *            the inflection
+	 * @param suffix
+	 *            the (cleaned) suffix
+	 * @return the inflected token, which refers to the lemma
+	 */
+	InflectedToken inflectOnDemand(InflectableToken lemma, int removed, Inflection inflection, String suffix) {
+		String form = lemma.getForm();
+		String pron = lemma.getPronunciation();
+		InflectedToken inflTok = new InflectedToken(lemma, form.substring(0, form.length() - removed) + suffix,
+				pron.substring(0, pron.length() - removed) + suffix, inflection);
+		inflTok.setDifficultyRating(difficultyRatings.rate(inflTok.getForm(), form, difficultyRatings.rate(form)));
+		RankingKeys.assign(inflTok);
+		return inflTok;
+	}
+
+	/**
+	 * Some entries contain optional kana (e.g. "なら（ば）" in ja-na.txt). We
+	 * create tokens for both versions (e.g. "ならば" and "なら").
+	 *
+	 * @param suffix
+	 *            the suffix from the template
+	 * @return the suffix without and with the optional kana, or only the
+	 *         suffix if there are none
+	 */
+	private static String[] variants(String suffix) {
+		int parOpen = suffix.indexOf("（");
+		int parClose = suffix.indexOf("）");
+		if (parOpen != -1 && parClose != -1 && parClose > parOpen) {
+			return new String[] { suffix.substring(0, parOpen) + suffix.substring(parClose + 1),
+					suffix.substring(0, parOpen) + suffix.substring(parOpen + 1, parClose)
+							+ suffix.substring(parClose + 1) };
+		}
+		return new String[] { suffix };
+	}
+
+	/**
+	 * Inflect the token by extracting its root, adding a suffix and creating a
+	 * (finished) {@link InflectedToken InflectedToken}.
+	 *
+	 * @param tok
+	 *            the lemma token
+	 * @param suffix
+	 *            the inflection suffix
+	 * @param inflection
+	 *            the inflection
+	 * @param inflectionParadigm
+	 *            the name of the inflection paradigm
+	 * @param stem
+	 *            the cleaned form of the lemma token
+	 * @param stemRating
+	 *            its difficulty rating
+	 * @return the inflected token or null if the lemma doesn't have this form
+	 */
+	private InflectedToken inflect(InflectableToken tok, String suffix, Inflection inflection,
+			String inflectionParadigm, String stem, String stemRating) {
+		String form = tok.getForm();
+		String pron = tok.getPronunciation();
+		String formInfl = "";
+		String pronInfl = "";
+
+		// Get the root of the predicate and add the inflectional suffix.
+		switch (inflectionParadigm) {
+		case "aru":
+			// The template 'aru' includes the root because it is irregular.
+			if ("有る".equals(form)) {
+				formInfl = suffix;
+			} else {
+				formInfl = aruKanjiToKana(suffix);
+			}
+			pronInfl = aruKanjiToKana(suffix);
+			break;
+		case "suru-indep":
+			// The template 'suru-indep' includes the root
+			// because it is irregular.
+			formInfl = suffix;
+			pronInfl = suffix;
+			// Turn the pure-kana forms into forms containing kanji.
+			if ("為る".equals(form)) {
+				// There seems to be only one reading for the
+				// imperfective inflection of the kanji version.
+				if (Inflection.IMPERFECTIVE.equals(inflection) || Inflection.IMPERFECTIVE3.equals(inflection)) {
+					return null;
+				}
+				if (suffix.startsWith("で")) {
+					formInfl = "出" + suffix.substring(1);
+				} else {
+					formInfl = "為" + suffix.substring(1);
+				}
+			}
+			break;
+		case "kuru":
+			/*
+			 * A special property of the verb with this inflection scheme is
+			 * that the vowel quality of final syllable of its root (来) changes
+			 * for some of the inflections--this kanji is represented by
+			 * different kana when transcribing its pronunciation. Therefore, we
+			 * included the kana versions of this syllable in the template and
+			 * need to avoid including this syllable twice now.
+			 */
+			pronInfl = pron.substring(0, pron.length() - 2) + suffix;
+			if (form.endsWith("来る")) {
+				// Keep the kanji character.
+				formInfl = form.substring(0, form.length() - 1) + suffix.substring(1);
+			} else {
+				formInfl = form.substring(0, pron.length() - 2) + suffix;
+			}
+			break;
+		default:
+			// Remove the final syllable(s) (e.g. する/ずる) to get the root.
+			int removed = removedCharacters(inflectionParadigm);
+			formInfl = form.substring(0, form.length() - removed) + suffix;
+			pronInfl = pron.substring(0, pron.length() - removed) + suffix;
+		}
+
+		InflectedToken inflTok = new InflectedToken(tok, formInfl, pronInfl, inflection);
+		clean(inflTok);
+		inflTok.setDifficultyRating(difficultyRatings.rate(inflTok.getForm(), stem, stemRating));
+		RankingKeys.assign(inflTok);
+		return inflTok;
+	}
+
+	private static String aruKanjiToKana(String word) {
+		return word.replace('有', 'あ').replace('無', 'な');
+	}
+
+	/**
+	 * Clean the token and add its difficulty rating(s) and ranking keys.
+	 *
+	 * @param tok
+	 *            the token
+	 */
+	void finish(Token tok) {
+		clean(tok);
+
+		// Set the difficulty ratings for its characters.
+		tok.setDifficultyRating(difficultyRatings.rate(tok.getForm()));
+
+		// Precompute the keys for ranking the token against Kuromoji tokens.
+		RankingKeys.assign(tok);
+	}
+
+	/**
+	 * Remove whitespace and punctuation from the form and pronunciation.
+	 *
+	 * @param tok
+	 *            the token
+	 */
+	private static void clean(Token tok) {
+		tok.setForm(cleanString(tok.getForm()));
+		tok.setPronunciation(cleanString(tok.getPronunciation()));
+	}
+
+	private static String cleanString(String word) {
+		return PUNCTUATION.matcher(word).replaceAll("");
+	}
+
+	/**
+	 * Creates a copy of a finished lemma and generates its inflected forms,
+	 * which refer to the copy. The lemma itself is shared and not modified.
+	 *
+	 * @param lemma
+	 *            a finished lemma whose forms are generated on demand
+	 * @return the copy with its inflected forms
+	 */
+	InflectableToken inflectCopy(InflectableToken lemma) {
+		InflectableToken copy = new InflectableToken(lemma);
+		copy.setPrettyPos(lemma.getPrettyPos());
+		copy.setDifficultyRating(lemma.getDifficultyRating());
+		copy.setRankingKeys(lemma.getPosClass(), lemma.getReading());
+		inflect(copy);
+		return copy;
+	}
+
+}
@@ -0,0 +1,86 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import com.mariten.kanatools.KanaConverter;
+
+/**
+ * Normalizes pronunciations for comparing them (see
+ * {@link RankingKeys#convertPronunciation(String)}): removes periods and
+ * converts katakana to hiragana.
+ *
+ * This used to be a regular expression and a call to
+ * {@link KanaConverter#convertKana(String, int)} for every pronunciation,
+ * each of which copied the string. The normalizer does both in a single pass
+ * over the characters with a lookup table, and returns the pronunciation
+ * itself if nothing changes (e.g. for most Wiktionary pronunciations, which
+ * are in hiragana already).
+ *
+ * The table is filled by asking the KanaConverter about each character of the
+ * Katakana block once, so the output is the same as before. The converter
+ * leaves all other characters unchanged.
+ */
+public final class KanaNormalizer {
+
+	private static final char KATAKANA_FIRST = '゠';
+	private static final char KATAKANA_LAST = 'ヿ';
+
+	// The hiragana for each character of the Katakana block, or the character
+	// itself.
+	private static final char[] HIRAGANA = new char[KATAKANA_LAST - KATAKANA_FIRST + 1];
+
+	static {
+		for (char c = KATAKANA_FIRST; c <= KATAKANA_LAST; c++) {
+			String converted = KanaConverter.convertKana(String.valueOf(c), KanaConverter.OP_ZEN_KATA_TO_ZEN_HIRA);
+			if (converted.length() != 1) {
+				throw new IllegalStateException("Cannot convert " + c + " to a single character: " + converted);
+			}
+			HIRAGANA[c - KATAKANA_FIRST] = converted.charAt(0);
+		}
+	}
+
+	private KanaNormalizer() {
+	}
+
+	/**
+	 * @param pron
+	 *            the pronunciation in katakana or hiragana
+	 * @return the pronunciation in hiragana, without periods (the same
+	 *         instance if it doesn't change)
+	 */
+	public static String normalize(String pron) {
+		int length = pron.length();
+		int i = 0;
+		while (i < length && normalize(pron.charAt(i)) == pron.charAt(i)) {
+			i++;
+		}
+		if (i == length) {
+			return pron;
+		}
+		char[] normalized = new char[length];
+		pron.getChars(0, i, normalized, 0);
+		int j = i;
+		for (; i < length; i++) {
+			char c = pron.charAt(i);
+			if (c != '.') {
+				normalized[j++] = normalize(c);
+			}
+		}
+		return new String(normalized, 0, j);
+	}
+
+	/**
+	 * @param c
+	 *            a character
+	 * @return its hiragana if it is katakana, 0 if it is a period (which is
+	 *         removed), or the character itself
+	 */
+	private static char normalize(char c) {
+		if (c == '.') {
+			return 0;
+		}
+		if (c >= KATAKANA_FIRST && c <= KATAKANA_LAST) {
+			return HIRAGANA[c - KATAKANA_FIRST];
+		}
+		return c;
+	}
+
+}
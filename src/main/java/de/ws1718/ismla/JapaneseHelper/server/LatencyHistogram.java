@@ -0,0 +1,170 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of durations in nanoseconds, for the percentiles of
+ * the lookup stages (see {@link LookupMetrics}).
+ *
+ * The buckets are log-linear: every power of two is split into
+ * {@link #SUB_BUCKETS} buckets of the same width, so a percentile is off by
+ * at most 1/16 of its value, no matter whether it is a microsecond or a
+ * minute. Recording a duration increments a few counters and never blocks,
+ * so the servlet threads can record concurrently. A snapshot is not atomic:
+ * durations that are recorded while it is taken may or may not be counted.
+ */
+public final class LatencyHistogram {
+
+	// The number of bits of a duration below its highest bit that select the
+	// bucket.
+	private static final int SUB_BUCKET_BITS = 4;
+	static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	// Longer durations (about 18 minutes) go into the last bucket.
+	private static final int MAX_EXPONENT = 40;
+	private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a duration.
+	 *
+	 * @param nanos
+	 *            the duration in nanoseconds (negative durations count as 0)
+	 */
+	public void record(long nanos) {
+		nanos = Math.max(0, nanos);
+		buckets.incrementAndGet(bucket(nanos));
+		count.increment();
+		sum.add(nanos);
+		if (nanos > max.get()) {
+			max.accumulateAndGet(nanos, Math::max);
+		}
+	}
+
+	/**
+	 * @return the current counts
+	 */
+	public Snapshot snapshot() {
+		long[] counts = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets.get(i);
+			total += counts[i];
+		}
+		return new Snapshot(counts, total, sum.sum(), max.get());
+	}
+
+	static int bucket(long nanos) {
+		if (nanos < SUB_BUCKETS) {
+			return (int) nanos;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		if (exponent > MAX_EXPONENT) {
+			return BUCKETS - 1;
+		}
+		int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * @return the smallest duration that falls into the bucket
+	 */
+	static long lowerBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+	}
+
+	@Override
+	public String toString() {
+		return snapshot().toString();
+	}
+
+	/**
+	 * The counts of a histogram at some point in time.
+	 */
+	public static final class Snapshot {
+
+		private final long[] counts;
+		private final long count;
+		private final long sum;
+		private final long max;
+
+		Snapshot(long[] counts, long count, long sum, long max) {
+			this.counts = counts;
+			this.count = count;
+			this.sum = sum;
+			this.max = max;
+		}
+
+		/**
+		 * @return the number of recorded durations
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * @return the sum of the recorded durations in nanoseconds
+		 */
+		public long getSumNanos() {
+			return sum;
+		}
+
+		/**
+		 * @return the longest recorded duration in nanoseconds
+		 */
+		public long getMaxNanos() {
+			return max;
+		}
+
+		/**
+		 * @return the average duration in nanoseconds (0 if there are none)
+		 */
+		public double getMeanNanos() {
+			return count == 0 ? 0 : (double) sum / count;
+		}
+
+		/**
+		 * @param quantile
+		 *            the quantile, between 0 and 1 (e.g. 0.95 for the 95th
+		 *            percentile)
+		 * @return the duration in nanoseconds below which the quantile of the
+		 *         durations fall: the middle of its bucket, but never more
+		 *         than the longest duration (0 if there are none)
+		 */
+		public long getPercentileNanos(double quantile) {
+			if (count == 0) {
+				return 0;
+			}
+			long rank = Math.max(1, (long) Math.ceil(quantile * count));
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= rank) {
+					long lower = lowerBound(i);
+					long upper = i + 1 < counts.length ? lowerBound(i + 1) : lower;
+					return Math.min(max, lower + (upper - lower) / 2);
+				}
+			}
+			// Durations were recorded while the buckets were copied.
+			return max;
+		}
+
+		@Override
+		public String toString() {
+			return count + " calls, p50 " + getPercentileNanos(0.5) / 1000 + " µs, p95 "
+					+ getPercentileNanos(0.95) / 1000 + " µs, p99 " + getPercentileNanos(0.99) / 1000 + " µs, max "
+					+ max / 1000 + " µs";
+		}
+
+	}
+
+}
@@ -1,12 +1,24 @@
 package de.ws1718.ismla.JapaneseHelper.server;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import javax.servlet.ServletContext;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 import javax.servlet.http.HttpSessionAttributeListener;
@@ -14,22 +26,28 @@ import javax.servlet.http.HttpSessionBindingEvent;
 import javax.servlet.http.HttpSessionEvent;
 import javax.servlet.http.HttpSessionListener;
 
-import com.google.common.collect.ListMultimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.opencsv.CSVIterator;
 import com.opencsv.CSVReader;
 
-import de.ws1718.ismla.JapaneseHelper.shared.Token;
-
 // This annotation doesn't work with GWT it seems. Had to manually add it to web.xml
 // @WebListener()
 public class Listener implements ServletContextListener, HttpSessionListener, HttpSessionAttributeListener {
 
+	private static final Logger logger = Logger.getLogger(Listener.class.getSimpleName());
+
 	// GWT looks for this inside src/main/webapp
 	public static final String RESOURCES_PATH = "/WEB-INF/";
 	public static final String DIFFICULTY_RATING_PATH = RESOURCES_PATH + "difficulty-rating/joyo-kanji.csv";
 	public static final String DICTIONARY_PATH = RESOURCES_PATH + "dictionary/";
 	public static final String INFLECTION_TEMPLATES_PATH = RESOURCES_PATH + "inflection-templates/";
 	private static final String TOKENIZE_PATH = RESOURCES_PATH + "tokenize/";
+	// The context parameter with the path of the dictionary snapshot file.
+	private static final String SNAPSHOT_PARAMETER = "dictionarySnapshot";
+	// The dictionary that the build compiled into the WAR.
+	public static final String COMPILED_DICTIONARY_PATH = RESOURCES_PATH + "dictionary.bin";
+	// The maximum number of candidate tokens in the cached lookup results.
+	private static final long LOOKUP_CACHE_WEIGHT = 500000;
 
 	// Public constructor is required by servlet spec
 	public Listener() {
@@ -38,7 +56,6 @@ public class Listener implements ServletContextListener, HttpSessionListener, Ht
 	// -------------------------------------------------------
 	// ServletContextListener implementation
 	// -------------------------------------------------------
-	@SuppressWarnings("unchecked")
 	public void contextInitialized(ServletContextEvent sce) {
 		/*
 		 * This method is called when the servlet context is initialized(when
@@ -46,21 +63,123 @@ public class Listener implements ServletContextListener, HttpSessionListener, Ht
 		 * related data here.
 		 */
 
-		// First read the file storing kanji difficulty ratings.
-		InputStream difficultyRatingStream = sce.getServletContext().getResourceAsStream(DIFFICULTY_RATING_PATH);
-		HashMap<String, String> difficultyRatings = readDifficultyRatings(difficultyRatingStream);
+		// Where the start-up goes (see StartupReportServlet).
+		StartupReport report = new StartupReport();
+		sce.getServletContext().setAttribute("startupReport", report);
+		// How far the start-up got (see ReadinessServlet).
+		Readiness readiness = new Readiness();
+		sce.getServletContext().setAttribute("readiness", readiness);
+
+		// Loading the IPAdic dictionary is expensive, so all requests share
+		// the same tokenizer.
+		report.time("Kuromoji", () -> {
+			SharedTokenizer tokenizer = new SharedTokenizer();
+			logger.info("loaded the Kuromoji tokenizer in " + tokenizer.getLoadMillis() + " ms");
+			sce.getServletContext().setAttribute("tokenizer", tokenizer);
+		});
+
+		report.time("services", () -> startServices(sce));
+
+		// Parsing the Wiktionary dump takes minutes, so it is loaded in the
+		// background. Until then, the lookups only give Kuromoji's analysis.
+		readiness.set(Readiness.State.PROVISIONAL, "loading the dictionary");
+		ExecutorService dictionaryLoader = Executors.newSingleThreadExecutor(
+				new ThreadFactoryBuilder().setNameFormat("dictionary-loader").setDaemon(true).build());
+		sce.getServletContext().setAttribute("dictionaryLoader", dictionaryLoader);
+		dictionaryLoader.execute(() -> loadDictionary(sce, report, readiness));
+		dictionaryLoader.shutdown();
+	}
+
+	/**
+	 * Loads the dictionary and publishes it in the servlet context, first
+	 * without and then with the inflection automaton. The servlets read the
+	 * "dictionary" attribute once per request, so each request sees either
+	 * version (or none) but never a mix.
+	 * 
+	 * @param sce
+	 *            the ServletContextEvent
+	 * @param report
+	 *            the start-up report
+	 * @param readiness
+	 *            is updated as the dictionary is loaded
+	 */
+	private void loadDictionary(ServletContextEvent sce, StartupReport report, Readiness readiness) {
+		try {
+			// First the Wiktionary dump (together with the inflection templates
+			// and kanji difficulty ratings).
+			DictionaryIndex lemmas;
+			try (StartupReport.Phase phase = report.phase("dictionary")) {
+				lemmas = readTokens(sce);
+				phase.setDetail(lemmas.size() + " entries " + lemmas.store());
+			}
+			if (Thread.currentThread().isInterrupted()) {
+				// The application was undeployed in the meantime.
+				return;
+			}
+			// The lemmas and the forms that the inflection templates generate
+			// can already be looked up. The index is immutable, so the servlet
+			// threads can share it without synchronization.
+			sce.getServletContext().setAttribute("dictionary", lemmas);
+			readiness.set(Readiness.State.LEMMAS, "building the inflection automaton");
+
+			// Forms that stack several inflections are not in the dictionary,
+			// they are resolved when they are looked up.
+			DictionaryIndex dictionary = report.time("inflection automaton",
+					() -> DictionaryLoader.withInflectionAutomaton(lemmas,
+							DictionarySources.fromServletContext(sce.getServletContext())));
+			if (Thread.currentThread().isInterrupted()) {
+				return;
+			}
+			logger.info(dictionary.toString());
+			sce.getServletContext().setAttribute("dictionary", dictionary);
+			readiness.set(Readiness.State.READY, dictionary.toString());
+
+			report.time("dictionary footprint", () -> report.addDictionary(dictionary));
+		} catch (RuntimeException | Error e) {
+			// Also an Error (e.g. running out of memory) must not leave the
+			// lookups provisional forever.
+			logger.log(Level.SEVERE, "Could not load the dictionary", e);
+			readiness.set(Readiness.State.FAILED, "could not load the dictionary: " + e);
+			if (e instanceof Error) {
+				throw (Error) e;
+			}
+		} finally {
+			report.finish();
+			logger.info(report.toString());
+		}
+	}
+
+	/**
+	 * Sets up the lookup cache, the metrics and the worker threads.
+	 * 
+	 * @param sce
+	 *            the ServletContextEvent
+	 */
+	private void startServices(ServletContextEvent sce) {
+		// Learners often look up the same sentences.
+		sce.getServletContext().setAttribute("lookupCache", new LookupCache(LOOKUP_CACHE_WEIGHT));
+
+		// How long the stages of the lookups take (see MetricsServlet).
+		sce.getServletContext().setAttribute("lookupMetrics", new LookupMetrics());
 
-		// Then the Wiktionary dump.
-		ListMultimap<String, Token> tokenMap = readTokens(sce, difficultyRatings);
-		// Store the Wiktionary dump in ServletContext so that we don't need to
-		// initialize it afterwards.
-		sce.getServletContext().setAttribute("tokenMap", tokenMap);
+		// Worker threads for analyzing the sentences of batch lookups.
+		ExecutorService lookupExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+				new ThreadFactoryBuilder().setNameFormat("lookup-worker-%d").setDaemon(true).build());
+		sce.getServletContext().setAttribute("lookupExecutor", lookupExecutor);
 
-		Object[] toTokenize = readFilesToBeTokenized(sce);
-		List<String> tokenizationFiles = (List<String>) toTokenize[0];
-		List<InputStream> tokenizationStreams = (List<InputStream>) toTokenize[1];
-		sce.getServletContext().setAttribute("tokenizationFiles", tokenizationFiles);
-		sce.getServletContext().setAttribute("tokenizationStreams", tokenizationStreams);
+		// Worker threads for tokenizing the files in TOKENIZE_PATH.
+		int tokenizationParallelism = Runtime.getRuntime().availableProcessors();
+		ExecutorService tokenizationExecutor = Executors.newFixedThreadPool(tokenizationParallelism,
+				new ThreadFactoryBuilder().setNameFormat("tokenization-worker-%d").setDaemon(true).build());
+		sce.getServletContext().setAttribute("tokenizationExecutor", tokenizationExecutor);
+		sce.getServletContext().setAttribute("tokenizationParallelism", tokenizationParallelism);
+		// The tokenization runs in the background, the client polls its
+		// progress.
+		sce.getServletContext().setAttribute("tokenizationJobs",
+				new TokenizationJobs(tokenizationExecutor, tokenizationParallelism));
+
+		// Each job opens the files again.
+		sce.getServletContext().setAttribute("tokenizationFiles", readFilesToBeTokenized(sce));
 
 	}
 
@@ -69,6 +188,45 @@ public class Listener implements ServletContextListener, HttpSessionListener, Ht
 		 * This method is invoked when the Servlet Context (the Web application)
 		 * is undeployed or Application Server shuts down.
 		 */
+		ExecutorService dictionaryLoader = (ExecutorService) sce.getServletContext().getAttribute("dictionaryLoader");
+		if (dictionaryLoader != null) {
+			dictionaryLoader.shutdownNow();
+			sce.getServletContext().removeAttribute("dictionaryLoader");
+		}
+		Object tokenizer = sce.getServletContext().getAttribute("tokenizer");
+		if (tokenizer != null) {
+			logger.info(tokenizer.toString());
+			sce.getServletContext().removeAttribute("tokenizer");
+		}
+		ExecutorService lookupExecutor = (ExecutorService) sce.getServletContext().getAttribute("lookupExecutor");
+		if (lookupExecutor != null) {
+			lookupExecutor.shutdownNow();
+			sce.getServletContext().removeAttribute("lookupExecutor");
+		}
+		TokenizationJobs tokenizationJobs = (TokenizationJobs) sce.getServletContext()
+				.getAttribute("tokenizationJobs");
+		if (tokenizationJobs != null) {
+			tokenizationJobs.shutdown();
+			sce.getServletContext().removeAttribute("tokenizationJobs");
+		}
+		ExecutorService tokenizationExecutor = (ExecutorService) sce.getServletContext()
+				.getAttribute("tokenizationExecutor");
+		if (tokenizationExecutor != null) {
+			tokenizationExecutor.shutdownNow();
+			sce.getServletContext().removeAttribute("tokenizationExecutor");
+		}
+		Object lookupMetrics = sce.getServletContext().getAttribute("lookupMetrics");
+		if (lookupMetrics != null) {
+			logger.info(lookupMetrics.toString());
+			sce.getServletContext().removeAttribute("lookupMetrics");
+		}
+		sce.getServletContext().removeAttribute("startupReport");
+		sce.getServletContext().removeAttribute("readiness");
+		Object lookupCache = sce.getServletContext().getAttribute("lookupCache");
+		if (lookupCache != null) {
+			logger.info(lookupCache.toString());
+			sce.getServletContext().removeAttribute("lookupCache");
+		}
 	}
 
 	// -------------------------------------------------------
@@ -105,29 +263,130 @@ public class Listener implements ServletContextListener, HttpSessionListener, Ht
 	}
 
 	/**
-	 * Reads the tokens from the Wiktionary dump and generates inflected forms.
+	 * Loads the dictionary, trying these sources in order:
+	 * <ol>
+	 * <li>the shared snapshot file named by the context parameter
+	 * "dictionarySnapshot" (if it was compiled from the current sources)
+	 * <li>the snapshot that the build compiled into the WAR (see
+	 * {@link DictionaryCompiler}), if it is up to date. It is copied to the
+	 * shared snapshot file if one is configured.
+	 * <li>the Wiktionary dump itself, which is parsed and inflected. The result
+	 * is written to the shared snapshot file if one is configured.
+	 * </ol>
+	 * 
+	 * A snapshot is up to date if the fingerprint of the sources it was
+	 * compiled from matches the one of the sources in the web application, so
+	 * editing a TSV file without rebuilding falls back to parsing.
 	 * 
 	 * @param sce
 	 *            the ServletContextEvent
-	 * @param difficultyRatings
-	 *            a map containing jouyou kanji difficulty ratings
-	 * @return a ListMultimap from token forms to Token instances
+	 * @return a read-only index from token forms to Token instances
 	 */
-	private ListMultimap<String, Token> readTokens(ServletContextEvent sce, HashMap<String, String> difficultyRatings) {
-		List<String> inflectionFiles = new ArrayList<String>(
-				sce.getServletContext().getResourcePaths(INFLECTION_TEMPLATES_PATH));
-		List<InputStream> inflectionStreams = new ArrayList<>();
-		for (String file : inflectionFiles) {
-			inflectionStreams.add(sce.getServletContext().getResourceAsStream(file));
+	private DictionaryIndex readTokens(ServletContextEvent sce) {
+		ServletContext context = sce.getServletContext();
+		DictionarySources sources = DictionarySources.fromServletContext(context);
+		String snapshot = context.getInitParameter(SNAPSHOT_PARAMETER);
+		Path snapshotFile = snapshot == null || snapshot.trim().isEmpty() ? null : Paths.get(snapshot.trim());
+
+		if (snapshotFile != null && DictionarySnapshot.isUpToDate(snapshotFile, sources)) {
+			try {
+				DictionaryIndex dictionary = DictionarySnapshot.map(snapshotFile);
+				logger.info("mapped the dictionary snapshot " + snapshotFile);
+				return dictionary;
+			} catch (IOException e) {
+				logger.warning("Could not map the dictionary snapshot (" + e.getMessage() + "), recreating it");
+			}
+		}
+
+		DictionaryIndex dictionary = readCompiledDictionary(context, sources, snapshotFile);
+		if (dictionary != null) {
+			return dictionary;
+		}
+
+		logger.info("parsing the Wiktionary dump: " + sources);
+		try {
+			dictionary = sources.preprocess().getDictionary();
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not read the dictionary", e);
 		}
-		List<String> dictionaryFiles = new ArrayList<String>(sce.getServletContext().getResourcePaths(DICTIONARY_PATH));
-		List<InputStream> dictionaryStreams = new ArrayList<>();
-		for (String file : dictionaryFiles) {
-			dictionaryStreams.add(sce.getServletContext().getResourceAsStream(file));
+		if (snapshotFile == null) {
+			return dictionary;
+		}
+		try {
+			DictionarySnapshot.write(dictionary, sources.fingerprint(), snapshotFile);
+			logger.info("wrote the dictionary snapshot " + snapshotFile);
+			// Use the mapped version so that the tokens don't stay on the heap.
+			return DictionarySnapshot.map(snapshotFile);
+		} catch (IOException e) {
+			logger.warning("Could not write the dictionary snapshot " + snapshotFile + ": " + e.getMessage());
+			return dictionary;
+		}
+	}
+
+	/**
+	 * Maps the dictionary that was compiled into the WAR.
+	 * 
+	 * @param context
+	 *            the servlet context
+	 * @param sources
+	 *            the sources of the dictionary
+	 * @param snapshotFile
+	 *            the shared snapshot file (or null)
+	 * @return the dictionary or null if there is no compiled dictionary or it
+	 *         is out of date or corrupt
+	 */
+	private DictionaryIndex readCompiledDictionary(ServletContext context, DictionarySources sources,
+			Path snapshotFile) {
+		Path compiled = null;
+		boolean temporary = false;
+		try {
+			String realPath = context.getRealPath(COMPILED_DICTIONARY_PATH);
+			if (realPath != null && new File(realPath).isFile()) {
+				compiled = Paths.get(realPath);
+			} else {
+				// The WAR was not unpacked, so the file needs to be copied before
+				// it can be mapped.
+				try (InputStream is = context.getResourceAsStream(COMPILED_DICTIONARY_PATH)) {
+					if (is == null) {
+						logger.info("there is no compiled dictionary in the WAR");
+						return null;
+					}
+					Path target = snapshotFile != null ? snapshotFile : Files.createTempFile("dictionary", ".bin");
+					temporary = snapshotFile == null;
+					Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+					Files.copy(is, tmp, StandardCopyOption.REPLACE_EXISTING);
+					Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+					compiled = target;
+				}
+			}
+
+			if (!DictionarySnapshot.isUpToDate(compiled, sources)) {
+				logger.warning("The compiled dictionary " + compiled + " is out of date, ignoring it");
+				return null;
+			}
+			if (snapshotFile != null && !compiled.equals(snapshotFile)) {
+				Path tmp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+				Files.copy(compiled, tmp, StandardCopyOption.REPLACE_EXISTING);
+				Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				compiled = snapshotFile;
+			}
+			DictionaryIndex dictionary = DictionarySnapshot.map(compiled);
+			logger.info("mapped the compiled dictionary " + compiled);
+			return dictionary;
+		} catch (IOException e) {
+			logger.warning("Could not load the compiled dictionary (" + e.getMessage() + ")");
+			return null;
+		} finally {
+			if (temporary && compiled != null) {
+				// The mapping stays valid after the file is deleted (on Unix;
+				// elsewhere the file is deleted when the JVM exits).
+				try {
+					Files.delete(compiled);
+				} catch (IOException e) {
+					compiled.toFile().deleteOnExit();
+				}
+			}
 		}
-		WiktionaryPreprocessor wp = new WiktionaryPreprocessor(inflectionFiles, inflectionStreams, dictionaryStreams,
-				difficultyRatings);
-		return wp.getTokens();
 	}
 
 	/**
@@ -142,7 +401,7 @@ public class Listener implements ServletContextListener, HttpSessionListener, Ht
 	public static HashMap<String, String> readDifficultyRatings(InputStream difficultyRatingStream) {
 		HashMap<String, String> difficultyRatings = new HashMap<>();
 
-		try (InputStreamReader isr = new InputStreamReader(difficultyRatingStream);
+		try (InputStreamReader isr = new InputStreamReader(difficultyRatingStream, StandardCharsets.UTF_8);
 				CSVReader reader = new CSVReader(isr)) {
 			CSVIterator iterator = new CSVIterator(reader);
 
@@ -168,15 +427,8 @@ public class Listener implements ServletContextListener, HttpSessionListener, Ht
 		return difficultyRatings;
 	}
 
-	private Object[] readFilesToBeTokenized(ServletContextEvent sce) {
-		List<String> files = new ArrayList<String>(sce.getServletContext().getResourcePaths(TOKENIZE_PATH));
-		List<InputStream> streams = new ArrayList<>();
-		for (String file : files) {
-			streams.add(sce.getServletContext().getResourceAsStream(file));
-		}
-		Object[] rval = new Object[2];
-		rval[0] = files;
-		rval[1] = streams;
-		return rval;
+	private List<String> readFilesToBeTokenized(ServletContextEvent sce) {
+		Set<String> files = sce.getServletContext().getResourcePaths(TOKENIZE_PATH);
+		return files == null ? new ArrayList<String>() : new ArrayList<String>(files);
 	}
 }
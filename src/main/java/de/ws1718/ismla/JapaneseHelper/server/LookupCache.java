@@ -0,0 +1,152 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import de.ws1718.ismla.JapaneseHelper.shared.Token;
+
+/**
+ * A bounded cache for the results of {@link LookupServiceImpl#lookup(String)}
+ * so that sentences that are looked up again and again are only analyzed once.
+ *
+ * The results depend on the dictionary, so the cache remembers which
+ * {@link DictionaryIndex} it was filled with and starts over with an empty
+ * cache as soon as it is used with a different one. (Results that are still
+ * being computed with the old dictionary end up in the discarded cache.)
+ *
+ * The cached results are shared between requests and must not be modified.
+ */
+public class LookupCache {
+
+	private final long maximumWeight;
+	private volatile Generation current;
+	// The statistics of the caches for previous dictionaries.
+	private CacheStats retiredStats = new CacheStats(0, 0, 0, 0, 0, 0);
+
+	/**
+	 * Creates a new cache.
+	 *
+	 * @param maximumWeight
+	 *            the maximum total weight of the cached results, where each
+	 *            result weighs as much as the number of candidate tokens it
+	 *            contains (plus one)
+	 */
+	public LookupCache(long maximumWeight) {
+		this.maximumWeight = maximumWeight;
+		current = new Generation(null, maximumWeight);
+	}
+
+	/**
+	 * Returns the cached result for the sentence or, if there is none, computes
+	 * and caches it. Concurrent requests for the same sentence only compute it
+	 * once.
+	 *
+	 * @param sentence
+	 *            the sentence
+	 * @param dictionary
+	 *            the dictionary that the result is based on
+	 * @param analysis
+	 *            computes the result if it is not cached yet
+	 * @return the result
+	 */
+	public List<ArrayList<Token>> get(String sentence, DictionaryIndex dictionary,
+			Supplier<List<ArrayList<Token>>> analysis) {
+		Generation generation = current;
+		if (generation.dictionary != dictionary) {
+			generation = replace(dictionary);
+		}
+		try {
+			return generation.cache.get(normalize(sentence), analysis::get);
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * Removes all cached results.
+	 */
+	public void invalidateAll() {
+		current.cache.invalidateAll();
+	}
+
+	/**
+	 * @return the number of cached results
+	 */
+	public long size() {
+		return current.cache.size();
+	}
+
+	/**
+	 * @return the hit/miss/eviction statistics (summed up over all
+	 *         dictionaries)
+	 */
+	public synchronized CacheStats stats() {
+		return retiredStats.plus(current.cache.stats());
+	}
+
+	@Override
+	public String toString() {
+		CacheStats stats = stats();
+		return "lookup cache: " + size() + " sentences, " + stats.hitCount() + " hits, " + stats.missCount()
+				+ " misses (hit rate " + String.format("%.1f", stats.hitRate() * 100) + "%), "
+				+ stats.evictionCount() + " evictions";
+	}
+
+	/**
+	 * The cache key of a sentence. {@link LookupServiceImpl#lookup(String)}
+	 * ignores leading and trailing whitespace, so we do too.
+	 *
+	 * @param sentence
+	 *            the sentence
+	 * @return the key
+	 */
+	static String normalize(String sentence) {
+		return sentence.trim();
+	}
+
+	private synchronized Generation replace(DictionaryIndex dictionary) {
+		Generation generation = current;
+		if (generation.dictionary != dictionary) {
+			// The cached results belong to the previous dictionary.
+			retiredStats = retiredStats.plus(generation.cache.stats());
+			generation.cache.invalidateAll();
+			generation = new Generation(dictionary, maximumWeight);
+			current = generation;
+		}
+		return generation;
+	}
+
+	private static int weigh(List<ArrayList<Token>> result) {
+		int weight = 1;
+		for (ArrayList<Token> candidates : result) {
+			weight += candidates.size();
+		}
+		return weight;
+	}
+
+	/**
+	 * The cached results for one dictionary.
+	 */
+	private static class Generation {
+		final DictionaryIndex dictionary;
+		final Cache<String, List<ArrayList<Token>>> cache;
+
+		Generation(DictionaryIndex dictionary, long maximumWeight) {
+			this.dictionary = dictionary;
+			cache = CacheBuilder.newBuilder().maximumWeight(maximumWeight)
+					.weigher((String sentence, List<ArrayList<Token>> result) -> weigh(result)).recordStats()
+					.build();
+		}
+	}
+
+}
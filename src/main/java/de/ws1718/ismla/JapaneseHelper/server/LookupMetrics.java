@@ -0,0 +1,237 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.cache.CacheStats;
+
+/**
+ * Timers and counters for the stages of the lookup pipeline, so that we can
+ * tell where the time of a slow lookup goes. The {@link MetricsServlet}
+ * exposes them as JSON and in the Prometheus text format.
+ *
+ * Everything is lock-free (see {@link LatencyHistogram}), so the servlet
+ * threads record without waiting for each other.
+ */
+public final class LookupMetrics {
+
+	/**
+	 * The timed stages. The analysis stages are recorded once per analyzed
+	 * sentence (summed up over its tokens), the others once per request.
+	 */
+	public enum Stage {
+		/** A whole lookup() call, including the cache. */
+		LOOKUP("lookup"),
+		/** A whole lookupBatch() call. */
+		LOOKUP_BATCH("lookup_batch"),
+		/** Tokenizing the sentence with Kuromoji. */
+		KUROMOJI("kuromoji"),
+		/** Looking up the Kuromoji tokens in the dictionary. */
+		DICTIONARY("dictionary"),
+		/** Joining inflected forms that span several Kuromoji tokens. */
+		JOINING("joining"),
+		/** Ranking the candidates of the tokens. */
+		SORTING("sorting"),
+		/** Encoding the result of an RPC call. */
+		SERIALIZATION("serialization");
+
+		private final String label;
+
+		private Stage(String label) {
+			this.label = label;
+		}
+
+		/**
+		 * @return the name of the stage in the exported metrics
+		 */
+		public String getLabel() {
+			return label;
+		}
+	}
+
+	// The percentiles that are exported.
+	private static final double[] QUANTILES = { 0.5, 0.95, 0.99 };
+	private static final String PREFIX = "japanesehelper_";
+
+	private final Map<Stage, LatencyHistogram> stages = new EnumMap<>(Stage.class);
+	private final ConcurrentMap<String, LongAdder> requests = new ConcurrentHashMap<>();
+	private final LongAdder sentences = new LongAdder();
+	private final LongAdder tokens = new LongAdder();
+
+	public LookupMetrics() {
+		for (Stage stage : Stage.values()) {
+			stages.put(stage, new LatencyHistogram());
+		}
+	}
+
+	/**
+	 * @param stage
+	 *            a stage
+	 * @param nanos
+	 *            how long it took, in nanoseconds
+	 */
+	public void record(Stage stage, long nanos) {
+		stages.get(stage).record(nanos);
+	}
+
+	/**
+	 * Counts an RPC request.
+	 *
+	 * @param method
+	 *            the name of the service method
+	 */
+	public void countRequest(String method) {
+		requests.computeIfAbsent(method, m -> new LongAdder()).increment();
+	}
+
+	/**
+	 * Counts an analyzed sentence (i.e. one that was not in the cache).
+	 *
+	 * @param tokenCount
+	 *            the number of its tokens
+	 */
+	public void countSentence(int tokenCount) {
+		sentences.increment();
+		tokens.add(tokenCount);
+	}
+
+	/**
+	 * @param stage
+	 *            a stage
+	 * @return its current counts
+	 */
+	public LatencyHistogram.Snapshot snapshot(Stage stage) {
+		return stages.get(stage).snapshot();
+	}
+
+	/**
+	 * @param method
+	 *            the name of a service method
+	 * @return the number of requests for it
+	 */
+	public long getRequests(String method) {
+		LongAdder count = requests.get(method);
+		return count == null ? 0 : count.sum();
+	}
+
+	/**
+	 * Formats the metrics in the Prometheus text format (version 0.0.4). The
+	 * stages are summaries in seconds.
+	 *
+	 * @param cacheStats
+	 *            the statistics of the lookup cache, or null
+	 * @return the metrics
+	 */
+	public String toPrometheus(CacheStats cacheStats) {
+		StringBuilder sb = new StringBuilder();
+		String requestsName = PREFIX + "rpc_requests_total";
+		sb.append("# HELP ").append(requestsName).append(" RPC requests by service method.\n");
+		sb.append("# TYPE ").append(requestsName).append(" counter\n");
+		for (Map.Entry<String, Long> entry : requestCounts().entrySet()) {
+			sb.append(requestsName).append("{method=\"").append(entry.getKey()).append("\"} ")
+					.append(entry.getValue()).append('\n');
+		}
+
+		String stageName = PREFIX + "stage_duration_seconds";
+		sb.append("# HELP ").append(stageName).append(" Duration of the stages of the lookup pipeline.\n");
+		sb.append("# TYPE ").append(stageName).append(" summary\n");
+		for (Stage stage : Stage.values()) {
+			LatencyHistogram.Snapshot snapshot = snapshot(stage);
+			String labels = "stage=\"" + stage.getLabel() + "\"";
+			for (double quantile : QUANTILES) {
+				sb.append(stageName).append('{').append(labels).append(",quantile=\"").append(quantile).append("\"} ")
+						.append(seconds(snapshot.getPercentileNanos(quantile))).append('\n');
+			}
+			sb.append(stageName).append("_sum{").append(labels).append("} ")
+					.append(seconds(snapshot.getSumNanos())).append('\n');
+			sb.append(stageName).append("_count{").append(labels).append("} ").append(snapshot.getCount())
+					.append('\n');
+		}
+
+		counter(sb, PREFIX + "analyzed_sentences_total", "Sentences that were analyzed (not cached).",
+				sentences.sum());
+		counter(sb, PREFIX + "analyzed_tokens_total", "Tokens of the analyzed sentences.", tokens.sum());
+		if (cacheStats != null) {
+			counter(sb, PREFIX + "lookup_cache_hits_total", "Lookups answered from the cache.",
+					cacheStats.hitCount());
+			counter(sb, PREFIX + "lookup_cache_misses_total", "Lookups that were not in the cache.",
+					cacheStats.missCount());
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Formats the metrics as a JSON object. The durations are in
+	 * milliseconds.
+	 *
+	 * @param cacheStats
+	 *            the statistics of the lookup cache, or null
+	 * @return the metrics
+	 */
+	public String toJson(CacheStats cacheStats) {
+		StringBuilder sb = new StringBuilder("{\"requests\":{");
+		String separator = "";
+		for (Map.Entry<String, Long> entry : requestCounts().entrySet()) {
+			sb.append(separator).append('"').append(entry.getKey()).append("\":").append(entry.getValue());
+			separator = ",";
+		}
+		sb.append("},\"stages\":{");
+		separator = "";
+		for (Stage stage : Stage.values()) {
+			LatencyHistogram.Snapshot snapshot = snapshot(stage);
+			sb.append(separator).append('"').append(stage.getLabel()).append("\":{\"count\":")
+					.append(snapshot.getCount()).append(",\"mean_ms\":").append(millis(snapshot.getMeanNanos()));
+			for (double quantile : QUANTILES) {
+				sb.append(",\"p").append(Math.round(quantile * 100)).append("_ms\":")
+						.append(millis(snapshot.getPercentileNanos(quantile)));
+			}
+			sb.append(",\"max_ms\":").append(millis(snapshot.getMaxNanos())).append('}');
+			separator = ",";
+		}
+		sb.append("},\"analyzed_sentences\":").append(sentences.sum());
+		sb.append(",\"analyzed_tokens\":").append(tokens.sum());
+		if (cacheStats != null) {
+			sb.append(",\"lookup_cache\":{\"hits\":").append(cacheStats.hitCount()).append(",\"misses\":")
+					.append(cacheStats.missCount()).append('}');
+		}
+		return sb.append('}').toString();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("lookup metrics:");
+		for (Stage stage : Stage.values()) {
+			sb.append("\n  ").append(stage.getLabel()).append(": ").append(snapshot(stage));
+		}
+		return sb.toString();
+	}
+
+	// Sorted, so that the output is stable.
+	private Map<String, Long> requestCounts() {
+		Map<String, Long> counts = new TreeMap<>();
+		for (Map.Entry<String, LongAdder> entry : requests.entrySet()) {
+			counts.put(entry.getKey(), entry.getValue().sum());
+		}
+		return counts;
+	}
+
+	private static void counter(StringBuilder sb, String name, String help, long value) {
+		sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		sb.append("# TYPE ").append(name).append(" counter\n");
+		sb.append(name).append(' ').append(value).append('\n');
+	}
+
+	private static String seconds(double nanos) {
+		return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+	}
+
+	private static String millis(double nanos) {
+		return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+	}
+
+}
@@ -1,272 +1,226 @@
 package de.ws1718.ismla.JapaneseHelper.server;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.io.UnsupportedEncodingException;
+import java.io.InputStream;
+import java.net.URL;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
-import com.atilika.kuromoji.ipadic.Tokenizer;
-import com.google.common.base.Joiner;
-import com.google.common.collect.ListMultimap;
+import com.google.gwt.user.client.rpc.SerializationException;
+import com.google.gwt.user.server.rpc.RPCRequest;
 import com.google.gwt.user.server.rpc.RemoteServiceServlet;
-import com.mariten.kanatools.KanaConverter;
 
 import de.ws1718.ismla.JapaneseHelper.client.LookupService;
+import de.ws1718.ismla.JapaneseHelper.server.LookupMetrics.Stage;
+import de.ws1718.ismla.JapaneseHelper.shared.BatchLookupResult;
+import de.ws1718.ismla.JapaneseHelper.shared.DictionaryLoadingException;
+import de.ws1718.ismla.JapaneseHelper.shared.InflectableToken;
 import de.ws1718.ismla.JapaneseHelper.shared.InflectedToken;
-import de.ws1718.ismla.JapaneseHelper.shared.Token;;
+import de.ws1718.ismla.JapaneseHelper.shared.Token;
+import de.ws1718.ismla.JapaneseHelper.shared.TokenizationProgress;
+import de.ws1718.ismla.JapaneseHelper.shared.TokenizationProgress.State;
 
 public class LookupServiceImpl extends RemoteServiceServlet implements LookupService {
 	private static final long serialVersionUID = 568570423376066244L;
 
 	private static final Logger logger = Logger.getLogger(LookupServiceImpl.class.getSimpleName());
-	// Separator for tokenizing file contents. Can be changed!
-	private static final String SEPARATOR = " ";
+	// The maximum number of sentences of a batch that one worker handles at
+	// once, and the minimum number of chunks that a batch is split into.
+	private static final int BATCH_CHUNK_SIZE = 64;
+	private static final int BATCH_MIN_CHUNKS = 16;
+	// How long the service method of the current RPC call took (or -1 if it
+	// doesn't measure it), so that processCall can tell how long the
+	// serialization took.
+	private static final ThreadLocal<long[]> invocationNanos = ThreadLocal.withInitial(() -> new long[1]);
+
+	@Override
+	public String processCall(RPCRequest rpcRequest) throws SerializationException {
+		LookupMetrics metrics = (LookupMetrics) getServletContext().getAttribute("lookupMetrics");
+		if (metrics == null) {
+			return super.processCall(rpcRequest);
+		}
+		metrics.countRequest(rpcRequest.getMethod().getName());
+		long[] invocation = invocationNanos.get();
+		invocation[0] = -1;
+		long start = System.nanoTime();
+		String response = super.processCall(rpcRequest);
+		if (invocation[0] >= 0) {
+			metrics.record(Stage.SERIALIZATION, System.nanoTime() - start - invocation[0]);
+		}
+		return response;
+	}
 
-	@SuppressWarnings("unchecked")
 	public List<ArrayList<Token>> lookup(String sentence) {
-		ListMultimap<String, Token> tokenMap = (ListMultimap<String, Token>) getServletContext()
-				.getAttribute("tokenMap");
-		Tokenizer tokenizer = new Tokenizer();
-		// This is the Token defined by the Kuromoji parser.
-		List<com.atilika.kuromoji.ipadic.Token> ipaTokens = tokenizer.tokenize(sentence.trim());
-
-		// This is the Token defined by us.
-		List<ArrayList<Token>> results = convertTokens(ipaTokens, tokenMap);
-
-		return results;
+		long start = System.nanoTime();
+		// Null while the dictionary is loading: then the tokens are
+		// provisional (and cached until the dictionary is there).
+		DictionaryIndex dictionary = (DictionaryIndex) getServletContext().getAttribute("dictionary");
+		SharedTokenizer tokenizer = (SharedTokenizer) getServletContext().getAttribute("tokenizer");
+		LookupCache lookupCache = (LookupCache) getServletContext().getAttribute("lookupCache");
+		LookupMetrics metrics = (LookupMetrics) getServletContext().getAttribute("lookupMetrics");
+
+		Analyzer analyzer = new Analyzer(tokenizer, dictionary, metrics);
+
+		try {
+			// The cached results are shared, so nobody may modify them.
+			return lookupCache.get(sentence, dictionary, () -> analyzer.analyze(sentence));
+		} finally {
+			recordInvocation(metrics, Stage.LOOKUP, System.nanoTime() - start);
+		}
 	}
 
-	@SuppressWarnings("unchecked")
-	public String tokenizeFiles() {
-		List<FileInputStream> streams = (List<FileInputStream>) getServletContext().getAttribute("tokenizationStreams");
-		List<String> files = (List<String>) getServletContext().getAttribute("tokenizationFiles");
-
-		String line;
-		for (int i = 0; i < streams.size(); i++) {
-			FileInputStream fis = streams.get(i);
-			String filename = files.get(i);
-			String[] sections = filename.split("/");
-			filename = sections[sections.length - 1];
-			logger.info("Reading " + filename);
-			filename = filename.split("\\.")[0] + "-tokenized.txt";
-			try (BufferedReader br = new BufferedReader(new InputStreamReader(fis, "UTF-8"));
-					PrintWriter pw = new PrintWriter(new File(filename))) {
-				while ((line = br.readLine()) != null) {
-					line = line.trim();
-					List<ArrayList<Token>> results = lookup(line);
-					StringBuilder sb = new StringBuilder();
-					String joiner = "";
-					for (ArrayList<Token> tokens : results) {
-						Token tok = tokens.get(0);
-						sb.append(joiner);
-						joiner = SEPARATOR;
-						sb.append(tok.getForm());
-					}
-					pw.println(sb.toString());
-				}
-			logger.info("Done with this file! Results are in " + filename);
-			} catch (UnsupportedEncodingException e) {
-				e.printStackTrace();
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
+	public BatchLookupResult lookupBatch(List<String> sentences) {
+		long start = System.nanoTime();
+		LookupMetrics metrics = (LookupMetrics) getServletContext().getAttribute("lookupMetrics");
+		try {
+			return lookupBatch(sentences, metrics);
+		} finally {
+			recordInvocation(metrics, Stage.LOOKUP_BATCH, System.nanoTime() - start);
 		}
-
-		// This should technically be a void method but AsyncCallback
-		// doesn't seem to like not receiving anything...
-		return "";
 	}
 
-	private List<ArrayList<Token>> convertTokens(List<com.atilika.kuromoji.ipadic.Token> ipaTokens,
-			ListMultimap<String, Token> tokenMap) {
-		List<ArrayList<Token>> tokens = new ArrayList<>();
-
-		for (int index = 0; index < ipaTokens.size(); index++) {
-			com.atilika.kuromoji.ipadic.Token tok = ipaTokens.get(index);
-			String form = tok.getSurface();
-			String pos = tok.getPartOfSpeechLevel1();
-			String pron = tok.getReading();
-			// logger.info(form + "\t" + tok.getAllFeatures());
-
-			List<Token> dictTokens = tokenMap.get(tok.getSurface());
-
-			// If the token is inflected, try to lookup the full inflection form
-			// instead of displaying several segmented tokens.
-			if (!tok.getConjugationForm().equals("*")) {
-				// logger.info("Attempting to get inflection suffixes for " +
-				// tok.getSurface());
-				Joiner joiner = Joiner.on("");
-				List<String> multiTokenForm = new ArrayList<>();
-				multiTokenForm.add(tok.getSurface());
-				List<String> multiTokenPron = new ArrayList<>();
-				multiTokenPron.add(tok.getReading());
-				// Should look at the token immediately following it.
-				int curIndex = index + 1;
-				// If it's not out of bounds and it's also marked as an
-				// inflection form.
-				// Add exception for "て" which is recognized as a particle.
-				while (curIndex < ipaTokens.size() && (!ipaTokens.get(curIndex).getConjugationForm().equals("*") ||
-						ipaTokens.get(curIndex).getSurface().equals("て"))) {
-					multiTokenForm.add(ipaTokens.get(curIndex).getSurface());
-					multiTokenPron.add(ipaTokens.get(curIndex).getReading());
-					curIndex++;
-				}
-
-				while (multiTokenForm.size() > 1) {
-					List<Token> multiTokenEntry = tokenMap.get(joiner.join(multiTokenForm));
-					if (multiTokenEntry != null && multiTokenEntry.size() > 0) {
-						dictTokens = multiTokenEntry;
-						// Skip all the consumed tokens from the Kuromoji
-						// outputs of course.
-						// -1 because the outer loop will still + 1
-						index = index + multiTokenForm.size() - 1;
-						break;
-					}
-
-					// Else we try again with one less entry in the multiToken,
-					// i.e. we might have overreached in the search.
-					multiTokenForm.remove(multiTokenForm.size() - 1);
-					multiTokenPron.remove(multiTokenPron.size() - 1);
-				}
-
-				form = joiner.join(multiTokenForm);
-				pron = joiner.join(multiTokenPron);
-				// logger.info("Continuing with " + form);
-			}
-
-			// Sort the results if there are several matches.
-			ArrayList<Token> sortedTokens = sortTokens(form, pos, pron, dictTokens);
-			tokens.add(sortedTokens);
+	private static void recordInvocation(LookupMetrics metrics, Stage stage, long nanos) {
+		if (metrics != null) {
+			metrics.record(stage, nanos);
+			invocationNanos.get()[0] = nanos;
 		}
-
-		return tokens;
 	}
 
-	/**
-	 * Sorts a list of Token instances by how closely they match the Kuromoji
-	 * token (descending order).
-	 * 
-	 * @param form
-	 *            the surface form of the token
-	 * @param posKuromoji
-	 *            the IPAdic POS tag belonging to the token
-	 * @param pronKuromoji
-	 *            the reading associated with the token
-	 * @param dictTokens
-	 *            the list of Wiktionary tokens (can be empty or null)
-	 * @return the sorted list
-	 */
-	// public for testing
-	public static ArrayList<Token> sortTokens(String form, String posKuromoji, String pronKuromoji,
-			List<Token> dictTokens) {
-		// We need to create new variables, otherwise the compiler won't pick up
-		// on the fact that the conversion methods are static too, and the
-		// Comparator does not compile.
-		String posK = convertIPADicPOSTag(posKuromoji);
-		String pronK = convertPronunciation(pronKuromoji);
+	private BatchLookupResult lookupBatch(List<String> sentences, LookupMetrics metrics) {
+		long start = System.currentTimeMillis();
+		ArrayList<List<ArrayList<Token>>> results = new ArrayList<>();
+		if (sentences == null || sentences.isEmpty()) {
+			return new BatchLookupResult(results, 0);
+		}
 
-		// logger.info(posK + "\t" + pronK);
-		ArrayList<Token> sortedTokens = new ArrayList<>();
+		// All sentences of the batch are analyzed with the same tokenizer and
+		// dictionary, even if the dictionary is replaced in the meantime.
+		DictionaryIndex dictionary = (DictionaryIndex) getServletContext().getAttribute("dictionary");
+		SharedTokenizer tokenizer = (SharedTokenizer) getServletContext().getAttribute("tokenizer");
+		LookupCache lookupCache = (LookupCache) getServletContext().getAttribute("lookupCache");
+		ExecutorService lookupExecutor = (ExecutorService) getServletContext().getAttribute("lookupExecutor");
+		Analyzer analyzer = new Analyzer(tokenizer, dictionary, metrics);
+
+		// Hand the sentences to the workers in chunks so that short sentences
+		// don't drown in scheduling overhead.
+		int chunkSize = Math.max(1, Math.min(BATCH_CHUNK_SIZE, sentences.size() / BATCH_MIN_CHUNKS));
+		List<Future<List<List<ArrayList<Token>>>>> chunks = new ArrayList<>();
+		for (int chunkStart = 0; chunkStart < sentences.size(); chunkStart += chunkSize) {
+			List<String> chunk = sentences.subList(chunkStart, Math.min(chunkStart + chunkSize, sentences.size()));
+			chunks.add(lookupExecutor.submit(() -> {
+				List<List<ArrayList<Token>>> chunkResults = new ArrayList<>();
+				for (String sentence : chunk) {
+					chunkResults.add(lookupCache.get(sentence, dictionary, () -> analyzer.analyze(sentence)));
+				}
+				return chunkResults;
+			}));
+		}
 
-		if (dictTokens == null || dictTokens.isEmpty()) {
-			String meaning = "1) [out-of-vocabulary]";
-			String difficultyRating = "N/A";
-			if (posK.equals("PNC")) {
-				meaning = "1) [punctuation mark]";
-				difficultyRating = "*";
+		try {
+			// The futures are in the order of the sentences.
+			for (Future<List<List<ArrayList<Token>>>> chunk : chunks) {
+				results.addAll(chunk.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while looking up the batch", e);
+		} catch (ExecutionException e) {
+			for (Future<List<List<ArrayList<Token>>>> chunk : chunks) {
+				chunk.cancel(true);
 			}
-			Token tok = new Token(form, pronK, posK, meaning);
-			tok.setDifficultyRating(difficultyRating);
-			// logger.info("no matches, created token: " + tok);
-			return new ArrayList<Token>(Arrays.asList(tok));
+			throw new IllegalStateException("Could not look up the batch", e.getCause());
 		}
 
-		// primary sort order:
-		// Try to match the POS tag with that of the Kuromoji token.
-		Comparator<Token> comp = Comparator.comparing(Token::getPos, (pos1, pos2) -> {
-			pos1 = convertWiktionaryPOSTag(pos1);
-			pos2 = convertWiktionaryPOSTag(pos2);
-			return pos1.equals(pos2) ? 0 : pos1.equals(posK) ? -1 : 1;
-		}).thenComparing(Token::getPronunciation, (pron1, pron2) -> {
-			// secondary sort order:
-			// Try to match the pronunciation with that of the Kuromoji token.
-			pron1 = convertPronunciation(pron1);
-			pron2 = convertPronunciation(pron2);
-			return pron1.equals(pron2) ? 0 : pron1.equals(pronK) ? -1 : 1;
-		}).thenComparing(Token::getClass, (class1, class2) -> {
-			// tertiary sort order:
-			// Prefer inflected tokens over uninflected ones.
-			return class1.equals(class2) ? 0 : class1.equals(InflectedToken.class) ? -1 : 1;
-		});
+		long elapsed = System.currentTimeMillis() - start;
+		logger.fine("looked up " + sentences.size() + " sentences in " + elapsed + " ms");
+		return new BatchLookupResult(results, elapsed);
+	}
 
-		Collections.sort(dictTokens, comp);
-		for (Token tok : dictTokens) {
-			// logger.info("\t" + tok);
-			sortedTokens.add(tok);
+	public ArrayList<InflectedToken> getInflectedForms(InflectableToken lemma) {
+		DictionaryIndex dictionary = (DictionaryIndex) getServletContext().getAttribute("dictionary");
+		if (dictionary == null) {
+			// The lookups are provisional, so they have no lemmas yet.
+			return new ArrayList<>();
 		}
-		return sortedTokens;
+		return new ArrayList<>(dictionary.inflectedForms(lemma));
 	}
 
-	private static String convertIPADicPOSTag(String ipadicTag) {
-		switch (ipadicTag) {
-		case "名詞":
-			// Several possibilities under this category.
-			return "N";
-		case "動詞":
-			// Apparently Wiktionary differentiates between transitive and
-			// intransitive verbs but it's not sure whether IPAdic offers such a
-			// distinction.
-			return "V";
-		case "形容詞":
-			return "A";
-		case "副詞":
-			return "ADV";
-		case "接続詞":
-			return "CNJ";
-		case "感動詞":
-			return "ITJ";
-		case "助詞":
-			return "PRT";
-		case "助動詞":
-			return "SFX";
-		case "連体詞":
-			return "DET";
-		case "接頭詞":
-			return "PFX";
-		case "記号":
-			return "PNC";
-		default:
-			// The remaining top-class tags would be
-			// "フィラー" ("filler") and "その他" ("etc."),
-			// which shouldn't be relevant.
+	public String tokenizeFiles() throws DictionaryLoadingException {
+		TokenizationJobs jobs = (TokenizationJobs) getServletContext().getAttribute("tokenizationJobs");
+		String jobId = submitTokenizationJob();
+		try {
+			TokenizationProgress progress = jobs.await(jobId);
+			// This should technically be a void method but AsyncCallback
+			// doesn't seem to like not receiving anything...
+			return progress.getState() == State.DONE ? progress.getMessage() : "";
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			jobs.cancel(jobId);
 			return "";
 		}
 	}
 
-	private static String convertWiktionaryPOSTag(String pos) {
-		if (pos.startsWith("V")) {
-			return "V";
+	@SuppressWarnings("unchecked")
+	public String submitTokenizationJob() throws DictionaryLoadingException {
+		List<String> files = (List<String>) getServletContext().getAttribute("tokenizationFiles");
+		DictionaryIndex dictionary = (DictionaryIndex) getServletContext().getAttribute("dictionary");
+		if (dictionary == null) {
+			// The corpora would only be split into Kuromoji tokens.
+			throw new DictionaryLoadingException("The dictionary is still loading, please try again in a few minutes.");
 		}
-		return pos;
+		SharedTokenizer tokenizer = (SharedTokenizer) getServletContext().getAttribute("tokenizer");
+		Analyzer analyzer = new Analyzer(tokenizer, dictionary);
+		// The corpora get their own workers, so they don't hold up the
+		// lookups.
+		TokenizationJobs jobs = (TokenizationJobs) getServletContext().getAttribute("tokenizationJobs");
+
+		// The sizes of the files are only needed to estimate the remaining
+		// time.
+		long totalBytes = 0;
+		for (String file : files) {
+			try {
+				URL url = getServletContext().getResource(file);
+				long size = url == null ? -1 : url.openConnection().getContentLengthLong();
+				totalBytes = size < 0 || totalBytes < 0 ? -1 : totalBytes + size;
+			} catch (IOException e) {
+				totalBytes = -1;
+			}
+		}
+		return jobs.submit(files, totalBytes, file -> {
+			InputStream is = getServletContext().getResourceAsStream(file);
+			if (is == null) {
+				throw new FileNotFoundException(file);
+			}
+			logger.info("Tokenizing " + file + " into " + TokenizationJobs.outputFile(file));
+			return is;
+		},
+				// Not through the lookup cache: corpus lines are rarely
+				// repeated, so they would only push the interactive lookups
+				// out of the cache.
+				analyzer::tokenizeLine);
 	}
 
-	private static String convertPronunciation(String pron) {
-		// Sometimes, the Wiktionary pronunciations include a period to denote
-		// kanji boundaries that occur in the middle of long vowels.
-		pron = pron.replaceAll("\\.", "");
-		// The Kuromoji pronunciations are in katakana; some of the Wiktionary
-		// ones are as well. If the pronunciation is already in hiragana, this
-		// does not change anything.
-		return KanaConverter.convertKana(pron, KanaConverter.OP_ZEN_KATA_TO_ZEN_HIRA);
+	public TokenizationProgress getTokenizationProgress(String jobId) {
+		TokenizationJobs jobs = (TokenizationJobs) getServletContext().getAttribute("tokenizationJobs");
+		return jobs.progress(jobId);
+	}
+
+	public boolean cancelTokenizationJob(String jobId) {
+		TokenizationJobs jobs = (TokenizationJobs) getServletContext().getAttribute("tokenizationJobs");
+		return jobs.cancel(jobId);
+	}
+
+	public String getTokenizationResult(String jobId) {
+		TokenizationProgress progress = getTokenizationProgress(jobId);
+		if (progress == null || !progress.getState().isFinished()) {
+			return null;
+		}
+		return progress.getMessage() == null ? "" : progress.getMessage();
 	}
 
-}
\ No newline at end of file
+}
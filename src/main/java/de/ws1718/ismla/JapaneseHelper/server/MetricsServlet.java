@@ -0,0 +1,35 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Exposes the {@link LookupMetrics} in the Prometheus text format, or as JSON
+ * with the parameter "format=json".
+ */
+public class MetricsServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 2815306817394372529L;
+
+	@Override
+	protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+		LookupMetrics metrics = (LookupMetrics) getServletContext().getAttribute("lookupMetrics");
+		LookupCache lookupCache = (LookupCache) getServletContext().getAttribute("lookupCache");
+		if (metrics == null) {
+			resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "The metrics are not available");
+			return;
+		}
+		resp.setCharacterEncoding("UTF-8");
+		if ("json".equals(req.getParameter("format"))) {
+			resp.setContentType("application/json");
+			resp.getWriter().print(metrics.toJson(lookupCache == null ? null : lookupCache.stats()));
+		} else {
+			resp.setContentType("text/plain; version=0.0.4");
+			resp.getWriter().print(metrics.toPrometheus(lookupCache == null ? null : lookupCache.stats()));
+		}
+	}
+
+}
@@ -0,0 +1,88 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import de.ws1718.ismla.JapaneseHelper.shared.Token;
+
+/**
+ * The normalized values by which candidate tokens are ranked against a
+ * Kuromoji token: a coarse POS class and the reading in hiragana.
+ *
+ * Dictionary tokens get these keys once during preprocessing (see
+ * {@link #assign(Token)}), so ranking does not need to normalize anything
+ * per comparison.
+ */
+public final class RankingKeys {
+
+	private RankingKeys() {
+	}
+
+	/**
+	 * Computes the ranking keys of the token and stores them in the token.
+	 * Needs to be called again if the POS tag or the pronunciation of the
+	 * token change.
+	 *
+	 * @param tok
+	 *            the token
+	 */
+	public static void assign(Token tok) {
+		tok.setRankingKeys(convertWiktionaryPOSTag(tok.getPos()), convertPronunciation(tok.getPronunciation()));
+	}
+
+	/**
+	 * @param tok
+	 *            the token
+	 * @return the coarse POS class of the token (precomputed if possible)
+	 */
+	public static String posClass(Token tok) {
+		String posClass = tok.getPosClass();
+		if (posClass == null) {
+			posClass = convertWiktionaryPOSTag(tok.getPos());
+		}
+		return posClass;
+	}
+
+	/**
+	 * @param tok
+	 *            the token
+	 * @return the reading of the token in hiragana, without periods
+	 *         (precomputed if possible)
+	 */
+	public static String reading(Token tok) {
+		String reading = tok.getReading();
+		if (reading == null) {
+			reading = convertPronunciation(tok.getPronunciation());
+		}
+		return reading;
+	}
+
+	/**
+	 * Maps the Wiktionary POS tags to the coarser classes that can be
+	 * compared with the IPAdic POS tags.
+	 *
+	 * @param pos
+	 *            the Wiktionary POS tag
+	 * @return the POS class
+	 */
+	public static String convertWiktionaryPOSTag(String pos) {
+		if (pos.startsWith("V")) {
+			return "V";
+		}
+		return pos;
+	}
+
+	/**
+	 * Normalizes a (Kuromoji or Wiktionary) pronunciation.
+	 *
+	 * @param pron
+	 *            the pronunciation in katakana or hiragana
+	 * @return the pronunciation in hiragana
+	 */
+	public static String convertPronunciation(String pron) {
+		// Sometimes, the Wiktionary pronunciations include a period to denote
+		// kanji boundaries that occur in the middle of long vowels.
+		// The Kuromoji pronunciations are in katakana; some of the Wiktionary
+		// ones are as well. If the pronunciation is already in hiragana, this
+		// does not change anything.
+		return KanaNormalizer.normalize(pron);
+	}
+
+}
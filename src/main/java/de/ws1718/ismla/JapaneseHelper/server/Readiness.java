@@ -0,0 +1,80 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+/**
+ * How far the {@link Listener} got with loading the dictionary in the
+ * background. Lookups are answered as soon as the Kuromoji tokenizer is
+ * loaded, but only with provisional tokens until the dictionary is there (see
+ * {@link Analyzer}). The {@link ReadinessServlet} reports the state to the
+ * load balancer.
+ */
+public final class Readiness {
+
+	/**
+	 * The states, in the order in which they are reached.
+	 */
+	public enum State {
+		/** Nothing can be looked up yet. */
+		STARTING(false),
+		/** Lookups only give Kuromoji's analysis, the dictionary is loading. */
+		PROVISIONAL(true),
+		/**
+		 * Lookups use the dictionary, but forms that stack several
+		 * inflections are not found until the inflection automaton is built.
+		 */
+		LEMMAS(true),
+		/** The dictionary is complete. */
+		READY(true),
+		/** The dictionary could not be loaded, lookups stay provisional. */
+		FAILED(false);
+
+		private final boolean servesLookups;
+
+		private State(boolean servesLookups) {
+			this.servesLookups = servesLookups;
+		}
+
+		/**
+		 * @return true if lookups are answered in this state
+		 */
+		public boolean servesLookups() {
+			return servesLookups;
+		}
+	}
+
+	private final long startMillis = System.currentTimeMillis();
+	private volatile State state = State.STARTING;
+	private volatile String message = "loading the Kuromoji tokenizer";
+
+	/**
+	 * @param state
+	 *            the new state
+	 * @param message
+	 *            what is being done (or went wrong) in this state
+	 */
+	public void set(State state, String message) {
+		// The message is written first, so that it is never older than the
+		// state.
+		this.message = message;
+		this.state = state;
+	}
+
+	/**
+	 * @return the current state
+	 */
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * @return what is being done (or went wrong) in the current state
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+	@Override
+	public String toString() {
+		return state + " after " + (System.currentTimeMillis() - startMillis) / 1000 + " s: " + message;
+	}
+
+}
@@ -0,0 +1,36 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Tells the load balancer whether the application answers lookups (status
+ * 200) or not (status 503), with the {@link Readiness} as text. While the
+ * dictionary is loading, lookups are answered provisionally, which counts as
+ * ready unless the parameter "full=true" is given.
+ */
+public class ReadinessServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 7415870229638941502L;
+
+	@Override
+	protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+		Readiness readiness = (Readiness) getServletContext().getAttribute("readiness");
+		boolean ready;
+		if (readiness == null) {
+			ready = false;
+		} else if ("true".equals(req.getParameter("full"))) {
+			ready = readiness.getState() == Readiness.State.READY;
+		} else {
+			ready = readiness.getState().servesLookups();
+		}
+		resp.setStatus(ready ? HttpServletResponse.SC_OK : HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+		resp.setContentType("text/plain");
+		resp.setCharacterEncoding("UTF-8");
+		resp.getWriter().println(readiness == null ? "STARTING" : readiness);
+	}
+
+}
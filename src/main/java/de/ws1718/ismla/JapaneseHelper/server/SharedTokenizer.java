@@ -0,0 +1,115 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.atilika.kuromoji.ipadic.Token;
+import com.atilika.kuromoji.ipadic.Tokenizer;
+
+/**
+ * Holds the Kuromoji tokenizer for the whole web application and keeps track
+ * of how it is used.
+ *
+ * Building a {@link Tokenizer} loads the complete IPAdic dictionary, so we only
+ * want to do this once (in {@link Listener#contextInitialized}). Kuromoji
+ * tokenizers do not keep any state between calls (the lattice is built anew
+ * for every input), which means that a single instance can be shared by all
+ * servlet threads and we do not need to pool several copies of the
+ * dictionary.
+ */
+public class SharedTokenizer {
+
+	private final Tokenizer tokenizer;
+
+	private final AtomicLong calls = new AtomicLong();
+	private final AtomicLong characters = new AtomicLong();
+	private final AtomicLong totalNanos = new AtomicLong();
+	private final AtomicInteger active = new AtomicInteger();
+	private final AtomicInteger peakActive = new AtomicInteger();
+	private final long loadNanos;
+
+	/**
+	 * Loads the IPAdic dictionary and constructs the tokenizer.
+	 */
+	public SharedTokenizer() {
+		long start = System.nanoTime();
+		tokenizer = new Tokenizer();
+		loadNanos = System.nanoTime() - start;
+	}
+
+	/**
+	 * Tokenizes the text with the shared Kuromoji tokenizer. Can be called
+	 * concurrently.
+	 *
+	 * @param text
+	 *            the text
+	 * @return the Kuromoji tokens
+	 */
+	public List<Token> tokenize(String text) {
+		int curActive = active.incrementAndGet();
+		peakActive.accumulateAndGet(curActive, Math::max);
+		long start = System.nanoTime();
+		try {
+			return tokenizer.tokenize(text);
+		} finally {
+			totalNanos.addAndGet(System.nanoTime() - start);
+			calls.incrementAndGet();
+			characters.addAndGet(text.length());
+			active.decrementAndGet();
+		}
+	}
+
+	/**
+	 * @return the number of finished tokenize calls
+	 */
+	public long getCalls() {
+		return calls.get();
+	}
+
+	/**
+	 * @return the number of characters that have been tokenized so far
+	 */
+	public long getCharacters() {
+		return characters.get();
+	}
+
+	/**
+	 * @return the number of threads that are currently using the tokenizer
+	 */
+	public int getActive() {
+		return active.get();
+	}
+
+	/**
+	 * @return the largest number of threads that used the tokenizer at the
+	 *         same time
+	 */
+	public int getPeakActive() {
+		return peakActive.get();
+	}
+
+	/**
+	 * @return the time spent in tokenize calls, in milliseconds
+	 */
+	public long getTotalMillis() {
+		return totalNanos.get() / 1000000;
+	}
+
+	/**
+	 * @return the time it took to load the IPAdic dictionary, in milliseconds
+	 */
+	public long getLoadMillis() {
+		return loadNanos / 1000000;
+	}
+
+	@Override
+	public String toString() {
+		long curCalls = getCalls();
+		long avgMicros = curCalls == 0 ? 0 : totalNanos.get() / curCalls / 1000;
+		return "tokenizer: loaded in " + getLoadMillis() + " ms, " + curCalls + " calls, " + getCharacters()
+				+ " characters, " + avgMicros + " µs/call on average, " + getActive() + " active, "
+				+ getPeakActive() + " at most";
+	}
+
+}
@@ -0,0 +1,214 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import static de.ws1718.ismla.JapaneseHelper.server.DictionarySnapshot.*;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.ws1718.ismla.JapaneseHelper.shared.InflectableToken;
+import de.ws1718.ismla.JapaneseHelper.shared.InflectedToken;
+import de.ws1718.ismla.JapaneseHelper.shared.Inflection;
+import de.ws1718.ismla.JapaneseHelper.shared.Token;
+import de.ws1718.ismla.JapaneseHelper.shared.Translations;
+
+/**
+ * Reads the forms and entries from the sections of a memory-mapped
+ * {@link DictionarySnapshot}.
+ *
+ * The entries are decoded into new {@link Token} objects whenever they are
+ * looked up, so they only take up heap space for as long as the caller holds
+ * on to them. An inflected token is decoded together with its lemma and all of
+ * the lemma's inflected forms, just like they are linked on the heap.
+ *
+ * Only absolute reads are used on the shared buffers, so any number of threads
+ * can use the store at the same time.
+ */
+final class SnapshotEntryStore implements EntryStore {
+
+	private final Path file;
+	private final IntBuffer stringOffsets;
+	private final ByteBuffer stringBytes;
+	private final IntBuffer listStarts;
+	private final IntBuffer listItems;
+	private final IntBuffer tokens;
+	private final IntBuffer forms;
+	private final IntBuffer entryStarts;
+	private final IntBuffer entries;
+
+	SnapshotEntryStore(Path file, ByteBuffer[] sections) {
+		this.file = file;
+		stringOffsets = sections[STRING_OFFSETS].asIntBuffer();
+		stringBytes = sections[STRING_BYTES];
+		listStarts = sections[LIST_STARTS].asIntBuffer();
+		listItems = sections[LIST_ITEMS].asIntBuffer();
+		tokens = sections[TOKENS].asIntBuffer();
+		forms = sections[FORMS].asIntBuffer();
+		entryStarts = sections[ENTRY_STARTS].asIntBuffer();
+		entries = sections[ENTRIES].asIntBuffer();
+	}
+
+	@Override
+	public int formCount() {
+		return forms.limit();
+	}
+
+	@Override
+	public String form(int id) {
+		return string(forms.get(id));
+	}
+
+	@Override
+	public List<Token> entries(int id) {
+		int from = entryStarts.get(id);
+		int to = entryStarts.get(id + 1);
+		Decoder decoder = new Decoder();
+		Token[] decoded = new Token[to - from];
+		for (int i = from; i < to; i++) {
+			decoded[i - from] = decoder.token(entries.get(i));
+		}
+		return Collections.unmodifiableList(Arrays.asList(decoded));
+	}
+
+	@Override
+	public int size() {
+		return entries.limit();
+	}
+
+	@Override
+	public String toString() {
+		return "memory-mapped from " + file;
+	}
+
+	private String string(int id) {
+		if (id == NONE) {
+			return null;
+		}
+		int from = stringOffsets.get(id);
+		byte[] bytes = new byte[stringOffsets.get(id + 1) - from];
+		// Bulk reads are relative, so they need their own view of the buffer.
+		ByteBuffer view = stringBytes.duplicate();
+		view.position(from);
+		view.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Decodes the tokens of one lookup. Tokens that are referenced several
+	 * times (e.g. a lemma) are only decoded once.
+	 */
+	private final class Decoder {
+
+		private final Map<Integer, String> strings = new HashMap<>();
+		private final Map<Integer, Translations> translations = new HashMap<>();
+		private final Map<Integer, Token> decoded = new HashMap<>();
+
+		Token token(int id) {
+			Token tok = decoded.get(id);
+			if (tok != null) {
+				return tok;
+			}
+			int record = id * TOKEN_INTS;
+			switch (tokens.get(record + KIND)) {
+			case INFLECTABLE_TOKEN:
+				InflectableToken lemma = new InflectableToken();
+				fill(lemma, record);
+				// Register the lemma first: its inflected forms refer back to
+				// it.
+				decoded.put(id, lemma);
+				int inflectedForms = tokens.get(record + INFLECTED_FORMS);
+				if (inflectedForms == NONE) {
+					lemma.setInflectedForms(null);
+				} else {
+					for (int i = listStarts.get(inflectedForms); i < listStarts.get(inflectedForms + 1); i++) {
+						lemma.addInflectedForm((InflectedToken) token(listItems.get(i)));
+					}
+				}
+				return lemma;
+			case INFLECTED_TOKEN:
+				int lemmaId = tokens.get(record + LEMMA);
+				InflectableToken lemmaToken = null;
+				if (lemmaId != NONE) {
+					// Decoding the lemma usually decodes this token as well.
+					lemmaToken = (InflectableToken) token(lemmaId);
+					tok = decoded.get(id);
+					if (tok != null) {
+						return tok;
+					}
+				}
+				InflectedToken inflTok = new InflectedToken();
+				fill(inflTok, record);
+				inflTok.setLemmaToken(lemmaToken);
+				int inflection = tokens.get(record + INFLECTION);
+				inflTok.setInflection(inflection == NONE ? null : Inflection.valueOf(string(inflection)));
+				decoded.put(id, inflTok);
+				return inflTok;
+			default:
+				tok = new Token();
+				fill(tok, record);
+				decoded.put(id, tok);
+				return tok;
+			}
+		}
+
+		/**
+		 * Sets the fields that all kinds of tokens have.
+		 */
+		private void fill(Token tok, int record) {
+			tok.setForm(cachedString(tokens.get(record + FORM)));
+			tok.setPronunciation(cachedString(tokens.get(record + PRONUNCIATION)));
+			String pos = cachedString(tokens.get(record + POS));
+			if (pos != null) {
+				tok.setPos(pos);
+			}
+			// The constructors leave the paradigm null; the setter does not.
+			String inflectionParadigm = cachedString(tokens.get(record + INFLECTION_PARADIGM));
+			if (inflectionParadigm != null) {
+				tok.setInflectionParadigm(inflectionParadigm);
+			}
+			tok.setPrettyPos(cachedString(tokens.get(record + PRETTY_POS)));
+			tok.setLazyTranslations(translations(tokens.get(record + TRANSLATIONS)));
+			tok.setDifficultyRating(cachedString(tokens.get(record + DIFFICULTY_RATING)));
+			// Last, since changing the POS tag or pronunciation resets them.
+			tok.setRankingKeys(cachedString(tokens.get(record + POS_CLASS)),
+					cachedString(tokens.get(record + READING)));
+		}
+
+		private Translations translations(int list) {
+			if (list == NONE) {
+				return null;
+			}
+			Translations result = translations.get(list);
+			if (result == null) {
+				ArrayList<String> glosses = new ArrayList<>();
+				for (int i = listStarts.get(list); i < listStarts.get(list + 1); i++) {
+					glosses.add(cachedString(listItems.get(i)));
+				}
+				result = new Translations(glosses);
+				translations.put(list, result);
+			}
+			return result;
+		}
+
+		private String cachedString(int id) {
+			if (id == NONE) {
+				return null;
+			}
+			String s = strings.get(id);
+			if (s == null) {
+				s = string(id);
+				strings.put(id, s);
+			}
+			return s;
+		}
+
+	}
+
+}
@@ -0,0 +1,461 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import de.ws1718.ismla.JapaneseHelper.shared.InflectableToken;
+import de.ws1718.ismla.JapaneseHelper.shared.InflectedToken;
+import de.ws1718.ismla.JapaneseHelper.shared.Token;
+
+/**
+ * Where the start-up of the web application goes: the wall time and the
+ * allocated bytes of each phase of the {@link Listener}, and how big the
+ * dictionary is, by inflection paradigm and by token class. The
+ * {@link StartupReportServlet} shows it as text or JSON.
+ *
+ * The allocated bytes of a phase are the growth of the heap plus what the
+ * garbage collector freed in the meantime, so they include the allocations of
+ * all threads (e.g. the workers of the {@link WiktionaryPreprocessor}), also
+ * of those that the phase did not start. The garbage collector reports
+ * asynchronously, so a collection at the very end of a phase may be counted
+ * for the next one.
+ */
+public final class StartupReport {
+
+	private static final Logger logger = Logger.getLogger(StartupReport.class.getSimpleName());
+	private static final String NO_PARADIGM = "(none)";
+	private static final String INDEX = "index";
+
+	private final long startNanos = System.nanoTime();
+	private final List<Phase> phases = new ArrayList<>();
+	private final Set<String> heapPools = new HashSet<>();
+	private final AtomicLong collectedBytes = new AtomicLong();
+	private final Map<NotificationEmitter, NotificationListener> gcListeners = new LinkedHashMap<>();
+	// Whether the garbage collector tells what it freed.
+	private final boolean countsAllocations;
+	private final long startAllocated;
+	private long totalMillis = -1;
+	private long totalAllocated = -1;
+
+	// The dictionary (null until it is added).
+	private String dictionaryDescription;
+	private Map<String, Integer> paradigmCounts;
+	private Map<String, Footprint> footprints;
+
+	public StartupReport() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				heapPools.add(pool.getName());
+			}
+		}
+		try {
+			for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+				if (gc instanceof NotificationEmitter) {
+					NotificationListener listener = this::garbageCollected;
+					((NotificationEmitter) gc).addNotificationListener(listener, null, null);
+					gcListeners.put((NotificationEmitter) gc, listener);
+				}
+			}
+		} catch (LinkageError e) {
+			// Not a HotSpot-compatible JVM.
+			logger.info("cannot count the allocations during the start-up: " + e);
+			gcListeners.clear();
+		}
+		countsAllocations = !gcListeners.isEmpty();
+		startAllocated = allocatedBytes();
+	}
+
+	/**
+	 * Starts a phase. Closing the phase ends it, so it should be used in a
+	 * try-with-resources statement, or with {@link #time(String, Runnable)}
+	 * if the phase has no detail.
+	 *
+	 * @param name
+	 *            the name of the phase
+	 * @return the phase
+	 */
+	public Phase phase(String name) {
+		Phase phase = new Phase(name);
+		synchronized (this) {
+			phases.add(phase);
+		}
+		return phase;
+	}
+
+	/**
+	 * Runs a phase.
+	 *
+	 * @param name
+	 *            the name of the phase
+	 * @param action
+	 *            what the phase does
+	 */
+	public void time(String name, Runnable action) {
+		Phase phase = phase(name);
+		try {
+			action.run();
+		} finally {
+			phase.close();
+		}
+	}
+
+	/**
+	 * Runs a phase.
+	 *
+	 * @param name
+	 *            the name of the phase
+	 * @param action
+	 *            what the phase does
+	 * @return the result of the action
+	 */
+	public <T> T time(String name, Supplier<T> action) {
+		Phase phase = phase(name);
+		try {
+			return action.get();
+		} finally {
+			phase.close();
+		}
+	}
+
+	/**
+	 * Ends the start-up: stops counting the allocations, so all phases should
+	 * be closed before.
+	 */
+	public synchronized void finish() {
+		if (totalMillis >= 0) {
+			return;
+		}
+		totalAllocated = totalAllocated();
+		totalMillis = (System.nanoTime() - startNanos) / 1000000;
+		for (Map.Entry<NotificationEmitter, NotificationListener> entry : gcListeners.entrySet()) {
+			try {
+				entry.getKey().removeNotificationListener(entry.getValue());
+			} catch (Exception e) {
+				// It's gone anyway.
+			}
+		}
+		gcListeners.clear();
+	}
+
+	/**
+	 * Counts the entries of the dictionary by inflection paradigm and
+	 * estimates how much heap the tokens retain, by token class (see
+	 * {@link HeapEstimator}). This walks all entries, so it should be done in
+	 * its own phase. A dictionary that is mapped from a snapshot doesn't keep
+	 * its tokens on the heap (they are decoded when they are looked up), so
+	 * only its size is reported.
+	 *
+	 * @param dictionary
+	 *            the dictionary
+	 */
+	public void addDictionary(DictionaryIndex dictionary) {
+		Map<String, Integer> paradigms = new TreeMap<>();
+		Map<String, Footprint> classes = new LinkedHashMap<>();
+		EntryStore store = dictionary.store();
+		if (store instanceof HeapEntryStore) {
+			for (Class<?> c : new Class<?>[] { Token.class, InflectableToken.class, InflectedToken.class }) {
+				classes.put(c.getSimpleName(), new Footprint());
+			}
+			HeapEstimator estimator = new HeapEstimator();
+			for (int i = 0; i < store.formCount(); i++) {
+				for (Token tok : store.entries(i)) {
+					String paradigm = tok.inflects() ? tok.getInflectionParadigm() : NO_PARADIGM;
+					paradigms.merge(paradigm, 1, Integer::sum);
+					Footprint footprint = classes.get(tok.getClass().getSimpleName());
+					if (footprint == null) {
+						footprint = new Footprint();
+						classes.put(tok.getClass().getSimpleName(), footprint);
+					}
+					footprint.add(estimator.add(tok));
+				}
+			}
+			// The forms, the entry arrays and the trie.
+			Footprint index = new Footprint();
+			index.add(estimator.add(store) + estimator.add(dictionary.trie()));
+			classes.put(INDEX, index);
+		}
+		synchronized (this) {
+			dictionaryDescription = dictionary.toString();
+			paradigmCounts = paradigms;
+			footprints = classes;
+		}
+	}
+
+	/**
+	 * @return the phases so far
+	 */
+	public synchronized List<Phase> getPhases() {
+		return new ArrayList<>(phases);
+	}
+
+	/**
+	 * @return the entries of the dictionary by inflection paradigm ("(none)"
+	 *         for the tokens that don't inflect), empty if the tokens are not
+	 *         on the heap or null if the dictionary was not added
+	 */
+	public synchronized Map<String, Integer> getParadigmCounts() {
+		return paradigmCounts;
+	}
+
+	/**
+	 * @return the estimated heap footprint of the dictionary by token class
+	 *         (and "index" for the index structures), empty if the tokens are
+	 *         not on the heap or null if the dictionary was not added
+	 */
+	public synchronized Map<String, Footprint> getFootprints() {
+		return footprints;
+	}
+
+	/**
+	 * @return the report as a JSON object, with times in milliseconds and
+	 *         sizes in bytes (-1 if unknown)
+	 */
+	public synchronized String toJson() {
+		StringBuilder sb = new StringBuilder("{\"total_ms\":").append(totalMillis()).append(",\"allocated_bytes\":")
+				.append(totalAllocated()).append(",\"phases\":[");
+		String separator = "";
+		for (Phase phase : phases) {
+			sb.append(separator).append("{\"name\":\"").append(escape(phase.name)).append("\",\"ms\":")
+					.append(phase.getMillis()).append(",\"allocated_bytes\":").append(phase.getAllocatedBytes());
+			if (phase.detail != null) {
+				sb.append(",\"detail\":\"").append(escape(phase.detail)).append('"');
+			}
+			sb.append('}');
+			separator = ",";
+		}
+		sb.append(']');
+		if (dictionaryDescription != null) {
+			sb.append(",\"dictionary\":{\"description\":\"").append(escape(dictionaryDescription))
+					.append("\",\"paradigms\":{");
+			separator = "";
+			for (Map.Entry<String, Integer> entry : paradigmCounts.entrySet()) {
+				sb.append(separator).append('"').append(escape(entry.getKey())).append("\":").append(entry.getValue());
+				separator = ",";
+			}
+			sb.append("},\"heap\":{");
+			separator = "";
+			for (Map.Entry<String, Footprint> entry : footprints.entrySet()) {
+				sb.append(separator).append('"').append(entry.getKey()).append("\":{\"count\":")
+						.append(entry.getValue().getCount()).append(",\"bytes\":").append(entry.getValue().getBytes())
+						.append('}');
+				separator = ",";
+			}
+			sb.append("}}");
+		}
+		return sb.append('}').toString();
+	}
+
+	@Override
+	public synchronized String toString() {
+		StringBuilder sb = new StringBuilder("start-up: ").append(totalMillis()).append(" ms, ")
+				.append(megabytes(totalAllocated())).append(" allocated");
+		for (Phase phase : phases) {
+			sb.append("\n  ").append(phase);
+		}
+		if (dictionaryDescription != null) {
+			sb.append("\n").append(dictionaryDescription);
+			if (footprints.isEmpty()) {
+				sb.append("\n  the tokens are not on the heap");
+			} else {
+				sb.append("\n  entries by inflection paradigm:");
+				String separator = " ";
+				for (Map.Entry<String, Integer> entry : paradigmCounts.entrySet()) {
+					sb.append(separator).append(entry.getKey()).append(' ').append(entry.getValue());
+					separator = ", ";
+				}
+				sb.append("\n  estimated heap:");
+				long total = 0;
+				for (Map.Entry<String, Footprint> entry : footprints.entrySet()) {
+					sb.append(' ').append(entry.getKey()).append(": ")
+							.append(INDEX.equals(entry.getKey()) ? megabytes(entry.getValue().getBytes()) : entry.getValue())
+							.append(';');
+					total += entry.getValue().getBytes();
+				}
+				sb.append(" total ").append(megabytes(total));
+			}
+		}
+		return sb.toString();
+	}
+
+	private long totalMillis() {
+		return totalMillis >= 0 ? totalMillis : (System.nanoTime() - startNanos) / 1000000;
+	}
+
+	private long totalAllocated() {
+		if (totalMillis >= 0) {
+			return totalAllocated;
+		}
+		long allocated = allocatedBytes();
+		return allocated < 0 ? -1 : allocated - startAllocated;
+	}
+
+	/**
+	 * @return the bytes allocated since the report was created, or -1 if the
+	 *         garbage collector doesn't tell what it freed
+	 */
+	private long allocatedBytes() {
+		if (!countsAllocations) {
+			return -1;
+		}
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() + collectedBytes.get();
+	}
+
+	private void garbageCollected(Notification notification, Object handback) {
+		if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+			return;
+		}
+		GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo
+				.from((CompositeData) notification.getUserData());
+		Map<String, MemoryUsage> after = info.getGcInfo().getMemoryUsageAfterGc();
+		long freed = 0;
+		for (Map.Entry<String, MemoryUsage> before : info.getGcInfo().getMemoryUsageBeforeGc().entrySet()) {
+			if (heapPools.contains(before.getKey()) && after.containsKey(before.getKey())) {
+				freed += before.getValue().getUsed() - after.get(before.getKey()).getUsed();
+			}
+		}
+		collectedBytes.addAndGet(freed);
+	}
+
+	private static String megabytes(long bytes) {
+		return bytes < 0 ? "unknown" : String.format(Locale.ROOT, "%.1f MB", bytes / 1048576.0);
+	}
+
+	private static String escape(String s) {
+		return s.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+
+	/**
+	 * A phase of the start-up.
+	 */
+	public final class Phase implements AutoCloseable {
+
+		private final String name;
+		private final long phaseStartNanos = System.nanoTime();
+		private final long phaseStartAllocated = allocatedBytes();
+		private long millis = -1;
+		private long allocated = -1;
+		private String detail;
+
+		private Phase(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * @param detail
+		 *            what the phase did, e.g. which source it loaded the
+		 *            dictionary from
+		 */
+		public void setDetail(String detail) {
+			synchronized (StartupReport.this) {
+				this.detail = detail;
+			}
+		}
+
+		/**
+		 * Ends the phase.
+		 */
+		@Override
+		public void close() {
+			synchronized (StartupReport.this) {
+				if (millis >= 0) {
+					return;
+				}
+				millis = (System.nanoTime() - phaseStartNanos) / 1000000;
+				long end = allocatedBytes();
+				// The heap can shrink if a collection was not reported yet.
+				allocated = end < 0 || phaseStartAllocated < 0 ? -1 : Math.max(0, end - phaseStartAllocated);
+			}
+		}
+
+		/**
+		 * @return the name of the phase
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return how long the phase took, or -1 if it didn't end yet
+		 */
+		public long getMillis() {
+			synchronized (StartupReport.this) {
+				return millis;
+			}
+		}
+
+		/**
+		 * @return the bytes that were allocated during the phase, or -1 if
+		 *         that is unknown or the phase didn't end yet
+		 */
+		public long getAllocatedBytes() {
+			synchronized (StartupReport.this) {
+				return allocated;
+			}
+		}
+
+		@Override
+		public String toString() {
+			synchronized (StartupReport.this) {
+				return name + ": " + (millis < 0 ? "running" : millis + " ms, " + megabytes(allocated) + " allocated")
+						+ (detail == null ? "" : " (" + detail + ")");
+			}
+		}
+
+	}
+
+	/**
+	 * The estimated heap footprint of the tokens of a class.
+	 */
+	public static final class Footprint {
+
+		private int count;
+		private long bytes;
+
+		private void add(long tokenBytes) {
+			count++;
+			bytes += tokenBytes;
+		}
+
+		/**
+		 * @return the number of tokens (1 for the index)
+		 */
+		public int getCount() {
+			return count;
+		}
+
+		/**
+		 * @return the estimated bytes that they retain
+		 */
+		public long getBytes() {
+			return bytes;
+		}
+
+		@Override
+		public String toString() {
+			return count + " tokens, " + megabytes(bytes);
+		}
+
+	}
+
+}
@@ -0,0 +1,34 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Shows the {@link StartupReport} of the {@link Listener} as text, or as JSON
+ * with the parameter "format=json".
+ */
+public class StartupReportServlet extends HttpServlet {
+
+	private static final long serialVersionUID = -6013390584518377652L;
+
+	@Override
+	protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+		StartupReport report = (StartupReport) getServletContext().getAttribute("startupReport");
+		if (report == null) {
+			resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "The start-up report is not available");
+			return;
+		}
+		resp.setCharacterEncoding("UTF-8");
+		if ("json".equals(req.getParameter("format"))) {
+			resp.setContentType("application/json");
+			resp.getWriter().print(report.toJson());
+		} else {
+			resp.setContentType("text/plain");
+			resp.getWriter().println(report);
+		}
+	}
+
+}
@@ -0,0 +1,31 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Plain-text overview of the server-side resources that are shared between
+ * requests (e.g. whether the dictionary is loaded yet, where it is kept and
+ * how the Kuromoji tokenizer and the lookup cache are being used).
+ */
+public class StatusServlet extends HttpServlet {
+
+	private static final long serialVersionUID = -3409961458925542170L;
+
+	@Override
+	protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+		resp.setContentType("text/plain");
+		resp.setCharacterEncoding("UTF-8");
+		PrintWriter pw = resp.getWriter();
+		pw.println(getServletContext().getAttribute("readiness"));
+		pw.println(getServletContext().getAttribute("dictionary"));
+		pw.println(getServletContext().getAttribute("tokenizer"));
+		pw.println(getServletContext().getAttribute("lookupCache"));
+		pw.println(getServletContext().getAttribute("lookupMetrics"));
+	}
+
+}
@@ -0,0 +1,136 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.ws1718.ismla.JapaneseHelper.shared.InflectedToken;
+import de.ws1718.ismla.JapaneseHelper.shared.Token;
+import de.ws1718.ismla.JapaneseHelper.shared.Translations;
+
+/**
+ * Makes tokens with equal field values share the same String and list
+ * instances. Most of the values repeat a lot: every inflected form of a verb
+ * has its own copy of e.g. "transitive godan verb (go-ku infl.)" and of its
+ * difficulty rating, and many entries have the same translations (e.g.
+ * "[no translation given]"). Translations that have not been parsed yet are
+ * shared by their raw text, so canonicalizing doesn't parse them. Inflected
+ * tokens don't even keep their own form
+ * and pronunciation, but derive them from their lemma (see
+ * {@link InflectedToken#deriveFromLemma(Map)}).
+ *
+ * The canonicalizer is only used while the dictionary is preprocessed. It is
+ * not thread-safe, and the translations it hands out are shared between
+ * tokens, so their lists must not be modified afterwards.
+ */
+final class TokenCanonicalizer {
+
+	private final Map<String, String> strings = new HashMap<>();
+	private final Map<List<String>, Translations> translations = new HashMap<>();
+	private final Map<String, Translations> rawTranslations = new HashMap<>();
+	private int tokens;
+	private int replacedStrings;
+	private int replacedLists;
+
+	/**
+	 * Replaces the values of the token by the canonical instances.
+	 *
+	 * @param tok
+	 *            the token
+	 */
+	void canonicalize(Token tok) {
+		tokens++;
+		String pos = tok.getPos();
+		String inflectionParadigm = tok.getInflectionParadigm();
+		String prettyPos = tok.getPrettyPos();
+		String posClass = tok.getPosClass();
+		String reading = tok.getReading();
+
+		// Changing the POS tag or inflection paradigm resets the pretty POS tag
+		// and the ranking keys, so they are set afterwards.
+		String canonicalPos = string(pos);
+		if (canonicalPos != pos) {
+			tok.setPos(canonicalPos);
+		}
+		String canonicalParadigm = string(inflectionParadigm);
+		if (canonicalParadigm != inflectionParadigm) {
+			tok.setInflectionParadigm(canonicalParadigm);
+		}
+		tok.setPrettyPos(string(prettyPos));
+		tok.setDifficultyRating(string(tok.getDifficultyRating()));
+		tok.setLazyTranslations(translations(tok.getLazyTranslations()));
+		if (reading != null && reading.equals(tok.getPronunciation())) {
+			// The pronunciation is usually in hiragana already.
+			reading = tok.getPronunciation();
+		}
+		tok.setRankingKeys(string(posClass), reading);
+
+		if (tok instanceof InflectedToken) {
+			// Most of the inflected forms only differ from their lemma in a
+			// suffix that the other lemmas of the paradigm share.
+			((InflectedToken) tok).deriveFromLemma(strings);
+		}
+	}
+
+	/**
+	 * @param s
+	 *            a string
+	 * @return the canonical instance of the string
+	 */
+	String string(String s) {
+		if (s == null) {
+			return null;
+		}
+		String canonical = strings.putIfAbsent(s, s);
+		if (canonical == null) {
+			return s;
+		}
+		if (canonical != s) {
+			replacedStrings++;
+		}
+		return canonical;
+	}
+
+	private Translations translations(Translations holder) {
+		if (holder == null) {
+			return null;
+		}
+		String raw = holder.getRaw();
+		if (raw != null) {
+			Translations canonical = rawTranslations.putIfAbsent(raw, holder);
+			if (canonical == null) {
+				return holder;
+			}
+			if (canonical != holder) {
+				replacedLists++;
+			}
+			return canonical;
+		}
+		ArrayList<String> list = holder.get();
+		if (list == null) {
+			return holder;
+		}
+		Translations canonical = translations.get(list);
+		if (canonical == null) {
+			for (int i = 0; i < list.size(); i++) {
+				list.set(i, string(list.get(i)));
+			}
+			list.trimToSize();
+			translations.put(list, holder);
+			return holder;
+		}
+		if (canonical != holder) {
+			replacedLists++;
+		}
+		return canonical;
+	}
+
+	@Override
+	public String toString() {
+		return "canonicalized " + tokens + " tokens: " + strings.size() + " distinct strings (" + replacedStrings
+				+ " copies dropped), " + (translations.size() + rawTranslations.size()) + " distinct translations (" + replacedLists
+				+ " copies dropped)";
+	}
+
+}
@@ -0,0 +1,293 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+import com.google.common.io.CountingInputStream;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import de.ws1718.ismla.JapaneseHelper.shared.TokenizationProgress;
+import de.ws1718.ismla.JapaneseHelper.shared.TokenizationProgress.State;
+
+/**
+ * Runs tokenization jobs (see {@link BulkTokenizer}) in the background, so the
+ * client can poll their progress instead of waiting for the whole corpus.
+ *
+ * One job runs at a time, the others wait in line. The jobs coordinate on
+ * their own thread and tokenize on the given workers, which are not shared
+ * with the interactive lookups. The last {@link #MAX_FINISHED_JOBS} finished
+ * jobs are kept for their results.
+ */
+final class TokenizationJobs {
+
+	private static final Logger logger = Logger.getLogger(TokenizationJobs.class.getSimpleName());
+
+	static final int MAX_FINISHED_JOBS = 16;
+
+	/**
+	 * Opens the input files of a job.
+	 */
+	interface Opener {
+		InputStream open(String file) throws IOException;
+	}
+
+	private final ExecutorService workers;
+	private final int parallelism;
+	private final ExecutorService coordinator = Executors.newSingleThreadExecutor(
+			new ThreadFactoryBuilder().setNameFormat("tokenization-job-%d").setDaemon(true).build());
+	private final AtomicLong ids = new AtomicLong();
+	// In the order in which they were submitted.
+	private final Map<String, Job> jobs = new LinkedHashMap<>();
+
+	/**
+	 * @param workers
+	 *            the workers that tokenize the lines
+	 * @param parallelism
+	 *            the number of workers
+	 */
+	TokenizationJobs(ExecutorService workers, int parallelism) {
+		this.workers = workers;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * @param file
+	 *            the path of an input file
+	 * @return the output file for it (in the working directory)
+	 */
+	static File outputFile(String file) {
+		String[] sections = file.split("/");
+		String filename = sections[sections.length - 1];
+		return new File(filename.split("\\.")[0] + "-tokenized.txt");
+	}
+
+	/**
+	 * Submits a job that tokenizes the files into their {@link #outputFile(String)
+	 * output files}.
+	 *
+	 * @param files
+	 *            the paths of the files
+	 * @param totalBytes
+	 *            the total size of the files, or -1 if it is unknown (then
+	 *            there is no estimate of the remaining time)
+	 * @param opener
+	 *            opens the files
+	 * @param lineTokenizer
+	 *            tokenizes a line (see {@link BulkTokenizer})
+	 * @return the ID of the job
+	 * @throws IllegalArgumentException
+	 *             if two files would be written to the same output file
+	 *             (e.g. corpus.txt and corpus.csv)
+	 */
+	String submit(List<String> files, long totalBytes, Opener opener, Function<String, String> lineTokenizer) {
+		Map<File, String> filesByOutput = new HashMap<>();
+		for (String file : files) {
+			String other = filesByOutput.put(outputFile(file), file);
+			if (other != null) {
+				throw new IllegalArgumentException(
+						other + " and " + file + " would both be tokenized into " + outputFile(file));
+			}
+		}
+		Job job = new Job(String.valueOf(ids.incrementAndGet()), files, totalBytes,
+				new BulkTokenizer(workers, parallelism, lineTokenizer));
+		synchronized (this) {
+			jobs.put(job.id, job);
+			job.future = coordinator.submit(() -> job.run(opener));
+			removeOldJobs();
+		}
+		logger.info("submitted tokenization job " + job.id + " for " + files);
+		return job.id;
+	}
+
+	private void removeOldJobs() {
+		int finished = 0;
+		for (Job job : jobs.values()) {
+			if (job.state.isFinished()) {
+				finished++;
+			}
+		}
+		for (Iterator<Job> it = jobs.values().iterator(); it.hasNext() && finished > MAX_FINISHED_JOBS;) {
+			if (it.next().state.isFinished()) {
+				it.remove();
+				finished--;
+			}
+		}
+	}
+
+	/**
+	 * @param jobId
+	 *            the ID of a job
+	 * @return its progress, or null if there is no such job (anymore)
+	 */
+	synchronized TokenizationProgress progress(String jobId) {
+		Job job = jobs.get(jobId);
+		return job == null ? null : job.progress();
+	}
+
+	/**
+	 * Cancels a job. The lines it has tokenized so far stay in the output
+	 * files.
+	 *
+	 * @param jobId
+	 *            the ID of a job
+	 * @return true if the job was cancelled, false if it was over already or
+	 *         there is no such job
+	 */
+	synchronized boolean cancel(String jobId) {
+		Job job = jobs.get(jobId);
+		if (job == null || job.state.isFinished()) {
+			return false;
+		}
+		job.cancelled = true;
+		job.future.cancel(true);
+		if (job.state == State.QUEUED) {
+			// It will never run.
+			job.finish(State.CANCELLED, null);
+		}
+		return true;
+	}
+
+	/**
+	 * Waits until a job is over.
+	 *
+	 * @param jobId
+	 *            the ID of a job
+	 * @return its final progress, or null if there is no such job
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting
+	 */
+	TokenizationProgress await(String jobId) throws InterruptedException {
+		Job job;
+		synchronized (this) {
+			job = jobs.get(jobId);
+			if (job == null) {
+				return null;
+			}
+		}
+		job.finished.await();
+		return job.progress();
+	}
+
+	/**
+	 * Cancels all jobs and stops the coordinating thread.
+	 */
+	synchronized void shutdown() {
+		for (String jobId : new ArrayList<>(jobs.keySet())) {
+			cancel(jobId);
+		}
+		coordinator.shutdownNow();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "tokenization jobs: " + jobs.values();
+	}
+
+	private final class Job {
+
+		private final String id;
+		private final List<String> files;
+		private final long totalBytes;
+		private final BulkTokenizer bulkTokenizer;
+		private final List<CountingInputStream> inputs = new ArrayList<>();
+		private final CountDownLatch finished = new CountDownLatch(1);
+		private Future<?> future;
+		private volatile State state = State.QUEUED;
+		private volatile boolean cancelled;
+		private volatile long start;
+		private volatile long end;
+		private volatile String message;
+
+		Job(String id, List<String> files, long totalBytes, BulkTokenizer bulkTokenizer) {
+			this.id = id;
+			this.files = files;
+			this.totalBytes = totalBytes;
+			this.bulkTokenizer = bulkTokenizer;
+		}
+
+		void run(Opener opener) {
+			synchronized (TokenizationJobs.this) {
+				if (state.isFinished()) {
+					return;
+				}
+				start = System.currentTimeMillis();
+				state = State.RUNNING;
+			}
+			try {
+				// The bulk tokenizer opens the files one after the other, and
+				// closes them.
+				BulkTokenizer.Report report = bulkTokenizer.tokenize(files, file -> {
+					CountingInputStream input = new CountingInputStream(opener.open(file));
+					synchronized (this) {
+						inputs.add(input);
+					}
+					return input;
+				}, file -> new FileOutputStream(outputFile(file)));
+				finish(State.DONE, report.toString());
+			} catch (IOException | RuntimeException e) {
+				if (cancelled) {
+					finish(State.CANCELLED, null);
+				} else {
+					logger.warning("Tokenization job " + id + " failed: " + e);
+					finish(State.FAILED, e.getMessage());
+				}
+			}
+		}
+
+		void finish(State state, String message) {
+			synchronized (TokenizationJobs.this) {
+				this.message = message;
+				end = System.currentTimeMillis();
+				this.state = state;
+			}
+			finished.countDown();
+		}
+
+		TokenizationProgress progress() {
+			State state = this.state;
+			long elapsed = 0;
+			if (start > 0) {
+				elapsed = (state.isFinished() ? end : System.currentTimeMillis()) - start;
+			}
+			long lines = bulkTokenizer.getLinesDone();
+			double linesPerSecond = lines * 1000.0 / Math.max(1, elapsed);
+			long eta = -1;
+			long bytesRead = bytesRead();
+			if (state == State.RUNNING && totalBytes > 0 && bytesRead > 0) {
+				eta = Math.max(0, elapsed * (totalBytes - bytesRead) / bytesRead);
+			}
+			return new TokenizationProgress(id, state, bulkTokenizer.getFilesDone(), files.size(), lines,
+					linesPerSecond, elapsed, eta, message);
+		}
+
+		private synchronized long bytesRead() {
+			long bytes = 0;
+			for (CountingInputStream input : inputs) {
+				bytes += input.getCount();
+			}
+			return bytes;
+		}
+
+		@Override
+		public String toString() {
+			return id + " (" + state + ")";
+		}
+
+	}
+
+}
@@ -14,6 +14,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -21,7 +23,6 @@ import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ListMultimap;
 
 import de.ws1718.ismla.JapaneseHelper.shared.InflectableToken;
-import de.ws1718.ismla.JapaneseHelper.shared.InflectedToken;
 import de.ws1718.ismla.JapaneseHelper.shared.Inflection;
 import de.ws1718.ismla.JapaneseHelper.shared.Token;
 
@@ -29,14 +30,32 @@ import de.ws1718.ismla.JapaneseHelper.shared.Token;
  * Preprocessing: convert the Wiktionary dump into Token objects and generate
  * and add the inflections for verbs and adjectives. Needs only to be performed
  * on server start-up.
+ * 
+ * Only the inflections of irregular verbs (and of entries whose form needs to
+ * be cleaned) are generated here. The dictionary finds the inflected forms of
+ * all other lemmas when they are looked up (see {@link Deinflector}), which
+ * saves most of the time and memory that generating them would take.
+ * 
+ * The lines of each dump are converted in parallel: they are split into chunks
+ * that fork/join workers parse and inflect independently (the templates and
+ * difficulty ratings are only read). The tokens of the chunks are then added to
+ * the dictionary in the order of the lines, so the result is the same for any
+ * number of threads. While they are added, equal values of different tokens
+ * are replaced by shared instances (see {@link TokenCanonicalizer}).
  */
 public class WiktionaryPreprocessor {
 
 	private static final Logger logger = Logger.getLogger(WiktionaryPreprocessor.class.getSimpleName());
 
-	private Map<String, List<Entry<Inflection, String>>> inflections;
+	// Chunks with at most this many lines are not split any further.
+	private static final int CHUNK_LINES = 512;
+
+	private Inflector inflector;
+	// Only used while reading the dictionary.
 	private ListMultimap<String, Token> tokens;
-	private HashMap<String, String> difficultyRatings;
+	private TokenCanonicalizer canonicalizer;
+	private Deinflector.Builder deinflections;
+	private DictionaryIndex dictionary;
 
 	/**
 	 * Preprocess the Wiktionary dump by converting it into Token objects and
@@ -54,173 +73,257 @@ public class WiktionaryPreprocessor {
 	 */
 	public WiktionaryPreprocessor(List<String> inflectionFilenames, List<InputStream> inflectionStreams,
 			List<InputStream> dictionaryStreams, HashMap<String, String> difficultyRatings) {
-		inflections = new HashMap<>();
-		tokens = ArrayListMultimap.create();
-		this.difficultyRatings = difficultyRatings;
+		this(inflectionFilenames, inflectionStreams, dictionaryStreams, difficultyRatings,
+				Runtime.getRuntime().availableProcessors());
+	}
 
-		setUpInflectionTemplates(inflectionFilenames, inflectionStreams);
-		for (InputStream dictionaryStream : dictionaryStreams) {
-			readDictionary(dictionaryStream);
+	/**
+	 * Like
+	 * {@link #WiktionaryPreprocessor(List, List, List, HashMap)}, but with a
+	 * fixed number of worker threads.
+	 * 
+	 * @param inflectionFilenames
+	 *            the file names of the inflection table templates
+	 * @param inflectionStreams
+	 *            the input streams corresponding to inflectionFilenames
+	 * @param dictionaryStreams
+	 *            the input streams belonging to the Wiktionary dump(s)
+	 * @param difficultyRatings
+	 *            a map from kanji characters to difficulty ratings
+	 * @param parallelism
+	 *            the number of threads that convert the dump(s)
+	 */
+	public WiktionaryPreprocessor(List<String> inflectionFilenames, List<InputStream> inflectionStreams,
+			List<InputStream> dictionaryStreams, HashMap<String, String> difficultyRatings, int parallelism) {
+		tokens = ArrayListMultimap.create();
+		canonicalizer = new TokenCanonicalizer();
+
+		inflector = new Inflector(readInflectionTemplates(inflectionFilenames, inflectionStreams), difficultyRatings);
+		deinflections = new Deinflector.Builder(inflector);
+		long start = System.currentTimeMillis();
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			for (InputStream dictionaryStream : dictionaryStreams) {
+				readDictionary(dictionaryStream, pool);
+			}
+		} finally {
+			pool.shutdown();
 		}
-		logger.info("read (and generated) " + tokens.size() + " tokens");
+		logger.info("read (and generated) " + tokens.size() + " tokens in " + (System.currentTimeMillis() - start)
+				+ " ms with " + parallelism + " threads");
+		logger.info(canonicalizer.toString());
+		canonicalizer = null;
+
+		// Freeze the results so that they can be shared between threads.
+		dictionary = DictionaryIndex.copyOf(tokens, deinflections.build());
+		tokens = null;
+		deinflections = null;
+		logger.info(dictionary.toString());
 	}
 
 	/**
 	 * @return the tokens from the Wiktionary dump and, if applicable, their
-	 *         inflected forms. The map points from token forms to individual
-	 *         {@link Token Token} objects or lists thereof.
+	 *         inflected forms. The (unmodifiable) map points from token forms
+	 *         to individual {@link Token Token} objects or lists thereof. It
+	 *         is a copy of the {@link #getDictionary() dictionary} that
+	 *         contains all inflected forms, so use the dictionary for lookups
+	 *         instead.
 	 */
 	public ListMultimap<String, Token> getTokens() {
-		return tokens;
+		return dictionary.asMultimap();
 	}
 
 	/**
-	 * Converts the Wiktionary dump entries into {@link Token Tokens} and, when
-	 * applicable, calls the inflection methods.
+	 * @return the read-only index of the tokens from the Wiktionary dump and,
+	 *         if applicable, their inflected forms
+	 */
+	public DictionaryIndex getDictionary() {
+		return dictionary;
+	}
+
+	/**
+	 * Converts the Wiktionary dump entries into {@link Token Tokens} (in
+	 * parallel) and adds them to the map.
 	 * 
 	 * @param is
 	 *            the input stream of a Wiktionary dump (a TSV file with the
 	 *            fields (in order) form, pronunciation, part of speech,
 	 *            translation).
+	 * @param pool
+	 *            the workers
 	 */
-	private void readDictionary(InputStream is) {
+	private void readDictionary(InputStream is, ForkJoinPool pool) {
+		List<String> lines = new ArrayList<>();
 		String line;
 		try (InputStreamReader isr = new InputStreamReader(is, "UTF-8"); BufferedReader br = new BufferedReader(isr)) {
-			lines: while ((line = br.readLine()) != null) {
-				line = line.trim();
-				if (line.startsWith("﻿##") || line.startsWith("##")) {
-					// The first version contains control characters.
-					continue;
-				}
-				String[] fields = line.split("\t");
-				if (fields.length < 4) {
-					continue;
-				}
-				String form = fields[0];
-				String pronunciation = fields[1];
-				String posAndInflection = fields[2];
-				String translation = fields[3];
-				Token tok = new Token(form, pronunciation, posAndInflection, translation);
-
-				// If the token is a verb without inflection information,
-				// we try to infer it.
-				if (posAndInflection.startsWith("V") && !tok.inflects()) {
-					tok.setInflectionParadigm(inferVerbInflectionParadigm(tok));
-				}
-
-				// If the token can be inflected,
-				// we might need to do some additional preprocessing:
-				if (tok.inflects()) {
-					switch (tok.getInflectionParadigm()) {
-					case "ichidan":
-						tok.setInflectionParadigm("ichi");
-						break;
-					case "ichi":
-						if (form.equals("居る")) { // ("to be, exist" (animate
-													// arguments))
-							// Add the (more common) kana version いる.
-							inflect(new InflectableToken(pronunciation, pronunciation, posAndInflection, translation));
-						}
-						break;
-					case "verbconj":
-					case "verbconj-auto":
-						// These are irregular verbs.
-						// Use our own inflection table templates to inflect
-						// them.
-						switch (form) {
-						case "有る":
-						case "ある":
-							tok.setInflectionParadigm("aru");
-							break;
-						case "べし":
-							tok.setInflectionParadigm("beshi");
-							// The pronunciation is listed as "suffix",
-							// so we re-use the kana from the form instead.
-							tok.setPronunciation(form);
-							break;
-						case "だ":
-							tok.setInflectionParadigm("da");
-							break;
-						case "出来る":
-							tok.setInflectionParadigm("dekiru");
-							break;
-						case "行く":
-							tok.setInflectionParadigm("iku");
-							break;
-						case "呉れる":
-						case "くれる":
-							tok.setInflectionParadigm("kureru");
-							break;
-						case "や":
-							tok.setInflectionParadigm("ya");
-							break;
-						case "する":
-						case "為る":
-							tok.setInflectionParadigm("suru-indep");
-							break;
-						default:
-							logger.warning("Could not assign a proper inflection paradigm to " + tok);
-							continue lines;
-						}
-						break;
-					case "na":
-						/*
-						 * Some of the Wiktionary entries end in "(な)". Since
-						 * not all na-adjective entries do, we remove it when
-						 * applicable. (We do not need it for generating
-						 * inflections.)
-						 */
-						tok.setForm(form.replaceAll("\\(な\\)", ""));
-						tok.setPronunciation(pronunciation.replaceAll("\\(な\\)", ""));
-					}
-
-					// Generate and add the inflections.
-					InflectableToken tokInfl = new InflectableToken(tok);
-					inflect(tokInfl);
-					addToken(tokInfl);
-				} else { // non-inflectable
-					// Finally, add the actual token.
-					addToken(tok);
-				}
+			while ((line = br.readLine()) != null) {
+				lines.add(line);
 			}
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
+
+		for (Token tok : pool.invoke(new ConvertTask(lines, 0, lines.size()))) {
+			// The tokens repeat many of the same values, so they share them.
+			canonicalizer.canonicalize(tok);
+			tokens.put(tok.getForm(), tok);
+			deinflections.add(tok);
+		}
 	}
 
 	/**
-	 * Clean the token, add its difficulty rating(s), and add it to the map.
-	 * 
-	 * @param tok
-	 *            the token
+	 * Converts a range of lines and returns the tokens in the order in which
+	 * they would have been added by a single thread.
 	 */
-	private void addToken(Token tok) {
-		// Remove whitespace and punctuation from the form and pronunciation.
-		tok.setForm(cleanString(tok.getForm()));
-		tok.setPronunciation(cleanString(tok.getPronunciation()));
-
-		// Set the difficulty ratings for its characters.
-		StringBuilder difficultyRating = new StringBuilder();
-		for (int i = 0; i < tok.getForm().length(); i++) {
-			char curChar = tok.getForm().charAt(i);
-			String rating = difficultyRatings.get(Character.toString(curChar));
-
-			if (rating == null || rating.isEmpty()) {
-				rating = "*";
+	private final class ConvertTask extends RecursiveTask<List<Token>> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<String> lines;
+		private final int from;
+		private final int to;
+
+		ConvertTask(List<String> lines, int from, int to) {
+			this.lines = lines;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected List<Token> compute() {
+			if (to - from <= CHUNK_LINES) {
+				List<Token> converted = new ArrayList<>();
+				for (int i = from; i < to; i++) {
+					convertLine(lines.get(i), converted);
+				}
+				return converted;
 			}
-			difficultyRating.append(rating);
-			difficultyRating.append("-");
+			int middle = (from + to) >>> 1;
+			ConvertTask first = new ConvertTask(lines, from, middle);
+			first.fork();
+			List<Token> second = new ConvertTask(lines, middle, to).compute();
+			List<Token> converted = first.join();
+			converted.addAll(second);
+			return converted;
 		}
-		difficultyRating.setLength(difficultyRating.length() - 1);
-		tok.setDifficultyRating(difficultyRating.toString());
 
-		tokens.put(tok.getForm(), tok);
 	}
 
-	private String cleanString(String word) {
-		return word.replaceAll("[-\\.\\s+]", "");
+	/**
+	 * Converts a Wiktionary dump entry into a {@link Token Token} and, when
+	 * applicable, calls the inflection methods.
+	 * 
+	 * @param line
+	 *            a line of the Wiktionary dump
+	 * @param converted
+	 *            the list to which the token(s) are added
+	 */
+	private void convertLine(String line, List<Token> converted) {
+		line = line.trim();
+		if (line.startsWith("﻿##") || line.startsWith("##")) {
+			// The first version contains control characters.
+			return;
+		}
+		String[] fields = line.split("\t");
+		if (fields.length < 4) {
+			return;
+		}
+		String form = fields[0];
+		String pronunciation = fields[1];
+		String posAndInflection = fields[2];
+		String translation = fields[3];
+		Token tok = new Token(form, pronunciation, posAndInflection, translation);
+
+		// If the token is a verb without inflection information,
+		// we try to infer it.
+		if (posAndInflection.startsWith("V") && !tok.inflects()) {
+			tok.setInflectionParadigm(inferVerbInflectionParadigm(tok));
+		}
+
+		// If the token can be inflected,
+		// we might need to do some additional preprocessing:
+		if (tok.inflects()) {
+			switch (tok.getInflectionParadigm()) {
+			case "ichidan":
+				tok.setInflectionParadigm("ichi");
+				break;
+			case "ichi":
+				if (form.equals("居る")) { // ("to be, exist" (animate arguments))
+					// Add the (more common) kana version いる.
+					InflectableToken kana = new InflectableToken(pronunciation, pronunciation, posAndInflection,
+							translation);
+					inflector.inflect(kana);
+					converted.addAll(kana.getInflectedForms());
+				}
+				break;
+			case "verbconj":
+			case "verbconj-auto":
+				// These are irregular verbs.
+				// Use our own inflection table templates to inflect
+				// them.
+				switch (form) {
+				case "有る":
+				case "ある":
+					tok.setInflectionParadigm("aru");
+					break;
+				case "べし":
+					tok.setInflectionParadigm("beshi");
+					// The pronunciation is listed as "suffix",
+					// so we re-use the kana from the form instead.
+					tok.setPronunciation(form);
+					break;
+				case "だ":
+					tok.setInflectionParadigm("da");
+					break;
+				case "出来る":
+					tok.setInflectionParadigm("dekiru");
+					break;
+				case "行く":
+					tok.setInflectionParadigm("iku");
+					break;
+				case "呉れる":
+				case "くれる":
+					tok.setInflectionParadigm("kureru");
+					break;
+				case "や":
+					tok.setInflectionParadigm("ya");
+					break;
+				case "する":
+				case "為る":
+					tok.setInflectionParadigm("suru-indep");
+					break;
+				default:
+					logger.warning("Could not assign a proper inflection paradigm to " + tok);
+					return;
+				}
+				break;
+			case "na":
+				/*
+				 * Some of the Wiktionary entries end in "(な)". Since
+				 * not all na-adjective entries do, we remove it when
+				 * applicable. (We do not need it for generating
+				 * inflections.)
+				 */
+				tok.setForm(form.replaceAll("\\(な\\)", ""));
+				tok.setPronunciation(pronunciation.replaceAll("\\(な\\)", ""));
+			}
+
+			// Generate and add the inflections, unless they are generated when
+			// they are looked up.
+			InflectableToken tokInfl = new InflectableToken(tok);
+			if (!inflector.inflectsOnDemand(tokInfl)) {
+				inflector.inflect(tokInfl);
+				converted.addAll(tokInfl.getInflectedForms());
+			}
+			inflector.finish(tokInfl);
+			converted.add(tokInfl);
+		} else { // non-inflectable
+			// Finally, add the actual token.
+			inflector.finish(tok);
+			converted.add(tok);
+		}
 	}
 
 	/**
@@ -393,164 +496,32 @@ public class WiktionaryPreprocessor {
 	}
 
 	/**
-	 * Generate inflected forms of the given token and add them to the map.
-	 * 
-	 * @param tok
-	 *            the token
-	 */
-	private void inflect(InflectableToken tok) {
-		String inflectionParadigm = tok.getInflectionParadigm();
-		// If the inflection group was inferred with
-		// inferVerbInflectionParadigm, we need to remove the "probably". We
-		// only want to use that information in the UI.
-		inflectionParadigm = inflectionParadigm.replace("probably ", "");
-		List<Entry<Inflection, String>> paradigm = inflections.get(inflectionParadigm);
-
-		if (paradigm == null) {
-			logger.warning("Could not find an inflection table template for \"" + inflectionParadigm + "\".");
-			return;
-		}
-
-		for (Entry<Inflection, String> entry : paradigm) {
-			Inflection infl = entry.getKey();
-			String suffix = entry.getValue();
-
-			// Some entries contain optional kana (e.g. "なら（ば）" in ja-na.txt).
-			// We create tokens for both versions (e.g. "ならば" and "なら"):
-			int parOpen = suffix.indexOf("（");
-			int parClose = suffix.indexOf("）");
-			if (parOpen != -1 && parClose != -1 && parClose > parOpen) {
-				// without optional kana
-				inflect(tok, suffix.substring(0, parOpen) + suffix.substring(parClose + 1), infl, inflectionParadigm);
-				// with optional kana
-				inflect(tok, suffix.substring(0, parOpen) + suffix.substring(parOpen + 1, parClose)
-						+ suffix.substring(parClose + 1), infl, inflectionParadigm);
-			} else {
-				// regular entries
-				inflect(tok, suffix, infl, inflectionParadigm);
-			}
-		}
-	}
-
-	/**
-	 * Inflect the token by extracting its root, adding a suffix and adding it
-	 * as an {@link InflectedToken InflectedToken}.
-	 * 
-	 * @param tok
-	 *            the lemma token
-	 * @param suffix
-	 *            the inflection suffix
-	 * @param inflection
-	 *            the inflection
-	 * @param inflectionParadigm
-	 *            the name of the inflection paradigm
-	 */
-	private void inflect(InflectableToken tok, String suffix, Inflection inflection, String inflectionParadigm) {
-		String form = tok.getForm();
-		String pron = tok.getPronunciation();
-		String formInfl = "";
-		String pronInfl = "";
-
-		// Get the root of the predicate and add the inflectional suffix.
-		switch (inflectionParadigm) {
-		case "aru":
-			// The template 'aru' includes the root because it is irregular.
-			if ("有る".equals(form)) {
-				formInfl = suffix;
-			} else {
-				formInfl = aruKanjiToKana(suffix);
-			}
-			pronInfl = aruKanjiToKana(suffix);
-			break;
-		case "suru-indep":
-			// The template 'suru-indep' includes the root
-			// because it is irregular.
-			formInfl = suffix;
-			pronInfl = suffix;
-			// Turn the pure-kana forms into forms containing kanji.
-			if ("為る".equals(form)) {
-				// There seems to be only one reading for the
-				// imperfective inflection of the kanji version.
-				if (Inflection.IMPERFECTIVE.equals(inflection) || Inflection.IMPERFECTIVE3.equals(inflection)) {
-					return;
-				}
-				if (suffix.startsWith("で")) {
-					formInfl = "出" + suffix.substring(1);
-				} else {
-					formInfl = "為" + suffix.substring(1);
-				}
-			}
-			break;
-		case "kuru":
-			/*
-			 * A special property of the verb with this inflection scheme is
-			 * that the vowel quality of final syllable of its root (来) changes
-			 * for some of the inflections--this kanji is represented by
-			 * different kana when transcribing its pronunciation. Therefore, we
-			 * included the kana versions of this syllable in the template and
-			 * need to avoid including this syllable twice now.
-			 */
-			pronInfl = pron.substring(0, pron.length() - 2) + suffix;
-			if (form.endsWith("来る")) {
-				// Keep the kanji character.
-				formInfl = form.substring(0, form.length() - 1) + suffix.substring(1);
-			} else {
-				formInfl = form.substring(0, pron.length() - 2) + suffix;
-			}
-			break;
-		case "suru-i-ku":
-		case "suru-tsu":
-		case "suru":
-		case "zuru":
-			// Remove the final する/ずる to get the root.
-			formInfl = form.substring(0, form.length() - 2) + suffix;
-			pronInfl = pron.substring(0, pron.length() - 2) + suffix;
-			break;
-		case "na":
-		case "nari":
-		case "tari":
-			// Nothing to remove.
-			formInfl = form + suffix;
-			pronInfl = pron + suffix;
-			break;
-		default:
-			// Remove the final syllable to get the root.
-			formInfl = form.substring(0, form.length() - 1) + suffix;
-			pronInfl = pron.substring(0, pron.length() - 1) + suffix;
-		}
-
-		InflectedToken inflTok = new InflectedToken(tok, formInfl, pronInfl, inflection);
-		tok.addInflectedForm(inflTok);
-		addToken(inflTok);
-	}
-
-	private static String aruKanjiToKana(String word) {
-		return word.replace('有', 'あ').replace('無', 'な');
-	}
-
-	/**
-	 * Reads the inflection table templates and saves them in a map from
-	 * inflection paradigm names to lists of entries from {@link Inflection
-	 * Inflections} to inflection suffixes.
+	 * Reads the inflection table templates into a map from inflection paradigm
+	 * names to lists of entries from {@link Inflection Inflections} to
+	 * inflection suffixes.
 	 * 
 	 * @param inflectionFilenames
 	 *            the file names of the inflection table templates
 	 * @param inflectionStreams
 	 *            the input streams corresponding to inflectionFilenames
+	 * @return the map
 	 */
-	private void setUpInflectionTemplates(List<String> inflectionFilenames, List<InputStream> inflectionStreams) {
+	static Map<String, List<Entry<Inflection, String>>> readInflectionTemplates(List<String> inflectionFilenames,
+			List<InputStream> inflectionStreams) {
+		Map<String, List<Entry<Inflection, String>>> inflections = new HashMap<>();
 		logger.info("Found the following " + inflectionFilenames.size() + " inflection templates:");
 		logger.info(inflectionFilenames.stream().map(file -> new File(file).getName()).collect(Collectors.toList())
 				.toString());
 
 		for (int i = 0; i < inflectionFilenames.size(); i++) {
-			setUpTemplate(inflectionFilenames.get(i), inflectionStreams.get(i));
+			setUpTemplate(inflectionFilenames.get(i), inflectionStreams.get(i), inflections);
 		}
 
 		logger.fine("Read the following " + inflections.size() + " inflection maps:");
 		for (Entry<String, List<Entry<Inflection, String>>> entry : inflections.entrySet()) {
 			logger.fine(entry.getKey() + "-->" + entry.getValue());
 		}
+		return inflections;
 	}
 
 	/**
@@ -562,8 +533,11 @@ public class WiktionaryPreprocessor {
 	 *            the file name of the inflection table template
 	 * @param is
 	 *            the corresponding input stream
+	 * @param inflections
+	 *            the map
 	 */
-	private void setUpTemplate(String filename, InputStream is) {
+	private static void setUpTemplate(String filename, InputStream is,
+			Map<String, List<Entry<Inflection, String>>> inflections) {
 		// We use a list to retain the order of the inflections, as given in the
 		// templates. This makes the inflection tables in the UI look neater.
 		List<Entry<Inflection, String>> inflectionParadigm = new ArrayList<>();
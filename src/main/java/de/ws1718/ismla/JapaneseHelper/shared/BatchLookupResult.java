@@ -0,0 +1,78 @@
+package de.ws1718.ismla.JapaneseHelper.shared;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The results of looking up several sentences at once, in the order of the
+ * sentences, plus how long the server took for the whole batch.
+ */
+public class BatchLookupResult implements Serializable {
+
+	private static final long serialVersionUID = 4436093010254751203L;
+
+	// `Array`List because it needs to be serializable
+	private ArrayList<List<ArrayList<Token>>> results;
+	private long elapsedMillis;
+
+	/**
+	 * Default constructor.
+	 */
+	public BatchLookupResult() {
+		this(new ArrayList<List<ArrayList<Token>>>(), 0);
+	}
+
+	/**
+	 * Constructs a new batch result.
+	 * 
+	 * @param results
+	 *            the lookup results, one per sentence
+	 * @param elapsedMillis
+	 *            the time it took to look up all sentences, in milliseconds
+	 */
+	public BatchLookupResult(ArrayList<List<ArrayList<Token>>> results, long elapsedMillis) {
+		this.results = results;
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	/**
+	 * @return the lookup results, one per sentence (in the same order as the
+	 *         sentences)
+	 */
+	public ArrayList<List<ArrayList<Token>>> getResults() {
+		return results;
+	}
+
+	/**
+	 * @param results
+	 *            the lookup results to set
+	 */
+	public void setResults(ArrayList<List<ArrayList<Token>>> results) {
+		this.results = results;
+	}
+
+	/**
+	 * @return the time it took the server to look up all sentences, in
+	 *         milliseconds
+	 */
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/**
+	 * @param elapsedMillis
+	 *            the time to set, in milliseconds
+	 */
+	public void setElapsedMillis(long elapsedMillis) {
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	/**
+	 * @return the number of sentences in the batch
+	 */
+	public int size() {
+		return results.size();
+	}
+
+}
@@ -0,0 +1,25 @@
+package de.ws1718.ismla.JapaneseHelper.shared;
+
+/**
+ * Thrown by the service methods that need the dictionary while it is still
+ * loading (see Listener). The client shows the message.
+ */
+public class DictionaryLoadingException extends Exception {
+
+	private static final long serialVersionUID = -6190388046523402315L;
+
+	/**
+	 * Default constructor (for serialization).
+	 */
+	public DictionaryLoadingException() {
+	}
+
+	/**
+	 * @param message
+	 *            what could not be done yet
+	 */
+	public DictionaryLoadingException(String message) {
+		super(message);
+	}
+
+}
@@ -0,0 +1,312 @@
+package de.ws1718.ismla.JapaneseHelper.shared;
+
+/**
+ * Removes extraneous markup from Wiktionary dump translation strings in a
+ * single pass (see {@link Token#processGlosses(String)}).
+ *
+ * The markup used to be removed by a cascade of regular expressions, each of
+ * which rewrote the whole string. The normalizer produces the same output: the
+ * characters flow through a pipeline of small stages, one per former
+ * expression and in the same order, and each stage only sees the output of
+ * the previous one. Like the expressions, the stages don't look at their own
+ * output again (e.g. "&amp;amp;" becomes "&amp;", not "&").
+ * <ol>
+ * <li>HTML entities (the escaped HTML sometimes includes extra whitespace or
+ * lacks the final semicolon) and '' (as a quotation mark)
+ * <li>HTML comments (they contain some extra whitespace, too)
+ * <li>"##... " (enumerations, which become bullet points)
+ * <li>hash signs at the end
+ * <li>double curly braces
+ * <li>empty parentheses
+ * <li>sequences of whitespace, which become a single space
+ * </ol>
+ *
+ * Instances are not thread-safe, use {@link #normalize(String)}.
+ */
+public final class GlossNormalizer {
+
+	// The entities that can follow an ampersand (after the "&amp;" itself has
+	// been replaced), whether they swallow a following space, and their
+	// replacements. The replacements of &nbsp; and &hellip; are not the
+	// characters themselves (the original expressions used octal escapes by
+	// mistake), but changing them would change the dictionary.
+	private static final String[] ENTITIES = { "lt", "gt", "quot", "ndash", "mdash", "nbsp", "hellip", "times" };
+	private static final boolean[] TRAILING_SPACE = { false, false, true, true, true, true, true, true };
+	private static final String[] REPLACEMENTS = { "<", ">", "\"", "–", "—", "u\00A0", "u\2026", "×" };
+
+	private static final String COMMENT_START = "< !--";
+
+	private final StringBuilder out;
+
+	// The last characters before the comment stage passes them on. A comment
+	// that is removed can join them with the following text into a new "< !--".
+	private final StringBuilder held = new StringBuilder(COMMENT_START.length() * 2);
+	private boolean inComment;
+	// Whether the last two characters of the current comment are dashes.
+	private boolean dash1;
+	private boolean dash2;
+
+	// The number of hash signs that might start an enumeration.
+	private int enumerationHashes;
+
+	// The number of hash signs (and the line terminator after them) that might
+	// end the string.
+	private int finalHashes;
+	private char terminator;
+	private boolean terminatorPaired;
+
+	private char brace;
+	private boolean parenthesis;
+	private boolean whitespace;
+
+	private GlossNormalizer(int capacity) {
+		out = new StringBuilder(capacity);
+	}
+
+	/**
+	 * @param translation
+	 *            the translation string
+	 * @return the cleaned string
+	 */
+	// public for the benchmarks
+	public static String normalize(String translation) {
+		String s = translation.trim();
+		int length = s.length();
+		GlossNormalizer normalizer = new GlossNormalizer(length);
+		int i = 0;
+		while (i < length) {
+			char c = s.charAt(i);
+			if (c == '&') {
+				i = normalizer.entity(s, i + 1);
+			} else if (c == '\'' && i + 1 < length && s.charAt(i + 1) == '\'') {
+				normalizer.comment('"');
+				i += 2;
+			} else {
+				normalizer.comment(c);
+				i++;
+			}
+		}
+		return normalizer.finish();
+	}
+
+	/**
+	 * Replaces the entity that starts with an ampersand (just before the
+	 * given position).
+	 *
+	 * @param s
+	 *            the string
+	 * @param start
+	 *            the position after the ampersand
+	 * @return the position after the entity
+	 */
+	private int entity(String s, int start) {
+		int i = start;
+		if (s.startsWith("amp", i)) {
+			// The ampersand can be followed by another entity (e.g. "&amp;lt;").
+			i += 3;
+			if (i < s.length() && s.charAt(i) == ';') {
+				i++;
+			}
+		}
+		int name = i;
+		if (name < s.length() && s.charAt(name) == ' ') {
+			name++;
+		}
+		for (int e = 0; e < ENTITIES.length; e++) {
+			if (s.startsWith(ENTITIES[e], name)) {
+				int end = name + ENTITIES[e].length();
+				if (end < s.length() && s.charAt(end) == ';') {
+					end++;
+				}
+				if (TRAILING_SPACE[e] && end < s.length() && s.charAt(end) == ' ') {
+					end++;
+				}
+				String replacement = REPLACEMENTS[e];
+				for (int j = 0; j < replacement.length(); j++) {
+					comment(replacement.charAt(j));
+				}
+				return end;
+			}
+		}
+		comment('&');
+		return i;
+	}
+
+	private void comment(char c) {
+		if (inComment) {
+			if (dash2 && dash1 && c == '>') {
+				inComment = false;
+			} else {
+				dash2 = dash1;
+				dash1 = c == '-';
+			}
+			return;
+		}
+		held.append(c);
+		int length = held.length();
+		if (c == '-' && endsWithCommentStart()) {
+			held.setLength(length - COMMENT_START.length());
+			inComment = true;
+			// The comment can end with the dashes of "< !--" (i.e. "< !-->").
+			dash1 = true;
+			dash2 = true;
+			return;
+		}
+		if (length > 2 * (COMMENT_START.length() - 1)) {
+			enumeration(held.charAt(0));
+			held.deleteCharAt(0);
+		}
+	}
+
+	private boolean endsWithCommentStart() {
+		int offset = held.length() - COMMENT_START.length();
+		if (offset < 0) {
+			return false;
+		}
+		for (int i = 0; i < COMMENT_START.length(); i++) {
+			if (held.charAt(offset + i) != COMMENT_START.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void enumeration(char c) {
+		if (c == '#') {
+			enumerationHashes++;
+			return;
+		}
+		if (enumerationHashes >= 2 && c == ' ') {
+			enumerationHashes = 0;
+			finalHash('•');
+			return;
+		}
+		for (; enumerationHashes > 0; enumerationHashes--) {
+			finalHash('#');
+		}
+		finalHash(c);
+	}
+
+	private void finalHash(char c) {
+		if (finalHashes == 0) {
+			if (c == '#') {
+				finalHashes = 1;
+			} else {
+				brace(c);
+			}
+			return;
+		}
+		if (terminator == 0) {
+			if (c == '#') {
+				finalHashes++;
+			} else if (isLineTerminator(c)) {
+				// The hash signs are still at the end if the line terminator is.
+				terminator = c;
+			} else {
+				flushFinalHashes();
+				brace(c);
+			}
+			return;
+		}
+		if (terminator == '\r' && !terminatorPaired && c == '\n') {
+			terminatorPaired = true;
+			return;
+		}
+		flushFinalHashes();
+		finalHash(c);
+	}
+
+	private void flushFinalHashes() {
+		for (; finalHashes > 0; finalHashes--) {
+			brace('#');
+		}
+		flushTerminator();
+	}
+
+	private void flushTerminator() {
+		if (terminator != 0) {
+			brace(terminator);
+			if (terminatorPaired) {
+				brace('\n');
+			}
+		}
+		terminator = 0;
+		terminatorPaired = false;
+	}
+
+	private void brace(char c) {
+		if (brace != 0) {
+			char previous = brace;
+			brace = 0;
+			if (c == previous) {
+				return;
+			}
+			parenthesis(previous);
+		}
+		if (c == '{' || c == '}') {
+			brace = c;
+		} else {
+			parenthesis(c);
+		}
+	}
+
+	private void parenthesis(char c) {
+		if (parenthesis) {
+			parenthesis = false;
+			if (c == ')') {
+				return;
+			}
+			whitespace('(');
+		}
+		if (c == '(') {
+			parenthesis = true;
+		} else {
+			whitespace(c);
+		}
+	}
+
+	private void whitespace(char c) {
+		if (isWhitespace(c)) {
+			whitespace = true;
+			return;
+		}
+		if (whitespace) {
+			out.append(' ');
+			whitespace = false;
+		}
+		out.append(c);
+	}
+
+	private String finish() {
+		// A comment that isn't closed is removed up to the end.
+		for (int i = 0; i < held.length(); i++) {
+			enumeration(held.charAt(i));
+		}
+		for (; enumerationHashes > 0; enumerationHashes--) {
+			finalHash('#');
+		}
+		finalHashes = 0;
+		flushTerminator();
+		if (brace != 0) {
+			parenthesis(brace);
+		}
+		if (parenthesis) {
+			whitespace('(');
+		}
+		if (whitespace) {
+			out.append(' ');
+		}
+		return out.toString();
+	}
+
+	// The characters that "$" matches before.
+	private static boolean isLineTerminator(char c) {
+		return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+	}
+
+	// The characters that "\s" matches.
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+
+}
@@ -22,7 +22,7 @@ public class InflectableToken extends Token {
 	 *            the base token
 	 */
 	public InflectableToken(Token tok) {
-		super(tok.getForm(), tok.getPronunciation(), tok.getPos(), tok.getInflectionParadigm(), tok.getTranslations());
+		super(tok.getForm(), tok.getPronunciation(), tok.getPos(), tok.getInflectionParadigm(), tok.getLazyTranslations());
 		inflectedForms = new ArrayList<>();
 	}
 
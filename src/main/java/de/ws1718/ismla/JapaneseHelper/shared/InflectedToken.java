@@ -1,10 +1,42 @@
 package de.ws1718.ismla.JapaneseHelper.shared;
 
+import java.util.ArrayList;
+import java.util.Map;
+
+/**
+ * An inflected form of an {@link InflectableToken}.
+ * 
+ * The dictionary contains many inflected forms per lemma, so they can be
+ * stored compactly (see {@link #deriveFromLemma(Map)}): instead of its own
+ * form and pronunciation, the token only keeps how many characters of the
+ * lemma's form and pronunciation it starts with and the (shared) suffixes
+ * that follow them. The derived strings are cached when they are first used
+ * (sorting, equals and hashCode, the client all read them repeatedly), so only
+ * the tokens that are looked up take up the memory for them again.
+ * 
+ * A token can also stack several inflections (e.g. 食べさせられなかった, the
+ * causative, passive, negative and past of 食べる). Its inflection is the last
+ * one, and the others are its {@link #getPreviousInflections() previous
+ * inflections}.
+ */
 public class InflectedToken extends Token {
 
 	private static final long serialVersionUID = -8227675932132742011L;
 	private InflectableToken lemmaToken;
 	private Inflection inflection;
+	// The inflections before the last one, or null if there are none.
+	private ArrayList<Inflection> previousInflections;
+	// If the suffixes are set, the form and pronunciation are derived from the
+	// lemma's.
+	private int formStem;
+	private String formSuffix;
+	private int pronunciationStem;
+	private String pronunciationSuffix;
+	// Whether the reading is the same as the pronunciation.
+	private transient boolean readingIsPronunciation;
+	// The derived form and pronunciation, or null until they are used.
+	private transient String derivedForm;
+	private transient String derivedPronunciation;
 
 	/**
 	 * Constructs a dummy InflectedToken.
@@ -28,11 +60,118 @@ public class InflectedToken extends Token {
 	 */
 	public InflectedToken(InflectableToken lemmaToken, String form, String pronunciation, Inflection inflection) {
 		super(form, pronunciation, lemmaToken.getPos(), lemmaToken.getInflectionParadigm(),
-				lemmaToken.getTranslations());
+				lemmaToken.getLazyTranslations());
 		this.lemmaToken = lemmaToken;
 		this.inflection = inflection;
 	}
 
+	/**
+	 * Stops storing the form and pronunciation and derives them from the
+	 * lemma's form and pronunciation instead. The lemma's form and
+	 * pronunciation must not change afterwards.
+	 * 
+	 * @param suffixes
+	 *            the shared instances of the suffixes (new suffixes are
+	 *            added)
+	 */
+	public void deriveFromLemma(Map<String, String> suffixes) {
+		if (lemmaToken == null || lemmaToken.getForm() == null || lemmaToken.getPronunciation() == null) {
+			return;
+		}
+		String form = getForm();
+		String pronunciation = getPronunciation();
+		String reading = getReading();
+		if (form == null || pronunciation == null) {
+			return;
+		}
+		String posClass = getPosClass();
+
+		formStem = commonPrefixLength(lemmaToken.getForm(), form);
+		formSuffix = share(form.substring(formStem), suffixes);
+		pronunciationStem = commonPrefixLength(lemmaToken.getPronunciation(), pronunciation);
+		pronunciationSuffix = share(pronunciation.substring(pronunciationStem), suffixes);
+		derivedForm = null;
+		derivedPronunciation = null;
+		super.setForm(null);
+		// This also resets the reading.
+		super.setPronunciation(null);
+		readingIsPronunciation = pronunciation.equals(reading);
+		super.setRankingKeys(posClass, readingIsPronunciation ? null : reading);
+	}
+
+	private static int commonPrefixLength(String s1, String s2) {
+		int len = Math.min(s1.length(), s2.length());
+		int i = 0;
+		while (i < len && s1.charAt(i) == s2.charAt(i)) {
+			i++;
+		}
+		return i;
+	}
+
+	private static String share(String suffix, Map<String, String> suffixes) {
+		String shared = suffixes.get(suffix);
+		if (shared == null) {
+			suffixes.put(suffix, suffix);
+			shared = suffix;
+		}
+		return shared;
+	}
+
+	@Override
+	public String getForm() {
+		if (formSuffix != null) {
+			String form = derivedForm;
+			if (form == null) {
+				form = lemmaToken.getForm().substring(0, formStem) + formSuffix;
+				derivedForm = form;
+			}
+			return form;
+		}
+		return super.getForm();
+	}
+
+	@Override
+	public void setForm(String form) {
+		formSuffix = null;
+		derivedForm = null;
+		super.setForm(form);
+	}
+
+	@Override
+	public String getPronunciation() {
+		if (pronunciationSuffix != null) {
+			String pronunciation = derivedPronunciation;
+			if (pronunciation == null) {
+				pronunciation = lemmaToken.getPronunciation().substring(0, pronunciationStem) + pronunciationSuffix;
+				derivedPronunciation = pronunciation;
+			}
+			return pronunciation;
+		}
+		return super.getPronunciation();
+	}
+
+	@Override
+	public void setPronunciation(String pronunciation) {
+		pronunciationSuffix = null;
+		derivedPronunciation = null;
+		readingIsPronunciation = false;
+		super.setPronunciation(pronunciation);
+	}
+
+	@Override
+	public String getReading() {
+		if (readingIsPronunciation) {
+			return getPronunciation();
+		}
+		return super.getReading();
+	}
+
+	@Override
+	public void setRankingKeys(String posClass, String reading) {
+		readingIsPronunciation = false;
+		super.setRankingKeys(posClass, reading);
+	}
+
 	/**
 	 * @return the lemma token
 	 */
@@ -45,6 +184,17 @@ public class InflectedToken extends Token {
 	 *            the lemma token to set
 	 */
 	public void setLemmaToken(InflectableToken lemmaToken) {
+		// Keep the form and pronunciation.
+		String form = getForm();
+		String pronunciation = getPronunciation();
+		if (formSuffix != null) {
+			setForm(form);
+		}
+		if (pronunciationSuffix != null) {
+			String reading = getReading();
+			setPronunciation(pronunciation);
+			super.setRankingKeys(getPosClass(), reading);
+		}
 		this.lemmaToken = lemmaToken;
 	}
 
@@ -63,6 +213,25 @@ public class InflectedToken extends Token {
 		this.inflection = inflection;
 	}
 
+	/**
+	 * @return the inflections that are applied to the lemma before the
+	 *         {@link #getInflection() inflection} (in order), or null if the
+	 *         inflection is applied to the lemma itself
+	 */
+	public ArrayList<Inflection> getPreviousInflections() {
+		return previousInflections;
+	}
+
+	/**
+	 * @param previousInflections
+	 *            the previous inflections to set (null or empty if there are
+	 *            none)
+	 */
+	public void setPreviousInflections(ArrayList<Inflection> previousInflections) {
+		this.previousInflections = previousInflections == null || previousInflections.isEmpty() ? null
+				: previousInflections;
+	}
+
 	/**
 	 * @return the inflection information and lemma, as to be presented in the
 	 *         GUI
@@ -77,6 +246,15 @@ public class InflectedToken extends Token {
 	@SuppressWarnings("incomplete-switch")
 	public String getInflectionInformation() {
 		String infl = inflection.toString();
+		if (previousInflections != null) {
+			// The last inflection belongs to the paradigm of the previous
+			// form, not to the one of the lemma.
+			StringBuilder sb = new StringBuilder();
+			for (Inflection previous : previousInflections) {
+				sb.append(previous).append(" + ");
+			}
+			return sb.append(infl).toString();
+		}
 
 		// With some of the inflection groups, we can give more details.
 		if ("ichi".equals(getInflectionParadigm()) || "dekiru".equals(getInflectionParadigm())
@@ -113,6 +291,7 @@ public class InflectedToken extends Token {
 		final int prime = 31;
 		int result = super.hashCode();
 		result = prime * result + ((inflection == null) ? 0 : inflection.hashCode());
+		result = prime * result + ((previousInflections == null) ? 0 : previousInflections.hashCode());
 		result = prime * result + ((lemmaToken == null) ? 0 : lemmaToken.hashCode());
 		return result;
 	}
@@ -133,6 +312,13 @@ public class InflectedToken extends Token {
 		} else if (!inflection.equals(other.inflection)) {
 			return false;
 		}
+		if (previousInflections == null) {
+			if (other.previousInflections != null) {
+				return false;
+			}
+		} else if (!previousInflections.equals(other.previousInflections)) {
+			return false;
+		}
 		if (lemmaToken == null) {
 			return other.lemmaToken == null;
 		}
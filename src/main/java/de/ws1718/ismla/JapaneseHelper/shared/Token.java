@@ -12,9 +12,16 @@ public class Token implements Serializable {
 	private String pos;
 	private String prettyPos;
 	private String inflectionParadigm;
-	// `Array`List because it needs to be serializable
-	private ArrayList<String> translations;
+	// Parsed when they are first accessed (see Translations)
+	private Translations translations;
 	private String difficultyRating;
+	// Set if only Kuromoji analyzed the token because the dictionary was still
+	// loading.
+	private boolean provisional;
+	// Normalized versions of pos and pronunciation for ranking the token
+	// (computed on the server, not sent to the client).
+	private transient String posClass;
+	private transient String reading;
 
 	/**
 	 * Default constructor.
@@ -56,7 +63,7 @@ public class Token implements Serializable {
 	 *            "1) the first meaning 2) the second meaning 3) etc."
 	 */
 	public Token(String form, String pronunciation, String[] posAndInflection, String translation) {
-		this(form, pronunciation, posAndInflection[0], posAndInflection[1], processGlosses(translation));
+		this(form, pronunciation, posAndInflection[0], posAndInflection[1], new Translations(translation));
 	}
 
 	/**
@@ -75,6 +82,26 @@ public class Token implements Serializable {
 	 */
 	public Token(String form, String pronunciation, String posSimple, String inflectionParadigm,
 			ArrayList<String> translations) {
+		this(form, pronunciation, posSimple, inflectionParadigm,
+				translations == null ? null : new Translations(translations));
+	}
+
+	/**
+	 * Constructs a new token.
+	 * 
+	 * @param form
+	 *            the form (in kanji and kana)
+	 * @param pronunciation
+	 *            the pronunciation (in kana)
+	 * @param posSimple
+	 *            the POS tag
+	 * @param inflectionParadigm
+	 *            the inflection paradigm
+	 * @param translations
+	 *            the (possibly unparsed) translations
+	 */
+	public Token(String form, String pronunciation, String posSimple, String inflectionParadigm,
+			Translations translations) {
 		this.form = form;
 		this.pronunciation = pronunciation;
 		pos = posSimple;
@@ -116,6 +143,7 @@ public class Token implements Serializable {
 	 */
 	public void setPronunciation(String pronunciation) {
 		this.pronunciation = pronunciation;
+		reading = null;
 	}
 
 	/**
@@ -132,6 +160,7 @@ public class Token implements Serializable {
 	public void setPos(String pos) {
 		this.pos = pos;
 		prettyPos = cleanPosTag(pos, inflectionParadigm);
+		posClass = null;
 	}
 
 	/**
@@ -172,7 +201,7 @@ public class Token implements Serializable {
 	 * @return the translations
 	 */
 	public ArrayList<String> getTranslations() {
-		return translations;
+		return translations == null ? null : translations.get();
 	}
 
 	/**
@@ -180,6 +209,21 @@ public class Token implements Serializable {
 	 *            the list of translations to set
 	 */
 	public void setTranslations(ArrayList<String> translations) {
+		this.translations = translations == null ? null : new Translations(translations);
+	}
+
+	/**
+	 * @return the translations without parsing them
+	 */
+	public Translations getLazyTranslations() {
+		return translations;
+	}
+
+	/**
+	 * @param translations
+	 *            the (possibly unparsed) translations to set
+	 */
+	public void setLazyTranslations(Translations translations) {
 		this.translations = translations;
 	}
 
@@ -198,6 +242,54 @@ public class Token implements Serializable {
 		this.difficultyRating = difficultyRating;
 	}
 
+	/**
+	 * @return true if the token was not looked up in the dictionary because it
+	 *         was still loading (then only the form, pronunciation and POS tag
+	 *         are known)
+	 */
+	public boolean isProvisional() {
+		return provisional;
+	}
+
+	/**
+	 * @param provisional
+	 *            whether the token was not looked up in the dictionary because
+	 *            it was still loading
+	 */
+	public void setProvisional(boolean provisional) {
+		this.provisional = provisional;
+	}
+
+	/**
+	 * @return the coarse POS class used for ranking the token, or null if it
+	 *         has not been computed
+	 */
+	public String getPosClass() {
+		return posClass;
+	}
+
+	/**
+	 * @return the normalized pronunciation (hiragana without periods) used for
+	 *         ranking the token, or null if it has not been computed
+	 */
+	public String getReading() {
+		return reading;
+	}
+
+	/**
+	 * Sets the normalized keys by which the token is ranked. They are reset
+	 * whenever the POS tag or the pronunciation change.
+	 * 
+	 * @param posClass
+	 *            the coarse POS class
+	 * @param reading
+	 *            the normalized pronunciation
+	 */
+	public void setRankingKeys(String posClass, String reading) {
+		this.posClass = posClass;
+		this.reading = reading;
+	}
+
 	/**
 	 * @return true if this token is associated with an inflection paradigm,
 	 *         false otherwise
@@ -208,13 +300,17 @@ public class Token implements Serializable {
 
 	@Override
 	public String toString() {
-		return form + "\t" + pronunciation + "\t" + pos + (inflects() ? "[" + inflectionParadigm + "]" : "") + "\t"
+		return getForm() + "\t" + getPronunciation() + "\t" + pos + (inflects() ? "[" + inflectionParadigm + "]" : "") + "\t"
 				+ translations + "\t" + difficultyRating;
 	}
 
 	@Override
 	public int hashCode() {
 		// Does not consider prettyPos since it directly depends on pos.
+		// The form and pronunciation of inflected tokens may be derived, so
+		// they are accessed via their getters.
+		String form = getForm();
+		String pronunciation = getPronunciation();
 		final int prime = 31;
 		int result = 1;
 		result = prime * result + ((difficultyRating == null) ? 0 : difficultyRating.hashCode());
@@ -236,6 +332,10 @@ public class Token implements Serializable {
 			return false;
 		}
 		Token other = (Token) obj;
+		String form = getForm();
+		String otherForm = other.getForm();
+		String pronunciation = getPronunciation();
+		String otherPronunciation = other.getPronunciation();
 		if (difficultyRating == null) {
 			if (other.difficultyRating != null) {
 				return false;
@@ -244,10 +344,10 @@ public class Token implements Serializable {
 			return false;
 		}
 		if (form == null) {
-			if (other.form != null) {
+			if (otherForm != null) {
 				return false;
 			}
-		} else if (!form.equals(other.form)) {
+		} else if (!form.equals(otherForm)) {
 			return false;
 		}
 		if (inflectionParadigm == null) {
@@ -265,10 +365,10 @@ public class Token implements Serializable {
 			return false;
 		}
 		if (pronunciation == null) {
-			if (other.pronunciation != null) {
+			if (otherPronunciation != null) {
 				return false;
 			}
-		} else if (!pronunciation.equals(other.pronunciation)) {
+		} else if (!pronunciation.equals(otherPronunciation)) {
 			return false;
 		}
 		if (translations == null) {
@@ -400,7 +500,7 @@ public class Token implements Serializable {
 	 */
 	// public for testing
 	public static ArrayList<String> processGlosses(String glosses) {
-		glosses = cleanTranslation(glosses);
+		glosses = GlossNormalizer.normalize(glosses);
 
 		ArrayList<String> results = new ArrayList<>();
 		// The position of the last index digit, e.g. '1' in "1) "
@@ -430,7 +530,7 @@ public class Token implements Serializable {
 			if (!lastGloss.isEmpty()) {
 				lastGloss = lastGloss.trim();
 				// Remove the enumeration marker (e.g. "1)")
-				lastGloss = lastGloss.replaceAll("^\\d+\\)\\s*", "");
+				lastGloss = removeEnumerationMarker(lastGloss);
 				// A lot of entries are "?". We don't want to add such entries.
 				if (!lastGloss.equals("?") && !lastGloss.isEmpty()) {
 					results.add(lastGloss);
@@ -463,54 +563,26 @@ public class Token implements Serializable {
 	}
 
 	/**
-	 * Removes extraneous markup from Wiktionary dump translation strings.
+	 * Removes the enumeration marker (e.g. "1)") and the whitespace after it
+	 * from a gloss.
 	 * 
-	 * @param translation
-	 *            the translation string
-	 * @return the cleaned string
+	 * @param gloss
+	 *            the (trimmed) gloss
+	 * @return the gloss without the marker
 	 */
-	private static String cleanTranslation(String translation) {
-		translation = translation.trim();
-
-		// The escaped HTML sometimes include extra whitespace
-		// or lack the final semicolon.
-		translation = translation.replaceAll("&amp;?", "&");
-		translation = translation.replaceAll("& ?lt;?", "<");
-		translation = translation.replaceAll("& ?gt;?", ">");
-		translation = translation.replaceAll("& ?quot;? ?", "\"");
-		translation = translation.replaceAll("& ?ndash;? ?", "–");
-		translation = translation.replaceAll("& ?mdash;? ?", "—");
-		translation = translation.replaceAll("& ?nbsp;? ?", "u\00A0");
-		translation = translation.replaceAll("& ?hellip;? ?", "u\2026");
-		translation = translation.replaceAll("& ?times;? ?", "×");
-		translation = translation.replaceAll("''", "\"");
-
-		// Remove HTML comments.
-		// Again, they contain some extra whitespace.
-		int commentStartIndex = translation.indexOf("< !--");
-		int commentEndIndex = translation.indexOf("-->");
-		while (commentStartIndex > -1) {
-			if (commentEndIndex == -1) {
-				translation = translation.substring(0, commentStartIndex);
-			} else {
-				translation = translation.substring(0, commentStartIndex) + translation.substring(commentEndIndex + 3);
-			}
-			commentStartIndex = translation.indexOf("< !--");
-			commentEndIndex = translation.indexOf("-->");
+	private static String removeEnumerationMarker(String gloss) {
+		int i = 0;
+		while (i < gloss.length() && gloss.charAt(i) >= '0' && gloss.charAt(i) <= '9') {
+			i++;
 		}
-
-		// Enumerations use sequences of hash signs in the Wiktionary dump.
-		// Bullet points are easier to read.
-		translation = translation.replaceAll("#{2,} ", "•");
-		translation = translation.replaceAll("#+$", "");
-
-		// double curly braces
-		translation = translation.replaceAll("(\\{\\{)|(\\}\\})", "");
-		// empty parentheses
-		translation = translation.replaceAll("\\(\\)", "");
-
-		translation = translation.replaceAll("\\s+", " ");
-		return translation;
+		if (i == 0 || i == gloss.length() || gloss.charAt(i) != ')') {
+			return gloss;
+		}
+		i++;
+		while (i < gloss.length() && " \t\n\u000B\f\r".indexOf(gloss.charAt(i)) != -1) {
+			i++;
+		}
+		return gloss.substring(i);
 	}
 
 }
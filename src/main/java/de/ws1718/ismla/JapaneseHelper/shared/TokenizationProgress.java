@@ -0,0 +1,159 @@
+package de.ws1718.ismla.JapaneseHelper.shared;
+
+import java.io.Serializable;
+
+/**
+ * A snapshot of the progress of a tokenization job (see
+ * LookupService#submitTokenizationJob()).
+ */
+public class TokenizationProgress implements Serializable {
+
+	private static final long serialVersionUID = -2750316253415928842L;
+
+	/**
+	 * The states of a job. A job that is done, cancelled or failed doesn't
+	 * change anymore.
+	 */
+	public enum State {
+		QUEUED, RUNNING, DONE, CANCELLED, FAILED;
+
+		/**
+		 * @return true if the job is over
+		 */
+		public boolean isFinished() {
+			return this != QUEUED && this != RUNNING;
+		}
+	}
+
+	private String jobId;
+	private State state;
+	private int filesDone;
+	private int files;
+	private long lines;
+	private double linesPerSecond;
+	private long elapsedMillis;
+	private long etaMillis;
+	private String message;
+
+	/**
+	 * Default constructor.
+	 */
+	public TokenizationProgress() {
+		this("", State.QUEUED, 0, 0, 0, 0, 0, -1, null);
+	}
+
+	/**
+	 * Constructs a new snapshot.
+	 *
+	 * @param jobId
+	 *            the ID of the job
+	 * @param state
+	 *            the state of the job
+	 * @param filesDone
+	 *            the number of files that have been tokenized completely
+	 * @param files
+	 *            the number of files of the job
+	 * @param lines
+	 *            the number of lines that have been tokenized
+	 * @param linesPerSecond
+	 *            the number of lines tokenized per second so far
+	 * @param elapsedMillis
+	 *            the time since the job started, in milliseconds
+	 * @param etaMillis
+	 *            the estimated remaining time in milliseconds, or -1 if it is
+	 *            unknown
+	 * @param message
+	 *            the result of a finished job, the reason why it failed, or
+	 *            null
+	 */
+	public TokenizationProgress(String jobId, State state, int filesDone, int files, long lines,
+			double linesPerSecond, long elapsedMillis, long etaMillis, String message) {
+		this.jobId = jobId;
+		this.state = state;
+		this.filesDone = filesDone;
+		this.files = files;
+		this.lines = lines;
+		this.linesPerSecond = linesPerSecond;
+		this.elapsedMillis = elapsedMillis;
+		this.etaMillis = etaMillis;
+		this.message = message;
+	}
+
+	/**
+	 * @return the ID of the job
+	 */
+	public String getJobId() {
+		return jobId;
+	}
+
+	/**
+	 * @return the state of the job
+	 */
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * @return the number of files that have been tokenized completely
+	 */
+	public int getFilesDone() {
+		return filesDone;
+	}
+
+	/**
+	 * @return the number of files of the job
+	 */
+	public int getFiles() {
+		return files;
+	}
+
+	/**
+	 * @return the number of lines that have been tokenized
+	 */
+	public long getLines() {
+		return lines;
+	}
+
+	/**
+	 * @return the number of lines tokenized per second so far
+	 */
+	public double getLinesPerSecond() {
+		return linesPerSecond;
+	}
+
+	/**
+	 * @return the time since the job started, in milliseconds
+	 */
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/**
+	 * @return the estimated remaining time in milliseconds, or -1 if it is
+	 *         unknown
+	 */
+	public long getEtaMillis() {
+		return etaMillis;
+	}
+
+	/**
+	 * @return the result of a finished job, the reason why it failed, or null
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+	@Override
+	public String toString() {
+		String s = state + ": " + filesDone + "/" + files + " files, " + lines + " lines ("
+				+ Math.round(linesPerSecond) + " lines/s)";
+		if (etaMillis >= 0 && !state.isFinished()) {
+			s += ", about " + (etaMillis + 999) / 1000 + " s left";
+		}
+		if (message != null) {
+			s += ": " + message;
+		}
+		return s;
+	}
+
+}
@@ -0,0 +1,116 @@
+package de.ws1718.ismla.JapaneseHelper.shared;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * The translations of a {@link Token}. Most dictionary entries are never
+ * displayed, so the enumeration of translations from the Wiktionary dump is
+ * only split into the list of glosses (see {@link Token#processGlosses(String)})
+ * the first time they are needed. Tokens with the same translations (e.g. the
+ * inflected forms of a lemma) share the same instance.
+ *
+ * Once the glosses are parsed, the raw text is dropped, so either the raw text
+ * or the glosses are sent to the client (which parses the raw text when it
+ * displays the token), never both.
+ *
+ * The glosses are parsed at most once per thread and published safely, so the
+ * instances can be shared between threads. The list must not be modified.
+ */
+public class Translations implements Serializable {
+
+	private static final long serialVersionUID = 4127063348329017295L;
+
+	// The enumeration of translations from the dump, or null if the glosses
+	// were given as a list or parsed already.
+	private volatile String raw;
+	private volatile ArrayList<String> glosses;
+
+	/**
+	 * Constructs empty translations (for serialization).
+	 */
+	@SuppressWarnings("unused")
+	private Translations() {
+	}
+
+	/**
+	 * @param raw
+	 *            the enumeration of translations, e.g.
+	 *            "1) the first meaning 2) the second meaning 3) etc."
+	 */
+	public Translations(String raw) {
+		this.raw = raw;
+	}
+
+	/**
+	 * @param glosses
+	 *            the list of translations (which must not be modified
+	 *            afterwards)
+	 */
+	public Translations(ArrayList<String> glosses) {
+		this.glosses = glosses;
+	}
+
+	/**
+	 * @return the list of translations (parsed on the first call)
+	 */
+	public ArrayList<String> get() {
+		ArrayList<String> result = glosses;
+		if (result == null) {
+			String text = raw;
+			if (text == null) {
+				// Another thread parsed them in the meantime.
+				return glosses;
+			}
+			result = Token.processGlosses(text);
+			result.trimToSize();
+			glosses = result;
+			raw = null;
+		}
+		return result;
+	}
+
+	/**
+	 * @return the enumeration of translations from the dump, or null if the
+	 *         translations were given as a list or parsed already
+	 */
+	public String getRaw() {
+		return raw;
+	}
+
+	/**
+	 * @return true if the list of translations is available without parsing
+	 */
+	public boolean isParsed() {
+		return glosses != null || raw == null;
+	}
+
+	@Override
+	public int hashCode() {
+		ArrayList<String> list = get();
+		return list == null ? 0 : list.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof Translations)) {
+			return false;
+		}
+		Translations other = (Translations) obj;
+		String text = raw;
+		if (text != null && text.equals(other.raw)) {
+			return true;
+		}
+		ArrayList<String> list = get();
+		return list == null ? other.get() == null : list.equals(other.get());
+	}
+
+	@Override
+	public String toString() {
+		return String.valueOf(get());
+	}
+
+}
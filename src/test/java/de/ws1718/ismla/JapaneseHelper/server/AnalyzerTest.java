@@ -12,10 +12,9 @@ import com.atilika.kuromoji.ipadic.Tokenizer;
 import de.ws1718.ismla.JapaneseHelper.shared.InflectableToken;
 import de.ws1718.ismla.JapaneseHelper.shared.InflectedToken;
 import de.ws1718.ismla.JapaneseHelper.shared.Token;
-import de.ws1718.ismla.JapaneseHelper.server.LookupServiceImpl;
 import static de.ws1718.ismla.JapaneseHelper.shared.Inflection.*;
 
-public class LookupServiceImplTest {
+public class AnalyzerTest {
 	Token tok1 = new Token("命", "いのち", "N", "1) life 2) lifespan 3) lifetime "
 			+ "4) fate, destiny 5) the most important part or aspect of a thing [figuratively]");
 	Token tok2 = new Token("命", "みこと", "N", "1) the words or pronouncements of a god or an emperor");
@@ -31,12 +30,12 @@ public class LookupServiceImplTest {
 		String pos = tokKuromoji.getPartOfSpeechLevel1();
 		String pron = tokKuromoji.getPronunciation();
 		String form = tokKuromoji.getSurface();
-		assertEquals(expected, LookupServiceImpl.sortTokens(form, pos, pron, Arrays.asList(tok1, tok2, tok3)));
-		assertEquals(expected, LookupServiceImpl.sortTokens(form, pos, pron, Arrays.asList(tok1, tok3, tok2)));
-		assertEquals(expected, LookupServiceImpl.sortTokens(form, pos, pron, Arrays.asList(tok2, tok1, tok3)));
-		assertEquals(expected, LookupServiceImpl.sortTokens(form, pos, pron, Arrays.asList(tok2, tok3, tok1)));
-		assertEquals(expected, LookupServiceImpl.sortTokens(form, pos, pron, Arrays.asList(tok3, tok2, tok1)));
-		assertEquals(expected, LookupServiceImpl.sortTokens(form, pos, pron, Arrays.asList(tok3, tok1, tok2)));
+		assertEquals(expected, Analyzer.sortTokens(form, pos, pron, Arrays.asList(tok1, tok2, tok3)));
+		assertEquals(expected, Analyzer.sortTokens(form, pos, pron, Arrays.asList(tok1, tok3, tok2)));
+		assertEquals(expected, Analyzer.sortTokens(form, pos, pron, Arrays.asList(tok2, tok1, tok3)));
+		assertEquals(expected, Analyzer.sortTokens(form, pos, pron, Arrays.asList(tok2, tok3, tok1)));
+		assertEquals(expected, Analyzer.sortTokens(form, pos, pron, Arrays.asList(tok3, tok2, tok1)));
+		assertEquals(expected, Analyzer.sortTokens(form, pos, pron, Arrays.asList(tok3, tok1, tok2)));
 	}
 
 	@Test
@@ -69,4 +68,23 @@ public class LookupServiceImplTest {
 		}
 	}
 
+	@Test
+	public void testSortTokensWithRankingKeys() {
+		// Precomputed keys (as in the dictionary) must not change the order.
+		Token tok8 = new Token("命", "イノチ", "N", "1) life");
+		for (Token tok : Arrays.asList(tok1, tok2, tok3, tok8)) {
+			RankingKeys.assign(tok);
+		}
+		assertEquals("いのち", tok8.getReading());
+		assertEquals("N", tok8.getPosClass());
+
+		com.atilika.kuromoji.ipadic.Token tokKuromoji = new Tokenizer().tokenize("命").get(0);
+		String pos = tokKuromoji.getPartOfSpeechLevel1();
+		String pron = tokKuromoji.getPronunciation();
+		assertEquals(Arrays.asList(tok1, tok8, tok2, tok3),
+				Analyzer.sortTokens("命", pos, pron, Arrays.asList(tok2, tok1, tok3, tok8)));
+		assertEquals(Arrays.asList(tok8, tok1, tok2, tok3),
+				Analyzer.sortTokens("命", pos, pron, Arrays.asList(tok3, tok8, tok2, tok1)));
+	}
+
 }
@@ -0,0 +1,180 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class BulkTokenizerTest {
+
+	private static final String NL = System.lineSeparator();
+
+	private static ExecutorService executor;
+
+	@BeforeClass
+	public static void setUp() {
+		executor = Executors.newFixedThreadPool(4);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testOrderIsKept() throws IOException {
+		// The workers finish the blocks in random order.
+		Random random = new Random(42);
+		Function<String, String> slowUpperCase = line -> {
+			try {
+				Thread.sleep(random.nextInt(2));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return line.toUpperCase();
+		};
+		BulkTokenizer bulkTokenizer = new BulkTokenizer(executor, 4, slowUpperCase, 3);
+
+		StringBuilder first = new StringBuilder();
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			first.append(" line ").append(i).append("\n");
+			expected.append("LINE ").append(i).append(NL);
+		}
+		List<ByteArrayOutputStream> outputs = Arrays.asList(new ByteArrayOutputStream(),
+				new ByteArrayOutputStream(), new ByteArrayOutputStream());
+		BulkTokenizer.Report report = bulkTokenizer.tokenize(
+				Arrays.asList(input(first.toString()), input(""), input("寿司を食べます。\r\nb")), outputs);
+
+		assertEquals(expected.toString(), output(outputs.get(0)));
+		assertEquals("", output(outputs.get(1)));
+		assertEquals("寿司を食べます。" + NL + "B" + NL, output(outputs.get(2)));
+		assertEquals(3, report.getFiles());
+		assertEquals(102, report.getLines());
+	}
+
+	@Test
+	public void testBoundedBlocks() throws IOException {
+		// The reader waits for the oldest block, so there are never more than
+		// two blocks per worker in the queue or being tokenized (and the
+		// workers may still count as active for a moment after a block is
+		// done). Without the limit, all 100 blocks would be queued at once.
+		ThreadPoolExecutor workers = new ThreadPoolExecutor(2, 2, 0, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>());
+		AtomicInteger maxBlocks = new AtomicInteger();
+		try {
+			BulkTokenizer bulkTokenizer = new BulkTokenizer(workers, 2, line -> {
+				maxBlocks.accumulateAndGet(workers.getQueue().size() + workers.getActiveCount(), Math::max);
+				return line;
+			}, 10);
+			StringBuilder lines = new StringBuilder();
+			for (int i = 0; i < 1000; i++) {
+				lines.append(i).append("\n");
+			}
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			bulkTokenizer.tokenize(Arrays.asList(input(lines.toString())), Arrays.asList(output));
+			assertEquals(lines.toString().replace("\n", NL), output(output));
+		} finally {
+			workers.shutdownNow();
+		}
+		assertTrue(String.valueOf(maxBlocks.get()), maxBlocks.get() <= 4 + 2);
+	}
+
+	@Test
+	public void testFailure() throws IOException {
+		BulkTokenizer bulkTokenizer = new BulkTokenizer(executor, 4, line -> {
+			if (line.equals("bad")) {
+				throw new IllegalArgumentException(line);
+			}
+			return line;
+		}, 2);
+		List<InputStream> inputs = new ArrayList<>();
+		List<OutputStream> outputs = new ArrayList<>();
+		inputs.add(input("a\nb\nc\nbad\nd"));
+		outputs.add(new ByteArrayOutputStream());
+		try {
+			bulkTokenizer.tokenize(inputs, outputs);
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals("bad", e.getCause().getMessage());
+		}
+	}
+
+	@Test
+	public void testFilesAreOpenedLazily() throws IOException {
+		// Each file has one block, and the reader runs ahead by two blocks
+		// per worker, so only a few outputs are open at once.
+		BulkTokenizer bulkTokenizer = new BulkTokenizer(executor, 2, line -> line, 10);
+		AtomicInteger open = new AtomicInteger();
+		AtomicInteger maxOpen = new AtomicInteger();
+		List<Integer> files = new ArrayList<>();
+		List<ByteArrayOutputStream> outputs = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			files.add(i);
+			outputs.add(new ByteArrayOutputStream() {
+				@Override
+				public void close() {
+					open.decrementAndGet();
+				}
+			});
+		}
+		BulkTokenizer.Report report = bulkTokenizer.tokenize(files, i -> input(i + "\n"), i -> {
+			maxOpen.accumulateAndGet(open.incrementAndGet(), Math::max);
+			return outputs.get(i);
+		});
+		assertEquals(100, report.getFiles());
+		assertEquals("99" + NL, output(outputs.get(99)));
+		assertEquals(0, open.get());
+		assertTrue(String.valueOf(maxOpen.get()), maxOpen.get() <= 2 * 2 + 1);
+
+		// The files after a failure are never opened.
+		List<Integer> opened = new ArrayList<>();
+		try {
+			bulkTokenizer.tokenize(files, i -> {
+				if (i == 3) {
+					throw new FileNotFoundException(String.valueOf(i));
+				}
+				opened.add(i);
+				return input(i + "\n");
+			}, i -> {
+				open.incrementAndGet();
+				return outputs.get(i);
+			});
+			fail();
+		} catch (FileNotFoundException e) {
+			assertEquals(Arrays.asList(0, 1, 2), opened);
+			assertEquals(0, open.get());
+		}
+	}
+
+	private static InputStream input(String s) {
+		return new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String output(ByteArrayOutputStream output) {
+		return new String(output.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+}
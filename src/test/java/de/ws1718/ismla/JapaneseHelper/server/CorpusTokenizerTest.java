@@ -0,0 +1,93 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CorpusTokenizerTest {
+
+	private TestWebapp testWebapp;
+	private Path webapp;
+	private Path corpus;
+	private Path output;
+
+	@Before
+	public void setUp() throws IOException {
+		testWebapp = TestWebapp.create("寿司\tすし\tN\t1) sushi", "食べる\tたべる\tVT2[ichi]\t1) to eat");
+		webapp = testWebapp.getRoot();
+		corpus = Files.createDirectories(webapp.resolve("corpus"));
+		Files.write(corpus.resolve("a.txt"), Arrays.asList("寿司を食べます。", "", "  寿司  "), StandardCharsets.UTF_8);
+		Files.write(Files.createDirectories(corpus.resolve("sub")).resolve("b.txt"), Arrays.asList("寿司"),
+				StandardCharsets.UTF_8);
+		output = webapp.resolve("output");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		testWebapp.close();
+	}
+
+	@Test
+	public void testLoad() throws IOException {
+		DictionaryIndex parsed = DictionaryLoader.load(webapp.toFile(), null);
+		assertTrue(parsed.contains("食べた"));
+
+		Path snapshot = webapp.resolve("dictionary.bin");
+		DictionaryIndex mapped = DictionaryLoader.load(webapp.toFile(), snapshot);
+		assertTrue(DictionarySnapshot.isUpToDate(snapshot, DictionarySources.fromDirectory(webapp.toFile())));
+		assertEquals(parsed.forms(), mapped.forms());
+		assertEquals(parsed.get("食べた"), mapped.get("食べた"));
+	}
+
+	@Test
+	public void testTokenize() throws IOException {
+		Analyzer analyzer = new Analyzer(new SharedTokenizer(), DictionaryLoader.load(webapp.toFile(), null));
+		BulkTokenizer.Report report = CorpusTokenizer.tokenize(analyzer, Collections.singletonList(corpus.toFile()),
+				output.toFile(), 2, 1);
+		assertEquals(2, report.getFiles());
+		assertEquals(4, report.getLines());
+		assertEquals(Arrays.asList("寿司 を 食べます 。", "", "寿司"),
+				Files.readAllLines(output.resolve("a-tokenized.txt"), StandardCharsets.UTF_8));
+		assertEquals(Arrays.asList("寿司"),
+				Files.readAllLines(output.resolve("sub/b-tokenized.txt"), StandardCharsets.UTF_8));
+
+		// A single file goes right into the output directory.
+		File single = corpus.resolve("sub/b.txt").toFile();
+		CorpusTokenizer.tokenize(analyzer, Collections.singletonList(single), webapp.toFile(), 1, 256);
+		assertTrue(webapp.resolve("b-tokenized.txt").toFile().isFile());
+	}
+
+	@Test
+	public void testSameOutputFile() throws IOException {
+		Files.write(corpus.resolve("a.csv"), Arrays.asList("寿司"), StandardCharsets.UTF_8);
+		try {
+			CorpusTokenizer.tokenize(null,
+					Arrays.asList(corpus.resolve("a.txt").toFile(), corpus.resolve("a.csv").toFile()),
+					output.toFile(), 1, 1);
+			fail();
+		} catch (IOException e) {
+			// Nothing was opened.
+			assertFalse(output.toFile().exists());
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testMissingInput() throws IOException {
+		CorpusTokenizer.tokenize(null, Collections.singletonList(webapp.resolve("missing").toFile()),
+				output.toFile(), 1, 1);
+	}
+
+}
@@ -0,0 +1,150 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.ws1718.ismla.JapaneseHelper.shared.InflectableToken;
+import de.ws1718.ismla.JapaneseHelper.shared.InflectedToken;
+import de.ws1718.ismla.JapaneseHelper.shared.Inflection;
+import de.ws1718.ismla.JapaneseHelper.shared.Token;
+
+public class DeinflectorTest {
+
+	private static final String DUMP = String.join("\n", "飛ぶ\tとぶ\tV1[go-bu]\t1) to fly",
+			"跳ぶ\tとぶ\tV1[go-bu]\t1) to jump", "飛んだ\tとんだ\tA\t1) terrible", "居る\tいる\tVI2[ichi]\t1) to be",
+			"いる\tいる\tVI1[go-ru]\t1) to need", "妙\tみょう\tA[na]\t1) strange", "勉強する\tべんきょうする\tVT3\t1) to study",
+			"来る\tくる\tVI3[kuru]\t1) to come", "書.く\tか.く\tVT1[go-ku]\t1) to write");
+
+	@Test
+	public void testSameAsGenerated() throws IOException {
+		WiktionaryPreprocessor wp = WiktionaryPreprocessorTest.preprocess(DUMP, 1);
+		DictionaryIndex dictionary = wp.getDictionary();
+		DictionaryIndex generated = DictionaryIndex.copyOf(wp.getTokens());
+		// Only the lemmas are stored, except for the irregular verb and the
+		// entry that needs to be cleaned.
+		assertTrue(dictionary.size() < generated.size());
+		assertEquals(generated.forms(), dictionary.forms());
+
+		for (String form : generated.forms()) {
+			assertEquals(form, describe(generated, generated.get(form)), describe(dictionary, dictionary.get(form)));
+			assertTrue(dictionary.contains(form));
+		}
+		assertFalse(dictionary.contains("飛ばなかったら"));
+		assertTrue(dictionary.get("飛ばなかったら").isEmpty());
+	}
+
+	@Test
+	public void testLookup() throws IOException {
+		DictionaryIndex dictionary = WiktionaryPreprocessorTest.preprocess(DUMP, 1).getDictionary();
+		List<Token> entries = dictionary.get("飛んだ");
+		assertEquals(2, entries.size());
+		InflectedToken flew = (InflectedToken) entries.get(0);
+		assertEquals(Inflection.PERFECTIVE, flew.getInflection());
+		assertEquals("とんだ", flew.getPronunciation());
+		assertEquals("飛ぶ", flew.getLemmaToken().getForm());
+		assertTrue(dictionary.inflectedForms(flew.getLemmaToken()).contains(flew));
+		assertEquals("A", entries.get(1).getPos());
+
+		// The lookups share the lemma, whose table is only generated for the
+		// UI.
+		List<Token> fly = dictionary.get("飛ぶ");
+		// The terminal and attributive forms come first.
+		assertEquals(3, fly.size());
+		InflectableToken lemma = (InflectableToken) fly.get(2);
+		assertSame(lemma, flew.getLemmaToken());
+		assertTrue(lemma.getInflectedForms().isEmpty());
+		assertFalse(dictionary.inflectedForms(lemma).isEmpty());
+		// The client sends a copy of the lemma.
+		InflectableToken sent = new InflectableToken(lemma);
+		sent.setDifficultyRating(lemma.getDifficultyRating());
+		assertEquals(dictionary.inflectedForms(lemma), dictionary.inflectedForms(sent));
+		assertTrue(dictionary.inflectedForms(new InflectableToken("飛ぶ", "とぶ", "V1[go-ku]", "1) to fly")).isEmpty());
+
+		// Both いる and the kana version of 居る.
+		assertEquals(Arrays.asList("いる [ichi]", "いる [go-ru]"), lemmas(dictionary.get("いれば")));
+		assertEquals(Arrays.asList("勉強する [probably suru]"), lemmas(dictionary.get("勉強しない")));
+		assertEquals(Arrays.asList("妙 [na]"), lemmas(dictionary.get("妙な")));
+	}
+
+	@Test
+	public void testLongestMatch() throws IOException {
+		DictionaryIndex dictionary = WiktionaryPreprocessorTest.preprocess(DUMP, 1).getDictionary();
+		DictionaryIndex.Match match = dictionary.longestMatch(Arrays.asList("飛ば", "ない", "よ"), 2);
+		assertEquals(2, match.getParts());
+		assertEquals("飛ばない", match.getForm());
+		assertEquals(1, match.getEntries().size());
+		assertEquals(Inflection.NEGATIVE, ((InflectedToken) match.getEntries().get(0)).getInflection());
+
+		match = dictionary.longestMatch(Arrays.asList("飛ん", "だ"), 1);
+		assertEquals("飛んだ", match.getForm());
+		assertEquals(2, match.getEntries().size());
+		assertNull(dictionary.longestMatch(Arrays.asList("飛ば", "ない"), 3));
+	}
+
+	@Test
+	public void testLongestMatchSameAsGenerated() throws IOException {
+		WiktionaryPreprocessor wp = WiktionaryPreprocessorTest.preprocess(DUMP, 1);
+		DictionaryIndex dictionary = wp.getDictionary();
+		DictionaryIndex generated = DictionaryIndex.copyOf(wp.getTokens());
+		List<List<String>> runs = Arrays.asList(Arrays.asList("飛ん", "だ", "よ"), Arrays.asList("飛ば", "なかっ", "たら"),
+				Arrays.asList("いれ", "ば", "いい"), Arrays.asList("妙", "な", "話"), Arrays.asList("飛ぶ", "鳥"),
+				Arrays.asList("書か", "ない"), Arrays.asList("来", "ない"));
+		for (List<String> run : runs) {
+			for (int minParts = 1; minParts <= run.size() + 1; minParts++) {
+				DictionaryIndex.Match expected = generated.longestMatch(run, minParts);
+				DictionaryIndex.Match match = dictionary.longestMatch(run, minParts);
+				String description = run + " " + minParts;
+				if (expected == null) {
+					assertNull(description, match);
+					continue;
+				}
+				assertEquals(description, expected.getParts(), match.getParts());
+				assertEquals(description, expected.getForm(), match.getForm());
+				assertEquals(description, describe(generated, expected.getEntries()),
+						describe(dictionary, match.getEntries()));
+			}
+		}
+	}
+
+	private static List<String> describe(DictionaryIndex dictionary, List<Token> tokens) {
+		List<String> descriptions = new ArrayList<>();
+		for (Token tok : Analyzer.sortTokens("", "動詞", "", tokens)) {
+			String description = tok.getClass().getSimpleName() + " " + tok + " " + tok.getDifficultyRating();
+			if (tok instanceof InflectedToken) {
+				InflectableToken lemma = ((InflectedToken) tok).getLemmaToken();
+				description += " " + ((InflectedToken) tok).getLemmaAndInflectionInformation() + " "
+						+ dictionary.inflectedForms(lemma);
+			}
+			if (tok instanceof InflectableToken) {
+				description += " " + dictionary.inflectedForms((InflectableToken) tok);
+			}
+			descriptions.add(description);
+		}
+		return descriptions;
+	}
+
+	private static List<String> lemmas(List<Token> tokens) {
+		List<String> lemmas = new ArrayList<>();
+		for (Token tok : tokens) {
+			if (tok instanceof InflectedToken) {
+				InflectableToken lemma = ((InflectedToken) tok).getLemmaToken();
+				String lemmaDescription = lemma.getForm() + " [" + lemma.getInflectionParadigm() + "]";
+				if (!lemmas.contains(lemmaDescription)) {
+					lemmas.add(lemmaDescription);
+				}
+			}
+		}
+		return lemmas;
+	}
+
+}
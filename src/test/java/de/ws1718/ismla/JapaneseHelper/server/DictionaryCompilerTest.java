@@ -0,0 +1,73 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DictionaryCompilerTest {
+
+	private TestWebapp testWebapp;
+	private Path webapp;
+	private Path output;
+
+	@Before
+	public void setUp() throws IOException {
+		testWebapp = TestWebapp.create("食べる\tたべる\tVT2[ichi]\t1) to eat");
+		testWebapp.addTemplate("ja-go-ku.txt");
+		webapp = testWebapp.getRoot();
+		output = webapp.resolve("WEB-INF/dictionary.bin");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		testWebapp.close();
+	}
+
+	@Test
+	public void testCompile() throws IOException {
+		assertTrue(DictionaryCompiler.compile(webapp.toFile(), output));
+		DictionarySources sources = DictionarySources.fromDirectory(webapp.toFile());
+		assertTrue(DictionarySnapshot.isUpToDate(output, sources));
+		assertArrayEquals(sources.fingerprint(), DictionarySnapshot.sourceFingerprint(output));
+
+		DictionaryIndex compiled = DictionarySnapshot.map(output);
+		DictionaryIndex parsed = sources.preprocess().getDictionary();
+		assertEquals(parsed.forms(), compiled.forms());
+		assertEquals(parsed.get("食べた"), compiled.get("食べた"));
+
+		// Nothing changed, so there is nothing to do.
+		assertFalse(DictionaryCompiler.compile(webapp.toFile(), output));
+	}
+
+	@Test
+	public void testStale() throws IOException {
+		DictionaryCompiler.compile(webapp.toFile(), output);
+		byte[] fingerprint = DictionarySources.fromDirectory(webapp.toFile()).fingerprint();
+
+		testWebapp.writeDictionary("食べる\tたべる\tVT2[ichi]\t1) to eat", "書く\tかく\tVT1[go-ku]\t1) to write");
+		DictionarySources sources = DictionarySources.fromDirectory(webapp.toFile());
+		assertFalse(Arrays.equals(fingerprint, sources.fingerprint()));
+		assertFalse(DictionarySnapshot.isUpToDate(output, sources));
+
+		assertTrue(DictionaryCompiler.compile(webapp.toFile(), output));
+		assertTrue(DictionarySnapshot.map(output).contains("書いた"));
+	}
+
+	@Test
+	public void testMissing() {
+		File missing = webapp.resolve("missing.bin").toFile();
+		assertFalse(DictionarySnapshot.isUpToDate(missing.toPath(),
+				DictionarySources.fromDirectory(webapp.toFile())));
+	}
+
+}
@@ -0,0 +1,206 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+
+import de.ws1718.ismla.JapaneseHelper.shared.InflectableToken;
+import de.ws1718.ismla.JapaneseHelper.shared.InflectedToken;
+import de.ws1718.ismla.JapaneseHelper.shared.Inflection;
+import de.ws1718.ismla.JapaneseHelper.shared.Token;
+
+public class DictionaryIndexTest {
+
+	private static final int THREADS = 8;
+	private static final int ROUNDS = 2000;
+
+	private static final String[] POS_TAGS = { "N", "PRN", "VT1[go-ku]", "ADV", "SFX" };
+	private static final String[] PRONUNCIATIONS = { "いのち", "みこと", "イノチ", "か.く" };
+
+	/**
+	 * Creates a map with many ambiguous forms, so that sorting the candidates
+	 * actually changes their order.
+	 */
+	private static ListMultimap<String, Token> createTokenMap() {
+		ListMultimap<String, Token> tokenMap = ArrayListMultimap.create();
+		for (int i = 0; i < 200; i++) {
+			String form = "form" + i;
+			for (int j = 0; j < 10; j++) {
+				Token tok = new Token(form, PRONUNCIATIONS[(i + j) % PRONUNCIATIONS.length],
+						POS_TAGS[(i * j) % POS_TAGS.length], "1) meaning " + j);
+				if (j % 3 == 0) {
+					InflectableToken lemma = new InflectableToken(tok);
+					tok = new InflectedToken(lemma, form, tok.getPronunciation(), Inflection.TERMINAL);
+				}
+				tokenMap.put(form, tok);
+			}
+		}
+		return tokenMap;
+	}
+
+	@Test
+	public void testCopyOf() {
+		ListMultimap<String, Token> tokenMap = createTokenMap();
+		DictionaryIndex index = DictionaryIndex.copyOf(tokenMap);
+		assertEquals(tokenMap.size(), index.size());
+		assertEquals(tokenMap.keySet(), index.forms());
+		for (String form : tokenMap.keySet()) {
+			assertEquals(tokenMap.get(form), index.get(form));
+		}
+		assertTrue(index.get("not in the index").isEmpty());
+
+		// Changing the original map must not change the index.
+		tokenMap.clear();
+		assertEquals(10, index.get("form0").size());
+	}
+
+	@Test
+	public void testManyForms() {
+		// Random forms from a small alphabet, so that many of them are
+		// prefixes of each other.
+		Random random = new Random(42);
+		char[] alphabet = "かきくけこたべるまし食飲見\u3000a".toCharArray();
+		ListMultimap<String, Token> tokenMap = ArrayListMultimap.create();
+		List<String> absent = new ArrayList<>();
+		for (int i = 0; i < 5000; i++) {
+			StringBuilder sb = new StringBuilder();
+			int length = 1 + random.nextInt(8);
+			for (int j = 0; j < length; j++) {
+				sb.append(alphabet[random.nextInt(alphabet.length)]);
+			}
+			String form = sb.toString();
+			if (i % 10 == 0) {
+				absent.add(form);
+			} else {
+				tokenMap.put(form, new Token(form, "よみ", "N", "1) meaning " + i));
+			}
+		}
+		DictionaryIndex index = DictionaryIndex.copyOf(tokenMap);
+		assertEquals(tokenMap.size(), index.size());
+		for (String form : tokenMap.keySet()) {
+			assertTrue(index.contains(form));
+			assertEquals(tokenMap.get(form), index.get(form));
+		}
+		for (String form : absent) {
+			if (!tokenMap.containsKey(form)) {
+				assertFalse(index.contains(form));
+				assertTrue(index.get(form).isEmpty());
+			}
+		}
+		assertFalse(index.contains(""));
+		assertFalse(index.contains("犬"));
+		assertEquals(tokenMap, index.asMultimap());
+	}
+
+	@Test
+	public void testLongestMatch() {
+		ListMultimap<String, Token> tokenMap = ArrayListMultimap.create();
+		tokenMap.put("食べ", new Token("食べ", "たべ", "V", "1) eat"));
+		tokenMap.put("食べて", new Token("食べて", "たべて", "V", "1) eat"));
+		tokenMap.put("食べている", new Token("食べている", "たべている", "V", "1) eat"));
+		tokenMap.put("食べていました", new Token("食べていました", "たべていました", "V", "1) eat"));
+		DictionaryIndex index = DictionaryIndex.copyOf(tokenMap);
+
+		DictionaryIndex.Match match = index.longestMatch(Arrays.asList("食べ", "て", "い", "まし", "た"), 2);
+		assertEquals(5, match.getParts());
+		assertEquals("食べていました", match.getForm());
+		assertEquals(tokenMap.get("食べていました"), match.getEntries());
+
+		// We might have overreached.
+		match = index.longestMatch(Arrays.asList("食べ", "て", "い", "ます"), 2);
+		assertEquals(2, match.getParts());
+		assertEquals("食べて", match.getForm());
+
+		// Forms that end in the middle of a surface don't count.
+		assertNull(index.longestMatch(Arrays.asList("食べ", "てい", "た"), 2));
+		assertEquals(3, index.longestMatch(Arrays.asList("食べ", "てい", "る"), 2).getParts());
+		assertNull(index.longestMatch(Arrays.asList("食べて", "い", "た"), 2));
+
+		// Only matches spanning at least minParts surfaces count.
+		assertNull(index.longestMatch(Arrays.asList("食べ", "させ", "た"), 2));
+		assertEquals(1, index.longestMatch(Arrays.asList("食べ", "させ", "た"), 1).getParts());
+		assertNull(index.longestMatch(Arrays.asList("飲み", "ます"), 1));
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testCandidatesAreUnmodifiable() {
+		DictionaryIndex index = DictionaryIndex.copyOf(createTokenMap());
+		index.get("form0").remove(0);
+	}
+
+	@Test
+	public void testSortTokensDoesNotModifyCandidates() {
+		DictionaryIndex index = DictionaryIndex.copyOf(createTokenMap());
+		List<Token> candidates = index.get("form1");
+		List<Token> before = new ArrayList<>(candidates);
+		ArrayList<Token> sorted = Analyzer.sortTokens("form1", "名詞", "イノチ", candidates);
+		assertEquals(before, candidates);
+		assertEquals(candidates.size(), sorted.size());
+	}
+
+	@Test
+	public void testConcurrentLookups() throws Exception {
+		DictionaryIndex index = DictionaryIndex.copyOf(createTokenMap());
+		List<String> forms = new ArrayList<>(index.forms());
+
+		// The results of a single thread are the reference.
+		Map<String, List<Token>> expected = new HashMap<>();
+		for (String form : forms) {
+			expected.put(form, Analyzer.sortTokens(form, "名詞", "イノチ", index.get(form)));
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<Integer>> futures = new ArrayList<>();
+		for (int t = 0; t < THREADS; t++) {
+			final int offset = t;
+			futures.add(executor.submit(() -> {
+				start.await();
+				int mismatches = 0;
+				for (int i = 0; i < ROUNDS; i++) {
+					String form = forms.get((i * 7 + offset) % forms.size());
+					List<Token> sorted = Analyzer.sortTokens(form, "名詞", "イノチ", index.get(form));
+					if (!expected.get(form).equals(sorted)) {
+						mismatches++;
+					}
+				}
+				return mismatches;
+			}));
+		}
+		start.countDown();
+
+		for (Future<Integer> future : futures) {
+			assertEquals(0, future.get().intValue());
+		}
+		executor.shutdown();
+		if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+			fail("the lookup threads did not finish");
+		}
+
+		// None of the lookups changed the index.
+		DictionaryIndex reference = DictionaryIndex.copyOf(createTokenMap());
+		for (String form : forms) {
+			assertEquals(reference.get(form), index.get(form));
+		}
+	}
+
+}
@@ -0,0 +1,172 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+
+import de.ws1718.ismla.JapaneseHelper.shared.InflectableToken;
+import de.ws1718.ismla.JapaneseHelper.shared.InflectedToken;
+import de.ws1718.ismla.JapaneseHelper.shared.Inflection;
+import de.ws1718.ismla.JapaneseHelper.shared.Token;
+
+public class DictionarySnapshotTest {
+
+	private Path dir;
+	private ListMultimap<String, Token> tokenMap;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("snapshot-test");
+		tokenMap = ArrayListMultimap.create();
+
+		Token sushi = new Token("寿司", "すし", "N", "1) sushi");
+		sushi.setDifficultyRating("4-*");
+		RankingKeys.assign(sushi);
+		tokenMap.put(sushi.getForm(), sushi);
+		Token inochi = new Token("命", "いのち", "N", "1) life");
+		tokenMap.put(inochi.getForm(), inochi);
+		Token mikoto = new Token("命", "みこと", "PRN", "1) a god 2) ''lord'' &amp; master");
+		tokenMap.put(mikoto.getForm(), mikoto);
+		// No POS tag, so no inflection paradigm (null) either.
+		Token empty = new Token("何", "なに", "", "");
+		tokenMap.put(empty.getForm(), empty);
+
+		InflectableToken taberu = new InflectableToken("食べる", "たべる", "VT2[ichi]", "1) to eat");
+		RankingKeys.assign(taberu);
+		tokenMap.put(taberu.getForm(), taberu);
+		for (String[] infl : new String[][] { { "食べます", "たべます", "FORMAL" }, { "食べた", "たべた", "INFORMAL_PAST" },
+				{ "食べない", "たべない", "NEGATIVE" } }) {
+			InflectedToken tok = new InflectedToken(taberu, infl[0], infl[1], Inflection.valueOf(infl[2]));
+			tok.setDifficultyRating("3-*-*");
+			RankingKeys.assign(tok);
+			taberu.addInflectedForm(tok);
+			tokenMap.put(tok.getForm(), tok);
+		}
+		// A lemma that is not in the dictionary itself (like いる).
+		InflectableToken iru = new InflectableToken("いる", "いる", "VI2[ichi]", "1) to be");
+		InflectedToken ita = new InflectedToken(iru, "いた", "いた", Inflection.INFORMAL_PAST);
+		iru.addInflectedForm(ita);
+		tokenMap.put(ita.getForm(), ita);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		for (Path file : Files.newDirectoryStream(dir)) {
+			Files.delete(file);
+		}
+		Files.delete(dir);
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		DictionaryIndex heap = DictionaryIndex.copyOf(tokenMap);
+		Path file = dir.resolve("dictionary.snapshot");
+		DictionarySnapshot.write(heap, file);
+		DictionaryIndex mapped = DictionarySnapshot.map(file);
+
+		assertEquals(heap.size(), mapped.size());
+		assertEquals(heap.forms(), mapped.forms());
+		for (String form : heap.forms()) {
+			List<Token> expected = heap.get(form);
+			List<Token> actual = mapped.get(form);
+			assertEquals(expected, actual);
+			for (int i = 0; i < expected.size(); i++) {
+				assertSameFields(expected.get(i), actual.get(i));
+			}
+		}
+		assertTrue(mapped.get("食べさせる").isEmpty());
+		assertEquals(heap.asMultimap(), mapped.asMultimap());
+
+		DictionaryIndex.Match match = mapped.longestMatch(Arrays.asList("食べ", "ます"), 2);
+		assertEquals("食べます", match.getForm());
+		assertEquals(heap.get("食べます"), match.getEntries());
+	}
+
+	@Test
+	public void testInflectionLinks() throws IOException {
+		Path file = dir.resolve("dictionary.snapshot");
+		DictionarySnapshot.write(DictionaryIndex.copyOf(tokenMap), file);
+		DictionaryIndex mapped = DictionarySnapshot.map(file);
+
+		InflectedToken tabeta = (InflectedToken) mapped.get("食べた").get(0);
+		InflectableToken taberu = tabeta.getLemmaToken();
+		assertEquals("食べる", taberu.getForm());
+		assertEquals(3, taberu.getInflectedForms().size());
+		// The lemma links back to the very same object.
+		assertSame(tabeta, taberu.getInflectedForms().get(1));
+		assertEquals(Inflection.INFORMAL_PAST, tabeta.getInflection());
+		assertEquals("informal past form of 食べる", tabeta.getLemmaAndInflectionInformation());
+
+		InflectedToken ita = (InflectedToken) mapped.get("いた").get(0);
+		assertEquals("いる", ita.getLemmaToken().getForm());
+		assertSame(ita, ita.getLemmaToken().getInflectedForms().get(0));
+	}
+
+	@Test
+	public void testNotASnapshot() throws IOException {
+		Path file = dir.resolve("not.snapshot");
+		Files.write(file, "## not a snapshot\n".getBytes("UTF-8"));
+		try {
+			DictionarySnapshot.map(file);
+			fail("mapped a file that is not a snapshot");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("not a dictionary snapshot"));
+		}
+	}
+
+	@Test
+	public void testSourceFingerprint() throws IOException {
+		Path file = dir.resolve("dictionary.snapshot");
+		byte[] fingerprint = new byte[32];
+		Arrays.fill(fingerprint, (byte) 7);
+		DictionarySnapshot.write(DictionaryIndex.copyOf(tokenMap), fingerprint, file);
+		assertArrayEquals(fingerprint, DictionarySnapshot.sourceFingerprint(file));
+
+		DictionarySnapshot.write(DictionaryIndex.copyOf(tokenMap), file);
+		assertArrayEquals(new byte[32], DictionarySnapshot.sourceFingerprint(file));
+	}
+
+	@Test
+	public void testCorrupt() throws IOException {
+		Path file = dir.resolve("dictionary.snapshot");
+		DictionarySnapshot.write(DictionaryIndex.copyOf(tokenMap), file);
+		byte[] bytes = Files.readAllBytes(file);
+		bytes[bytes.length - 1] ^= 1;
+		Files.write(file, bytes);
+		try {
+			DictionarySnapshot.map(file);
+			fail("mapped a corrupt snapshot");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("checksum"));
+		}
+	}
+
+	private static void assertSameFields(Token expected, Token actual) {
+		assertEquals(expected.getClass(), actual.getClass());
+		assertEquals(expected.getPrettyPos(), actual.getPrettyPos());
+		assertEquals(expected.getInflectionParadigm(), actual.getInflectionParadigm());
+		assertEquals(expected.getPosClass(), actual.getPosClass());
+		assertEquals(expected.getReading(), actual.getReading());
+		assertEquals(expected.toString(), actual.toString());
+		if (expected.getInflectionParadigm() == null) {
+			assertNull(actual.getInflectionParadigm());
+		}
+	}
+
+}
@@ -0,0 +1,90 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+public class DifficultyRatingsTest {
+
+	private static final String RESOURCES_PATH = "src/main/webapp/";
+
+	@Test
+	public void testRate() {
+		Map<String, String> map = new HashMap<>();
+		map.put("書", "2");
+		map.put("食", "2");
+		map.put("鬱", "S");
+		map.put("亜", "");
+		map.put("New", "Grade");
+		DifficultyRatings ratings = new DifficultyRatings(map);
+		assertEquals("2-*", ratings.rate("書く"));
+		assertEquals("*-S-*", ratings.rate("憂鬱だ"));
+		assertEquals("*", ratings.rate("亜"));
+		assertEquals("", ratings.rate(""));
+
+		// The rating of the stem is reused.
+		String stemRating = ratings.rate("食べる");
+		assertEquals("2-*-*-*-*", ratings.rate("食べさせる", "食べる", stemRating));
+		assertEquals("2-*", ratings.rate("食べ", "食べる", stemRating));
+		assertSame(stemRating, ratings.rate("食べる", "食べる", stemRating));
+		// Nothing in common.
+		assertEquals("*-*", ratings.rate("ない", "有る", "*-*"));
+	}
+
+	@Test
+	public void testDictionary() throws IOException {
+		// The Wiktionary dump is not in the repository.
+		assumeTrue(Files.isDirectory(Paths.get(RESOURCES_PATH + Listener.DICTIONARY_PATH)));
+		Map<String, String> map = Listener
+				.readDifficultyRatings(new FileInputStream(RESOURCES_PATH + Listener.DIFFICULTY_RATING_PATH));
+		DifficultyRatings ratings = new DifficultyRatings(map);
+		List<Path> files;
+		try (Stream<Path> dir = Files.walk(Paths.get(RESOURCES_PATH + Listener.DICTIONARY_PATH))) {
+			files = dir.filter(Files::isRegularFile).collect(Collectors.toList());
+		}
+		for (Path file : files) {
+			for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+				String form = line.split("\t")[0];
+				if (form.isEmpty()) {
+					continue;
+				}
+				String rating = ratings.rate(form);
+				assertEquals(form, mapRating(map, form), rating);
+				String stem = form.substring(0, form.length() - 1);
+				assertEquals(form, mapRating(map, stem + "る"), ratings.rate(stem + "る", form, rating));
+			}
+		}
+	}
+
+	/**
+	 * How the ratings were looked up in the map.
+	 */
+	private static String mapRating(Map<String, String> map, String form) {
+		StringBuilder difficultyRating = new StringBuilder();
+		for (int i = 0; i < form.length(); i++) {
+			String rating = map.get(Character.toString(form.charAt(i)));
+			if (rating == null || rating.isEmpty()) {
+				rating = "*";
+			}
+			difficultyRating.append(rating);
+			difficultyRating.append("-");
+		}
+		difficultyRating.setLength(difficultyRating.length() - 1);
+		return difficultyRating.toString();
+	}
+
+}
@@ -0,0 +1,97 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.ws1718.ismla.JapaneseHelper.shared.InflectedToken;
+import de.ws1718.ismla.JapaneseHelper.shared.Inflection;
+import de.ws1718.ismla.JapaneseHelper.shared.Token;
+
+public class InflectionAutomatonTest {
+
+	private static final String DUMP = String.join("\n", "食べる\tたべる\tVT2[ichi]\t1) to eat",
+			"書.く\tか.く\tVT1[go-ku]\t1) to write", "高い\tたかい\tA[i]\t1) high", "来る\tくる\tVI3[kuru]\t1) to come");
+
+	private static DictionaryIndex dictionary(boolean materialized) throws IOException {
+		DictionaryIndex dictionary = WiktionaryPreprocessorTest.preprocess(DUMP, 1).getDictionary();
+		if (materialized) {
+			dictionary = dictionary.materialized();
+		}
+		return dictionary.withInflectionAutomaton(
+				new InflectionAutomaton(DictionarySources.fromDirectory(new File("src/main/webapp")).inflector()));
+	}
+
+	@Test
+	public void testStackedInflections() throws IOException {
+		for (boolean materialized : new boolean[] { false, true }) {
+			DictionaryIndex dictionary = dictionary(materialized);
+			// The stacked forms are not in the dictionary.
+			assertTrue(dictionary.get("食べさせられなかった").isEmpty());
+
+			DictionaryIndex.Match match = dictionary
+					.longestMatch(Arrays.asList("食べ", "させ", "られ", "なかっ", "た", "よ"), 2);
+			assertEquals(5, match.getParts());
+			assertEquals("食べさせられなかった", match.getForm());
+			// させる is also the potential of the causative 食べさす, and られる
+			// is the passive and the potential.
+			assertEquals(4, match.getEntries().size());
+			InflectedToken inflTok = (InflectedToken) match.getEntries().get(0);
+			assertEquals("たべさせられなかった", inflTok.getPronunciation());
+			assertEquals("食べる", inflTok.getLemmaToken().getForm());
+			assertFalse(dictionary.inflectedForms(inflTok.getLemmaToken()).isEmpty());
+			assertEquals(Inflection.INFORMAL_PAST, inflTok.getInflection());
+			assertEquals(Arrays.asList(Inflection.CAUSATIVE, Inflection.PASSIVE, Inflection.NEGATIVE),
+					inflTok.getPreviousInflections());
+			assertEquals("causative + passive + negative + informal past",
+					inflTok.getInflectionInformation());
+			assertEquals("1-*-*-*-*-*-*-*-*-*", inflTok.getDifficultyRating().replaceAll("\\d+", "1"));
+			assertEquals(Arrays.asList(Inflection.CAUSATIVE, Inflection.POTENTIAL, Inflection.NEGATIVE),
+					((InflectedToken) match.getEntries().get(1)).getPreviousInflections());
+			assertEquals(Arrays.asList(Inflection.CAUSATIVE2, Inflection.POTENTIAL, Inflection.PASSIVE,
+					Inflection.NEGATIVE), ((InflectedToken) match.getEntries().get(2)).getPreviousInflections());
+			// All of them refer to the same copy of the lemma.
+			assertTrue(inflTok.getLemmaToken() == ((InflectedToken) match.getEntries().get(3)).getLemmaToken());
+		}
+	}
+
+	@Test
+	public void testResolve() throws IOException {
+		DictionaryIndex dictionary = dictionary(false);
+		InflectionAutomaton automaton = new InflectionAutomaton(
+				DictionarySources.fromDirectory(new File("src/main/webapp")).inflector());
+
+		List<Token> tokens = automaton.resolve("書かせなかった", dictionary);
+		// The shorter analysis comes first.
+		assertEquals(2, tokens.size());
+		InflectedToken written = (InflectedToken) tokens.get(0);
+		assertEquals("書く", written.getLemmaToken().getForm());
+		assertEquals("かかせなかった", written.getPronunciation());
+		assertEquals(Arrays.asList(Inflection.CAUSATIVE, Inflection.NEGATIVE), written.getPreviousInflections());
+
+		InflectedToken notHigh = single(automaton.resolve("高くなかった", dictionary));
+		assertEquals(Arrays.asList(Inflection.INFORMAL_NEGATIVE), notHigh.getPreviousInflections());
+
+		// Single inflections are left to the dictionary.
+		assertTrue(automaton.resolve("食べた", dictionary).isEmpty());
+		// The irregular verb is not a state of the automaton.
+		assertTrue(automaton.resolve("来させられる", dictionary).isEmpty());
+		// The stem has to belong to a lemma.
+		assertTrue(automaton.resolve("飲ませられた", dictionary).isEmpty());
+		assertNull(dictionary.longestMatch(Arrays.asList("飲ま", "せ", "られ", "た"), 2));
+	}
+
+	private static InflectedToken single(List<Token> tokens) {
+		assertEquals(tokens.toString(), 1, tokens.size());
+		return (InflectedToken) tokens.get(0);
+	}
+
+}
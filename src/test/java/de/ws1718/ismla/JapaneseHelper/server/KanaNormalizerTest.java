@@ -0,0 +1,57 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.mariten.kanatools.KanaConverter;
+
+public class KanaNormalizerTest {
+
+	@Test
+	public void testNormalize() {
+		assertEquals("たべる", KanaNormalizer.normalize("タベル"));
+		assertEquals("がっこう", KanaNormalizer.normalize("がっ.こう"));
+		assertEquals("すーぱー", KanaNormalizer.normalize("ス.ー.パー"));
+		assertEquals("", KanaNormalizer.normalize(".."));
+		assertEquals("", KanaNormalizer.normalize(""));
+		// Unchanged pronunciations are not copied.
+		String hiragana = "ひらがな";
+		assertSame(hiragana, KanaNormalizer.normalize(hiragana));
+	}
+
+	@Test
+	public void testSameAsKanaConverter() {
+		// Every character on its own.
+		for (int c = Character.MIN_VALUE; c <= Character.MAX_VALUE; c++) {
+			assertLikeKanaConverter(String.valueOf((char) c));
+		}
+		// Random pronunciations from the kana blocks and a few other
+		// characters.
+		Random random = new Random(42);
+		for (int i = 0; i < 100000; i++) {
+			StringBuilder s = new StringBuilder();
+			int length = random.nextInt(10);
+			for (int j = 0; j < length; j++) {
+				int r = random.nextInt(10);
+				if (r == 0) {
+					s.append('.');
+				} else if (r == 1) {
+					s.append("ｱﾞ漢a ー".charAt(random.nextInt(6)));
+				} else {
+					s.append((char) (0x3040 + random.nextInt(0xC0)));
+				}
+			}
+			assertLikeKanaConverter(s.toString());
+		}
+	}
+
+	private static void assertLikeKanaConverter(String pron) {
+		assertEquals(pron, KanaConverter.convertKana(pron.replaceAll("\\.", ""), KanaConverter.OP_ZEN_KATA_TO_ZEN_HIRA),
+				KanaNormalizer.normalize(pron));
+	}
+
+}
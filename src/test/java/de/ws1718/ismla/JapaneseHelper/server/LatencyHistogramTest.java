@@ -0,0 +1,83 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void testBuckets() {
+		// The buckets are contiguous and each one starts where its durations
+		// start.
+		int previous = -1;
+		for (long nanos = 0; nanos < 100000; nanos++) {
+			int bucket = LatencyHistogram.bucket(nanos);
+			assertTrue(bucket == previous || bucket == previous + 1);
+			if (bucket != previous) {
+				assertEquals(nanos, LatencyHistogram.lowerBound(bucket));
+			}
+			previous = bucket;
+		}
+		long minute = 60000000000L;
+		assertTrue(LatencyHistogram.lowerBound(LatencyHistogram.bucket(minute)) <= minute);
+		assertTrue(LatencyHistogram.lowerBound(LatencyHistogram.bucket(minute) + 1) > minute);
+		assertEquals(LatencyHistogram.bucket(Long.MAX_VALUE), LatencyHistogram.bucket(1L << 50));
+	}
+
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		LatencyHistogram.Snapshot empty = histogram.snapshot();
+		assertEquals(0, empty.getCount());
+		assertEquals(0, empty.getPercentileNanos(0.5));
+
+		Random random = new Random(42);
+		List<Long> durations = new ArrayList<>();
+		for (int i = 0; i < 10000; i++) {
+			long nanos = (long) Math.exp(random.nextDouble() * 20);
+			durations.add(nanos);
+			histogram.record(nanos);
+		}
+		durations.sort(null);
+		LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(10000, snapshot.getCount());
+		assertEquals(durations.get(9999).longValue(), snapshot.getMaxNanos());
+		assertEquals(durations.stream().mapToLong(Long::longValue).sum(), snapshot.getSumNanos());
+		for (double quantile : Arrays.asList(0.5, 0.95, 0.99, 1.0)) {
+			long exact = durations.get((int) Math.ceil(quantile * 10000) - 1);
+			long estimate = snapshot.getPercentileNanos(quantile);
+			assertTrue(quantile + ": " + estimate + " vs. " + exact,
+					Math.abs(estimate - exact) <= exact / LatencyHistogram.SUB_BUCKETS + 1);
+		}
+	}
+
+	@Test
+	public void testConcurrent() throws InterruptedException {
+		LatencyHistogram histogram = new LatencyHistogram();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			long nanos = 1000 * (t + 1);
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < 100000; i++) {
+					histogram.record(nanos);
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(400000, snapshot.getCount());
+		assertEquals(4000, snapshot.getMaxNanos());
+		assertEquals(100000L * (1000 + 2000 + 3000 + 4000), snapshot.getSumNanos());
+	}
+
+}
@@ -0,0 +1,144 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+
+import de.ws1718.ismla.JapaneseHelper.server.LookupMetrics.Stage;
+import de.ws1718.ismla.JapaneseHelper.shared.BatchLookupResult;
+import de.ws1718.ismla.JapaneseHelper.shared.DictionaryLoadingException;
+import de.ws1718.ismla.JapaneseHelper.shared.Token;
+
+public class LookupBatchTest {
+
+	private static final List<String> SENTENCES = Arrays.asList("寿司を食べます。", "すしをたべます。", "著者：山本博文東大史料編纂所教授",
+			"映画館に行こう。", "日本、日曜日、前日、今日");
+
+	private static ExecutorService executor;
+	private static LookupServiceImpl service;
+	private static LookupMetrics metrics;
+	private static DictionaryIndex dictionary;
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+		ListMultimap<String, Token> tokenMap = ArrayListMultimap.create();
+		tokenMap.put("寿司", new Token("寿司", "すし", "N", "1) sushi"));
+		tokenMap.put("日本", new Token("日本", "にほん", "NE", "1) Japan"));
+		tokenMap.put("映画館", new Token("映画館", "えいがかん", "N", "1) cinema"));
+
+		dictionary = DictionaryIndex.copyOf(tokenMap);
+
+		executor = Executors.newFixedThreadPool(4);
+		TestServletContext context = new TestServletContext();
+		context.getContext().setAttribute("dictionary", dictionary);
+		context.getContext().setAttribute("tokenizer", new SharedTokenizer());
+		context.getContext().setAttribute("lookupCache", new LookupCache(1000));
+		context.getContext().setAttribute("lookupExecutor", executor);
+		metrics = new LookupMetrics();
+		context.getContext().setAttribute("lookupMetrics", metrics);
+		service = context.init(new LookupServiceImpl());
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testOrderIsKept() {
+		// Enough sentences to be split into several chunks.
+		List<String> sentences = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			sentences.addAll(SENTENCES);
+		}
+		BatchLookupResult batch = service.lookupBatch(sentences);
+		assertEquals(sentences.size(), batch.size());
+		assertTrue(batch.getElapsedMillis() >= 0);
+		for (int i = 0; i < sentences.size(); i++) {
+			assertEquals(service.lookup(sentences.get(i)), batch.getResults().get(i));
+		}
+	}
+
+	@Test
+	public void testMetrics() {
+		long lookups = metrics.snapshot(Stage.LOOKUP).getCount();
+		long batches = metrics.snapshot(Stage.LOOKUP_BATCH).getCount();
+		long analyzed = metrics.snapshot(Stage.KUROMOJI).getCount();
+		service.lookupBatch(Arrays.asList("寿司を食べます。", "鮨を食べた。"));
+		service.lookup("寿司を食べます。");
+		assertEquals(lookups + 1, metrics.snapshot(Stage.LOOKUP).getCount());
+		assertEquals(batches + 1, metrics.snapshot(Stage.LOOKUP_BATCH).getCount());
+		// Every sentence is only analyzed once, and every stage is recorded
+		// for it.
+		long analyzedNow = metrics.snapshot(Stage.KUROMOJI).getCount();
+		assertTrue(analyzedNow <= analyzed + 2);
+		for (Stage stage : Arrays.asList(Stage.DICTIONARY, Stage.JOINING, Stage.SORTING)) {
+			assertEquals(analyzedNow, metrics.snapshot(stage).getCount());
+		}
+	}
+
+	@Test
+	public void testDictionaryLoading() throws Exception {
+		// The lookups are answered before the dictionary is loaded.
+		TestServletContext context = new TestServletContext();
+		context.getContext().setAttribute("tokenizer", new SharedTokenizer());
+		context.getContext().setAttribute("lookupCache", new LookupCache(1000));
+		context.getContext().setAttribute("lookupExecutor", executor);
+		LookupMetrics loadingMetrics = new LookupMetrics();
+		context.getContext().setAttribute("lookupMetrics", loadingMetrics);
+		LookupServiceImpl loading = context.init(new LookupServiceImpl());
+
+		List<ArrayList<Token>> provisional = loading.lookup("寿司を食べます。");
+		Token sushi = provisional.get(0).get(0);
+		assertTrue(sushi.isProvisional());
+		assertEquals("寿司", sushi.getForm());
+		assertEquals("すし", sushi.getPronunciation());
+		assertEquals("N", sushi.getPos());
+		Token period = provisional.get(provisional.size() - 1).get(0);
+		assertTrue(period.isProvisional());
+		assertEquals("*", period.getDifficultyRating());
+		assertEquals(provisional, loading.lookupBatch(Arrays.asList("寿司を食べます。")).getResults().get(0));
+		// Only Kuromoji ran for them.
+		assertTrue(loadingMetrics.snapshot(Stage.KUROMOJI).getCount() > 0);
+		for (Stage stage : Arrays.asList(Stage.DICTIONARY, Stage.JOINING, Stage.SORTING)) {
+			assertEquals(0, loadingMetrics.snapshot(stage).getCount());
+		}
+		// The corpora are only tokenized with the dictionary.
+		try {
+			loading.submitTokenizationJob();
+			fail();
+		} catch (DictionaryLoadingException e) {
+			// expected
+		}
+
+		// The cached provisional results are dropped once it is there.
+		context.getContext().setAttribute("dictionary", dictionary);
+		sushi = loading.lookup("寿司を食べます。").get(0).get(0);
+		assertFalse(sushi.isProvisional());
+		assertEquals(Arrays.asList("sushi"), sushi.getTranslations());
+		assertFalse(loading.lookupBatch(Arrays.asList("寿司を食べます。")).getResults().get(0).get(0).get(0)
+				.isProvisional());
+	}
+
+	@Test
+	public void testEmptyBatch() {
+		assertEquals(0, service.lookupBatch(Collections.<String> emptyList()).size());
+		assertEquals(0, service.lookupBatch(null).size());
+	}
+
+}
@@ -0,0 +1,76 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+
+import de.ws1718.ismla.JapaneseHelper.shared.Token;
+
+public class LookupCacheTest {
+
+	private final DictionaryIndex dictionary = DictionaryIndex.copyOf(ArrayListMultimap.create());
+	private final AtomicInteger analyses = new AtomicInteger();
+
+	private List<ArrayList<Token>> analyze(String sentence) {
+		analyses.incrementAndGet();
+		List<ArrayList<Token>> result = new ArrayList<>();
+		for (char c : sentence.trim().toCharArray()) {
+			result.add(new ArrayList<>(Arrays.asList(new Token(Character.toString(c), "", "N", "1) test"))));
+		}
+		return result;
+	}
+
+	@Test
+	public void testHitsAndMisses() {
+		LookupCache cache = new LookupCache(1000);
+		List<ArrayList<Token>> first = cache.get("寿司を食べます。", dictionary, () -> analyze("寿司を食べます。"));
+		// Surrounding whitespace does not change the result.
+		List<ArrayList<Token>> second = cache.get(" 寿司を食べます。 ", dictionary, () -> analyze(" 寿司を食べます。 "));
+		assertSame(first, second);
+		assertEquals(1, analyses.get());
+		assertEquals(1, cache.stats().hitCount());
+		assertEquals(1, cache.stats().missCount());
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void testEviction() {
+		// Each result weighs 1 + number of characters.
+		LookupCache cache = new LookupCache(20);
+		for (int i = 0; i < 10; i++) {
+			String sentence = "文" + i + "。";
+			cache.get(sentence, dictionary, () -> analyze(sentence));
+		}
+		assertTrue(cache.size() < 10);
+		assertTrue(cache.stats().evictionCount() > 0);
+	}
+
+	@Test
+	public void testDictionaryChange() {
+		LookupCache cache = new LookupCache(1000);
+		cache.get("映画館に行こう。", dictionary, () -> analyze("映画館に行こう。"));
+		cache.get("映画館に行こう。", dictionary, () -> analyze("映画館に行こう。"));
+		assertEquals(1, analyses.get());
+
+		ListMultimap<String, Token> tokenMap = ArrayListMultimap.create();
+		tokenMap.put("映画館", new Token("映画館", "えいがかん", "N", "1) cinema"));
+		DictionaryIndex newDictionary = DictionaryIndex.copyOf(tokenMap);
+		cache.get("映画館に行こう。", newDictionary, () -> analyze("映画館に行こう。"));
+		assertEquals(2, analyses.get());
+		assertEquals(1, cache.size());
+		// The statistics include the lookups with the old dictionary.
+		assertEquals(1, cache.stats().hitCount());
+		assertEquals(2, cache.stats().missCount());
+	}
+
+}
@@ -0,0 +1,54 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.google.common.cache.CacheStats;
+
+import de.ws1718.ismla.JapaneseHelper.server.LookupMetrics.Stage;
+
+public class LookupMetricsTest {
+
+	@Test
+	public void testPrometheus() {
+		LookupMetrics metrics = new LookupMetrics();
+		metrics.countRequest("lookup");
+		metrics.countRequest("lookup");
+		metrics.countRequest("lookupBatch");
+		// A bucket boundary, so that the percentiles are exact.
+		metrics.record(Stage.KUROMOJI, 1 << 21);
+		metrics.countSentence(5);
+
+		String text = metrics.toPrometheus(new CacheStats(3, 1, 1, 0, 0, 0));
+		assertTrue(text, text.contains("japanesehelper_rpc_requests_total{method=\"lookup\"} 2\n"));
+		assertTrue(text, text.contains("japanesehelper_rpc_requests_total{method=\"lookupBatch\"} 1\n"));
+		assertTrue(text, text.contains("# TYPE japanesehelper_stage_duration_seconds summary\n"));
+		assertTrue(text, text.contains(
+				"japanesehelper_stage_duration_seconds{stage=\"kuromoji\",quantile=\"0.99\"} 0.002097152\n"));
+		assertTrue(text, text.contains("japanesehelper_stage_duration_seconds_count{stage=\"kuromoji\"} 1\n"));
+		assertTrue(text, text.contains("japanesehelper_stage_duration_seconds_sum{stage=\"kuromoji\"} 0.002097152\n"));
+		assertTrue(text, text.contains("japanesehelper_stage_duration_seconds_count{stage=\"serialization\"} 0\n"));
+		assertTrue(text, text.contains("japanesehelper_analyzed_tokens_total 5\n"));
+		assertTrue(text, text.contains("japanesehelper_lookup_cache_hits_total 3\n"));
+		// Every sample line is a name (with labels) and a number.
+		for (String line : text.split("\n")) {
+			assertTrue(line, line.startsWith("# ") || line.matches("japanesehelper_\\w+(\\{[^}]*\\})? [0-9.]+"));
+		}
+	}
+
+	@Test
+	public void testJson() {
+		LookupMetrics metrics = new LookupMetrics();
+		metrics.countRequest("lookup");
+		metrics.record(Stage.LOOKUP, 1 << 21);
+		String json = metrics.toJson(null);
+		assertTrue(json, json.startsWith("{\"requests\":{\"lookup\":1},\"stages\":{\"lookup\":{\"count\":1,"
+				+ "\"mean_ms\":2.097,\"p50_ms\":2.097,\"p95_ms\":2.097,\"p99_ms\":2.097,\"max_ms\":2.097},"));
+		assertTrue(json, json.endsWith("\"analyzed_sentences\":0,\"analyzed_tokens\":0}"));
+		assertEquals(1, metrics.getRequests("lookup"));
+		assertEquals(0, metrics.getRequests("tokenizeFiles"));
+	}
+
+}
@@ -0,0 +1,143 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.ws1718.ismla.JapaneseHelper.shared.Token;
+
+public class StartupReportTest {
+
+	private TestWebapp testWebapp;
+	private Path webapp;
+
+	@Before
+	public void setUp() throws IOException {
+		testWebapp = TestWebapp.create("寿司\tすし\tN\t1) sushi", "食べる\tたべる\tVT2[ichi]\t1) to eat");
+		webapp = testWebapp.getRoot();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		testWebapp.close();
+	}
+
+	@Test
+	public void testPhases() {
+		StartupReport report = new StartupReport();
+		try (StartupReport.Phase phase = report.phase("first")) {
+			phase.setDetail("a \"detail\"");
+		}
+		StartupReport.Phase second = report.phase("second");
+		assertEquals(-1, second.getMillis());
+		second.close();
+		report.finish();
+
+		List<StartupReport.Phase> phases = report.getPhases();
+		assertEquals(2, phases.size());
+		assertEquals("first", phases.get(0).getName());
+		assertTrue(phases.get(0).getMillis() >= 0);
+		assertTrue(phases.get(1).getMillis() >= 0);
+		assertTrue(report.toString(), report.toString().contains("first: "));
+		assertTrue(report.toJson(), report.toJson().contains("\"name\":\"first\""));
+		assertTrue(report.toJson(), report.toJson().contains("\"detail\":\"a \\\"detail\\\"\""));
+		assertEquals(null, report.getFootprints());
+	}
+
+	@Test
+	public void testTime() {
+		StartupReport report = new StartupReport();
+		List<String> ran = new ArrayList<>();
+		report.time("runnable", () -> {
+			ran.add("runnable");
+		});
+		assertEquals("result", report.time("supplier", () -> "result"));
+		try {
+			report.time("failing", () -> {
+				throw new IllegalStateException();
+			});
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		report.finish();
+
+		assertEquals(Arrays.asList("runnable"), ran);
+		List<StartupReport.Phase> phases = report.getPhases();
+		assertEquals(3, phases.size());
+		assertEquals("supplier", phases.get(1).getName());
+		for (StartupReport.Phase phase : phases) {
+			assertTrue(phase.toString(), phase.getMillis() >= 0);
+		}
+	}
+
+	@Test
+	public void testDictionary() throws IOException {
+		DictionaryIndex dictionary = DictionaryLoader.load(webapp.toFile(), null);
+		StartupReport report = new StartupReport();
+		report.addDictionary(dictionary);
+
+		Map<String, Integer> paradigms = report.getParadigmCounts();
+		assertEquals(Integer.valueOf(1), paradigms.get("(none)"));
+		assertEquals(Integer.valueOf(1), paradigms.get("ichi"));
+		int total = 0;
+		for (int count : paradigms.values()) {
+			total += count;
+		}
+		assertEquals(dictionary.size(), total);
+
+		Map<String, StartupReport.Footprint> footprints = report.getFootprints();
+		assertEquals(Arrays.asList("Token", "InflectableToken", "InflectedToken", "index"),
+				Arrays.asList(footprints.keySet().toArray()));
+		assertEquals(1, footprints.get("Token").getCount());
+		assertEquals(1, footprints.get("InflectableToken").getCount());
+		// The inflected forms are found when they are looked up.
+		assertEquals(0, footprints.get("InflectedToken").getCount());
+		assertEquals(0, footprints.get("InflectedToken").getBytes());
+		assertTrue(footprints.get("Token").getBytes() > 0);
+		assertTrue(footprints.get("InflectableToken").getBytes() > 0);
+		assertTrue(footprints.get("index").getBytes() > 0);
+		assertTrue(report.toJson(), report.toJson().contains("\"InflectedToken\":{\"count\":"));
+	}
+
+	@Test
+	public void testMappedDictionary() throws IOException {
+		DictionaryIndex dictionary = DictionaryLoader.load(webapp.toFile(), webapp.resolve("dictionary.bin"));
+		StartupReport report = new StartupReport();
+		report.addDictionary(dictionary);
+		assertTrue(report.getParadigmCounts().isEmpty());
+		assertTrue(report.getFootprints().isEmpty());
+		assertTrue(report.toString(), report.toString().contains("the tokens are not on the heap"));
+	}
+
+	@Test
+	public void testHeapEstimator() {
+		HeapEstimator estimator = new HeapEstimator();
+		// 24 bytes for the string, 16 + 2 * 3 (aligned to 24) for its chars.
+		assertEquals(48, estimator.add(new String("abc")));
+		String shared = new String("寿司");
+		assertEquals(48, estimator.add(shared));
+		assertEquals(0, estimator.add(shared));
+
+		Token tok = new Token(shared, "すし", "N", "1) sushi");
+		long bytes = estimator.add(tok);
+		assertTrue(bytes > 0);
+		assertEquals(0, estimator.add(tok));
+		// The form was counted already.
+		Token copy = new Token(shared, "すし", "N", "1) sushi");
+		assertFalse(estimator.add(copy) >= bytes);
+	}
+
+}
@@ -0,0 +1,78 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+
+/**
+ * A minimal servlet context for testing servlets outside of a container. Only
+ * the attributes are supported.
+ */
+public class TestServletContext {
+
+	private final Map<String, Object> attributes = new HashMap<>();
+	private final ServletContext context;
+
+	public TestServletContext() {
+		context = (ServletContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { ServletContext.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getAttribute":
+						return attributes.get(args[0]);
+					case "setAttribute":
+						attributes.put((String) args[0], args[1]);
+						return null;
+					case "removeAttribute":
+						attributes.remove(args[0]);
+						return null;
+					case "getAttributeNames":
+						return Collections.enumeration(attributes.keySet());
+					case "log":
+						return null;
+					default:
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+
+	/**
+	 * @return the servlet context
+	 */
+	public ServletContext getContext() {
+		return context;
+	}
+
+	/**
+	 * Initializes the servlet with this context.
+	 * 
+	 * @param servlet
+	 *            the servlet
+	 * @return the servlet
+	 */
+	public <T extends HttpServlet> T init(T servlet) throws ServletException {
+		ServletConfig config = (ServletConfig) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { ServletConfig.class }, (proxy, method, args) -> {
+					switch (method.getName()) {
+					case "getServletContext":
+						return context;
+					case "getServletName":
+						return servlet.getClass().getSimpleName();
+					case "getInitParameter":
+						return null;
+					case "getInitParameterNames":
+						return Collections.emptyEnumeration();
+					default:
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+		servlet.init(config);
+		return servlet;
+	}
+
+}
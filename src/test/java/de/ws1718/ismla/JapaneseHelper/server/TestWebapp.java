@@ -0,0 +1,79 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * A copy of the web application in a temporary directory, with a tiny
+ * dictionary, the ichidan inflection template and the kanji difficulty
+ * ratings. Closing it deletes the directory.
+ */
+public class TestWebapp implements Closeable {
+
+	private static final String WEBAPP = "src/main/webapp";
+
+	private final Path root;
+
+	private TestWebapp(Path root) {
+		this.root = root;
+	}
+
+	/**
+	 * @param tsvLines
+	 *            the lines of the dictionary, in the format of the Wiktionary
+	 *            dump
+	 * @return the web application
+	 */
+	public static TestWebapp create(String... tsvLines) throws IOException {
+		TestWebapp webapp = new TestWebapp(Files.createTempDirectory("webapp-test"));
+		webapp.addTemplate("ja-ichi.txt");
+		Path difficultyRating = webapp.root.resolve(Listener.DIFFICULTY_RATING_PATH.substring(1));
+		Files.createDirectories(difficultyRating.getParent());
+		Files.copy(Paths.get(WEBAPP, Listener.DIFFICULTY_RATING_PATH), difficultyRating);
+		webapp.writeDictionary(tsvLines);
+		return webapp;
+	}
+
+	/**
+	 * @param template
+	 *            the file name of an inflection template of the web
+	 *            application, e.g. "ja-go-ku.txt"
+	 */
+	public void addTemplate(String template) throws IOException {
+		Path templates = Files.createDirectories(root.resolve(Listener.INFLECTION_TEMPLATES_PATH.substring(1)));
+		Files.copy(Paths.get(WEBAPP, Listener.INFLECTION_TEMPLATES_PATH, template), templates.resolve(template));
+	}
+
+	/**
+	 * Replaces the dictionary.
+	 *
+	 * @param tsvLines
+	 *            the lines of the dictionary
+	 */
+	public void writeDictionary(String... tsvLines) throws IOException {
+		Path dictionary = Files.createDirectories(root.resolve(Listener.DICTIONARY_PATH.substring(1)));
+		Files.write(dictionary.resolve("test.tsv"), Arrays.asList(tsvLines), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return the directory of the web application
+	 */
+	public Path getRoot() {
+		return root;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try (Stream<Path> paths = Files.walk(root)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+
+}
@@ -0,0 +1,102 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import de.ws1718.ismla.JapaneseHelper.shared.InflectableToken;
+import de.ws1718.ismla.JapaneseHelper.shared.InflectedToken;
+import de.ws1718.ismla.JapaneseHelper.shared.Inflection;
+import de.ws1718.ismla.JapaneseHelper.shared.Token;
+
+public class TokenCanonicalizerTest {
+
+	@Test
+	public void testSharedValues() {
+		TokenCanonicalizer canonicalizer = new TokenCanonicalizer();
+		InflectableToken kaku = new InflectableToken("書く", "かく", "VT1[go-ku]", "1) to write");
+		InflectableToken kiku = new InflectableToken("聞く", "きく", "VT1[go-ku]", "1) to hear");
+		for (Token tok : new Token[] { kaku, kiku }) {
+			tok.setDifficultyRating("1-*");
+			RankingKeys.assign(tok);
+			canonicalizer.canonicalize(tok);
+		}
+		assertSame(kaku.getPos(), kiku.getPos());
+		assertSame(kaku.getInflectionParadigm(), kiku.getInflectionParadigm());
+		assertSame(kaku.getPrettyPos(), kiku.getPrettyPos());
+		assertSame(kaku.getDifficultyRating(), kiku.getDifficultyRating());
+		assertSame(kaku.getPosClass(), kiku.getPosClass());
+		// The values themselves don't change.
+		assertEquals("transitive godan verb (go-ku infl.)", kiku.getPrettyPos());
+		assertEquals("go-ku", kiku.getInflectionParadigm());
+		assertEquals("きく", kiku.getReading());
+		assertSame(kiku.getPronunciation(), kiku.getReading());
+	}
+
+	@Test
+	public void testSharedTranslations() {
+		TokenCanonicalizer canonicalizer = new TokenCanonicalizer();
+		Token first = new Token("某", "ぼう", "N", "?");
+		Token second = new Token("某", "それがし", "PRN", "?");
+		canonicalizer.canonicalize(first);
+		canonicalizer.canonicalize(second);
+		// The translations are shared without parsing them.
+		assertSame(first.getLazyTranslations(), second.getLazyTranslations());
+		assertFalse(second.getLazyTranslations().isParsed());
+		assertEquals("[no translation given]", second.getTranslations().get(0));
+		assertSame(first.getTranslations(), second.getTranslations());
+
+		// Parsed translations are shared by their list.
+		Token third = new Token("某", "なにがし", "PRN", "");
+		third.getTranslations();
+		Token fourth = new Token("某", "ぼう", "PFX", "");
+		fourth.getTranslations();
+		canonicalizer.canonicalize(third);
+		canonicalizer.canonicalize(fourth);
+		assertSame(third.getTranslations(), fourth.getTranslations());
+
+		InflectableToken lemma = new InflectableToken("食べる", "たべる", "VT2[ichi]", "1) to eat");
+		InflectedToken inflTok = new InflectedToken(lemma, "食べた", "たべた", Inflection.INFORMAL_PAST);
+		canonicalizer.canonicalize(inflTok);
+		canonicalizer.canonicalize(lemma);
+		assertSame(lemma.getTranslations(), inflTok.getTranslations());
+		// Without ranking keys, there is nothing to share.
+		assertNull(lemma.getPosClass());
+	}
+
+	@Test
+	public void testDerivedForms() {
+		TokenCanonicalizer canonicalizer = new TokenCanonicalizer();
+		InflectableToken kuru = new InflectableToken("連れて来る", "つれてくる", "VT3[kuru]", "1) to bring along");
+		InflectedToken[] inflected = { new InflectedToken(kuru, "連れて来ない", "つれてこない", Inflection.NEGATIVE),
+				new InflectedToken(kuru, "連れて来ます", "つれてきます", Inflection.FORMAL) };
+		InflectedToken copy = new InflectedToken(kuru, "連れて来ない", "つれてこない", Inflection.NEGATIVE);
+		for (InflectedToken inflTok : inflected) {
+			RankingKeys.assign(inflTok);
+			canonicalizer.canonicalize(inflTok);
+		}
+
+		assertEquals("連れて来ない", inflected[0].getForm());
+		assertEquals("つれてこない", inflected[0].getPronunciation());
+		assertEquals("つれてこない", inflected[0].getReading());
+		assertEquals("連れて来ます", inflected[1].getForm());
+		assertEquals("つれてきます", inflected[1].getPronunciation());
+		// The derived strings are only built once.
+		assertSame(inflected[1].getForm(), inflected[1].getForm());
+		assertSame(inflected[1].getPronunciation(), inflected[1].getPronunciation());
+		assertEquals(copy, inflected[0]);
+		assertEquals(copy.hashCode(), inflected[0].hashCode());
+		assertEquals(copy.toString(), inflected[0].toString());
+
+		// Another lemma doesn't change the form.
+		inflected[0].setLemmaToken(new InflectableToken("来る", "くる", "VI3[kuru]", "1) to come"));
+		assertEquals("連れて来ない", inflected[0].getForm());
+		assertEquals("つれてこない", inflected[0].getReading());
+		inflected[1].setForm("連れてきます");
+		assertEquals("連れてきます", inflected[1].getForm());
+	}
+
+}
@@ -0,0 +1,133 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.ws1718.ismla.JapaneseHelper.shared.TokenizationProgress;
+import de.ws1718.ismla.JapaneseHelper.shared.TokenizationProgress.State;
+
+public class TokenizationJobsTest {
+
+	private static final List<String> FILES = Arrays.asList("/WEB-INF/tokenize/jobs-test-a.txt",
+			"/WEB-INF/tokenize/jobs-test-b.txt");
+
+	private ExecutorService workers;
+	private TokenizationJobs jobs;
+
+	@Before
+	public void setUp() {
+		workers = Executors.newFixedThreadPool(2);
+		jobs = new TokenizationJobs(workers, 2);
+	}
+
+	@After
+	public void tearDown() {
+		jobs.shutdown();
+		workers.shutdownNow();
+		for (String file : FILES) {
+			TokenizationJobs.outputFile(file).delete();
+		}
+	}
+
+	@Test
+	public void testOutputFile() {
+		assertEquals(new File("corpus-tokenized.txt"), TokenizationJobs.outputFile("/WEB-INF/tokenize/corpus.txt"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSameOutputFile() {
+		jobs.submit(Arrays.asList("/WEB-INF/tokenize/corpus.txt", "/WEB-INF/tokenize/corpus.csv"), -1,
+				file -> input(""), line -> line);
+	}
+
+	@Test
+	public void testDone() throws InterruptedException, IOException {
+		String jobId = jobs.submit(FILES, 8, file -> input(file.endsWith("a.txt") ? "a\nb\n" : "c\n"),
+				String::toUpperCase);
+		TokenizationProgress progress = jobs.await(jobId);
+
+		assertEquals(jobId, progress.getJobId());
+		assertEquals(State.DONE, progress.getState());
+		assertEquals(2, progress.getFilesDone());
+		assertEquals(2, progress.getFiles());
+		assertEquals(3, progress.getLines());
+		assertEquals(-1, progress.getEtaMillis());
+		assertTrue(progress.getMessage(), progress.getMessage().startsWith("tokenized 3 lines of 2 files"));
+		String nl = System.lineSeparator();
+		assertEquals(Arrays.asList("A", "B"), Files.readAllLines(TokenizationJobs.outputFile(FILES.get(0)).toPath()));
+		assertEquals("C" + nl, new String(Files.readAllBytes(TokenizationJobs.outputFile(FILES.get(1)).toPath()),
+				StandardCharsets.UTF_8));
+		// It's over.
+		assertFalse(jobs.cancel(jobId));
+	}
+
+	@Test
+	public void testFailed() throws InterruptedException {
+		String jobId = jobs.submit(FILES, -1, file -> {
+			throw new FileNotFoundException(file);
+		}, line -> line);
+		TokenizationProgress progress = jobs.await(jobId);
+		assertEquals(State.FAILED, progress.getState());
+		assertEquals(FILES.get(0), progress.getMessage());
+	}
+
+	@Test
+	public void testCancel() throws InterruptedException {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch never = new CountDownLatch(1);
+		StringBuilder lines = new StringBuilder();
+		for (int i = 0; i < 10000; i++) {
+			lines.append(i).append("\n");
+		}
+		String running = jobs.submit(FILES.subList(0, 1), -1, file -> input(lines.toString()), line -> {
+			started.countDown();
+			try {
+				never.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return line;
+		});
+		// The second job waits for the first one.
+		String queued = jobs.submit(FILES.subList(1, 2), -1, file -> input("x\n"), line -> line);
+		started.await();
+		assertEquals(State.RUNNING, jobs.progress(running).getState());
+		assertEquals(State.QUEUED, jobs.progress(queued).getState());
+
+		assertTrue(jobs.cancel(queued));
+		assertEquals(State.CANCELLED, jobs.progress(queued).getState());
+		assertTrue(jobs.cancel(running));
+		assertEquals(State.CANCELLED, jobs.await(running).getState());
+		assertFalse(jobs.cancel(running));
+	}
+
+	@Test
+	public void testUnknownJob() throws InterruptedException {
+		assertNull(jobs.progress("42"));
+		assertNull(jobs.await("42"));
+		assertFalse(jobs.cancel("42"));
+	}
+
+	private static ByteArrayInputStream input(String s) {
+		return new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8));
+	}
+
+}
@@ -0,0 +1,81 @@
+package de.ws1718.ismla.JapaneseHelper.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.ListMultimap;
+
+import de.ws1718.ismla.JapaneseHelper.shared.InflectedToken;
+import de.ws1718.ismla.JapaneseHelper.shared.Token;
+
+public class WiktionaryPreprocessorTest {
+
+	private static final String RESOURCES_PATH = "src/main/webapp/";
+
+	// Entries of different kinds, including ones that are inflected several
+	// times (居る) or skipped (the comment and the incomplete line).
+	private static final String[] ENTRIES = { "## comment", "明るい\tあかるい\tA[i]\t1) bright",
+			"妙\tみょう\tA[na]\t1) strange", "飛ぶ\tとぶ\tV1[go-bu]\t1) to fly", "居る\tいる\tVI2[ichi]\t1) to be",
+			"会する\tかいする\tVB3\t1) to meet", "寿司\tすし\tN\t1) sushi", "為る\tする\tV[verbconj]\t1) to do",
+			"incomplete\tline" };
+
+	@Test
+	public void testDeterministic() throws IOException {
+		// Enough lines to be split into several chunks.
+		StringBuilder dump = new StringBuilder();
+		for (int i = 0; i < 300; i++) {
+			for (String entry : ENTRIES) {
+				dump.append(entry).append(i % 2 == 0 ? "" : " " + i).append('\n');
+			}
+		}
+		ListMultimap<String, Token> sequential = preprocess(dump.toString(), 1).getTokens();
+		ListMultimap<String, Token> parallel = preprocess(dump.toString(), 4).getTokens();
+
+		assertTrue(sequential.containsKey("飛んだ"));
+		assertEquals(sequential.keySet(), parallel.keySet());
+		for (String form : sequential.keySet()) {
+			assertEquals(describe(sequential.get(form)), describe(parallel.get(form)));
+		}
+	}
+
+	private static List<String> describe(List<Token> tokens) {
+		List<String> descriptions = new ArrayList<>();
+		for (Token tok : tokens) {
+			String description = tok.getClass().getSimpleName() + " " + tok + " " + tok.getTranslations() + " "
+					+ tok.getDifficultyRating();
+			if (tok instanceof InflectedToken) {
+				description += " " + ((InflectedToken) tok).getLemmaAndInflectionInformation();
+			}
+			descriptions.add(description);
+		}
+		return descriptions;
+	}
+
+	static WiktionaryPreprocessor preprocess(String dump, int parallelism) throws IOException {
+		List<String> inflectionFiles = new ArrayList<>();
+		for (File file : new File(RESOURCES_PATH + Listener.INFLECTION_TEMPLATES_PATH).listFiles()) {
+			inflectionFiles.add(file.getPath());
+		}
+		List<InputStream> inflectionStreams = new ArrayList<>();
+		for (String file : inflectionFiles) {
+			inflectionStreams.add(new FileInputStream(file));
+		}
+		return new WiktionaryPreprocessor(inflectionFiles, inflectionStreams,
+				Arrays.<InputStream> asList(new ByteArrayInputStream(dump.getBytes(StandardCharsets.UTF_8))),
+				Listener.readDifficultyRatings(new FileInputStream(RESOURCES_PATH + Listener.DIFFICULTY_RATING_PATH)),
+				parallelism);
+	}
+
+}
@@ -0,0 +1,164 @@
+package de.ws1718.ismla.JapaneseHelper.shared;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+public class GlossNormalizerTest {
+
+	private static final String DICTIONARY_PATH = "src/main/webapp/WEB-INF/dictionary/";
+
+	// The pieces of the random translations: markup, markup that the cascade
+	// creates when it replaces or removes other markup, and text.
+	private static final String[] PIECES = { "&", "amp", "amp;", "lt", "lt;", "gt;", "quot", "quot;", "nbsp;",
+			"hellip", "ndash;", "mdash", "times;", ";", " ", "  ", "\t", "\n", "\r", "'", "''", "<", "!", "--", "-",
+			">", "#", "##", "{", "}", "{{", "}}", "(", ")", "1) ", "2)", "a", "text", "水", "•", " " };
+
+	@Test
+	public void testGlossesTestInputs() {
+		for (String s : new String[] { "1) ? 2) to sleep 3) to leave",
+				"1) surnameThe 5th most common surname in Japan.&lt; ref&gt; 姓#日本の主な名字 - Japanese Wikipedia&lt; ref&gt",
+				"1) white dew&lt; !--草木に置いて、白く光って見える露。--&gt",
+				"1) metre, meter  &lt; !-- Which word does this belong with?",
+				"1) text1 &lt; !-- comment1 --&gt;  text2 &lt; !-- comment2 --&gt; text3 &lt; !-- comment3",
+				"1) must, shall ###", "1) variant of 汀,: the water's edge: ## beach ## shore ## bank",
+				"1) [element in compounds, referring to things {{l]",
+				"1) coarse, rough, plain, poor, shabby 2) to neglect [{{lang, ja, 粗末にする}}]" }) {
+			assertSame(s);
+		}
+	}
+
+	@Test
+	public void testMarkupCreatedByTheCascade() {
+		// &amp; is replaced before the other entities, but only once.
+		assertSame("a &amp;lt; b &amp; gt c &amp;amp; d &ampamp;");
+		assertEquals("a < b > c &amp; d &amp;",
+				GlossNormalizer.normalize("a &amp;lt; b &amp; gt c &amp;amp; d &ampamp;"));
+		// Entities with extra whitespace, without semicolons and next to each
+		// other.
+		assertSame("&quot; x &quot;&quot;&ndash; &mdash;y&times;z &nbsp;&hellip; & & lt &&gt");
+		assertSame("''quoted'' and '''three''' '");
+		// A comment that ends right after it starts, and comments that are
+		// joined into new ones when they are removed.
+		assertSame("a < !-->b");
+		assertSame("x< < !--c--> !--y");
+		assertSame("x&lt;&lt; !-- c --&gt; !-- y --&gt; z");
+		assertSame("a < !- - not a comment <!-- neither -->");
+		// Enumerations and hash signs at the end (also before a final line
+		// terminator).
+		assertSame("## a #### b # c ##\td ##");
+		assertSame("a #}} b ##");
+		assertSame("a ##\n");
+		assertSame("a ##\r\n");
+		assertSame("a ##\n\n");
+		assertSame("a #\n#");
+		// Braces and parentheses are not rescanned.
+		assertSame("{{{ {{{{ }}} {} }{ ({{)) (()) ( ) ()() (}})");
+		assertEquals("{ } ( ) ()", GlossNormalizer.normalize("{{{ {{{{ }}} {{}} }}( ) ({{}})(())"));
+	}
+
+	@Test
+	public void testRandom() {
+		Random random = new Random(42);
+		int compared = 0;
+		for (int i = 0; i < 200000; i++) {
+			StringBuilder s = new StringBuilder();
+			int pieces = random.nextInt(12);
+			for (int j = 0; j < pieces; j++) {
+				s.append(PIECES[random.nextInt(PIECES.length)]);
+			}
+			if (legacyNormalize(s.toString()) != null) {
+				assertSame(s.toString());
+				compared++;
+			}
+		}
+		assertTrue(compared > 100000);
+	}
+
+	@Test
+	public void testDictionary() throws IOException {
+		// The Wiktionary dump is not in the repository.
+		assumeTrue(Files.isDirectory(Paths.get(DICTIONARY_PATH)));
+		List<Path> files;
+		try (Stream<Path> dir = Files.walk(Paths.get(DICTIONARY_PATH))) {
+			files = dir.filter(Files::isRegularFile).collect(Collectors.toList());
+		}
+		for (Path file : files) {
+			for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+				String[] fields = line.split("\t");
+				if (fields.length > 3) {
+					assertSame(fields[3]);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testEnumerationMarkers() {
+		// "3) 1" is cut off before the "2)" and nothing remains of it.
+		assertEquals(Arrays.asList("a", "b)", "c", ") d", "e"),
+				Token.processGlosses("1) a 2)b) 3) 12) c 4) ) d 5)\te"));
+	}
+
+	private static void assertSame(String translation) {
+		assertEquals(translation, legacyNormalize(translation), GlossNormalizer.normalize(translation));
+	}
+
+	/**
+	 * The regular expressions that the normalizer replaced.
+	 *
+	 * @return the cleaned string or null if the expressions never finished
+	 *         (if "-->" comes before "< !--")
+	 */
+	private static String legacyNormalize(String translation) {
+		translation = translation.trim();
+
+		translation = translation.replaceAll("&amp;?", "&");
+		translation = translation.replaceAll("& ?lt;?", "<");
+		translation = translation.replaceAll("& ?gt;?", ">");
+		translation = translation.replaceAll("& ?quot;? ?", "\"");
+		translation = translation.replaceAll("& ?ndash;? ?", "–");
+		translation = translation.replaceAll("& ?mdash;? ?", "—");
+		translation = translation.replaceAll("& ?nbsp;? ?", "u\00A0");
+		translation = translation.replaceAll("& ?hellip;? ?", "u\2026");
+		translation = translation.replaceAll("& ?times;? ?", "×");
+		translation = translation.replaceAll("''", "\"");
+
+		int commentStartIndex = translation.indexOf("< !--");
+		int commentEndIndex = translation.indexOf("-->");
+		while (commentStartIndex > -1) {
+			if (commentEndIndex == -1) {
+				translation = translation.substring(0, commentStartIndex);
+			} else if (commentEndIndex < commentStartIndex) {
+				return null;
+			} else {
+				translation = translation.substring(0, commentStartIndex) + translation.substring(commentEndIndex + 3);
+			}
+			commentStartIndex = translation.indexOf("< !--");
+			commentEndIndex = translation.indexOf("-->");
+		}
+
+		translation = translation.replaceAll("#{2,} ", "•");
+		translation = translation.replaceAll("#+$", "");
+
+		translation = translation.replaceAll("(\\{\\{)|(\\}\\})", "");
+		translation = translation.replaceAll("\\(\\)", "");
+
+		translation = translation.replaceAll("\\s+", " ");
+		return translation;
+	}
+
+}
@@ -90,4 +90,26 @@ public class GlossesTest {
 
 	}
 
+	@Test
+	public void testLazyTranslations() {
+		Token tok = new Token("眠る", "ねむる", "VI1[go-ru]", "1) ? 2) to sleep 3) to leave");
+		assertFalse(tok.getLazyTranslations().isParsed());
+		assertEquals("1) ? 2) to sleep 3) to leave", tok.getLazyTranslations().getRaw());
+
+		Token copy = new Token("眠る", "ねむる", "VI1[go-ru]", "1) to sleep 2) to leave");
+		assertEquals(copy, tok);
+		assertEquals(copy.hashCode(), tok.hashCode());
+		assertEquals(Arrays.asList("to sleep", "to leave"), tok.getTranslations());
+		assertTrue(tok.getLazyTranslations().isParsed());
+		assertSame(tok.getTranslations(), tok.getTranslations());
+		// Only the glosses are serialized from now on.
+		assertNull(tok.getLazyTranslations().getRaw());
+
+		// The inflected forms share the translations of their lemma.
+		InflectableToken lemma = new InflectableToken("眠る", "ねむる", "VI1[go-ru]", "1) to sleep");
+		InflectedToken inflTok = new InflectedToken(lemma, "眠った", "ねむった", Inflection.INFORMAL_PAST);
+		assertSame(lemma.getLazyTranslations(), inflTok.getLazyTranslations());
+		assertFalse(lemma.getLazyTranslations().isParsed());
+	}
+
 }